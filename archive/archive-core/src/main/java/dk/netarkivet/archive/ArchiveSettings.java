@@ -56,6 +56,14 @@ public class ArchiveSettings {
      */
     public static String ARCREPOSITORY_UPLOAD_RETRIES = "settings.archive.arcrepository.uploadRetries";
 
+    /**
+     * <b>settings.archive.arcrepository.trustVerifiedUploadChecksum</b>: <br>
+     * If true, the checksum that a bitarchive verified while receiving an uploaded file is accepted as the checksum of
+     * the stored file. Otherwise the bitarchive is asked to checksum the stored file in a separate batch job. Default
+     * is true.
+     */
+    public static String ARCREPOSITORY_TRUST_VERIFIED_UPLOAD_CHECKSUM = "settings.archive.arcrepository.trustVerifiedUploadChecksum";
+
     /**
      * <b>settings.archive.bitarchive.minSpaceLeft</b>: <br>
      * The minimum amount of bytes left *in any dir* that we will allow a bitarchive machine to accept uploads with.
@@ -269,6 +277,21 @@ public class ArchiveSettings {
      */
     public static String CLASS_ARCREPOSITORY_BITPRESERVATION = "settings.archive.bitpreservation.class";
 
+    /**
+     * <b>settings.archive.bitpreservation.incrementalChecksums</b>: <br>
+     * If true, finding changed files in a bitarchive replica only checksums the files which are new or changed since
+     * the previous check, together with a rotating sample of the unchanged files. The bitarchives keep a ledger of
+     * their files for this. Otherwise all files are checksummed every time. Default is false.
+     */
+    public static String BITPRESERVATION_INCREMENTAL_CHECKSUMS = "settings.archive.bitpreservation.incrementalChecksums";
+
+    /**
+     * <b>settings.archive.bitpreservation.scrubPeriod</b>: <br>
+     * The period in milliseconds in which the incremental checksums reread every unchanged file in a bitarchive
+     * replica at least once. Default is 30 days.
+     */
+    public static String BITPRESERVATION_SCRUB_PERIOD = "settings.archive.bitpreservation.scrubPeriod";
+
     /**
      * <b>settings.archive.checksum.baseDir</b>: <br>
      * The directory for the checksum file.
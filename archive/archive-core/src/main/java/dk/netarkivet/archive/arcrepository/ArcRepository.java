@@ -108,6 +108,10 @@ public class ArcRepository implements CleanupIF {
      */
     private final Map<String, Map<String, Integer>> uploadRetries = new HashMap<String, Map<String, Integer>>();
 
+    /** Whether a checksum verified by a replica while receiving a file is trusted, instead of asking for it again. */
+    private final boolean trustVerifiedUploadChecksum = Settings
+            .getBoolean(ArchiveSettings.ARCREPOSITORY_TRUST_VERIFIED_UPLOAD_CHECKSUM);
+
     /**
      * Constructor for the ArcRepository. Connects the ArcRepository to all BitArchives, and initialises admin data.
      *
@@ -457,7 +461,7 @@ public class ArcRepository implements CleanupIF {
         String repChannelName = resolveReplicaChannel(msg.getTo().getName());
 
         if (msg.isOk()) {
-            processDataUploaded(msg.getArcfileName(), repChannelName);
+            processDataUploaded(msg.getArcfileName(), repChannelName, msg.getVerifiedChecksum());
         } else {
             processUploadFailed(msg.getArcfileName(), repChannelName);
         }
@@ -468,18 +472,28 @@ public class ArcRepository implements CleanupIF {
      * <ol>
      * <il>1. Update the upload, and store states appropriately.</il><br/>
      * <il>2. Verify that data are correctly stored in the archive by running a batch job on the archived file to
-     * perform a MD5 checksum comparison.</il> <br/>
+     * perform a MD5 checksum comparison. If the replica verified the checksum while receiving the file, that checksum
+     * is compared instead, sparing the replica from reading the file again.</il> <br/>
      * <il>3. Check if store operation is completed and update admin data if so.</il><br/>
      * </ol>
      *
      * @param arcfileName The arcfile that was uploaded.
      * @param replicaChannelName The name of the identification channel for the replica that uploaded it (THE_BAMON for
      * bitarchive and THE_CR for checksum).
+     * @param verifiedChecksum The checksum verified by the replica while receiving the file, or null.
      */
-    private synchronized void processDataUploaded(String arcfileName, String replicaChannelName) {
+    private synchronized void processDataUploaded(String arcfileName, String replicaChannelName,
+            String verifiedChecksum) {
         log.debug("Data uploaded '{}' ,{}", arcfileName, replicaChannelName);
         ad.setState(arcfileName, replicaChannelName, ReplicaStoreState.DATA_UPLOADED);
 
+        if (trustVerifiedUploadChecksum && verifiedChecksum != null && ad.hasEntry(arcfileName)) {
+            log.debug("Using the checksum '{}' verified during upload of '{}' to '{}'", verifiedChecksum,
+                    arcfileName, replicaChannelName);
+            processCheckSum(arcfileName, replicaChannelName, ad.getCheckSum(arcfileName), verifiedChecksum, true);
+            return;
+        }
+
         // retrieve the replica
         Replica rep = Channels.retrieveReplicaFromIdentifierChannel(replicaChannelName);
         // Verify that the file has been correctly uploaded.
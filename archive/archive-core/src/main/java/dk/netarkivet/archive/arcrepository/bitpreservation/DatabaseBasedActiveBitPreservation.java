@@ -25,6 +25,7 @@ package dk.netarkivet.archive.arcrepository.bitpreservation;
 import java.io.File;
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -45,6 +46,8 @@ import dk.netarkivet.common.exceptions.NotImplementedException;
 import dk.netarkivet.common.utils.CleanupHook;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.KeyValuePair;
+import dk.netarkivet.common.utils.batch.ChecksumJob;
 
 /**
  * The database based active bit preservation. This is the alternative to the FileBasedActiveBitPreservation.
@@ -226,14 +229,25 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
     /**
      * The method for retrieving the checksums for all the files within a replica. This method sends the checksum job to
      * the replica archive.
+     * <p>
+     * If incremental checksums are enabled for the replica, and the checksums have been retrieved before, only the
+     * checksums of the files changed since then, and of a rotating sample of the unchanged files, are retrieved. These
+     * are merged into the database without marking the other files as missing.
      *
      * @param replica The replica to retrieve the checksums from.
      */
     private void runChecksum(Replica replica) {
         File checksumlistFile = null;
         try {
-            checksumlistFile = getChecksumListAsFile(replica);
-            cache.addChecksumInformation(checksumlistFile, replica);
+            Date since = IncrementalChecksums.isEnabledFor(replica) ? cache.getDateOfLastWrongFilesUpdate(replica)
+                    : null;
+            if (since != null) {
+                checksumlistFile = IncrementalChecksums.retrieve(replica, since);
+                cache.addPartialChecksumInformation(checksumlistFile, replica);
+            } else {
+                checksumlistFile = getChecksumListAsFile(replica);
+                cache.addChecksumInformation(checksumlistFile, replica);
+            }
         } finally {
             if (checksumlistFile != null) {
                 FileUtils.remove(checksumlistFile);
@@ -263,6 +277,44 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
         cache.updateChecksumStatus(filename);
     }
 
+    /**
+     * Retrieves and update the status of several files for all the replicas. The checksums are retrieved with a single
+     * request per replica instead of one request per file and replica.
+     *
+     * @param filenames The names of the files.
+     */
+    private void updateChecksumStatus(List<String> filenames) {
+        // retrieve the ArcRepositoryClient before using it in the for-loop.
+        PreservationArcRepositoryClient arcClient = ArcRepositoryClientFactory.getPreservationInstance();
+
+        for (Replica replica : Replica.getKnown()) {
+            // retrieve the checksums of all the files in one go.
+            Map<String, String> checksums = new HashMap<String, String>();
+            File checksumFile = arcClient.getChecksums(replica.getId(), filenames);
+            try {
+                for (String line : FileUtils.readListFromFile(checksumFile)) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    KeyValuePair<String, String> entry = ChecksumJob.parseLine(line);
+                    checksums.put(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                FileUtils.remove(checksumFile);
+            }
+
+            // insert the checksum results into the database. Files not in the reply are missing in the replica.
+            for (String filename : filenames) {
+                cache.updateChecksumInformationForFileOnReplica(filename, checksums.get(filename), replica);
+            }
+        }
+
+        // Vote for each of the files.
+        for (String filename : filenames) {
+            cache.updateChecksumStatus(filename);
+        }
+    }
+
     /**
      * The method calculates the number of files which has a wrong checksum for the replica. This simple counts all the
      * entries in the replicafileinfo table for the replica where the filelist_status is set to CORRUPT.
@@ -460,20 +512,10 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
     public PreservationState getPreservationState(String filename) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
 
-        // Initialize the list of replicafileinfos, with one entry per replica.
-        List<ReplicaFileInfo> rfis = new ArrayList<ReplicaFileInfo>(Replica.getKnown().size());
-
         // update the checksum status for the file for all the replicas.
         updateChecksumStatus(filename);
 
-        // Retrieve the replicafileinfo entries for the file.
-        for (Replica replica : Replica.getKnown()) {
-            rfis.add(cache.getReplicaFileInfo(filename, replica));
-        }
-
-        // use filename and replicafileinfos to make the resulting
-        // DatabasePreservationState.
-        return new DatabasePreservationState(filename, rfis);
+        return readPreservationState(filename);
     }
 
     /**
@@ -489,15 +531,36 @@ public final class DatabaseBasedActiveBitPreservation implements ActiveBitPreser
 
         // make the resulting map.
         Map<String, PreservationState> res = new HashMap<String, PreservationState>();
+        if (filenames.length == 0) {
+            return res;
+        }
+
+        // update the checksum status for all the files for all the replicas.
+        updateChecksumStatus(Arrays.asList(filenames));
 
         // retrieve the preservation states and put them into the map.
         for (String file : filenames) {
-            res.put(file, getPreservationState(file));
+            res.put(file, readPreservationState(file));
         }
 
         return res;
     }
 
+    /**
+     * Make the FilePreservationState of a file from the replicafileinfo entries of the file in the database, with one
+     * entry per replica. The checksum status of the file is not updated.
+     *
+     * @param filename The name of the file.
+     * @return The FilePreservationState for the file.
+     */
+    private PreservationState readPreservationState(String filename) {
+        List<ReplicaFileInfo> rfis = new ArrayList<ReplicaFileInfo>(Replica.getKnown().size());
+        for (Replica replica : Replica.getKnown()) {
+            rfis.add(cache.getReplicaFileInfo(filename, replica));
+        }
+        return new DatabasePreservationState(filename, rfis);
+    }
+
     /**
      * This method finds the number of files which are known to be in the archive of a specific replica. This method
      * will not go out to the replica, but only contact the local database. The number of files in the replica is
@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -532,6 +533,10 @@ public class FileBasedActiveBitPreservation implements ActiveBitPreservation, Cl
     /**
      * Runs a checksum job on if the replica is a bitarchive replica and sends a GetAllChecksumsMessage if the replica
      * is a checksum replica. Output is written to file returned by WorkFiles.getChecksumOutputFile(replica).
+     * <p>
+     * If incremental checksums are enabled for the replica, and the output file exists from a previous run, only the
+     * checksums of the files changed since then, and of a rotating sample of the unchanged files, are retrieved. These
+     * replace the corresponding lines of the output file, and the other lines are kept.
      *
      * @param replica One of the bitarchive replicas.
      * @throws IOFailure If unable to create output dirs or if unable to write/read output to files.
@@ -540,6 +545,24 @@ public class FileBasedActiveBitPreservation implements ActiveBitPreservation, Cl
         // Create directories for output
         File outputFile = WorkFiles.getFile(replica, WorkFiles.CHECKSUMS_ON_BA);
 
+        if (IncrementalChecksums.isEnabledFor(replica) && outputFile.isFile()) {
+            File changedFile = IncrementalChecksums.retrieve(replica, new Date(outputFile.lastModified()));
+            try {
+                // Replace the lines of the changed files, keeping the others. A file may have several lines, if it is
+                // stored in more than one bitarchive of the replica.
+                Map<String, List<String>> checksums = groupByFilename(FileUtils.readListFromFile(outputFile));
+                checksums.putAll(groupByFilename(FileUtils.readListFromFile(changedFile)));
+                List<String> lines = new ArrayList<String>();
+                for (List<String> fileLines : checksums.values()) {
+                    lines.addAll(fileLines);
+                }
+                FileUtils.writeCollectionToFile(outputFile, lines);
+            } finally {
+                FileUtils.remove(changedFile);
+            }
+            return;
+        }
+
         // Retrieve a file containing the checksums of the replica through a
         // GetAllChecksumsMessage.
         File checksumFile = ArcRepositoryClientFactory.getPreservationInstance().getAllChecksums(replica.getId());
@@ -548,6 +571,26 @@ public class FileBasedActiveBitPreservation implements ActiveBitPreservation, Cl
         FileUtils.copyFile(checksumFile, outputFile);
     }
 
+    /**
+     * Group checksum job lines by filename.
+     *
+     * @param lines Lines on the form filename##checksum.
+     * @return The lines of each filename, in the order the filenames first occur.
+     */
+    private static Map<String, List<String>> groupByFilename(List<String> lines) {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (String line : lines) {
+            String filename = ChecksumJob.parseLine(line).getKey();
+            List<String> fileLines = result.get(filename);
+            if (fileLines == null) {
+                fileLines = new ArrayList<String>();
+                result.put(filename, fileLines);
+            }
+            fileLines.add(line);
+        }
+        return result;
+    }
+
     /**
      * Return the number of files found in the replica. If nothing is known about the replica, -1 is returned.
      *
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.arcrepository.bitpreservation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.archive.ArchiveSettings;
+import dk.netarkivet.common.distribute.arcrepository.ArcRepositoryClientFactory;
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.Replica;
+import dk.netarkivet.common.distribute.arcrepository.ReplicaType;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.DatedChecksumJob;
+
+/**
+ * Retrieval of the checksums of the files in a bitarchive replica which are new or changed since the previous check,
+ * together with a rotating sample of the unchanged files.
+ *
+ * @see DatedChecksumJob
+ */
+final class IncrementalChecksums {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(IncrementalChecksums.class);
+
+    /**
+     * Not to be instantiated.
+     */
+    private IncrementalChecksums() {
+    }
+
+    /**
+     * Decide whether the checksums of a replica should be retrieved incrementally. This is the case for bitarchive
+     * replicas when enabled in settings. A checksum replica has the checksums at hand, so they are always retrieved in
+     * full.
+     *
+     * @param replica The replica.
+     * @return true, if the checksums should be retrieved incrementally.
+     */
+    static boolean isEnabledFor(Replica replica) {
+        ArgumentNotValid.checkNotNull(replica, "Replica replica");
+        return replica.getType() == ReplicaType.BITARCHIVE
+                && Settings.getBoolean(ArchiveSettings.BITPRESERVATION_INCREMENTAL_CHECKSUMS);
+    }
+
+    /**
+     * Run a DatedChecksumJob on a replica.
+     *
+     * @param replica The bitarchive replica.
+     * @param since The time of the previous check.
+     * @return A temporary file with the checksums of the files checksummed, as filename##checksum lines.
+     * @throws IOFailure If the results cannot be retrieved.
+     */
+    static File retrieve(Replica replica, Date since) throws IOFailure {
+        ArgumentNotValid.checkNotNull(replica, "Replica replica");
+        ArgumentNotValid.checkNotNull(since, "Date since");
+
+        log.info("Retrieving checksums of files changed since {} from replica '{}'.", since, replica);
+        DatedChecksumJob job = new DatedChecksumJob(since,
+                Settings.getLong(ArchiveSettings.BITPRESERVATION_SCRUB_PERIOD));
+        BatchStatus status = ArcRepositoryClientFactory.getPreservationInstance().batch(job, replica.getId());
+        if (!status.getFilesFailed().isEmpty()) {
+            log.warn("Checksumming of {} files failed in replica '{}'.", status.getFilesFailed().size(), replica);
+        }
+
+        try {
+            File result = File.createTempFile("changed", "checksums", FileUtils.getTempDir());
+            status.copyResults(result);
+            log.info("Retrieved checksums of {} processed files from replica '{}'.", status.getNoOfFilesProcessed(),
+                    replica);
+            return result;
+        } catch (IOException e) {
+            throw new IOFailure("Cannot create a temporary file for the checksums from replica '" + replica + "'", e);
+        }
+    }
+
+}
@@ -40,6 +40,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageHandler;
 import dk.netarkivet.archive.distribute.ReplicaClient;
 import dk.netarkivet.common.CommonSettings;
@@ -268,6 +269,26 @@ public class ArcRepositoryServer extends ArchiveMessageHandler {
         }
     }
 
+    /**
+     * Method for retrieving the checksums of some of the files in a replica.
+     *
+     * @param msg The GetSelectedChecksumsMessage.
+     * @throws ArgumentNotValid If the GetSelectedChecksumsMessage is null.
+     */
+    public void visit(GetSelectedChecksumsMessage msg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "GetSelectedChecksumsMessage msg");
+
+        try {
+            // retrieve the replica client
+            ReplicaClient rc = ar.getReplicaClientFromReplicaId(msg.getReplicaId());
+            rc.sendGetSelectedChecksumsMessage(msg);
+        } catch (Throwable t) {
+            log.warn("Failed to handle GetSelectedChecksumsMessage: {}", msg, t);
+            msg.setNotOk(t);
+            JMSConnectionFactory.getInstance().reply(msg);
+        }
+    }
+
     /**
      * Method for handling the results of a GetChecksumMessage. This should be handled similar to a ReplyBatchMessage,
      * when a batchjob has run on a single file.
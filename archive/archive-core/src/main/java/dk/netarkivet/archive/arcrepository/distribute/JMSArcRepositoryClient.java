@@ -24,6 +24,7 @@ package dk.netarkivet.archive.arcrepository.distribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
@@ -488,6 +490,90 @@ public class JMSArcRepositoryClient extends Synchronizer implements ArcRepositor
         }
     }
 
+    /**
+     * Retrieves the checksums of some of the files in the replica through a single GetSelectedChecksumsMessage.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param filenames The names of the files to retrieve the checksums for.
+     * @return A file containing filename and checksum of the files found in the replica, in the same format as a
+     * ChecksumJob.
+     * @throws IOFailure If the reply is not of type GetSelectedChecksumsMessage or if the file could not properly be
+     * retrieved from the reply message or if the message timed out.
+     * @throws ArgumentNotValid If the replicaId is null or empty, or if the filenames are null.
+     * @see dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage
+     */
+    public File getChecksums(String replicaId, Collection<String> filenames) throws IOFailure, ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNull(filenames, "Collection<String> filenames");
+        log.debug("Sending GetSelectedChecksumsMessage for {} files to replica '{}'.", filenames.size(), replicaId);
+        return sendGetSelectedChecksumsMessage(new GetSelectedChecksumsMessage(Channels.getTheRepos(), replyQ,
+                replicaId, filenames));
+    }
+
+    /**
+     * Retrieves the checksums of the files in the replica whose names match a regular expression, through a
+     * GetSelectedChecksumsMessage.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param filenamePattern The regular expression the whole filename must match.
+     * @return A file containing filename and checksum of the matching files, in the same format as a ChecksumJob.
+     * @throws IOFailure If the reply is not of type GetSelectedChecksumsMessage or if the file could not properly be
+     * retrieved from the reply message or if the message timed out.
+     * @throws ArgumentNotValid If the replicaId or the pattern is null or empty.
+     * @see dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage
+     */
+    public File getChecksumsMatching(String replicaId, String filenamePattern) throws IOFailure, ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNullOrEmpty(filenamePattern, "String filenamePattern");
+        log.debug("Sending GetSelectedChecksumsMessage for files matching '{}' to replica '{}'.", filenamePattern,
+                replicaId);
+        return sendGetSelectedChecksumsMessage(new GetSelectedChecksumsMessage(Channels.getTheRepos(), replyQ,
+                replicaId, filenamePattern));
+    }
+
+    /**
+     * Sends a GetSelectedChecksumsMessage, waits for the reply and retrieves the resulting checksum file.
+     *
+     * @param gscMsg The message to send.
+     * @return The file with the checksums from the reply.
+     * @throws IOFailure If the message timed out, the reply is invalid or not ok, or the file could not be retrieved.
+     */
+    private File sendGetSelectedChecksumsMessage(GetSelectedChecksumsMessage gscMsg) throws IOFailure {
+        // time this.
+        long start = System.currentTimeMillis();
+        NetarkivetMessage replyNetMsg = sendAndWaitForOneReply(gscMsg, 0);
+
+        // calculate and log the time spent on handling the message.
+        long timePassed = System.currentTimeMillis() - start;
+        log.debug("Reply received after {} seconds.", (timePassed / MILLISECONDS_PER_SECOND));
+        // check whether the output was valid.
+        if (replyNetMsg == null) {
+            throw new IOFailure("Request for selected checksums timed out after "
+                    + (getTimeout / MILLISECONDS_PER_SECOND) + " seconds.");
+        }
+        // convert to the correct type of message.
+        GetSelectedChecksumsMessage replyCSMsg;
+        try {
+            replyCSMsg = (GetSelectedChecksumsMessage) replyNetMsg;
+        } catch (ClassCastException e) {
+            throw new IOFailure("Received invalid reply message: '" + replyNetMsg, e);
+        }
+        if (!replyCSMsg.isOk()) {
+            throw new IOFailure("Request for selected checksums failed: " + replyCSMsg.getErrMsg());
+        }
+
+        try {
+            // retrieve the data from this message and place it in tempDir.
+            File result = File.createTempFile("tmp", "tmp", FileUtils.getTempDir());
+            replyCSMsg.getData(result);
+
+            return result;
+        } catch (IOException e) {
+            throw new IOFailure("Cannot create a temporary file for retrieving "
+                    + "the data remote from checksum message: " + replyCSMsg, e);
+        }
+    }
+
     /**
      * Retrieves the names of all the files in the replica through a GetAllFilenamesMessage.
      * <p>
@@ -52,7 +52,11 @@ public class StoreMessage extends ArchiveMessage {
         super(Channels.getTheRepos(), replyTo);
         ArgumentNotValid.checkNotNull(arcfile, "arcfile");
         theRemoteFile = RemoteFileFactory.getDistributefileInstance(arcfile);
-        precomputedChecksum = ChecksumCalculator.calculateMd5(arcfile);
+        // The remote file has computed the checksum already, unless it was made without checksums
+        precomputedChecksum = theRemoteFile.getChecksum();
+        if (precomputedChecksum == null) {
+            precomputedChecksum = ChecksumCalculator.calculateMd5(arcfile);
+        }
     }
 
     /**
@@ -42,6 +42,16 @@ public interface BitPreservationDAO extends CleanupIF {
      */
     void addChecksumInformation(File checksumOutput, Replica replica);
 
+    /**
+     * Given the output of a checksum job covering only some of the files in the replica, add the results to the
+     * database. Unlike {@link #addChecksumInformation(File, Replica)}, files not in the output are left as they are,
+     * and not marked as missing.
+     *
+     * @param checksumOutput A File with ChecksumJob lines, i.e. filename##checksum, for some of the files.
+     * @param replica The replica this checksum job is for.
+     */
+    void addPartialChecksumInformation(File checksumOutput, Replica replica);
+
     /**
      * Given the output of a file list job, add the results to the database. NOTE: the Checksum version of Replica must
      * be implemented with output in the same form as filelistJobOutput for implementation of bitArchive replicas
@@ -717,6 +717,34 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
      */
     @Override
     public void addChecksumInformation(File checksumOutputFile, Replica replica) {
+        addChecksumInformation(checksumOutputFile, replica, true);
+    }
+
+    /**
+     * Given the output of a checksum job covering only some of the files in the replica, add the results to the
+     * database.
+     * <p>
+     * The entries in the replicafileinfo table for the files in the output are updated as by
+     * {@link #addChecksumInformation(File, Replica)}. The entries for the other files are left untouched, and the
+     * filelist date of the replica is not updated.
+     *
+     * @param checksumOutputFile The output of a checksum job in a file
+     * @param replica The replica this checksum job is for.
+     */
+    @Override
+    public void addPartialChecksumInformation(File checksumOutputFile, Replica replica) {
+        addChecksumInformation(checksumOutputFile, replica, false);
+    }
+
+    /**
+     * Add the output of a checksum job to the database.
+     *
+     * @param checksumOutputFile The output of a checksum job in a file
+     * @param replica The replica this checksum job is for.
+     * @param complete Whether the output covers all the files in the replica. If so, the files not in the output are
+     * marked as missing.
+     */
+    private void addChecksumInformation(File checksumOutputFile, Replica replica, boolean complete) {
         // validate arguments
         ArgumentNotValid.checkNotNull(checksumOutputFile, "File checksumOutputFile");
         ArgumentNotValid.checkNotNull(replica, "Replica replica");
@@ -744,7 +772,11 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
             // TODO This does not scale! Should the datastructure
             // (missingReplicaRFIs) be disk-bound in some way, or optimized
             // in some way, e.g. using it.unimi.dsi.fastutil.longs.LongArrayList
-            missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            if (complete) {
+                missingReplicaRFIs = ReplicaCacheHelpers.retrieveReplicaFileInfoGuidsForReplica(replica.getId(), con);
+            } else {
+                missingReplicaRFIs = new HashSet<Long>();
+            }
 
             // Initialize the String iterator
             lineIterator = new LineIterator(new FileReader(sortedResult));
@@ -818,7 +850,9 @@ public final class ReplicaCacheDatabase implements BitPreservationDAO {
 
             // update the checksum updated date for this replica.
             ReplicaCacheHelpers.updateChecksumDateForReplica(replica, con);
-            ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
+            if (complete) {
+                ReplicaCacheHelpers.updateFilelistDateForReplica(replica, con);
+            }
 
             log.info("Finished processing of {} checksum entries for replica {}", datasize, replica.getId());
         } finally {
@@ -149,11 +149,13 @@ public class Bitarchive {
      *
      * @param arcfile A file to add to the archive.
      * @param fileName the arcfiles filename. The file will be identified in the archive by this filename
+     * @return The MD5 checksum of the file, verified while it was copied into the archive, or null if the remote file
+     * carries no checksum.
      * @throws PermissionDenied if arcfile already exists in the archive
      * @throws IOFailure if an IO failure occurs (e.g. running out of disk space)
      * @throws ArgumentNotValid if arcfile is null or the filename is null or empty.
      */
-    public void upload(RemoteFile arcfile, String fileName) throws PermissionDenied, ArgumentNotValid, IOFailure {
+    public String upload(RemoteFile arcfile, String fileName) throws PermissionDenied, ArgumentNotValid, IOFailure {
         log.info("Upload: {}", arcfile);
         // Verify input parameters
         ArgumentNotValid.checkNotNull(arcfile, "arcfile");
@@ -169,6 +171,9 @@ public class Bitarchive {
         // Everything seems ok, initiate copy of file into archive
         copyRemoteFileToArchive(arcfile, fileName);
         log.info("Upload: completed uploading {}", fileName);
+        // A remote file with a checksum checks it while the data is transferred, and fails the copy on mismatch, so
+        // the checksum holds for the file now in the archive.
+        return arcfile.getChecksum();
     }
 
     /**
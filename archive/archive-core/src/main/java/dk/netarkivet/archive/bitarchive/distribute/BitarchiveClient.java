@@ -29,6 +29,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.archive.distribute.ReplicaClient;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
@@ -272,6 +273,21 @@ public final class BitarchiveClient implements ReplicaClient {
         log.debug("Sending GetAllChecksumMessage: '{}'.", msg.toString());
     }
 
+    /**
+     * Method for sending the GetSelectedChecksumsMessage to the replica.
+     *
+     * @param msg The GetSelectedChecksumsMessage, which will be sent through the jms connection to the archive.
+     * @throws ArgumentNotValid If the GetSelectedChecksumsMessage is null.
+     */
+    public void sendGetSelectedChecksumsMessage(GetSelectedChecksumsMessage msg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "GetSelectedChecksumsMessage msg");
+        // send the message to the archive.
+        jmsCon.resend(msg, theBamon);
+
+        // log message.
+        log.debug("Sending GetSelectedChecksumsMessage: '{}'.", msg.toString());
+    }
+
     /**
      * Method for retrieving the checksum of a specific arcfile within the archive.
      *
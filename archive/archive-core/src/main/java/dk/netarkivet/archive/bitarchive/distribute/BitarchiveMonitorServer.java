@@ -40,6 +40,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageHandler;
 import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.distribute.Channels;
@@ -352,6 +353,31 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
         executeConvertedBatch(cj, msg);
     }
 
+    /**
+     * Method for handling the GetSelectedChecksumsMessage. This is made into a ChecksumJob limited to the selected
+     * files, which will be executed on the bitarchives. The reply to the batchjob will be used as reply to the
+     * GetSelectedChecksumsMessage.
+     *
+     * @param msg The GetSelectedChecksumsMessage, which will be made into a batchjob and sent to the bitarchives.
+     * @throws ArgumentNotValid If the GetSelectedChecksumsMessage is null.
+     */
+    public void visit(GetSelectedChecksumsMessage msg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "GetSelectedChecksumsMessage msg");
+
+        log.info("Receiving GetSelectedChecksumsMessage '{}'", msg);
+
+        // Create batchjob for the GetSelectedChecksumsMessage.
+        ChecksumJob cj = new ChecksumJob();
+        if (msg.getFilenames() != null) {
+            cj.processOnlyFilesIn(msg.getFilenames());
+        } else {
+            cj.processOnlyFilesMatching(msg.getFilenamePattern());
+        }
+
+        // Execute the batchjob.
+        executeConvertedBatch(cj, msg);
+    }
+
     /**
      * Method for handling the GetAllFilenamesMessage. The GetAllFilenamesMessage will be made into a filelist batchjob,
      * which will be sent to the bitarchives. The reply to the batchjob will then be used as reply to the
@@ -548,6 +574,8 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
             replyToGetAllFilenamesMessage(bjs, (GetAllFilenamesMessage) msg);
         } else if (msg instanceof GetChecksumMessage) {
             replyToGetChecksumMessage(bjs, (GetChecksumMessage) msg);
+        } else if (msg instanceof GetSelectedChecksumsMessage) {
+            replyToGetSelectedChecksumsMessage(bjs, (GetSelectedChecksumsMessage) msg);
         } else /* unhandled message type. */{
             String errMsg = "The message cannot be handled '" + msg + "'";
             log.error(errMsg);
@@ -582,6 +610,33 @@ public class BitarchiveMonitorServer extends ArchiveMessageHandler implements Ob
         }
     }
 
+    /**
+     * Method for replying to a GetSelectedChecksumsMessage. It uses the reply from the batchjob to make a proper reply
+     * to the GetSelectedChecksumsMessage.
+     *
+     * @param bjs The BatchJobStatus used to reply to the GetSelectedChecksumsMessage.
+     * @param msg The GetSelectedChecksumsMessage to reply to.
+     */
+    private void replyToGetSelectedChecksumsMessage(BitarchiveMonitor.BatchJobStatus bjs,
+            GetSelectedChecksumsMessage msg) {
+        try {
+            // Set the resulting file.
+            msg.setFile(bjs.batchResultFile);
+
+            // record any errors.
+            if (bjs.errorMessages != null) {
+                msg.setNotOk(bjs.errorMessages);
+            }
+        } catch (Throwable t) {
+            msg.setNotOk(t);
+            log.warn("An error occurred during the handling of the GetSelectedChecksumsMessage", t);
+        } finally {
+            // reply
+            log.info("Replying to GetSelectedChecksumsMessage '{}'", msg);
+            con.reply(msg);
+        }
+    }
+
     /**
      * Method for replying to a GetAllFilenamesMessage. It uses the reply from the batchjob to make a proper reply to
      * the GetAllFilenamesMessage.
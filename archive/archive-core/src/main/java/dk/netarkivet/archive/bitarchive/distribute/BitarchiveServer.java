@@ -251,7 +251,7 @@ public class BitarchiveServer extends ArchiveMessageHandler implements CleanupIF
                 synchronized (this) {
                     // Important when two identical files are uploaded
                     // simultanously.
-                    ba.upload(msg.getRemoteFile(), msg.getArcfileName());
+                    msg.setVerifiedChecksum(ba.upload(msg.getRemoteFile(), msg.getArcfileName()));
                 }
             } catch (Throwable t) {
                 log.warn("Error while processing upload message '{}'", msg, t);
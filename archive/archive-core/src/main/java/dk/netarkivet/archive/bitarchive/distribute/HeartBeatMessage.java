@@ -22,10 +22,16 @@
  */
 package dk.netarkivet.archive.bitarchive.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.CompactMessage;
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
 /**
@@ -35,7 +41,7 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
  * TODO This class should probably contain more status data from bit archive application later.
  */
 @SuppressWarnings({"serial"})
-public class HeartBeatMessage extends ArchiveMessage {
+public class HeartBeatMessage extends ArchiveMessage implements CompactMessage {
 
     /**
      * time when heartbeat occurred. Note that timestamps cannot be compared between processes.
@@ -57,6 +63,25 @@ public class HeartBeatMessage extends ArchiveMessage {
         this.applicationId = applicationId;
     }
 
+    /**
+     * Creates a heartbeat message from the fields written by {@link #writeFields(DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    public HeartBeatMessage(DataInput in) throws IOException {
+        super(in);
+        timestamp = in.readLong();
+        applicationId = CompactMessageCodec.readString(in);
+    }
+
+    @Override
+    protected void writeFields(DataOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeLong(timestamp);
+        CompactMessageCodec.writeString(out, applicationId);
+    }
+
     /**
      * @return time of heartbeat occurrence.
      */
@@ -41,6 +41,9 @@ public class UploadMessage extends ArchiveMessage {
 
     /** precomputed checksum  */
     private String precomputedChecksum;
+
+    /** The checksum verified by the replica while receiving the file, or null if not verified. */
+    private String verifiedChecksum;
     
     /**
      * Construct UploadMessage.
@@ -90,7 +93,8 @@ public class UploadMessage extends ArchiveMessage {
      * @return String representation of this object
      */
     public String toString() {
-        return super.toString() + " Arcfile: " + arcfileName;
+        return super.toString() + " Arcfile: " + arcfileName
+                + (verifiedChecksum == null ? "" : ", verified checksum: " + verifiedChecksum);
     }
 
 	public void setPrecomputedChecksum(String precomputedChecksum) {
@@ -101,4 +105,23 @@ public class UploadMessage extends ArchiveMessage {
 		return this.precomputedChecksum;
 	}
 
+    /**
+     * Set the checksum of the uploaded file, as verified by the replica while receiving it.
+     *
+     * @param verifiedChecksum The verified checksum.
+     */
+    public void setVerifiedChecksum(String verifiedChecksum) {
+        this.verifiedChecksum = verifiedChecksum;
+    }
+
+    /**
+     * Get the checksum of the uploaded file, as verified by the replica while receiving it. When set, the file need
+     * not be read again to check that it was stored correctly.
+     *
+     * @return The verified checksum, or null if the replica did not verify the checksum while receiving the file.
+     */
+    public String getVerifiedChecksum() {
+        return verifiedChecksum;
+    }
+
 }
@@ -24,6 +24,7 @@ package dk.netarkivet.archive.checksum;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
 
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -122,6 +123,24 @@ public interface ChecksumArchive {
      */
     public File getAllFilenames();
 
+    /**
+     * Method for retrieving the checksum entries of some of the files within the archive as a temporary file. Files
+     * which are not within the archive are left out.
+     *
+     * @param filenames The names of the files to retrieve the entries for.
+     * @return A temporary checksum file with one 'filename##checksum' entry per line.
+     */
+    public File getChecksums(Collection<String> filenames);
+
+    /**
+     * Method for retrieving the checksum entries of the files within the archive whose names match a regular
+     * expression, as a temporary file.
+     *
+     * @param filenamePattern The regular expression the whole filename must match.
+     * @return A temporary checksum file with one 'filename##checksum' entry per line.
+     */
+    public File getChecksumsMatching(String filenamePattern);
+
     /**
      * Method for cleaning up when closing down.
      */
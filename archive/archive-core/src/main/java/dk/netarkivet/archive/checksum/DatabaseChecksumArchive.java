@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Date;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -493,6 +495,78 @@ public class DatabaseChecksumArchive implements ChecksumArchive {
         return tempFile;
     }
 
+    /**
+     * The entries are looked up one by one, since the database holds no other index than the filename.
+     */
+    @Override
+    public File getChecksums(Collection<String> filenames) {
+        ArgumentNotValid.checkNotNull(filenames, "Collection<String> filenames");
+        File tempFile = null;
+        FileWriter fw = null;
+        try {
+            tempFile = File.createTempFile("selectedChecksums", "tmp", FileUtils.getTempDir());
+            fw = new FileWriter(tempFile);
+            for (String filename : filenames) {
+                String checksum = getChecksum(filename);
+                if (checksum != null) {
+                    fw.append(ChecksumJob.makeLine(filename, checksum));
+                    fw.append('\n');
+                }
+            }
+            fw.flush();
+        } catch (IOException e) {
+            throw new IOFailure("Error during the getChecksums operation: ", e);
+        } finally {
+            IOUtils.closeQuietly(fw);
+        }
+
+        return tempFile;
+    }
+
+    /**
+     * The keys are serialized strings, whose byte order does not follow the order of the filenames, so the whole
+     * database is scanned with a cursor. Only the matching entries are written to the file.
+     */
+    @Override
+    public File getChecksumsMatching(String filenamePattern) {
+        ArgumentNotValid.checkNotNullOrEmpty(filenamePattern, "String filenamePattern");
+        Pattern pattern = Pattern.compile(filenamePattern);
+        File tempFile = null;
+        FileWriter fw = null;
+        Cursor cursor = null;
+        try {
+            tempFile = File.createTempFile("selectedChecksums", "tmp", FileUtils.getTempDir());
+            fw = new FileWriter(tempFile);
+            cursor = checksumDB.openCursor(null, null);
+
+            DatabaseEntry foundKey = new DatabaseEntry();
+            DatabaseEntry foundData = new DatabaseEntry();
+            while (cursor.getNext(foundKey, foundData, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+                String filename = (String) keyBinding.entryToObject(foundKey);
+                if (pattern.matcher(filename).matches()) {
+                    fw.append(ChecksumJob.makeLine(filename, (String) objectBinding.entryToObject(foundData)));
+                    fw.append('\n');
+                }
+            }
+            fw.flush();
+        } catch (IOException e) {
+            throw new IOFailure("Error during the getChecksumsMatching operation: ", e);
+        } catch (DatabaseException de) {
+            throw new IOFailure("Error accessing database.", de);
+        } finally {
+            IOUtils.closeQuietly(fw);
+            if (cursor != null) {
+                try {
+                    cursor.close();
+                } catch (DatabaseException e) {
+                    log.warn("Database error occurred when closing the cursor: ", e);
+                }
+            }
+        }
+
+        return tempFile;
+    }
+
     @Override
     public void cleanup() {
         if (checksumDB != null) {
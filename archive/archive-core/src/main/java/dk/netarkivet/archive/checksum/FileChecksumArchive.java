@@ -28,11 +28,13 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -806,6 +808,86 @@ public final class FileChecksumArchive implements ChecksumArchive {
         }
     }
 
+    /**
+     * Method for retrieving the checksum entries of some of the files within the archive as a temporary file. Files
+     * which are not within the archive are left out.
+     *
+     * @param filenames The names of the files to retrieve the entries for.
+     * @return A temporary checksum file with one 'filename##checksum' entry per line.
+     * @throws ArgumentNotValid If the collection of filenames is null.
+     * @throws IOFailure If problems occurs during the creation of the file.
+     */
+    @Override
+    public File getChecksums(Collection<String> filenames) throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkNotNull(filenames, "Collection<String> filenames");
+        synchronizeMemoryWithFile();
+
+        Map<String, String> entries = new HashMap<String, String>();
+        for (String filename : filenames) {
+            String checksum = checksumArchive.get(filename);
+            if (checksum != null) {
+                entries.put(filename, checksum);
+            }
+        }
+        return writeEntries(entries);
+    }
+
+    /**
+     * Method for retrieving the checksum entries of the files within the archive whose names match a regular
+     * expression, as a temporary file.
+     *
+     * @param filenamePattern The regular expression the whole filename must match.
+     * @return A temporary checksum file with one 'filename##checksum' entry per line.
+     * @throws ArgumentNotValid If the pattern is null or empty.
+     * @throws IOFailure If problems occurs during the creation of the file.
+     */
+    @Override
+    public File getChecksumsMatching(String filenamePattern) throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkNotNullOrEmpty(filenamePattern, "String filenamePattern");
+        synchronizeMemoryWithFile();
+
+        Pattern pattern = Pattern.compile(filenamePattern);
+        Map<String, String> entries = new HashMap<String, String>();
+        synchronized (checksumArchive) {
+            for (Map.Entry<String, String> entry : checksumArchive.entrySet()) {
+                if (pattern.matcher(entry.getKey()).matches()) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return writeEntries(entries);
+    }
+
+    /**
+     * Writes checksum entries to a new temporary file in the format of the archive file.
+     *
+     * @param entries The entries, from filename to checksum.
+     * @return The temporary file.
+     * @throws IOFailure If problems occurs during the creation of the file.
+     */
+    private File writeEntries(Map<String, String> entries) throws IOFailure {
+        try {
+            File tempFile = File.createTempFile("tmp", "tmp", FileUtils.getTempDir());
+            FileWriter fw = new FileWriter(tempFile);
+
+            try {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    fw.append(ChecksumJob.makeLine(entry.getKey(), entry.getValue()));
+                    fw.append("\n");
+                }
+            } finally {
+                // flush and close the file, before returning it.
+                fw.flush();
+                fw.close();
+            }
+            return tempFile;
+        } catch (IOException e) {
+            String msg = "Cannot create the output file containing the selected entries of this archive.";
+            log.warn(msg);
+            throw new IOFailure(msg, e);
+        }
+    }
+
     /**
      * Ensures that the file and memory archives are identical.
      * <p>
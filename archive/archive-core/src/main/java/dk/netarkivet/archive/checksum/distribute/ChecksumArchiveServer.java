@@ -98,6 +98,15 @@ public abstract class ChecksumArchiveServer extends ArchiveMessageHandler implem
      */
     public abstract void visit(GetAllChecksumsMessage msg);
 
+    /**
+     * Requiring all inheritors of this interface to handle the GetSelectedChecksumsMessage. The entries of the selected
+     * files should be put into a file corresponding to a ChecksumJob file, then made into a remote file and sent back
+     * through the reply.
+     *
+     * @param msg The GetSelectedChecksumsMessage to be handled.
+     */
+    public abstract void visit(GetSelectedChecksumsMessage msg);
+
     /**
      * Requiring all inheritors of this interface to handle the GetAllFilenamesMessage. The filenames of all the entries
      * in the archive should be placed in a file corresponding to a FilelistJob and sent back through the reply.
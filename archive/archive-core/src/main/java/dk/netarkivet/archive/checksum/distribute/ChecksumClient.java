@@ -136,6 +136,21 @@ public class ChecksumClient implements ReplicaClient {
         log.debug("Sending GetAllChecksumMessage: '{}'.", msg.toString());
     }
 
+    /**
+     * Method for sending the GetSelectedChecksumsMessage to the replica.
+     *
+     * @param msg The GetSelectedChecksumsMessage, which will be sent through the jms connection to the archive.
+     * @throws ArgumentNotValid If the GetSelectedChecksumsMessage is null.
+     */
+    public void sendGetSelectedChecksumsMessage(GetSelectedChecksumsMessage msg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "GetSelectedChecksumsMessage msg");
+        // send the message to the archive.
+        jmsCon.resend(msg, theChecksumChannel);
+
+        // log message.
+        log.debug("Sending GetSelectedChecksumsMessage: '{}'.", msg.toString());
+    }
+
     /**
      * Method for retrieving the checksum of a specific arcfile within the archive.
      *
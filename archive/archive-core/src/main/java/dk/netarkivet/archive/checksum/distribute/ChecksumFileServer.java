@@ -361,4 +361,30 @@ public class ChecksumFileServer extends ChecksumArchiveServer {
         }
     }
 
+    /**
+     * Method for retrieving the checksums of the files selected by the message, by name or by pattern.
+     *
+     * @param msg The GetSelectedChecksumsMessage.
+     * @throws ArgumentNotValid If the GetSelectedChecksumsMessage is null.
+     */
+    public void visit(GetSelectedChecksumsMessage msg) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(msg, "GetSelectedChecksumsMessage msg");
+        log.debug("Receiving GetSelectedChecksumsMessage: {}", msg.toString());
+
+        try {
+            if (msg.getFilenames() != null) {
+                msg.setFile(cs.getChecksums(msg.getFilenames()));
+            } else {
+                msg.setFile(cs.getChecksumsMatching(msg.getFilenamePattern()));
+            }
+        } catch (Throwable e) {
+            log.warn("Cannot retrieve the selected checksums.", e);
+            msg.setNotOk(e);
+        } finally {
+            // log the message and reply
+            log.info("Replying GetSelectedChecksumsMessage: {}", msg.toString());
+            jmsCon.reply(msg);
+        }
+    }
+
 }
@@ -22,9 +22,15 @@
  */
 package dk.netarkivet.archive.checksum.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import dk.netarkivet.archive.distribute.ArchiveMessage;
 import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
 import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.CompactMessage;
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
 /**
@@ -33,7 +39,7 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
  * This is checksum replica alternative to sending a ChecksumBatchJob, with a filename limitation.
  */
 @SuppressWarnings({"serial"})
-public class GetChecksumMessage extends ArchiveMessage {
+public class GetChecksumMessage extends ArchiveMessage implements CompactMessage {
     /** The name of the arc file to retrieve the checksum from. */
     private String arcFilename;
     /** The resulting checksum for the arcFile. */
@@ -61,6 +67,29 @@ public class GetChecksumMessage extends ArchiveMessage {
         this.replicaId = repId;
     }
 
+    /**
+     * Creates a GetChecksumMessage from the fields written by {@link #writeFields(DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    public GetChecksumMessage(DataInput in) throws IOException {
+        super(in);
+        arcFilename = CompactMessageCodec.readString(in);
+        checksum = CompactMessageCodec.readString(in);
+        replicaId = CompactMessageCodec.readString(in);
+        isReply = in.readBoolean();
+    }
+
+    @Override
+    protected void writeFields(DataOutput out) throws IOException {
+        super.writeFields(out);
+        CompactMessageCodec.writeString(out, arcFilename);
+        CompactMessageCodec.writeString(out, checksum);
+        CompactMessageCodec.writeString(out, replicaId);
+        out.writeBoolean(isReply);
+    }
+
     /**
      * Retrieve name of the uploaded file.
      *
@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * Netarchivesuite - archive
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.archive.checksum.distribute;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.archive.distribute.ArchiveMessage;
+import dk.netarkivet.archive.distribute.ArchiveMessageVisitor;
+import dk.netarkivet.common.distribute.ChannelID;
+import dk.netarkivet.common.distribute.RemoteFile;
+import dk.netarkivet.common.distribute.RemoteFileFactory;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * The GetSelectedChecksumsMessage has the purpose to retrieve the checksums of some of the files in a replica, either
+ * given by a list of filenames or by a pattern matching the filenames. The output is in the form of a file
+ * corresponding to the reply file of a ChecksumJob, with an entry for each of the selected files found in the replica.
+ * <p>
+ * This is the alternative to sending a GetChecksumMessage for each file, or a GetAllChecksumsMessage for the entire
+ * replica.
+ */
+@SuppressWarnings({"serial"})
+public class GetSelectedChecksumsMessage extends ArchiveMessage {
+
+    private static final Logger log = LoggerFactory.getLogger(GetSelectedChecksumsMessage.class);
+
+    /** The file containing the output. */
+    private RemoteFile rf;
+    /** The id for the replica where this message should be sent. */
+    private String replicaId;
+    /** The names of the files to retrieve the checksums of, or null if selected by pattern. */
+    private ArrayList<String> filenames;
+    /** The regular expression matching the names of the files, or null if selected by name. */
+    private String filenamePattern;
+
+    /**
+     * Constructor for retrieving the checksums of a list of files.
+     *
+     * @param to Where this message is headed.
+     * @param replyTo Where the reply on this message is sent.
+     * @param repId The replica where the job involved in this message is to be performed.
+     * @param filenames The names of the files.
+     * @throws ArgumentNotValid If the filenames are null.
+     */
+    public GetSelectedChecksumsMessage(ChannelID to, ChannelID replyTo, String repId, Collection<String> filenames)
+            throws ArgumentNotValid {
+        super(to, replyTo);
+        ArgumentNotValid.checkNotNull(filenames, "Collection<String> filenames");
+        this.replicaId = repId;
+        this.filenames = new ArrayList<String>(filenames);
+    }
+
+    /**
+     * Constructor for retrieving the checksums of the files whose names match a pattern.
+     *
+     * @param to Where this message is headed.
+     * @param replyTo Where the reply on this message is sent.
+     * @param repId The replica where the job involved in this message is to be performed.
+     * @param filenamePattern A regular expression matching the entire names of the files.
+     * @throws ArgumentNotValid If the pattern is null, empty or not a valid regular expression.
+     */
+    public GetSelectedChecksumsMessage(ChannelID to, ChannelID replyTo, String repId, String filenamePattern)
+            throws ArgumentNotValid {
+        super(to, replyTo);
+        ArgumentNotValid.checkNotNullOrEmpty(filenamePattern, "String filenamePattern");
+        try {
+            Pattern.compile(filenamePattern);
+        } catch (PatternSyntaxException e) {
+            throw new ArgumentNotValid("Invalid filename pattern '" + filenamePattern + "'", e);
+        }
+        this.replicaId = repId;
+        this.filenamePattern = filenamePattern;
+    }
+
+    /**
+     * @return The names of the files to retrieve the checksums of, or null if the files are selected by a pattern.
+     */
+    public List<String> getFilenames() {
+        return filenames;
+    }
+
+    /**
+     * @return The regular expression matching the names of the files, or null if the files are selected by name.
+     */
+    public String getFilenamePattern() {
+        return filenamePattern;
+    }
+
+    /**
+     * Method for setting the resulting file. This file will be retrieved from the caller of this message. This should
+     * be a movable instance since the temporary file should be removed after is has been retrieved.
+     *
+     * @param file The file with the checksums.
+     * @throws ArgumentNotValid If <b>file</b> is null.
+     */
+    public void setFile(File file) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(file, "File file");
+
+        rf = RemoteFileFactory.getMovefileInstance(file);
+    }
+
+    /**
+     * Method for retrieving the resulting file. This method can only be called once, since the remoteFile is cleaned up
+     * and set to null.
+     *
+     * @param toFile The file for the remotely retrieved content.
+     * @throws IOFailure If the data in the remoteFile already has be retrieved.
+     * @throws ArgumentNotValid If <b>toFile</b> is null.
+     */
+    public void getData(File toFile) throws IOFailure, ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(toFile, "File toFile");
+        if (rf == null) {
+            throw new IOFailure("The remote file is not valid. Data cannot be retrieved.");
+        }
+        rf.copyTo(toFile);
+        try {
+            rf.cleanup();
+        } catch (IOFailure e) {
+            // Just log errors on deleting. They are fairly harmless.
+            log.warn("Could not delete remote file {}", rf.getName());
+        }
+        rf = null;
+    }
+
+    /**
+     * Method for retrieving the id for the replica where this message should be sent.
+     *
+     * @return The id for the replica.
+     */
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * Generate String representation of this object.
+     *
+     * @return String representation of this object
+     */
+    public String toString() {
+        return super.toString() + " replicaid: " + replicaId
+                + (filenames != null ? " filenames: " + filenames.size() : " pattern: " + filenamePattern);
+    }
+
+    /**
+     * Accept visitation.
+     *
+     * @param v The ArchiveMessageVisitor which accepts this message.
+     */
+    public void accept(ArchiveMessageVisitor v) {
+        v.visit(this);
+    }
+
+}
@@ -23,6 +23,9 @@
 
 package dk.netarkivet.archive.distribute;
 
+import java.io.DataInput;
+import java.io.IOException;
+
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.NetarkivetMessage;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
@@ -45,6 +48,16 @@ public abstract class ArchiveMessage extends NetarkivetMessage {
         super(to, replyTo);
     }
 
+    /**
+     * Creates an ArchiveMessage from the fields written by {@link #writeFields(java.io.DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    protected ArchiveMessage(DataInput in) throws IOException {
+        super(in);
+    }
+
     /**
      * Should be implemented as a part of the visitor pattern. e.g.: public void accept(ArchiveMessageVisitor v) {
      * v.visit(this); }
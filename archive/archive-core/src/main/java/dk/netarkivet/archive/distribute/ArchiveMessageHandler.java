@@ -42,6 +42,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.PermissionDenied;
@@ -237,6 +238,17 @@ public abstract class ArchiveMessageHandler implements ArchiveMessageVisitor, Me
         deny(msg);
     }
 
+    /**
+     * This method should be overridden and implemented by a sub class if message handling is wanted.
+     *
+     * @param msg the GetSelectedChecksumsMessage
+     * @throws PermissionDenied when invoked
+     */
+    public void visit(GetSelectedChecksumsMessage msg) throws PermissionDenied {
+        ArgumentNotValid.checkNotNull(msg, "msg");
+        deny(msg);
+    }
+
     /**
      * This method should be overridden and implemented by a sub class if message handling is wanted.
      *
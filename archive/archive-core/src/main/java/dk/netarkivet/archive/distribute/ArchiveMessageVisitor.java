@@ -36,6 +36,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 
 /**
  * Interface for all classes which handles archive-related messages received from a JMS server. This is implemented with
@@ -131,6 +132,13 @@ public interface ArchiveMessageVisitor {
      */
     void visit(GetAllChecksumsMessage msg);
 
+    /**
+     * This method should be overridden to handle the receipt of a message.
+     *
+     * @param msg A received message.
+     */
+    void visit(GetSelectedChecksumsMessage msg);
+
     /**
      * This method should be overridden to handle the receipt of a message.
      *
@@ -30,6 +30,7 @@ import dk.netarkivet.archive.checksum.distribute.CorrectMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllChecksumsMessage;
 import dk.netarkivet.archive.checksum.distribute.GetAllFilenamesMessage;
 import dk.netarkivet.archive.checksum.distribute.GetChecksumMessage;
+import dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.RemoteFile;
 import dk.netarkivet.common.distribute.arcrepository.ReplicaType;
@@ -119,6 +120,16 @@ public interface ReplicaClient {
      */
     void sendGetAllChecksumsMessage(GetAllChecksumsMessage msg);
 
+    /**
+     * Retrieves the checksums of some of the arc files in the replica archive, selected by name or by a pattern. This
+     * method is the ChecksumReplica equivalent to running a ChecksumJob limited to the selected files.
+     * <p>
+     * The message is sent from this method.
+     *
+     * @param msg The message for retrieving the checksums.
+     */
+    void sendGetSelectedChecksumsMessage(GetSelectedChecksumsMessage msg);
+
     /**
      * For correcting an erroneous entry in the archive. The message is sent the replica for correcting the 'bad' entry.
      *
@@ -31,6 +31,7 @@ import org.junit.Test;
 
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 
 /**
@@ -89,4 +90,20 @@ public class HeartBeatMessageTester {
 
         assertEquals("ApplicationID of HeartBeatMessage is not as excepted.", baID, hbm.getBitarchiveID());
     }
+
+    /**
+     * Verify that a heartbeat keeps its fields when encoded field by field.
+     */
+    @Test
+    public void testCompactEncoding() {
+        HeartBeatMessage hbm = new HeartBeatMessage(baMon, baID);
+        CompactMessageCodec codec = new CompactMessageCodec();
+        assertTrue("Heartbeats should be encoded compactly", codec.canEncode(hbm));
+
+        HeartBeatMessage decoded = (HeartBeatMessage) codec.decode(codec.encode(hbm));
+        assertEquals("Should keep the timestamp", hbm.getTimestamp(), decoded.getTimestamp());
+        assertEquals("Should keep the application ID", baID, decoded.getBitarchiveID());
+        assertEquals("Should keep the receiver", baMon, decoded.getTo());
+        assertEquals("Should keep the reply channel", hbm.getReplyTo(), decoded.getReplyTo());
+    }
 }
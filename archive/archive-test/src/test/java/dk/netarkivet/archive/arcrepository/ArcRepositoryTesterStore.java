@@ -593,6 +593,41 @@ public class ArcRepositoryTesterStore {
                 entry.getStoreState(Channels.retrieveReplicaChannelNameFromReplicaId("THREE")));
     }
 
+    /**
+     * Tests that if we get an OK from a bitarchive, with a checksum verified during the upload, the file is marked as
+     * completed without sending a checksum job.
+     */
+    @Test
+    public void testOnUploadMessageWithVerifiedChecksum() throws IOException {
+        JMSConnectionMockupMQ con = (JMSConnectionMockupMQ) JMSConnectionMockupMQ.getInstance();
+        GenericMessageListener gmlOneBaMon = new GenericMessageListener();
+        con.setListener(Channels.retrieveReplicaChannelFromReplicaId("ONE"), gmlOneBaMon);
+        GenericMessageListener gmlTwoBaMon = new GenericMessageListener();
+        con.setListener(Channels.retrieveReplicaChannelFromReplicaId("TWO"), gmlTwoBaMon);
+
+        // Set admin state
+        String checksum = ChecksumCalculator.calculateMd5(STORABLE_FILE);
+        String replicaChannelName = Channels.getAnyBa().getName().replaceAll("ANY_BA", "THE_BAMON");
+        UpdateableAdminData adminData = AdminData.getUpdateableInstance();
+        adminData.addEntry(STORABLE_FILE.getName(), null, checksum);
+        adminData.setState(STORABLE_FILE.getName(), replicaChannelName, ReplicaStoreState.UPLOAD_STARTED);
+
+        // Deliver message
+        UploadMessage msg = new UploadMessage(Channels.getAnyBa(), Channels.getTheRepos(),
+                RemoteFileFactory.getInstance(STORABLE_FILE, true, false, true));
+        msg.setVerifiedChecksum(checksum);
+        JMSConnectionMockupMQ.updateMsgID(msg, "Msg-id-0");
+        arcRepos.onUpload(msg);
+        con.waitForConcurrentTasksToFinish();
+
+        assertEquals("No checksum message should be sent to replica 'ONE', but found "
+                + gmlOneBaMon.messagesReceived, 0, gmlOneBaMon.messagesReceived.size());
+        assertEquals("No checksum message should be sent to replica 'TWO', but found "
+                + gmlTwoBaMon.messagesReceived, 0, gmlTwoBaMon.messagesReceived.size());
+        assertEquals("The upload should be completed", ReplicaStoreState.UPLOAD_COMPLETED,
+                adminData.getEntry(STORABLE_FILE.getName()).getStoreState(replicaChannelName));
+    }
+
     /**
      * Tests that if we get a not OK from a bitarchive, we reply not OK (no other bitarchive is waiting for upload
      * replies). Also test that state is upload failed
@@ -39,6 +39,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -567,5 +568,31 @@ public class DatabaseBasedActiveBitPreservationTester {
         public String getChecksum(String replicaId, String filename) {
             return null; // this implementation is expected by the current tests
         }
+
+        @Override
+        public File getChecksums(String replicaId, Collection<String> filenames) {
+            // no checksums found, like getChecksum.
+            try {
+                return File.createTempFile("checksum", ".selected", TestInfo.WORKING_DIR);
+            } catch (IOException e) {
+                throw new IOFailure("", e);
+            }
+        }
+
+        @Override
+        public File getChecksumsMatching(String replicaId, String filenamePattern) {
+            try {
+                ChecksumJob job = new ChecksumJob();
+                job.processOnlyFilesMatching(filenamePattern);
+                File output = File.createTempFile("checksum", ".selected", TestInfo.WORKING_DIR);
+                File[] in_files = TestInfo.GOOD_ARCHIVE_FILE_DIR.listFiles();
+                FileOutputStream os = new FileOutputStream(output);
+                new BatchLocalFiles(in_files).run(job, os);
+                os.close();
+                return output;
+            } catch (IOException e) {
+                throw new IOFailure("", e);
+            }
+        }
     }
 }
@@ -39,11 +39,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -81,11 +83,13 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.NotImplementedException;
 import dk.netarkivet.common.exceptions.PermissionDenied;
+import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.KeyValuePair;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.batch.BatchLocalFiles;
 import dk.netarkivet.common.utils.batch.ChecksumJob;
+import dk.netarkivet.common.utils.batch.ChecksumLedger;
 import dk.netarkivet.common.utils.batch.FileBatchJob;
 import dk.netarkivet.common.utils.batch.FileBatchJob.ExceptionOccurrence;
 import dk.netarkivet.common.utils.batch.FileListJob;
@@ -301,6 +305,38 @@ public class FileBasedActiveBitPreservationTester {
         acp.close();
     }
 
+    /**
+     * Test that incremental checksum jobs merge the checksums of the changed files into the previous output, keeping
+     * the lines of the unchanged files.
+     */
+    @Test
+    public void testRunChecksumJobIncrementally() throws Exception {
+        Method runChecksumJob = ReflectUtils.getPrivateMethod(FileBasedActiveBitPreservation.class, "runChecksumJob",
+                Replica.class);
+        Settings.set(ArchiveSettings.BITPRESERVATION_INCREMENTAL_CHECKSUMS, "true");
+        FileBasedActiveBitPreservation acp = FileBasedActiveBitPreservation.getInstance();
+
+        // The first run retrieves all the checksums, the second one builds the ledger.
+        runChecksumJob.invoke(acp, ONE);
+        Set<String> full = new HashSet<String>(WorkFiles.getLines(ONE, WorkFiles.CHECKSUMS_ON_BA));
+        runChecksumJob.invoke(acp, ONE);
+        assertTrue("The bitarchive should have a checksum ledger", new File(TestInfo.GOOD_ARCHIVE_DIR, "filedir"
+                + ChecksumLedger.LEDGER_SUFFIX).isFile());
+        runChecksumJob.invoke(acp, ONE);
+        assertEquals("Runs without changes should keep the checksums", full,
+                new HashSet<String>(WorkFiles.getLines(ONE, WorkFiles.CHECKSUMS_ON_BA)));
+
+        File changed = TestInfo.GOOD_ARCHIVE_FILE_DIR.listFiles()[0];
+        FileUtils.appendToFile(changed, "changed");
+        changed.setLastModified(changed.lastModified() + 2000);
+        runChecksumJob.invoke(acp, ONE);
+        List<String> lines = WorkFiles.getLines(ONE, WorkFiles.CHECKSUMS_ON_BA);
+        assertEquals("The number of checksums should be unchanged", full.size(), lines.size());
+        assertTrue("The new checksum of the changed file should be merged in",
+                lines.contains(ChecksumJob.makeLine(changed.getName(), ChecksumCalculator.calculateMd5(changed))));
+        acp.close();
+    }
+
     @Test
     @Ignore("Fails in Travis with error shown below ")
     /**
@@ -719,6 +755,14 @@ public class FileBasedActiveBitPreservationTester {
         public String getChecksum(String replicaId, String filename) {
             throw new NotImplementedException("TODO: ME!");
         }
+
+        public File getChecksums(String replicaId, Collection<String> filenames) {
+            throw new NotImplementedException("TODO: ME!");
+        }
+
+        public File getChecksumsMatching(String replicaId, String filenamePattern) {
+            throw new NotImplementedException("TODO: ME!");
+        }
     }
 
 }
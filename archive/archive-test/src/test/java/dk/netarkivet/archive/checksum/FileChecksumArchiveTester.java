@@ -30,6 +30,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -195,6 +196,27 @@ public class FileChecksumArchiveTester {
                 wrongEntryContent.contains("TEST2.arc" + "##" + TestInfo.TEST2_CHECKSUM));
     }
 
+    /**
+     * Check that the checksums of selected files can be retrieved, both by name and by pattern, and that files not in
+     * the archive are left out.
+     */
+    @Test
+    public void testGetSelectedChecksums() {
+        fca.upload(RemoteFileFactory.getInstance(TestInfo.UPLOAD_FILE_1, false, false, false), "TEST1.arc");
+        fca.upload(RemoteFileFactory.getInstance(TestInfo.UPLOAD_FILE_2, false, false, false), "TEST2.arc");
+
+        List<String> byName = FileUtils.readListFromFile(fca.getChecksums(Arrays.asList("TEST1.arc", "MISSING.arc")));
+        assertEquals("Only the entry of the file in the archive should be returned",
+                Arrays.asList("TEST1.arc##" + TestInfo.TEST1_CHECKSUM), byName);
+
+        List<String> byPattern = FileUtils.readListFromFile(fca.getChecksumsMatching("TEST2.*"));
+        assertEquals("Only the entry of the matching file should be returned",
+                Arrays.asList("TEST2.arc##" + TestInfo.TEST2_CHECKSUM), byPattern);
+
+        assertEquals("No entries should be returned for no files", 0,
+                FileUtils.readListFromFile(fca.getChecksums(Arrays.<String>asList())).size());
+    }
+
     /**
      * Checks how the archive handles it, when there is an admin.data file.
      *
@@ -31,6 +31,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
@@ -208,6 +209,22 @@ public class FileChecksumServerTester {
                             + csMsg.getChecksum(), archive.contains(name + "##" + csMsg.getChecksum()));
         }
 
+        // Retrieve the checksums of all the files in one go, along with a file not in the archive.
+        List<String> selected = new ArrayList<String>(names);
+        selected.add("NOT-IN-ARCHIVE.arc");
+        GetSelectedChecksumsMessage gscMsg = new GetSelectedChecksumsMessage(theCs, arcReposQ, "THREE", selected);
+        JMSConnectionMockupMQ.updateMsgID(gscMsg, "getselectedchecksums1");
+        cfs.visit(gscMsg);
+        conn.waitForConcurrentTasksToFinish();
+        assertTrue("Retrieving the selected checksums should be OK", gscMsg.isOk());
+        File selectedFile = File.createTempFile("tmp3", "tmp", TestInfo.BASE_FILE_DIR);
+        gscMsg.getData(selectedFile);
+        List<String> selectedEntries = FileUtils.readListFromFile(selectedFile);
+        assertEquals("Only the files in the archive should have an entry", names.size(), selectedEntries.size());
+        for (String entry : selectedEntries) {
+            assertTrue("The entry '" + entry + "' should be in the archive", archive.contains(entry));
+        }
+
         // Retrieve the checksum for the uploaded file from the checksum
         // archive.
         csMsg = new GetChecksumMessage(theCs, arcReposQ, testFile.getName(), "THREE");
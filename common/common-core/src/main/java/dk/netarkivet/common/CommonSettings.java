@@ -79,6 +79,30 @@ public class CommonSettings {
      */
     public static String JMS_BROKER_RETRIES = "settings.common.jms.retries";
 
+    /**
+     * <b>settings.common.jms.sendSessions</b>: <br>
+     * The number of JMS sessions messages may be sent on concurrently. Each sending thread uses a session of its own, so
+     * this is the number of threads that can send at once.
+     */
+    public static String JMS_SEND_SESSIONS = "settings.common.jms.sendSessions";
+
+    /**
+     * <b>settings.common.jms.listenerConcurrency</b>: <br>
+     * The number of consumers receiving messages for each listener on a queue. With more than one, messages on the queue
+     * are handled concurrently, so the listeners must be thread-safe. Listeners on topics always have one consumer.
+     */
+    public static String JMS_LISTENER_CONCURRENCY = "settings.common.jms.listenerConcurrency";
+
+    /**
+     * <b>settings.common.jms.messageCodec</b>: <br>
+     * The class of the dk.netarkivet.common.distribute.MessageCodec used to encode messages sent, e.g.
+     * dk.netarkivet.common.distribute.CompactMessageCodec. If empty, messages are sent as serialized objects. Messages
+     * are always received with the codec they were sent with. A message is only encoded if the codec encodes it, and
+     * the node receiving it has announced that it uses the same codec, by a message with the channel as its reply
+     * channel. Other messages are sent as serialized objects, so nodes of older versions still receive them.
+     */
+    public static String JMS_MESSAGE_CODEC = "settings.common.jms.messageCodec";
+
     /**
      * <b>settings.common.http.port</b>: <br>
      * The *unique* (per host) port number that may or may not be used to serve http.
@@ -112,6 +136,20 @@ public class CommonSettings {
      */
     public static String BATCH_DEFAULT_TIMEOUT = "settings.common.batch.defaultBatchTimeout";
 
+    /**
+     * <b>settings.common.checksum.bufferSize</b>: <br>
+     * The size in bytes of the buffers used when checksumming files. Files larger than one buffer are read ahead into a
+     * second buffer on a separate thread while the first is being checksummed.
+     */
+    public static String CHECKSUM_BUFFER_SIZE = "settings.common.checksum.bufferSize";
+
+    /**
+     * <b>settings.common.checksum.filesPerDisk</b>: <br>
+     * The number of files checksummed at the same time on each disk by a checksum batch job. Files on different disks
+     * are checksummed in parallel. If 0, the files are checksummed one at a time on the thread running the batch job.
+     */
+    public static String CHECKSUM_FILES_PER_DISK = "settings.common.checksum.filesPerDisk";
+
     /**
      * <b>settings.common.monitorregistryClient.class</b>: <br>
      * Which class to use for monitor registry. Must implement the interface
@@ -76,6 +76,16 @@ public class ChannelID implements Serializable {
      */
     private String name;
 
+    /**
+     * Constructor of a channel with a known name, as read from a message encoded by the {@link CompactMessageCodec}.
+     *
+     * @param name The full name of the channel.
+     */
+    ChannelID(String name) {
+        ArgumentNotValid.checkNotNullOrEmpty(name, "String name");
+        this.name = name;
+    }
+
     /**
      * Constructor of channel names. The constructor is package private because we should never use any channels except
      * the ones constructed by our friend Channels.java
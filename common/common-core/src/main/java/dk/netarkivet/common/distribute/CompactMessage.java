@@ -0,0 +1,36 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+/**
+ * A message which the {@link CompactMessageCodec} writes field by field, instead of with Java serialization.
+ * <p>
+ * A class implementing this interface must override {@link NetarkivetMessage#writeFields(java.io.DataOutput)} to write
+ * its own fields after calling the method of its superclass, and must have a public constructor taking a
+ * {@link java.io.DataInput}, which calls the same constructor of its superclass and then reads the fields back in the
+ * same order. Only messages sent often, with few and simple fields, should implement this, since the fields written
+ * must be kept in step with the fields of the class by hand.
+ */
+public interface CompactMessage {
+
+}
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * A codec encoding the {@link CompactMessage}s compactly, by writing their fields one by one.
+ * <p>
+ * The messages sent most often, such as heartbeats and checksum requests, are small, so the cost of sending them as an
+ * ObjectMessage is mostly Java serialization: looking up the fields of each class by reflection, and writing a
+ * descriptor of every class in the hierarchy. This codec writes the class name once, followed by the fields written
+ * by the message itself, and reads them back through the constructor of the message taking a DataInput. Other
+ * messages are not encoded by this codec, and are sent as an ObjectMessage.
+ * <p>
+ * The encoding starts with a format byte, so the format can be changed later without breaking nodes reading the old
+ * one.
+ */
+public class CompactMessageCodec implements MessageCodec {
+
+    /** The format byte of a message written field by field. */
+    private static final byte FORMAT_FIELDS = 1;
+
+    /** The length written for a null string. */
+    private static final int NULL_LENGTH = -1;
+
+    /** The constructors reading messages from a DataInput, by class name. */
+    private final Map<String, Constructor<? extends NetarkivetMessage>> constructors =
+            new ConcurrentHashMap<String, Constructor<? extends NetarkivetMessage>>();
+
+    @Override
+    public boolean canEncode(NetarkivetMessage msg) {
+        return msg instanceof CompactMessage;
+    }
+
+    @Override
+    public byte[] encode(NetarkivetMessage msg) {
+        ArgumentNotValid.checkNotNull(msg, "NetarkivetMessage msg");
+        if (!canEncode(msg)) {
+            throw new ArgumentNotValid("The message " + msg + " is not a " + CompactMessage.class.getSimpleName());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_FIELDS);
+            out.writeUTF(msg.getClass().getName());
+            msg.writeFields(out);
+            out.close();
+        } catch (IOException e) {
+            throw new IOFailure("Unable to encode message " + msg, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public NetarkivetMessage decode(byte[] bytes) {
+        ArgumentNotValid.checkNotNull(bytes, "byte[] bytes");
+        if (bytes.length == 0 || bytes[0] != FORMAT_FIELDS) {
+            throw new ArgumentNotValid("Unknown message format " + (bytes.length == 0 ? "(empty)" : bytes[0]));
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+        try {
+            return getConstructor(in.readUTF()).newInstance(in);
+        } catch (IOException e) {
+            throw new ArgumentNotValid("Unable to decode message", e);
+        } catch (InvocationTargetException e) {
+            throw new ArgumentNotValid("Unable to decode message", e.getCause());
+        } catch (InstantiationException e) {
+            throw new ArgumentNotValid("Unable to decode message", e);
+        } catch (IllegalAccessException e) {
+            throw new ArgumentNotValid("Unable to decode message", e);
+        }
+    }
+
+    /**
+     * Get the constructor reading a message of the given class from a DataInput.
+     *
+     * @param className The class name of a {@link CompactMessage}.
+     * @return The constructor.
+     * @throws ArgumentNotValid if the class is unknown, is not a CompactMessage, or has no such constructor.
+     */
+    private Constructor<? extends NetarkivetMessage> getConstructor(String className) throws ArgumentNotValid {
+        Constructor<? extends NetarkivetMessage> constructor = constructors.get(className);
+        if (constructor == null) {
+            try {
+                Class<? extends NetarkivetMessage> c = Class.forName(className).asSubclass(NetarkivetMessage.class);
+                if (!CompactMessage.class.isAssignableFrom(c)) {
+                    throw new ArgumentNotValid("The class '" + className + "' is not a "
+                            + CompactMessage.class.getSimpleName());
+                }
+                constructor = c.getConstructor(DataInput.class);
+            } catch (ClassNotFoundException e) {
+                throw new ArgumentNotValid("Unable to decode message of unknown class '" + className + "'", e);
+            } catch (ClassCastException e) {
+                throw new ArgumentNotValid("The class '" + className + "' is not a NetarkivetMessage", e);
+            } catch (NoSuchMethodException e) {
+                throw new ArgumentNotValid("The class '" + className + "' has no constructor reading a DataInput", e);
+            }
+            constructors.put(className, constructor);
+        }
+        return constructor;
+    }
+
+    /**
+     * Write a string which may be null, and may be longer than {@link DataOutput#writeUTF(String)} allows.
+     *
+     * @param out The output to write to.
+     * @param s The string, or null.
+     * @throws IOException If writing fails.
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param in The input to read from.
+     * @return The string, or null.
+     * @throws IOException If reading fails.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
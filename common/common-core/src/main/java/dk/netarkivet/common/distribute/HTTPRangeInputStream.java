@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * An input stream reading a range of a file served by a {@link HTTPRemoteFileRegistry}. If the connection breaks, the
+ * stream reconnects and asks for the rest of the range, so a transfer is resumed from where it stopped instead of
+ * being started over.
+ */
+class HTTPRangeInputStream extends InputStream {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(HTTPRangeInputStream.class);
+
+    /** The delay in milliseconds before the first try to resume. Doubled for each resume. */
+    private static final long RESUME_DELAY = 1000;
+
+    /** The registry serving the file. */
+    private final HTTPRemoteFileRegistry registry;
+
+    /** The url of the file. */
+    private final URL url;
+
+    /** The position just after the last byte of the range. */
+    private final long end;
+
+    /** The number of times a broken transfer may be resumed. */
+    private final int maxResumes;
+
+    /** The position of the next byte to read. */
+    private long position;
+
+    /** The number of times the transfer has been resumed. */
+    private int resumes;
+
+    /** The stream of the current connection, or null if not connected. */
+    private InputStream current;
+
+    /**
+     * Create a stream reading a range of a file. No connection is made until the first read.
+     *
+     * @param registry The registry serving the file.
+     * @param url The url of the file.
+     * @param start The position of the first byte of the range.
+     * @param end The position just after the last byte of the range.
+     * @param maxResumes The number of times a broken transfer may be resumed.
+     */
+    HTTPRangeInputStream(HTTPRemoteFileRegistry registry, URL url, long start, long end, int maxResumes) {
+        ArgumentNotValid.checkNotNull(registry, "HTTPRemoteFileRegistry registry");
+        ArgumentNotValid.checkNotNull(url, "URL url");
+        ArgumentNotValid.checkNotNegative(start, "long start");
+        ArgumentNotValid.checkTrue(end >= start, "end must not be before start");
+        ArgumentNotValid.checkNotNegative(maxResumes, "int maxResumes");
+        this.registry = registry;
+        this.url = url;
+        this.position = start;
+        this.end = end;
+        this.maxResumes = maxResumes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            try {
+                if (current == null) {
+                    current = connect();
+                }
+                int n = current.read(b, off, (int) Math.min(len, end - position));
+                if (n < 0) {
+                    throw new IOException("Connection closed at byte " + position + " of '" + url + "', expected "
+                            + end);
+                }
+                position += n;
+                return n;
+            } catch (IOException e) {
+                IOUtils.closeQuietly(current);
+                current = null;
+                if (resumes >= maxResumes) {
+                    throw e;
+                }
+                resumes++;
+                log.warn("Transfer of '{}' broke at byte {}. Resuming, attempt {} of {}", url, position, resumes,
+                        maxResumes, e);
+                try {
+                    Thread.sleep(RESUME_DELAY << (resumes - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    /**
+     * @return The number of times the transfer has been resumed.
+     */
+    int getResumes() {
+        return resumes;
+    }
+
+    /**
+     * Connect to the registry, asking for the part of the range not yet read.
+     *
+     * @return A stream with the remaining bytes of the range.
+     * @throws IOException If the connection cannot be made.
+     */
+    private InputStream connect() throws IOException {
+        URLConnection connection = registry.openConnection(url);
+        // ensure not getting some cached version
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Range", "bytes=" + position + "-" + (end - 1));
+        InputStream in = connection.getInputStream();
+        if (position > 0 && connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            // The server sent the whole file, so skip to the position
+            log.debug("Range not supported for '{}'. Skipping {} bytes", url, position);
+            IOUtils.skipFully(in, position);
+        }
+        return in;
+    }
+
+}
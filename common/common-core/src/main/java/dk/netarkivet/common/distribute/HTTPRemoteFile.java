@@ -28,22 +28,37 @@ import java.io.FileInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.SystemUtils;
 
 /**
  * A remote file implemented with point-to-point HTTP communication. Optimised to communicate locally, if file is on the
  * same host. Optimised to transfer 0 byte files inline.
+ * <p>
+ * A broken transfer is resumed from where it stopped, and large files may be copied over several connections at
+ * once, each transferring a range of the file.
  */
 @SuppressWarnings({"serial"})
 public class HTTPRemoteFile extends AbstractRemoteFile {
@@ -79,6 +94,26 @@ public class HTTPRemoteFile extends AbstractRemoteFile {
      */
     public static String HTTPREMOTEFILE_PORT_NUMBER = "settings.common.remoteFile.port";
 
+    /**
+     * <b>settings.common.remoteFile.resumeRetries</b>: <br>
+     * The number of times a broken HTTP transfer is resumed from where it stopped, before the transfer fails.
+     */
+    public static String HTTPREMOTEFILE_RESUME_RETRIES = "settings.common.remoteFile.resumeRetries";
+
+    /**
+     * <b>settings.common.remoteFile.parallelStreams</b>: <br>
+     * The maximum number of connections over which a file is copied at once over HTTP, each transferring a range of
+     * the file. Only files of at least 32 MB are split, and each range is at least 16 MB. The value 1 copies all files
+     * over a single connection.
+     */
+    public static String HTTPREMOTEFILE_PARALLEL_STREAMS = "settings.common.remoteFile.parallelStreams";
+
+    /** The minimum size of a range of a file copied over a connection of its own. */
+    private static final long MIN_RANGE_SIZE = 16 * 1024 * 1024;
+
+    /** The size of the buffer used by each connection, when copying a file over several connections. */
+    private static final int RANGE_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Initialises a remote file implemented by point-to-point HTTP communication.
      *
@@ -154,14 +189,108 @@ public class HTTPRemoteFile extends AbstractRemoteFile {
             }
             // if rename fails we fall back to normal usage.
         }
+        int streams = (int) Math.min(Settings.getInt(HTTPREMOTEFILE_PARALLEL_STREAMS), filesize / MIN_RANGE_SIZE);
+        if (streams > 1 && !isLocal()) {
+            copyInRanges(destFile, streams);
+            return;
+        }
         super.copyTo(destFile);
     }
 
+    /**
+     * Copy this remote file to the given file over several connections at once, each transferring a range of the
+     * file. Each range is resumed separately if broken. As the ranges arrive out of order, the checksum is checked
+     * on the finished file.
+     *
+     * @param destFile The file to write the remote file to.
+     * @param streams The number of connections to use.
+     * @throws IOFailure on I/O trouble writing remote file to destination, or if checksums are requested, but do not
+     * match.
+     */
+    private void copyInRanges(final File destFile, int streams) {
+        log.debug("Copying '{}' from '{}' over {} connections", file.getName(), url, streams);
+        final int resumeRetries = Settings.getInt(HTTPREMOTEFILE_RESUME_RETRIES);
+        ExecutorService executor = Executors.newFixedThreadPool(streams);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(destFile, "rw");
+            raf.setLength(filesize);
+            final FileChannel channel = raf.getChannel();
+            List<Future<Void>> ranges = new ArrayList<Future<Void>>();
+            long rangeSize = (filesize + streams - 1) / streams;
+            for (long start = 0; start < filesize; start += rangeSize) {
+                final long rangeStart = start;
+                final long rangeEnd = Math.min(filesize, start + rangeSize);
+                ranges.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        copyRange(channel, rangeStart, rangeEnd, resumeRetries);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> range : ranges) {
+                range.get();
+            }
+            raf.close();
+            raf = null;
+            if (useChecksums) {
+                String newChecksum = ChecksumCalculator.calculateMd5(destFile);
+                if (!newChecksum.equals(checksum)) {
+                    throw new IOFailure("Checksum mismatch! Expected '" + checksum + "' but was '" + newChecksum + "'");
+                }
+            }
+        } catch (IOFailure e) {
+            FileUtils.remove(destFile);
+            throw e;
+        } catch (ExecutionException e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Unable to copy '" + file + "' from '" + url + "'", e.getCause());
+        } catch (Exception e) {
+            FileUtils.remove(destFile);
+            throw new IOFailure("Unable to copy '" + file + "' from '" + url + "'", e);
+        } finally {
+            executor.shutdownNow();
+            IOUtils.closeQuietly(raf);
+        }
+        if (!multipleDownloads) {
+            cleanup();
+        }
+    }
+
+    /**
+     * Copy a range of this remote file into the same range of a file.
+     *
+     * @param channel The channel of the file to write to.
+     * @param start The position of the first byte of the range.
+     * @param end The position just after the last byte of the range.
+     * @param resumeRetries The number of times the transfer may be resumed.
+     * @throws IOException On trouble reading the range, or writing it.
+     */
+    private void copyRange(FileChannel channel, long start, long end, int resumeRetries) throws IOException {
+        InputStream in = new HTTPRangeInputStream(getRegistry(), url, start, end, resumeRetries);
+        try {
+            byte[] buffer = new byte[RANGE_BUFFER_SIZE];
+            long position = start;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                while (bb.hasRemaining()) {
+                    position += channel.write(bb, position);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Get an input stream representing the remote file. If the file resides on the current machine, the input stream is
-     * to the local file. Otherwise, the remote file is transferred over http. The close method of the input stream will
-     * cleanup this handle, and if checksums are requested, will check the checksums on close. If the file is not set to
-     * be able to be transferred multiple times, it is cleaned up after the transfer.
+     * to the local file. Otherwise, the remote file is transferred over http, resuming from where the transfer stopped,
+     * if the connection breaks. The close method of the input stream will cleanup this handle, and if checksums are
+     * requested, will check the checksums on close. The checksum is computed while reading, so it covers resumed
+     * transfers without reading any part of the file twice. If the file is not set to be able to be transferred
+     * multiple times, it is cleaned up after the transfer.
      *
      * @return An input stream for the remote file.
      * @throws IOFailure on I/O trouble generating inputstream for remote file. Also, the returned remote file will
@@ -176,10 +305,8 @@ public class HTTPRemoteFile extends AbstractRemoteFile {
             if (isLocal()) {
                 is = new FileInputStream(file);
             } else {
-                URLConnection urlConnection = getRegistry().openConnection(url);
-                // ensure not getting some cached version
-                urlConnection.setUseCaches(false);
-                is = urlConnection.getInputStream();
+                is = new HTTPRangeInputStream(getRegistry(), url, 0, filesize,
+                        Settings.getInt(HTTPREMOTEFILE_RESUME_RETRIES));
             }
             if (useChecksums) {
                 is = new DigestInputStream(is, ChecksumCalculator.getMessageDigest(ChecksumCalculator.MD5));
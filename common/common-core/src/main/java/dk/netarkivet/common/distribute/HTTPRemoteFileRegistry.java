@@ -23,19 +23,26 @@
 package dk.netarkivet.common.distribute;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.mortbay.jetty.Request;
 import org.mortbay.jetty.Server;
 
@@ -56,6 +63,9 @@ import dk.netarkivet.common.utils.SystemUtils;
  * This is a registry for HTTP remote file, meant for serving registered files to remote hosts. The embedded webserver
  * handling remote files for HTTPRemoteFile point-to-point communication. Optimised to use direct transfer on local
  * machine.
+ * <p>
+ * A single range of a file can be requested with an HTTP Range header, which allows a client to resume a broken
+ * transfer, or to fetch a file over several connections at once.
  */
 public class HTTPRemoteFileRegistry implements CleanupIF {
 
@@ -86,6 +96,12 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
      */
     private static final String UNREGISTER_URL_POSTFIX = "/unregister";
 
+    /** The form of the Range headers served: a single range of bytes, with or without an end. */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    /** The maximum number of bytes handed to the socket per call when serving a file. */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
     /** The embedded webserver. */
     protected Server server;
     /** The shutdown hook. */
@@ -275,8 +291,7 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
                 URL url = new URL(urlString);
                 FileInfo fileInfo = registeredFiles.get(url);
                 if (fileInfo != null) {
-                    httpServletResponse.setStatus(200);
-                    FileUtils.writeFileToStream(fileInfo.file, httpServletResponse.getOutputStream());
+                    serveFile(fileInfo.file, httpServletRequest.getHeader("Range"), httpServletResponse);
                     request.setHandled(true);
                     log.debug("Served file '{}' with URL '{}'", fileInfo.file.getPath(), url);
                 } else {
@@ -285,6 +300,64 @@ public class HTTPRemoteFileRegistry implements CleanupIF {
                 }
             }
         }
+
+        /**
+         * Write a file, or the range of it given by a Range header, to a response. The file is transferred through
+         * its FileChannel, which lets the operating system move the data without copying it through the heap where
+         * the connector allows it.
+         *
+         * @param file The file to serve.
+         * @param range The value of the Range header of the request, or null if the whole file is requested.
+         * @param response The response to write to.
+         * @throws IOException On trouble in communication, or reading the file.
+         */
+        private void serveFile(File file, String range, HttpServletResponse response) throws IOException {
+            long length = file.length();
+            long start = 0;
+            long end = length - 1;
+            if (range != null) {
+                Matcher m = RANGE_PATTERN.matcher(range.trim());
+                if (m.matches()) {
+                    start = Long.parseLong(m.group(1));
+                    if (!m.group(2).isEmpty()) {
+                        end = Math.min(end, Long.parseLong(m.group(2)));
+                    }
+                    if (start > end) {
+                        response.setHeader("Content-Range", "bytes */" + length);
+                        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        return;
+                    }
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                } else {
+                    // Unsupported forms of ranges are answered with the whole file
+                    log.debug("Ignoring unsupported range '{}' requested for file '{}'", range, file.getPath());
+                    response.setStatus(HttpServletResponse.SC_OK);
+                }
+            } else {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+            long count = end - start + 1;
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("Content-Length", Long.toString(count));
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel source = in.getChannel();
+                WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                while (position <= end) {
+                    long transferred = source.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, end - position + 1),
+                            target);
+                    if (transferred <= 0) {
+                        throw new IOException("Unable to transfer '" + file + "' beyond byte " + position + " of "
+                                + length);
+                    }
+                    position += transferred;
+                }
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
     }
 
 }
@@ -22,12 +22,24 @@
  */
 package dk.netarkivet.common.distribute;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
@@ -53,13 +65,15 @@ import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.utils.CleanupHook;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.common.utils.TimeUtils;
 
 /**
- * Handles the communication with a JMS broker. Note on Thread-safety: the methods and fields of JMSConnection are not
- * accessed by multiple threads (though JMSConnection itself creates threads). Thus no synchronization is needed on
- * methods and fields of JMSConnection. A shutdown hook is also added, which closes the connection. Class JMSConnection
- * is now also a exceptionhandler for the JMS Connections
+ * Handles the communication with a JMS broker. Note on Thread-safety: JMS sessions are not thread-safe, so messages are
+ * sent on a pool of sessions, each used by one sending thread at a time and each with its own producers. This lets
+ * several threads send at once. Listeners on queues may be served by several consumers, each on its own session, so
+ * messages on a busy queue are handled concurrently. A shutdown hook is also added, which closes the connection. Class
+ * JMSConnection is now also a exceptionhandler for the JMS Connections
  */
 public abstract class JMSConnection implements ExceptionListener, CleanupIF {
 
@@ -72,22 +86,85 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     /** The number to times to (re)try whenever a JMSException is thrown. */
     static final int JMS_MAXTRIES = Settings.getInt(CommonSettings.JMS_BROKER_RETRIES);
 
+    /**
+     * The message property holding the class name of the {@link MessageCodec} a message is encoded with. Only set on
+     * messages sent as a BytesMessage.
+     */
+    public static final String CODEC_PROPERTY = "NetarchiveSuiteMessageCodec";
+
+    /**
+     * The message property holding the class name of the {@link MessageCodec} the sender encodes messages with, and so
+     * accepts messages encoded with on its reply channel. Nodes of older versions do not set it, and cannot receive
+     * encoded messages.
+     */
+    public static final String ACCEPTS_CODEC_PROPERTY = "NetarchiveSuiteAcceptsCodec";
+
+    /**
+     * The message property holding the names of the queues the sender listens on, separated by commas. Set together
+     * with {@link #ACCEPTS_CODEC_PROPERTY}, and tells that these queues accept the codec as well. This lets messages to
+     * queues that are never used as a reply channel, such as the harvest monitor queue, be encoded.
+     */
+    public static final String ACCEPTS_CODEC_CHANNELS_PROPERTY = "NetarchiveSuiteAcceptsCodecChannels";
+
+    /**
+     * The time in milliseconds an announcement of an accepted codec is trusted. Without a new announcement within this
+     * time, messages to the channel are again sent as ObjectMessages, in case the node listening on it has been
+     * replaced by a node not knowing the codec.
+     */
+    static final long ACCEPTED_CODEC_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    /** The codecs used for decoding messages so far, by class name. */
+    private static final Map<String, MessageCodec> codecs = new ConcurrentHashMap<String, MessageCodec>();
+
+    /** The codec accepted by each channel, as announced by the messages received, by channel name. */
+    private static final Map<String, AcceptedCodec> acceptedCodecs = new ConcurrentHashMap<String, AcceptedCodec>();
+
+    /** The number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLISECOND = 1000000.0;
+
+    /** The number of sessions messages may be sent on concurrently. */
+    private final int maxSendSessions = Settings.getInt(CommonSettings.JMS_SEND_SESSIONS);
+
+    /** The number of consumers receiving messages for a listener on a queue. */
+    private final int listenerConcurrency = Settings.getInt(CommonSettings.JMS_LISTENER_CONCURRENCY);
+
+    /** The codec used for sending messages, or null if messages are sent as an ObjectMessage. */
+    private final MessageCodec messageCodec = getMessageCodec();
+
     /** The JMS Connection. */
     protected Connection connection;
 
     /**
-     * The Session handling messages sent to / received from the NetarchiveSuite queues and topics.
+     * The Session handling messages received from the NetarchiveSuite queues and topics, and browsing the queues. It is
+     * never used for sending, so it is not shared with the sending threads.
      */
     protected Session session;
 
-    /** Map for caching message producers. */
+    /** Map for caching message producers of the first session in the pool of send sessions. */
     protected final Map<String, MessageProducer> producers = Collections
             .synchronizedMap(new HashMap<String, MessageProducer>());
 
+    /** The send sessions not currently used by any thread. */
+    private final BlockingDeque<SendSession> idleSendSessions = new LinkedBlockingDeque<SendSession>();
+
+    /** The number of send sessions created on the current connection. */
+    private final AtomicInteger sendSessionCount = new AtomicInteger();
+
     /** Map for caching message consumers (topic-subscribers and queue-receivers). */
     protected final Map<String, MessageConsumer> consumers = Collections
             .synchronizedMap(new HashMap<String, MessageConsumer>());
 
+    /**
+     * Map for caching the consumers added to a queue-receiver when the listener concurrency is above one. Uses the same
+     * keys as the consumers map.
+     */
+    protected final Map<String, List<MessageConsumer>> additionalConsumers = Collections
+            .synchronizedMap(new HashMap<String, List<MessageConsumer>>());
+
+    /** Map for caching the sessions of the additional consumers. Uses the same keys as the consumers map. */
+    protected final Map<String, List<Session>> additionalSessions = Collections
+            .synchronizedMap(new HashMap<String, List<Session>>());
+
     /** Map for caching message listeners (topic-subscribers and queue-receivers). */
     protected final Map<String, MessageListener> listeners = Collections
             .synchronizedMap(new HashMap<String, MessageListener>());
@@ -104,6 +181,15 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     /** Singleton pattern is be used for this class. This is the one and only instance. */
     protected static JMSConnection instance;
 
+    /** The number of messages sent. */
+    private final AtomicLong sendCount = new AtomicLong();
+
+    /** The total time spent sending messages, in nanoseconds. */
+    private final AtomicLong sendTimeTotal = new AtomicLong();
+
+    /** The longest time spent sending a message, in nanoseconds. */
+    private final AtomicLong sendTimeMax = new AtomicLong();
+
     /**
      * Should be implemented according to a specific JMS broker.
      *
@@ -254,8 +340,81 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
      */
     public QueueBrowser createQueueBrowser(ChannelID queueID) throws JMSException {
         ArgumentNotValid.checkNotNull(queueID, "ChannelID queueID");
-        Queue queue = getQueueSession().createQueue(queueID.getName());
-        return getQueueSession().createBrowser(queue);
+        QueueSession queueSession = getQueueSession();
+        Queue queue = queueSession.createQueue(queueID.getName());
+        return queueSession.createBrowser(queue);
+    }
+
+    /**
+     * Count the messages waiting on a queue. The queue is browsed on a session of its own, which is closed afterwards,
+     * so the browsing does not interfere with the listeners receiving messages.
+     *
+     * @param queueID The ChannelID for a queue.
+     * @return The number of messages on the queue.
+     * @throws IOFailure If the queue cannot be browsed.
+     */
+    public int getQueueDepth(ChannelID queueID) throws IOFailure {
+        ArgumentNotValid.checkNotNull(queueID, "ChannelID queueID");
+        QueueSession browserSession = null;
+        QueueBrowser browser = null;
+        try {
+            browserSession = getQueueSession();
+            browser = browserSession.createBrowser(browserSession.createQueue(queueID.getName()));
+            int depth = 0;
+            Enumeration<?> messages = browser.getEnumeration();
+            while (messages.hasMoreElements()) {
+                messages.nextElement();
+                depth++;
+            }
+            return depth;
+        } catch (JMSException e) {
+            throw new IOFailure("Unable to browse the queue '" + queueID.getName() + "'", e);
+        } finally {
+            if (browser != null) {
+                try {
+                    browser.close();
+                } catch (JMSException e) {
+                    log.debug("Error closing browser of queue '{}'", queueID.getName(), e);
+                }
+            }
+            if (browserSession != null) {
+                try {
+                    browserSession.close();
+                } catch (JMSException e) {
+                    log.debug("Error closing the session browsing queue '{}'", queueID.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of messages sent on this connection.
+     */
+    public long getSendCount() {
+        return sendCount.get();
+    }
+
+    /**
+     * @return The average time spent sending a message, in milliseconds, or 0 if no messages have been sent.
+     */
+    public double getAverageSendLatency() {
+        long count = sendCount.get();
+        return count == 0 ? 0 : sendTimeTotal.get() / NANOS_PER_MILLISECOND / count;
+    }
+
+    /**
+     * @return The longest time spent sending a message, in milliseconds.
+     */
+    public double getMaxSendLatency() {
+        return sendTimeMax.get() / NANOS_PER_MILLISECOND;
+    }
+
+    /**
+     * Log the number of messages sent on this connection, and the average and longest time spent sending a message.
+     */
+    private void logSendStatistics() {
+        log.info("Sent {} messages, spending {} ms on average and {} ms at most sending a message", getSendCount(),
+                String.format("%.3f", getAverageSendLatency()), String.format("%.3f", getMaxSendLatency()));
     }
 
     /**
@@ -283,10 +442,13 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
                 // Okay, it just means we are already shutting down.
             }
             closeHook = null;
+            logSendStatistics();
             // Close session
             closeConnection();
             // Clear list of listeners
             listeners.clear();
+            // A new connection learns the codecs of the channels anew
+            acceptedCodecs.clear();
             instance = null;
             log.info("Cleanup finished");
         } finally {
@@ -310,7 +472,11 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         }
         connection = null;
         session = null;
+        idleSendSessions.clear();
+        sendSessionCount.set(0);
         consumers.clear();
+        additionalConsumers.clear();
+        additionalSessions.clear();
         producers.clear();
     }
 
@@ -324,6 +490,12 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     public static NetarkivetMessage unpack(Message msg) throws ArgumentNotValid {
         ArgumentNotValid.checkNotNull(msg, "msg");
 
+        if (msg instanceof BytesMessage) {
+            NetarkivetMessage netMsg = unpack((BytesMessage) msg);
+            rememberAcceptedCodec(msg, netMsg);
+            return netMsg;
+        }
+
         ObjectMessage objMsg;
         try {
             objMsg = (ObjectMessage) msg;
@@ -353,10 +525,149 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
             log.warn(message, e);
             throw new ArgumentNotValid(message, e);
         }
+        rememberAcceptedCodec(msg, netMsg);
         log.trace("Unpacked message '{}'", netMsg);
         return netMsg;
     }
 
+    /**
+     * Remember the codec accepted by the reply channel of a message, and by the queues the sender listens on, if the
+     * sender announced one. If the sender announced no codec, its reply channel is no longer taken to accept one, as
+     * the node may have been replaced by a node of an older version.
+     *
+     * @param msg The JMS message received.
+     * @param netMsg The message unpacked from it.
+     */
+    private static void rememberAcceptedCodec(Message msg, NetarkivetMessage netMsg) {
+        try {
+            String codecName = msg.getStringProperty(ACCEPTS_CODEC_PROPERTY);
+            String replyTo = netMsg.getReplyTo().getName();
+            if (codecName == null) {
+                if (acceptedCodecs.remove(replyTo) != null) {
+                    log.info("The channel {} no longer announces a codec. Sending it unencoded messages", replyTo);
+                }
+                return;
+            }
+            rememberAcceptedCodec(replyTo, codecName);
+            String channels = msg.getStringProperty(ACCEPTS_CODEC_CHANNELS_PROPERTY);
+            if (channels != null && !channels.isEmpty()) {
+                for (String channel : channels.split(",")) {
+                    rememberAcceptedCodec(channel, codecName);
+                }
+            }
+        } catch (JMSException e) {
+            log.debug("Unable to read the properties {} of message {}", ACCEPTS_CODEC_PROPERTY, msg, e);
+        }
+    }
+
+    /**
+     * Remember that a channel has just announced that it accepts a codec.
+     *
+     * @param channelName The name of the channel.
+     * @param codecName The class name of the codec.
+     */
+    private static void rememberAcceptedCodec(String channelName, String codecName) {
+        AcceptedCodec previous = acceptedCodecs.put(channelName, new AcceptedCodec(codecName));
+        if (previous == null || !codecName.equals(previous.codecName)) {
+            log.info("The channel {} accepts messages encoded with {}", channelName, codecName);
+        }
+    }
+
+    /**
+     * A codec accepted by a channel, and the time it was last announced.
+     */
+    private static final class AcceptedCodec {
+        /** The class name of the codec. */
+        private final String codecName;
+        /** The time of the announcement, in milliseconds. */
+        private final long announced = System.currentTimeMillis();
+
+        /**
+         * @param codecName The class name of the codec.
+         */
+        AcceptedCodec(String codecName) {
+            this.codecName = codecName;
+        }
+
+        /**
+         * @return true, if the announcement is more than {@link #ACCEPTED_CODEC_TIMEOUT} old.
+         */
+        boolean isExpired() {
+            return System.currentTimeMillis() - announced > ACCEPTED_CODEC_TIMEOUT;
+        }
+    }
+
+    /**
+     * Unwraps a NetarkivetMessage from a BytesMessage, decoding it with the codec named in the message.
+     *
+     * @param msg a javax.jms.BytesMessage
+     * @return a NetarkivetMessage
+     * @throws ArgumentNotValid if the message has no known codec, or cannot be decoded
+     */
+    private static NetarkivetMessage unpack(BytesMessage msg) throws ArgumentNotValid {
+        NetarkivetMessage netMsg;
+        try {
+            String codecName = msg.getStringProperty(CODEC_PROPERTY);
+            if (codecName == null) {
+                log.warn("Message without codec received: {}", msg);
+                throw new ArgumentNotValid("Invalid message: BytesMessage without the property " + CODEC_PROPERTY);
+            }
+            // The same message may be delivered to more than one listener
+            msg.reset();
+            byte[] bytes = new byte[(int) msg.getBodyLength()];
+            msg.readBytes(bytes);
+            netMsg = getCodec(codecName).decode(bytes);
+            netMsg.updateId(msg.getJMSMessageID());
+        } catch (JMSException e) {
+            String message = "Message invalid. Unable to read encoded message";
+            log.warn(message, e);
+            throw new ArgumentNotValid(message, e);
+        }
+        log.trace("Unpacked message '{}'", netMsg);
+        return netMsg;
+    }
+
+    /**
+     * Get the codec with the given class name. Codecs are created once, and then reused.
+     *
+     * @param className The class name of a {@link MessageCodec}.
+     * @return The codec.
+     * @throws ArgumentNotValid if the class cannot be found or is not a MessageCodec.
+     */
+    static MessageCodec getCodec(String className) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(className, "String className");
+        MessageCodec codec = codecs.get(className);
+        if (codec == null) {
+            try {
+                codec = Class.forName(className).asSubclass(MessageCodec.class).newInstance();
+            } catch (ClassNotFoundException e) {
+                throw new ArgumentNotValid("Unknown message codec '" + className + "'", e);
+            } catch (ClassCastException e) {
+                throw new ArgumentNotValid("The class '" + className + "' is not a message codec", e);
+            } catch (InstantiationException e) {
+                throw new ArgumentNotValid("Unable to create message codec '" + className + "'", e);
+            } catch (IllegalAccessException e) {
+                throw new ArgumentNotValid("Unable to create message codec '" + className + "'", e);
+            }
+            codecs.put(className, codec);
+        }
+        return codec;
+    }
+
+    /**
+     * Get the codec to send messages with, as given by the settings.
+     *
+     * @return The codec, or null if messages should be sent as an ObjectMessage.
+     */
+    private static MessageCodec getMessageCodec() {
+        String className = Settings.get(CommonSettings.JMS_MESSAGE_CODEC).trim();
+        if (className.isEmpty()) {
+            return null;
+        }
+        log.info("Sending messages encoded with {} to the channels accepting it", className);
+        return getCodec(className);
+    }
+
     /**
      * Submit an ObjectMessage to the destination channel.
      *
@@ -408,6 +719,7 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         }
         try {
             log.info("Trying to reconnect to jmsbroker");
+            logSendStatistics();
 
             boolean operationSuccessful = false;
             Exception lastException = null;
@@ -437,21 +749,65 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
     }
 
     /**
-     * Helper method for getting the right producer for a queue or topic.
+     * Take a send session from the pool, to be used by the calling thread only. A new session is created if none is
+     * idle and the pool is not full, otherwise waits for another thread to return one. Must be called with the
+     * connection locked for read, and the session must be returned with {@link #returnSendSession(SendSession)} before
+     * the lock is released.
      *
-     * @param queueName The name of the channel
-     * @return The producer for that channel. A new one is created, if none exists.
-     * @throws JMSException If a new producer cannot be created.
+     * @return A send session.
+     * @throws JMSException If a new session cannot be created.
+     * @throws IOFailure if no session is available, and reconnect does not help.
+     */
+    private SendSession borrowSendSession() throws JMSException {
+        getSession();
+        SendSession sendSession = idleSendSessions.pollFirst();
+        if (sendSession != null) {
+            return sendSession;
+        }
+        if (sendSessionCount.incrementAndGet() <= maxSendSessions) {
+            boolean created = false;
+            try {
+                sendSession = new SendSession(connection.createSession(false, Session.AUTO_ACKNOWLEDGE),
+                        new HashMap<String, MessageProducer>());
+                created = true;
+                log.debug("Created send session {} of {}", sendSessionCount.get(), maxSendSessions);
+                return sendSession;
+            } finally {
+                if (!created) {
+                    sendSessionCount.decrementAndGet();
+                }
+            }
+        }
+        sendSessionCount.decrementAndGet();
+        try {
+            return idleSendSessions.takeFirst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOFailure("Interrupted while waiting for a send session", e);
+        }
+    }
+
+    /**
+     * Return a send session to the pool. The most recently returned session is the first to be taken again.
+     *
+     * @param sendSession A session taken with {@link #borrowSendSession()}.
+     */
+    private void returnSendSession(SendSession sendSession) {
+        idleSendSessions.offerFirst(sendSession);
+    }
+
+    /**
+     * Record the time spent sending a message.
+     *
+     * @param nanos The time in nanoseconds.
      */
-    private MessageProducer getProducer(String queueName) throws JMSException {
-        // Check if producer is in cache
-        // If it is not, it is created and stored in cache:
-        MessageProducer producer = producers.get(queueName);
-        if (producer == null) {
-            producer = getSession().createProducer(getDestination(queueName));
-            producers.put(queueName, producer);
+    private void recordSendTime(long nanos) {
+        sendCount.incrementAndGet();
+        sendTimeTotal.addAndGet(nanos);
+        long max = sendTimeMax.get();
+        while (nanos > max && !sendTimeMax.compareAndSet(max, nanos)) {
+            max = sendTimeMax.get();
         }
-        return producer;
     }
 
     /**
@@ -489,6 +845,36 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         return consumer;
     }
 
+    /**
+     * Helper method for getting the consumers added for a queue and message listener, when the listener concurrency is
+     * above one. Each consumer has its own session, so messages are handled concurrently.
+     *
+     * @param channelName The name of the channel
+     * @param ml The message listener to add as listener to the channel
+     * @return The additional consumers for that channel. Empty for topics, which are always received by one consumer.
+     * @throws JMSException If a new consumer cannot be created.
+     */
+    private List<MessageConsumer> getAdditionalConsumers(String channelName, MessageListener ml) throws JMSException {
+        if (listenerConcurrency <= 1 || Channels.isTopic(channelName)) {
+            return Collections.emptyList();
+        }
+        String key = getConsumerKey(channelName, ml);
+        List<MessageConsumer> additional = additionalConsumers.get(key);
+        if (additional == null) {
+            getSession();
+            List<Session> sessions = new ArrayList<Session>();
+            additional = new ArrayList<MessageConsumer>();
+            for (int i = 1; i < listenerConcurrency; i++) {
+                Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                sessions.add(consumerSession);
+                additional.add(consumerSession.createConsumer(getDestination(channelName)));
+            }
+            additionalSessions.put(key, sessions);
+            additionalConsumers.put(key, additional);
+        }
+        return additional;
+    }
+
     /**
      * Generate a consumerkey based on the given channel name and messageListener.
      *
@@ -517,9 +903,12 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
      * @throws JMSException If some JMS error occurred during the creation of the required JMS connection and session
      */
     private void establishConnectionAndSession() throws JMSException {
-        // Establish a queue connection and a session
+        // Establish a queue connection, a session for the consumers and a dedicated session for sending
         connection = getConnectionFactory().createConnection();
         session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        idleSendSessions.offerFirst(new SendSession(connection.createSession(false, Session.AUTO_ACKNOWLEDGE),
+                producers));
+        sendSessionCount.set(1);
         connection.setExceptionListener(this);
         connection.start();
     }
@@ -532,25 +921,108 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
      * @throws JMSException if message failed to be sent.
      */
     private void doSend(NetarkivetMessage msg, ChannelID to) throws JMSException {
+        long start = System.nanoTime();
         connectionLock.readLock().lock();
         try {
-            ObjectMessage message = getSession().createObjectMessage(msg);
-            synchronized (msg) {
-                getProducer(to.getName()).send(message);
-                // Note: Id is only updated if the message does not already have
-                // an id. This ensures that resent messages keep the same ID
-                // TODO Is it always OK for resent messages to keep the same ID
-
-                // FIXME Solution for NAS-2043 doesn't work; rolled back
-                // String randomID = UUID.randomUUID().toString();
-                // msg.updateId(randomID);
-                msg.updateId(message.getJMSMessageID());
-
+            SendSession sendSession = borrowSendSession();
+            try {
+                doSend(sendSession, msg, to);
+            } finally {
+                returnSendSession(sendSession);
             }
         } finally {
             connectionLock.readLock().unlock();
         }
-        log.trace("Sent message '{}'", msg.toString());
+        long elapsed = System.nanoTime() - start;
+        recordSendTime(elapsed);
+        log.trace("Sent message '{}' in {} ms", msg.toString(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Tell whether a message is sent encoded with the message codec to the given channel, which is the case if a codec
+     * is set, the codec encodes the message, and the channel has announced that it accepts the codec within the last
+     * {@link #ACCEPTED_CODEC_TIMEOUT} milliseconds.
+     *
+     * @param msg The message to send.
+     * @param to The destination channel.
+     * @return true, if the message is sent as a BytesMessage encoded with the codec.
+     */
+    boolean isEncodedFor(NetarkivetMessage msg, ChannelID to) {
+        if (messageCodec == null || !messageCodec.canEncode(msg)) {
+            return false;
+        }
+        AcceptedCodec accepted = acceptedCodecs.get(to.getName());
+        if (accepted == null) {
+            return false;
+        }
+        if (accepted.isExpired()) {
+            if (acceptedCodecs.remove(to.getName(), accepted)) {
+                log.info("The channel {} has not announced the codec {} for {} ms. Sending it unencoded messages",
+                        to.getName(), accepted.codecName, ACCEPTED_CODEC_TIMEOUT);
+            }
+            return false;
+        }
+        return messageCodec.getClass().getName().equals(accepted.codecName);
+    }
+
+    /**
+     * Get the names of the queues this connection listens on.
+     *
+     * @return The names separated by commas.
+     */
+    private String getListenedQueues() {
+        Set<String> queues = new LinkedHashSet<String>();
+        synchronized (consumers) {
+            for (String consumerKey : consumers.keySet()) {
+                String channelName = getChannelName(consumerKey);
+                if (!Channels.isTopic(channelName)) {
+                    queues.add(channelName);
+                }
+            }
+        }
+        return StringUtils.conjoin(",", queues);
+    }
+
+    /**
+     * Sends a message on a session taken from the pool. The message is sent as a BytesMessage if a message codec is
+     * set, the codec encodes the message, and the destination has announced that it accepts the codec. Otherwise it is
+     * sent as an ObjectMessage, which every node can receive. When a codec is set, the message announces that the
+     * codec is accepted on its reply channel.
+     *
+     * @param sendSession the session to send on.
+     * @param msg the NetarkivetMessage to be sent.
+     * @param to the destination topic.
+     * @throws JMSException if message failed to be sent.
+     */
+    private void doSend(SendSession sendSession, NetarkivetMessage msg, ChannelID to) throws JMSException {
+        Message message;
+        if (messageCodec == null) {
+            message = sendSession.session.createObjectMessage(msg);
+        } else {
+            String codecName = messageCodec.getClass().getName();
+            if (isEncodedFor(msg, to)) {
+                BytesMessage bytesMessage = sendSession.session.createBytesMessage();
+                bytesMessage.setStringProperty(CODEC_PROPERTY, codecName);
+                bytesMessage.writeBytes(messageCodec.encode(msg));
+                message = bytesMessage;
+            } else {
+                message = sendSession.session.createObjectMessage(msg);
+            }
+            message.setStringProperty(ACCEPTS_CODEC_PROPERTY, codecName);
+            message.setStringProperty(ACCEPTS_CODEC_CHANNELS_PROPERTY, getListenedQueues());
+        }
+        // Only guards against the same message being sent by two threads at once
+        synchronized (msg) {
+            sendSession.getProducer(to.getName()).send(message);
+            // Note: Id is only updated if the message does not already have
+            // an id. This ensures that resent messages keep the same ID
+            // TODO Is it always OK for resent messages to keep the same ID
+
+            // FIXME Solution for NAS-2043 doesn't work; rolled back
+            // String randomID = UUID.randomUUID().toString();
+            // msg.updateId(randomID);
+            msg.updateId(message.getJMSMessageID());
+        }
     }
 
     /**
@@ -573,6 +1045,9 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
                 connectionLock.readLock().lock();
                 try {
                     getConsumer(channelName, ml).setMessageListener(ml);
+                    for (MessageConsumer consumer : getAdditionalConsumers(channelName, ml)) {
+                        consumer.setMessageListener(ml);
+                    }
                 } finally {
                     connectionLock.readLock().unlock();
                 }
@@ -622,6 +1097,13 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
                 try {
                     MessageConsumer messageConsumer = getConsumer(channelName, ml);
                     messageConsumer.close();
+                    List<Session> sessions = additionalSessions.remove(getConsumerKey(channelName, ml));
+                    if (sessions != null) {
+                        for (Session consumerSession : sessions) {
+                            consumerSession.close();
+                        }
+                    }
+                    additionalConsumers.remove(getConsumerKey(channelName, ml));
                     consumers.remove(getConsumerKey(channelName, ml));
                     listeners.remove(getConsumerKey(channelName, ml));
                 } finally {
@@ -664,4 +1146,47 @@ public abstract class JMSConnection implements ExceptionListener, CleanupIF {
         log.info("Reconnect successful");
     }
 
+    /**
+     * A session used for sending messages, together with the producers created on it. A send session is only used by
+     * one thread at a time.
+     */
+    private final class SendSession {
+
+        /** The session. */
+        private final Session session;
+
+        /** Map for caching the message producers of the session. */
+        private final Map<String, MessageProducer> producers;
+
+        /**
+         * Create a send session.
+         *
+         * @param session The session.
+         * @param producers The map for caching the producers of the session.
+         */
+        private SendSession(Session session, Map<String, MessageProducer> producers) {
+            this.session = session;
+            this.producers = producers;
+        }
+
+        /**
+         * Helper method for getting the right producer for a queue or topic.
+         *
+         * @param queueName The name of the channel
+         * @return The producer for that channel. A new one is created, if none exists.
+         * @throws JMSException If a new producer cannot be created.
+         */
+        private MessageProducer getProducer(String queueName) throws JMSException {
+            // Check if producer is in cache
+            // If it is not, it is created and stored in cache:
+            MessageProducer producer = producers.get(queueName);
+            if (producer == null) {
+                producer = session.createProducer(getDestination(queueName));
+                producers.put(queueName, producer);
+            }
+            return producer;
+        }
+
+    }
+
 }
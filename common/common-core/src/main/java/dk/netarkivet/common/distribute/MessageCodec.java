@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+/**
+ * Encodes NetarkivetMessages as bytes to be sent in a JMS BytesMessage, and decodes them again.
+ * <p>
+ * The class name of the codec is sent in the {@link JMSConnection#CODEC_PROPERTY} header of each message, and the
+ * receiver decodes the message with the codec named there. Thus a node can receive messages encoded with any codec on
+ * its classpath, whatever codec it uses for sending. A codec need not encode every message: the messages it cannot
+ * encode are sent as an ObjectMessage. Implementations must have a public no-argument constructor, and must be
+ * thread-safe.
+ */
+public interface MessageCodec {
+
+    /**
+     * Tell whether this codec encodes the given message.
+     *
+     * @param msg A message to be sent.
+     * @return true, if the message can be encoded with {@link #encode(NetarkivetMessage)}.
+     */
+    boolean canEncode(NetarkivetMessage msg);
+
+    /**
+     * Encode a message.
+     *
+     * @param msg The message to encode.
+     * @return The encoded message.
+     * @throws dk.netarkivet.common.exceptions.ArgumentNotValid If this codec does not encode the message.
+     * @throws dk.netarkivet.common.exceptions.IOFailure If the message cannot be encoded.
+     */
+    byte[] encode(NetarkivetMessage msg);
+
+    /**
+     * Decode a message encoded with {@link #encode(NetarkivetMessage)}.
+     *
+     * @param bytes The encoded message.
+     * @return The message.
+     * @throws dk.netarkivet.common.exceptions.ArgumentNotValid If the bytes do not hold a message encoded by this codec.
+     */
+    NetarkivetMessage decode(byte[] bytes);
+
+}
@@ -22,6 +22,9 @@
  */
 package dk.netarkivet.common.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -85,6 +88,39 @@ public abstract class NetarkivetMessage implements Serializable {
         this.replyOfId = null;
     }
 
+    /**
+     * Creates a NetarkivetMessage from the fields written by {@link #writeFields(DataOutput)}. Used by the
+     * {@link CompactMessageCodec} for decoding {@link CompactMessage}s.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    protected NetarkivetMessage(DataInput in) throws IOException {
+        this.to = new ChannelID(in.readUTF());
+        this.replyTo = new ChannelID(in.readUTF());
+        this.id = CompactMessageCodec.readString(in);
+        this.replyOfId = CompactMessageCodec.readString(in);
+        this.isOk = in.readBoolean();
+        this.errMsg = CompactMessageCodec.readString(in);
+    }
+
+    /**
+     * Write the fields of this message, to be read back by the constructor taking a DataInput. Used by the
+     * {@link CompactMessageCodec} for encoding {@link CompactMessage}s, which override this method to write their own
+     * fields after those of their superclass.
+     *
+     * @param out The output to write the fields to.
+     * @throws IOException If the fields cannot be written.
+     */
+    protected synchronized void writeFields(DataOutput out) throws IOException {
+        out.writeUTF(to.getName());
+        out.writeUTF(replyTo.getName());
+        CompactMessageCodec.writeString(out, id);
+        CompactMessageCodec.writeString(out, replyOfId);
+        out.writeBoolean(isOk);
+        CompactMessageCodec.writeString(out, errMsg);
+    }
+
     /**
      * Did an error occur when processing the message.
      *
@@ -22,7 +22,15 @@
  */
 package dk.netarkivet.common.distribute;
 
-import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -35,104 +43,174 @@ import dk.netarkivet.common.exceptions.IOFailure;
 
 /**
  * Converts an asynchronous call to a synchronous call. The method sendAndWaitForOneReply() is a blocking call which
- * responds when a reply is received or returns null on timeout.
+ * responds when a reply is received or returns null on timeout. The method sendAsync() returns a future completed by
+ * the reply instead.
+ * <p>
+ * Requests awaiting a reply are kept in a concurrent map from message id to future, so neither senders nor the
+ * listener take any locks.
  */
 public class Synchronizer implements MessageListener {
 
     private static final Logger log = LoggerFactory.getLogger(Synchronizer.class);
 
-    /** Collection containing messages on which a reply is awaited. */
-    private Hashtable<String, NetarkivetMessage> requests;
+    /**
+     * How long in milliseconds a reply is kept when no request is found for it. A reply may arrive before the sender
+     * has registered the request, since the id of a request is only known once it is sent.
+     */
+    private static final long UNCLAIMED_REPLY_TIMEOUT = 60000L;
+
+    /** The timer for timeouts of all synchronizers. Created on first use. */
+    private static ScheduledThreadPoolExecutor timer;
 
-    /** Collection containing reply messages which have not yet been returned to the caller. */
-    private Hashtable<String, NetarkivetMessage> replies;
+    /** Futures of the requests on which a reply is awaited, by message id. */
+    private final ConcurrentMap<String, CompletableFuture<NetarkivetMessage>> requests;
+
+    /** Replies received before their request was registered, by the id of the request. */
+    private final ConcurrentMap<String, NetarkivetMessage> unclaimedReplies;
 
     /**
      * Initialise maps containing requests and replies.
      */
     public Synchronizer() {
-        requests = new Hashtable<String, NetarkivetMessage>();
-        replies = new Hashtable<String, NetarkivetMessage>();
+        requests = new ConcurrentHashMap<String, CompletableFuture<NetarkivetMessage>>();
+        unclaimedReplies = new ConcurrentHashMap<String, NetarkivetMessage>();
     }
 
     /**
-     * Receives replies from a message queue and triggers the blocked call in sendAndWaitForOneReply().
+     * Receives replies from a message queue and completes the future of the request.
      *
      * @param msg an ObjectMessage containing a NetarkivetMessage.
      */
     public void onMessage(Message msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
         NetarkivetMessage naMsg = JMSConnection.unpack(msg);
-        NetarkivetMessage requestMsg;
-        synchronized (requests) {
-            requestMsg = requests.get(naMsg.getReplyOfId());
-        }
-        if (requestMsg != null) {
-            synchronized (requestMsg) {
-                replies.put(naMsg.getReplyOfId(), naMsg);
-                requestMsg.notifyAll();
+        final String requestId = naMsg.getReplyOfId();
+        CompletableFuture<NetarkivetMessage> request = requestId == null ? null : requests.get(requestId);
+        if (request == null && requestId != null) {
+            // The sender may not have registered the request yet. Leave the reply for the sender, then check again
+            // in case the request was registered in the meantime.
+            unclaimedReplies.put(requestId, naMsg);
+            request = requests.get(requestId);
+            if (request == null) {
+                final NetarkivetMessage reply = naMsg;
+                getTimer().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (unclaimedReplies.remove(requestId, reply)) {
+                            log.warn("Received unexpected reply for unknown message '{}' of type '{}'. Ignored!!: {}",
+                                    requestId, reply.getClass().getName(), reply.toString());
+                        }
+                    }
+                }, UNCLAIMED_REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
+                return;
             }
+            unclaimedReplies.remove(requestId, naMsg);
+        }
+        if (request != null) {
+            request.complete(naMsg);
         } else {
-            log.warn("Received unexpected reply for unknown message '{}' of type '{}'. Ignored!!: {}",
-                    naMsg.getReplyOfId(), naMsg.getClass().getName(), naMsg.toString());
+            log.warn("Received unexpected reply for unknown message '{}' of type '{}'. Ignored!!: {}", requestId,
+                    naMsg.getClass().getName(), naMsg.toString());
         }
     }
 
     /**
-     * Sends a message to a message queue and blocks the method invocation until a reply arrives. If it times out a null
-     * is returned. If a spurious wakeup is received and a timeout is set, the method will carry on waiting for the
-     * reply until the total timeout time has been used up. If a spurious wakeup is received and no timeout is set the
-     * method will just go back to waiting
+     * Sends a message to a message queue and returns a future completed by the reply. If it times out, the future is
+     * completed with null. The future is completed on the thread receiving the reply, so actions depending on it should
+     * not block.
      *
      * @param msg the request message
      * @param timeout the timeout in milliseconds (or zero for no timeout)
-     * @return a reply message from the receiver of the request or null if timed out.
+     * @return a future of the reply message from the receiver of the request, or of null if timed out.
+     * @throws IOFailure if the message cannot be sent.
      */
-    public NetarkivetMessage sendAndWaitForOneReply(NetarkivetMessage msg, long timeout) {
+    public CompletableFuture<NetarkivetMessage> sendAsync(final NetarkivetMessage msg, long timeout) {
         ArgumentNotValid.checkNotNull(msg, "msg");
-        boolean noTimeout = (timeout == 0);
+        ArgumentNotValid.checkNotNegative(timeout, "long timeout");
         JMSConnection con = JMSConnectionFactory.getInstance();
-        synchronized (msg) {
-            synchronized (requests) {
-                con.send(msg);
-                requests.put(msg.getID(), msg);
-            }
-            try {
-                while (!replies.containsKey(msg.getID())) {
-                    long timeBeforeWait = System.currentTimeMillis();
-                    msg.wait(timeout);
-                    synchronized (requests) {
-                        if (!replies.containsKey(msg.getID())) {
-                            // At this point we either got an unexpected wakeup
-                            // or timed out
-                            long timeAfterWait = System.currentTimeMillis();
-                            // the new timeout value
-                            timeout -= timeAfterWait - timeBeforeWait;
-                            if (noTimeout || timeout > 0) { // Unexpected wakeup
-                                log.debug("Unexpected wakeup for {}", msg.toString());
-                            } else {
-                                // timed out
-                                // NB! if timeout is exactly zero here then this
-                                // counts as a timeout. Otherwise we would call
-                                // wait(0) on the next loop with disastrous
-                                // results
-                                requests.remove(msg.getID());
-                                log.debug("Timed out waiting for reply to {}", msg.toString());
-                                return null;
-                            }
-                        }
+        con.send(msg);
+        final String id = msg.getID();
+        final CompletableFuture<NetarkivetMessage> request = new CompletableFuture<NetarkivetMessage>();
+        requests.put(id, request);
+        NetarkivetMessage earlyReply = unclaimedReplies.remove(id);
+        if (earlyReply != null) {
+            request.complete(earlyReply);
+        }
+        final ScheduledFuture<?> timeoutTask;
+        if (timeout > 0 && !request.isDone()) {
+            timeoutTask = getTimer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (request.complete(null)) {
+                        log.debug("Timed out waiting for reply to {}", msg.toString());
                     }
                 }
-            } catch (InterruptedException e) {
-                throw new IOFailure("Interrupted while waiting for reply to " + msg, e);
+            }, timeout, TimeUnit.MILLISECONDS);
+        } else {
+            timeoutTask = null;
+        }
+        request.whenComplete(new BiConsumer<NetarkivetMessage, Throwable>() {
+            @Override
+            public void accept(NetarkivetMessage reply, Throwable t) {
+                requests.remove(id, request);
+                if (timeoutTask != null) {
+                    timeoutTask.cancel(false);
+                }
+                if (reply != null) {
+                    log.debug("Received reply for message: {}", msg.toString());
+                }
             }
+        });
+        return request;
+    }
+
+    /**
+     * Sends a message to a message queue and blocks the method invocation until a reply arrives. If it times out a null
+     * is returned.
+     *
+     * @param msg the request message
+     * @param timeout the timeout in milliseconds (or zero for no timeout)
+     * @return a reply message from the receiver of the request or null if timed out.
+     * @throws IOFailure if the message cannot be sent, or the thread is interrupted while waiting.
+     */
+    public NetarkivetMessage sendAndWaitForOneReply(NetarkivetMessage msg, long timeout) {
+        ArgumentNotValid.checkNotNull(msg, "msg");
+        CompletableFuture<NetarkivetMessage> request = sendAsync(msg, timeout);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOFailure("Interrupted while waiting for reply to " + msg, e);
+        } catch (ExecutionException e) {
+            throw new IOFailure("Failed waiting for reply to " + msg, e.getCause());
+        } finally {
+            // Nobody waits for the request any more, so a late reply must not keep it around
+            if (request.cancel(false)) {
+                log.debug("Gave up waiting for reply to {}", msg.toString());
+            }
+            requests.remove(msg.getID(), request);
         }
-        // If we get here, we must have received the expected reply
-        synchronized (requests) {
-            requests.remove(msg.getID());
-            log.debug("Received reply for message: {}", msg.toString());
-            return replies.remove(msg.getID());
+    }
+
+    /**
+     * Get the timer for timeouts, creating it if necessary. The timer runs in a single daemon thread.
+     *
+     * @return The timer.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "SynchronizerTimeouts");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // Most requests are answered before they time out, so do not keep cancelled timeouts around
+            timer.setRemoveOnCancelPolicy(true);
         }
+        return timer;
     }
 
 }
@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -211,9 +212,7 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
             List<File> files = new ArrayList<File>();
             final FilenameFilter filenameFilter = new FilenameFilter() {
                 public boolean accept(File dir, String name) {
-                    Pattern filenamePattern = job.getFilenamePattern();
-                    return new File(dir, name).isFile()
-                            && (filenamePattern == null || filenamePattern.matcher(name).matches());
+                    return new File(dir, name).isFile() && job.processesFile(name);
                 }
             };
             for (File dir : storageDirs) {
@@ -353,6 +352,72 @@ public class LocalArcRepositoryClient implements ArcRepositoryClient {
         }
     }
 
+    /**
+     * Method for retrieving the checksums of some of the files of the replica.
+     *
+     * @param replicaId Inherited dummy argument.
+     * @param filenames The names of the files to retrieve the checksums for.
+     * @return A file containing the names and checksums of the files found in the system.
+     * @throws ArgumentNotValid If the replicaId is either null or the empty string, or the filenames are null.
+     * @throws IOFailure If an unexpected IOException is caught.
+     */
+    @Override
+    public File getChecksums(String replicaId, Collection<String> filenames) throws IOFailure, ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNull(filenames, "Collection<String> filenames");
+
+        try {
+            List<String> checksums = new ArrayList<String>();
+            for (String filename : filenames) {
+                File entry = findFile(filename);
+                if (entry != null) {
+                    checksums.add(ChecksumJob.makeLine(filename, ChecksumCalculator.calculateMd5(entry)));
+                }
+            }
+
+            // create a file with the results.
+            File res = File.createTempFile("selected", "checksums", FileUtils.getTempDir());
+            FileUtils.writeCollectionToFile(res, checksums);
+            return res;
+        } catch (IOException e) {
+            throw new IOFailure("Received unexpected IOFailure: ", e);
+        }
+    }
+
+    /**
+     * Method for retrieving the checksums of the files of the replica whose names match a regular expression.
+     *
+     * @param replicaId Inherited dummy argument.
+     * @param filenamePattern The regular expression the whole filename must match.
+     * @return A file containing the names and checksums of the matching files in the system.
+     * @throws ArgumentNotValid If the replicaId or the pattern is either null or the empty string.
+     * @throws IOFailure If an unexpected IOException is caught.
+     */
+    @Override
+    public File getChecksumsMatching(String replicaId, String filenamePattern) throws IOFailure, ArgumentNotValid {
+        ArgumentNotValid.checkNotNullOrEmpty(replicaId, "String replicaId");
+        ArgumentNotValid.checkNotNullOrEmpty(filenamePattern, "String filenamePattern");
+
+        Pattern pattern = Pattern.compile(filenamePattern);
+        try {
+            List<String> checksums = new ArrayList<String>();
+            for (File dir : storageDirs) {
+                for (File entry : dir.listFiles()) {
+                    if (pattern.matcher(entry.getName()).matches()) {
+                        checksums.add(ChecksumJob.makeLine(entry.getName(), ChecksumCalculator.calculateMd5(entry)));
+                    }
+                }
+            }
+
+            // create a file with the results.
+            File res = File.createTempFile("selected", "checksums", FileUtils.getTempDir());
+            FileUtils.writeCollectionToFile(res, checksums);
+            return res;
+        } catch (IOException e) {
+            throw new IOFailure("Received unexpected IOFailure: ", e);
+        }
+    }
+
     /**
      * Method for retrieving all the filenames of the replica.
      *
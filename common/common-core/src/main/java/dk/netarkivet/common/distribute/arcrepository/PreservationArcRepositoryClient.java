@@ -23,6 +23,7 @@
 package dk.netarkivet.common.distribute.arcrepository;
 
 import java.io.File;
+import java.util.Collection;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
@@ -120,6 +121,29 @@ public interface PreservationArcRepositoryClient {
      */
     File getAllChecksums(String replicaId);
 
+    /**
+     * Retrieves the checksums of some of the files in the replica through a GetSelectedChecksumsMessage. All the
+     * checksums are retrieved in a single round trip, instead of one GetChecksumMessage per file.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param filenames The names of the files to retrieve the checksums for.
+     * @return A file with a 'filename##checksum' line for each of the files found in the replica. Files not found in
+     * the replica are left out.
+     * @see dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage
+     */
+    File getChecksums(String replicaId, Collection<String> filenames);
+
+    /**
+     * Retrieves the checksums of the files in the replica whose names match a regular expression, through a
+     * GetSelectedChecksumsMessage.
+     *
+     * @param replicaId The id of the replica from which the checksums should be retrieved.
+     * @param filenamePattern The regular expression the whole filename must match.
+     * @return A file with a 'filename##checksum' line for each of the matching files in the replica.
+     * @see dk.netarkivet.archive.checksum.distribute.GetSelectedChecksumsMessage
+     */
+    File getChecksumsMatching(String replicaId, String filenamePattern);
+
     /**
      * Retrieves the checksum of a specific file.
      * <p>
@@ -23,22 +23,19 @@
 package dk.netarkivet.common.utils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import org.apache.commons.io.IOUtils;
-
 import dk.netarkivet.common.Constants;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 
 /**
- * Calculates MD5 or SHA1 checksums on files using the built-in Java methods.
+ * Calculates MD5 or SHA1 checksums on files using the built-in Java methods. Files are read through the
+ * {@link ChecksumEngine}.
  */
 public final class ChecksumCalculator {
 
@@ -46,6 +43,10 @@ public final class ChecksumCalculator {
     public static final String MD5 = "MD5";
     /** Defines the SHA1 checksum algorithm */
     public static final String SHA1 = "SHA1";
+    /** Defines the CRC32 checksum algorithm */
+    public static final String CRC32 = "CRC32";
+    /** Defines the CRC32C checksum algorithm, only available from Java 9 */
+    public static final String CRC32C = "CRC32C";
 
     /**
      * Calculate MD5 for a file.
@@ -56,17 +57,7 @@ public final class ChecksumCalculator {
     public static String calculateMd5(final File src) {
         ArgumentNotValid.checkNotNull(src, "File src");
         ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
-        // Get the MD5 and return it
-        try {
-            final FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return calculateMd5(fileInputStream);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
-            throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
-        }
+        return toHex(digestFile(src, MD5));
     }
 
     /**
@@ -78,17 +69,7 @@ public final class ChecksumCalculator {
     public static String calculateSha1(final File src) {
         ArgumentNotValid.checkNotNull(src, "File src");
         ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
-        // Get the SHA-1 digest and return it
-        try {
-            final FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return calculateSha1(fileInputStream);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
-            throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
-        }
+        return toHex(digestFile(src, SHA1));
     }
 
     /**
@@ -169,17 +150,21 @@ public final class ChecksumCalculator {
         return new String(hexchars);
     }
 
+    /**
+     * Calculate a digest for a file.
+     *
+     * @param src The file to calculate the digest for.
+     * @param digestAlgorithm The algorithm, a {@link MessageDigest} algorithm, {@link #CRC32} or {@link #CRC32C}.
+     * @return The digest of the file.
+     * @throws IOFailure If the file cannot be read.
+     * @throws IllegalState If the algorithm is not available.
+     */
     public static byte[] digestFile(File src, String digestAlgorithm) {
         ArgumentNotValid.checkNotNull(src, "File src");
         ArgumentNotValid.checkTrue(src.isFile(), "Argument should be a file");
         try {
-            FileInputStream fileInputStream = new FileInputStream(src);
-            try {
-                return digestInputStream(fileInputStream, digestAlgorithm);
-            } finally {
-                IOUtils.closeQuietly(fileInputStream);
-            }
-        } catch (FileNotFoundException e) {
+            return ChecksumEngine.getInstance().digest(src, digestAlgorithm);
+        } catch (IOException e) {
             throw new IOFailure("Could not read file '" + src.getAbsolutePath() + "'", e);
         }
     }
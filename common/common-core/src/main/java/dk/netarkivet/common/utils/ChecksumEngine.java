@@ -0,0 +1,640 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.Constants;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IllegalState;
+
+/**
+ * Calculates checksums of files, reading the files through large buffers.
+ * <p>
+ * {@link MessageDigest} algorithms get heap buffers, since {@link MessageDigest#update(ByteBuffer)} copies the bytes of
+ * a direct buffer through a small heap array before digesting them. The {@link Checksum} algorithms get direct
+ * buffers, which they read in place.
+ * <p>
+ * A file larger than one buffer is double buffered: a separate thread reads the next buffer of the file while the
+ * current buffer is being checksummed, so reading and checksumming overlap. A {@link Batch} checksums many files, in
+ * parallel across the disks holding them and with a given number of files at a time on each disk.
+ * <p>
+ * The algorithm is given by name. Any {@link MessageDigest} algorithm is supported, e.g. {@link ChecksumCalculator#MD5}
+ * and {@link ChecksumCalculator#SHA1}, together with the fast non-cryptographic checksums
+ * {@link ChecksumCalculator#CRC32} and, when the JVM provides it, {@link ChecksumCalculator#CRC32C}. These are well
+ * suited for detecting changes to a file, but not for identifying its contents.
+ */
+public final class ChecksumEngine {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ChecksumEngine.class);
+
+    /** The class implementing each of the supported {@link Checksum} algorithms. */
+    private static final Map<String, String> CHECKSUM_CLASSES = new HashMap<String, String>();
+
+    static {
+        CHECKSUM_CLASSES.put(ChecksumCalculator.CRC32, "java.util.zip.CRC32");
+        CHECKSUM_CLASSES.put(ChecksumCalculator.CRC32C, "java.util.zip.CRC32C");
+    }
+
+    /** Marks the end of a file read ahead. */
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0);
+
+    /** The instance using the buffer size and number of files per disk from settings. */
+    private static ChecksumEngine instance;
+
+    /** The size of the buffers. */
+    private final int bufferSize;
+
+    /** Whether files larger than a buffer are read ahead on a separate thread. */
+    private final boolean readAhead;
+
+    /** The number of files checksummed at the same time on each disk by a batch. */
+    private final int filesPerDisk;
+
+    /** The heap buffers not in use. */
+    private final Queue<ByteBuffer> freeHeapBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** The direct buffers not in use. */
+    private final Queue<ByteBuffer> freeDirectBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /** The threads reading ahead and checksumming the files of batches. */
+    private final ExecutorService executor;
+
+    /**
+     * Create an engine.
+     *
+     * @param bufferSize The size of the buffers, at least {@link Constants#IO_BUFFER_SIZE}.
+     * @param readAhead Whether files larger than a buffer are read ahead on a separate thread.
+     * @param filesPerDisk The number of files checksummed at the same time on each disk by a batch, at least 1.
+     * @throws ArgumentNotValid If the buffer size is too small, or the number of files per disk is not positive.
+     */
+    public ChecksumEngine(int bufferSize, boolean readAhead, int filesPerDisk) throws ArgumentNotValid {
+        ArgumentNotValid.checkTrue(bufferSize >= Constants.IO_BUFFER_SIZE, "The buffer size must be at least "
+                + Constants.IO_BUFFER_SIZE + " bytes, but was " + bufferSize);
+        ArgumentNotValid.checkPositive(filesPerDisk, "int filesPerDisk");
+        this.bufferSize = bufferSize;
+        this.readAhead = readAhead;
+        this.filesPerDisk = filesPerDisk;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ChecksumEngine-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the engine configured by the settings {@link CommonSettings#CHECKSUM_BUFFER_SIZE} and
+     * {@link CommonSettings#CHECKSUM_FILES_PER_DISK}. If no files are to be checksummed in parallel, a batch of the
+     * engine checksums one file at a time.
+     *
+     * @return The engine.
+     */
+    public static synchronized ChecksumEngine getInstance() {
+        if (instance == null) {
+            instance = new ChecksumEngine(Settings.getInt(CommonSettings.CHECKSUM_BUFFER_SIZE), true, Math.max(1,
+                    Settings.getInt(CommonSettings.CHECKSUM_FILES_PER_DISK)));
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether an algorithm is supported by this JVM.
+     *
+     * @param algorithm The name of the algorithm.
+     * @return true, if checksums can be calculated with the algorithm.
+     */
+    public static boolean isSupported(String algorithm) {
+        ArgumentNotValid.checkNotNullOrEmpty(algorithm, "String algorithm");
+        try {
+            newDigest(algorithm);
+            return true;
+        } catch (IllegalState e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calculate the checksum of a file.
+     *
+     * @param file The file.
+     * @param algorithm The name of the algorithm.
+     * @return The checksum.
+     * @throws ArgumentNotValid If the file is null or not a file, or the algorithm is null or empty.
+     * @throws IllegalState If the algorithm is not supported.
+     * @throws IOException If the file cannot be read.
+     */
+    public byte[] digest(File file, String algorithm) throws ArgumentNotValid, IllegalState, IOException {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        ArgumentNotValid.checkTrue(file.isFile(), "Argument should be a file");
+        ArgumentNotValid.checkNotNullOrEmpty(algorithm, "String algorithm");
+        Digest digest = newDigest(algorithm);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (readAhead && channel.size() > bufferSize) {
+                readAhead(channel, digest);
+            } else {
+                read(channel, digest);
+            }
+        } finally {
+            channel.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Calculate the checksum of a file as a hex string.
+     *
+     * @param file The file.
+     * @param algorithm The name of the algorithm.
+     * @return The checksum as a hex string.
+     * @throws ArgumentNotValid If the file is null or not a file, or the algorithm is null or empty.
+     * @throws IllegalState If the algorithm is not supported.
+     * @throws IOException If the file cannot be read.
+     */
+    public String checksum(File file, String algorithm) throws ArgumentNotValid, IllegalState, IOException {
+        return ChecksumCalculator.toHex(digest(file, algorithm));
+    }
+
+    /**
+     * Start a batch of files to checksum.
+     *
+     * @param algorithm The name of the algorithm.
+     * @param listener The listener told about each file of the batch, when it is checksummed.
+     * @return The batch.
+     * @throws ArgumentNotValid If an argument is null, or the algorithm is empty.
+     * @throws IllegalState If the algorithm is not supported.
+     */
+    public Batch startBatch(String algorithm, Listener listener) throws ArgumentNotValid, IllegalState {
+        ArgumentNotValid.checkNotNullOrEmpty(algorithm, "String algorithm");
+        ArgumentNotValid.checkNotNull(listener, "Listener listener");
+        newDigest(algorithm);
+        return new Batch(algorithm, listener);
+    }
+
+    /**
+     * @return The size of the buffers.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of files checksummed at the same time on each disk by a batch.
+     */
+    public int getFilesPerDisk() {
+        return filesPerDisk;
+    }
+
+    /**
+     * Checksum a file one buffer at a time on the calling thread.
+     *
+     * @param channel The file.
+     * @param digest The checksum to update.
+     * @throws IOException If the file cannot be read.
+     */
+    private void read(FileChannel channel, Digest digest) throws IOException {
+        ByteBuffer buffer = acquireBuffer(digest.isDirect());
+        try {
+            boolean more;
+            do {
+                more = fill(channel, buffer);
+                digest.update(buffer);
+            } while (more);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Checksum a file with two buffers, one being filled by a separate thread while the other is checksummed on the
+     * calling thread.
+     *
+     * @param channel The file.
+     * @param digest The checksum to update.
+     * @throws IOException If the file cannot be read, or the calling thread is interrupted.
+     */
+    private void readAhead(final FileChannel channel, Digest digest) throws IOException {
+        final BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<ByteBuffer>(2);
+        final BlockingQueue<ByteBuffer> filled = new LinkedBlockingQueue<ByteBuffer>();
+        empty.add(acquireBuffer(digest.isDirect()));
+        empty.add(acquireBuffer(digest.isDirect()));
+        Future<Void> reader = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+                try {
+                    boolean more;
+                    do {
+                        ByteBuffer buffer = empty.take();
+                        more = fill(channel, buffer);
+                        filled.put(buffer);
+                    } while (more);
+                } finally {
+                    filled.put(END_OF_FILE);
+                }
+                return null;
+            }
+        });
+        try {
+            ByteBuffer buffer;
+            while ((buffer = filled.take()) != END_OF_FILE) {
+                digest.update(buffer);
+                empty.put(buffer);
+            }
+            reader.get();
+        } catch (InterruptedException e) {
+            reader.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checksumming");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Reading ahead failed", e.getCause());
+        } catch (IOException | RuntimeException e) {
+            // The buffers are dropped, as the cancelled reader may still be filling one of them
+            reader.cancel(true);
+            throw e;
+        }
+        for (ByteBuffer buffer : empty) {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Fill a buffer from a file.
+     *
+     * @param channel The file.
+     * @param buffer The buffer, ready to be read from when returning.
+     * @return false, if the end of the file was reached.
+     * @throws IOException If the file cannot be read.
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        boolean more = true;
+        while (buffer.hasRemaining() && more) {
+            more = channel.read(buffer) >= 0;
+        }
+        buffer.flip();
+        return more;
+    }
+
+    /**
+     * Get a buffer not in use.
+     *
+     * @param direct Whether the buffer should be direct.
+     * @return The buffer.
+     */
+    private ByteBuffer acquireBuffer(boolean direct) {
+        ByteBuffer buffer = (direct ? freeDirectBuffers : freeHeapBuffers).poll();
+        if (buffer == null) {
+            buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the buffers not in use.
+     *
+     * @param buffer The buffer.
+     */
+    private void releaseBuffer(ByteBuffer buffer) {
+        (buffer.isDirect() ? freeDirectBuffers : freeHeapBuffers).offer(buffer);
+    }
+
+    /**
+     * Create a new checksum calculation.
+     *
+     * @param algorithm The name of the algorithm.
+     * @return The checksum calculation.
+     * @throws IllegalState If the algorithm is not supported.
+     */
+    private static Digest newDigest(String algorithm) throws IllegalState {
+        String checksumClass = CHECKSUM_CLASSES.get(algorithm);
+        if (checksumClass == null) {
+            final MessageDigest messageDigest = ChecksumCalculator.getMessageDigest(algorithm);
+            return new Digest() {
+                @Override
+                public void update(ByteBuffer buffer) {
+                    messageDigest.update(buffer);
+                }
+
+                @Override
+                public byte[] digest() {
+                    return messageDigest.digest();
+                }
+
+                @Override
+                public boolean isDirect() {
+                    return false;
+                }
+            };
+        }
+        try {
+            Class<?> c = Class.forName(checksumClass);
+            final Checksum checksum = (Checksum) c.newInstance();
+            // Checksum.update(ByteBuffer) only exists from Java 9, but both classes have it
+            final Method update = c.getMethod("update", ByteBuffer.class);
+            return new Digest() {
+                @Override
+                public void update(ByteBuffer buffer) throws IOException {
+                    try {
+                        update.invoke(checksum, buffer);
+                    } catch (IllegalAccessException | InvocationTargetException e) {
+                        throw new IOException("Could not update the '" + checksumClass + "' checksum", e);
+                    }
+                }
+
+                @Override
+                public byte[] digest() {
+                    long value = checksum.getValue();
+                    return new byte[] {(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+                }
+
+                @Override
+                public boolean isDirect() {
+                    return true;
+                }
+            };
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalState("The '" + algorithm + "' algorithm is not available", e);
+        }
+    }
+
+    /**
+     * A checksum calculation.
+     */
+    private interface Digest {
+
+        /**
+         * Update the checksum with the remaining bytes of a buffer.
+         *
+         * @param buffer The buffer.
+         * @throws IOException If the checksum cannot be updated.
+         */
+        void update(ByteBuffer buffer) throws IOException;
+
+        /**
+         * @return The checksum.
+         */
+        byte[] digest();
+
+        /**
+         * @return Whether the calculation reads direct buffers without copying them.
+         */
+        boolean isDirect();
+    }
+
+    /**
+     * Told about each file of a batch, when it is checksummed. The listener is never called by two threads at the
+     * same time.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a file has been checksummed.
+         *
+         * @param file The file.
+         * @param checksum The checksum of the file, as a hex string.
+         */
+        void checksummed(File file, String checksum);
+
+        /**
+         * Called when a file could not be checksummed.
+         *
+         * @param file The file.
+         * @param e The reason.
+         */
+        void failed(File file, Exception e);
+    }
+
+    /**
+     * A batch of files to checksum. The files on each disk are checksummed in the order they are submitted.
+     */
+    public final class Batch {
+
+        /** The name of the algorithm. */
+        private final String algorithm;
+
+        /** The listener told about each file, when it is checksummed. */
+        private final Listener listener;
+
+        /** The files waiting to be checksummed on each disk, from disk to files. */
+        private final Map<Object, Queue<File>> queues = new HashMap<Object, Queue<File>>();
+
+        /** The number of files being checksummed on each disk, from disk to count. */
+        private final Map<Object, Integer> running = new HashMap<Object, Integer>();
+
+        /** The disk of each directory seen, from directory to disk. */
+        private final Map<File, Object> disks = new HashMap<File, Object>();
+
+        /** The threads checksumming files. */
+        private final List<Future<?>> workers = new ArrayList<Future<?>>();
+
+        /** The number of files submitted, but not yet checksummed. */
+        private int outstanding;
+
+        /** Whether the batch has been cancelled. */
+        private boolean cancelled;
+
+        /**
+         * Create a batch.
+         *
+         * @param algorithm The name of the algorithm.
+         * @param listener The listener told about each file, when it is checksummed.
+         */
+        private Batch(String algorithm, Listener listener) {
+            this.algorithm = algorithm;
+            this.listener = listener;
+        }
+
+        /**
+         * Submit a file to be checksummed. The file is checksummed on another thread, and the listener is told when
+         * it is done.
+         *
+         * @param file The file.
+         * @throws ArgumentNotValid If the file is null.
+         * @throws IllegalState If the batch has been cancelled.
+         */
+        public synchronized void submit(File file) throws ArgumentNotValid, IllegalState {
+            ArgumentNotValid.checkNotNull(file, "File file");
+            if (cancelled) {
+                throw new IllegalState("The checksum batch has been cancelled");
+            }
+            final Object disk = getDisk(file);
+            Queue<File> queue = queues.get(disk);
+            if (queue == null) {
+                queue = new LinkedList<File>();
+                queues.put(disk, queue);
+                running.put(disk, 0);
+            }
+            queue.add(file);
+            outstanding++;
+            int count = running.get(disk);
+            if (count < filesPerDisk) {
+                running.put(disk, count + 1);
+                for (Iterator<Future<?>> i = workers.iterator(); i.hasNext();) {
+                    if (i.next().isDone()) {
+                        i.remove();
+                    }
+                }
+                workers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        work(disk);
+                    }
+                }));
+            }
+        }
+
+        /**
+         * Wait until all the files submitted have been checksummed, or the batch is cancelled.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public synchronized void await() throws InterruptedException {
+            while (outstanding > 0) {
+                wait();
+            }
+        }
+
+        /**
+         * Cancel the batch. Files not yet being checksummed are dropped, and the checksumming of the others is
+         * interrupted. The listener is not told about any more files.
+         */
+        public synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (Queue<File> queue : queues.values()) {
+                outstanding -= queue.size();
+                queue.clear();
+            }
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Checksum the files of a disk until there are no more.
+         *
+         * @param disk The disk.
+         */
+        private void work(Object disk) {
+            while (true) {
+                File file;
+                synchronized (this) {
+                    file = queues.get(disk).poll();
+                    if (file == null) {
+                        running.put(disk, running.get(disk) - 1);
+                        return;
+                    }
+                }
+                String checksum = null;
+                Exception failure = null;
+                try {
+                    checksum = checksum(file, algorithm);
+                } catch (Exception e) {
+                    failure = e;
+                }
+                synchronized (this) {
+                    try {
+                        if (cancelled) {
+                            log.debug("Dropping result for '{}' of cancelled checksum batch", file);
+                        } else if (failure == null) {
+                            listener.checksummed(file, checksum);
+                        } else {
+                            listener.failed(file, failure);
+                        }
+                    } catch (RuntimeException e) {
+                        log.warn("Checksum listener failed for file '{}'", file, e);
+                    } finally {
+                        outstanding--;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Find the disk of a file, i.e. the file store of its directory.
+         *
+         * @param file The file.
+         * @return An object identifying the disk.
+         */
+        private Object getDisk(File file) {
+            File dir = file.getAbsoluteFile().getParentFile();
+            Object disk = disks.get(dir);
+            if (disk == null) {
+                try {
+                    disk = Files.getFileStore(dir.toPath());
+                } catch (IOException e) {
+                    log.debug("Could not find the file store of '{}', treating it as a disk of its own", dir, e);
+                    disk = dir;
+                }
+                disks.put(dir, disk);
+            }
+            return disk;
+        }
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * A Bloom filter over the content digests in a deduplication index.
+ * <p>
+ * The filter answers whether a digest is definitely not in the index, or may be in it. The DeDuplicator uses it to skip
+ * the Lucene lookup for the (typically many) digests that are definitely not in the index. The filter is built by the
+ * index server together with the index, and stored in the index directory in the file {@link #FILENAME}.
+ */
+public class DigestBloomFilter {
+
+    /** The name of the file holding the filter in an index directory. */
+    public static final String FILENAME = "digests.bloom";
+
+    /** Marks the start of a stored filter. */
+    private static final int MAGIC = 0x4e415342;
+
+    /** The bits of the filter. */
+    private final long[] bits;
+
+    /** The number of bits in the filter. */
+    private final long numBits;
+
+    /** The number of hash functions (bits set per digest). */
+    private final int numHashFunctions;
+
+    /** The number of digests put into the filter. */
+    private long entries;
+
+    /**
+     * Create an empty filter.
+     *
+     * @param numBits The number of bits in the filter, a positive multiple of 64.
+     * @param numHashFunctions The number of hash functions.
+     */
+    private DigestBloomFilter(long numBits, int numHashFunctions) {
+        this.bits = new long[(int) (numBits / Long.SIZE)];
+        this.numBits = numBits;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    /**
+     * Create an empty filter sized for a number of digests.
+     *
+     * @param expectedEntries The number of digests expected to be put into the filter.
+     * @param falsePositiveRate The wanted rate of digests not in the filter, that the filter says may be in it. Must
+     * be between 0 and 1, both excluded.
+     * @return An empty filter.
+     */
+    public static DigestBloomFilter create(long expectedEntries, double falsePositiveRate) {
+        ArgumentNotValid.checkNotNegative(expectedEntries, "long expectedEntries");
+        ArgumentNotValid.checkTrue(falsePositiveRate > 0 && falsePositiveRate < 1,
+                "double falsePositiveRate must be between 0 and 1, but was " + falsePositiveRate);
+        long n = Math.max(1L, expectedEntries);
+        long wantedBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long words = Math.min(Integer.MAX_VALUE, Math.max(1L, (wantedBits + Long.SIZE - 1) / Long.SIZE));
+        long numBits = words * Long.SIZE;
+        int numHashFunctions = (int) Math.max(1L, Math.round((double) numBits / n * Math.log(2)));
+        return new DigestBloomFilter(numBits, numHashFunctions);
+    }
+
+    /**
+     * Build a filter over all digests in a deduplication index. The filter is sized from the number of documents in
+     * the index.
+     *
+     * @param reader A reader of the index.
+     * @param digestField The name of the field holding the digests.
+     * @param falsePositiveRate The wanted false positive rate of the filter.
+     * @return The filter, or null if the digests are not indexed.
+     * @throws IOException If the index cannot be read.
+     */
+    public static DigestBloomFilter createFromIndex(IndexReader reader, String digestField, double falsePositiveRate)
+            throws IOException {
+        ArgumentNotValid.checkNotNull(reader, "IndexReader reader");
+        ArgumentNotValid.checkNotNullOrEmpty(digestField, "String digestField");
+        Terms terms = MultiFields.getTerms(reader, digestField);
+        if (terms == null) {
+            return null;
+        }
+        DigestBloomFilter filter = create(reader.numDocs(), falsePositiveRate);
+        TermsEnum termsEnum = terms.iterator(null);
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            filter.put(term.utf8ToString());
+        }
+        return filter;
+    }
+
+    /**
+     * Put a digest into the filter.
+     *
+     * @param digest A content digest.
+     */
+    public void put(String digest) {
+        ArgumentNotValid.checkNotNull(digest, "String digest");
+        long hash1 = hash(digest);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = index(hash1 + i * hash2);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        entries++;
+    }
+
+    /**
+     * Check whether a digest may have been put into the filter.
+     *
+     * @param digest A content digest.
+     * @return false, if the digest has definitely not been put into the filter. true, if it may have been.
+     */
+    public boolean mightContain(String digest) {
+        ArgumentNotValid.checkNotNull(digest, "String digest");
+        long hash1 = hash(digest);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = index(hash1 + i * hash2);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of digests put into the filter.
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The number of bits in the filter.
+     */
+    public long getNumBits() {
+        return numBits;
+    }
+
+    /**
+     * Get the expected false positive rate of the filter, computed from the number of bits set.
+     *
+     * @return The probability that the filter says a digest not put into it may have been.
+     */
+    public double getExpectedFalsePositiveRate() {
+        long bitsSet = 0;
+        for (long word : bits) {
+            bitsSet += Long.bitCount(word);
+        }
+        return Math.pow((double) bitsSet / numBits, numHashFunctions);
+    }
+
+    /**
+     * Store the filter in a file.
+     *
+     * @param file The file to write to. Any existing content is overwritten.
+     * @throws IOFailure If the file cannot be written.
+     */
+    public void write(File file) {
+        ArgumentNotValid.checkNotNull(file, "File file");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(numHashFunctions);
+            out.writeLong(entries);
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new IOFailure("Unable to write digest filter to '" + file + "'", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Read a filter stored with {@link #write(File)}.
+     *
+     * @param file The file to read from.
+     * @return The filter.
+     * @throws IOFailure If the file cannot be read, or does not hold a filter.
+     */
+    public static DigestBloomFilter read(File file) {
+        ArgumentNotValid.checkExistsNormalFile(file, "File file");
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                throw new IOFailure("The file '" + file + "' does not hold a digest filter");
+            }
+            int numHashFunctions = in.readInt();
+            long entries = in.readLong();
+            int words = in.readInt();
+            DigestBloomFilter filter = new DigestBloomFilter((long) words * Long.SIZE, numHashFunctions);
+            for (int i = 0; i < words; i++) {
+                filter.bits[i] = in.readLong();
+            }
+            filter.entries = entries;
+            return filter;
+        } catch (IOException e) {
+            throw new IOFailure("Unable to read digest filter from '" + file + "'", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Map a combined hash to a bit of the filter.
+     *
+     * @param combinedHash A hash.
+     * @return A bit index between 0 and numBits - 1.
+     */
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % numBits;
+    }
+
+    /**
+     * Hash a digest with 64 bit FNV-1a, followed by a final mix of the bits.
+     *
+     * @param digest A content digest.
+     * @return The hash.
+     */
+    private static long hash(String digest) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < digest.length(); i++) {
+            h ^= digest.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading the bits of a hash.
+     *
+     * @param h A hash.
+     * @return The mixed hash.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -91,7 +91,7 @@ public class BatchLocalFiles {
             // Process each file:
             for (File file : files) {
                 fileCount++;
-                if (job.getFilenamePattern().matcher(file.getName()).matches()) {
+                if (job.processesFile(file.getName())) {
                     long currentTime = new Date().getTime();
                     // perform logging if necessary.
                     if (lastLoggingDate + logInterval < currentTime) {
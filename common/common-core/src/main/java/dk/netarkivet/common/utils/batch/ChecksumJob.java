@@ -27,17 +27,28 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.BatchTermination;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.ChecksumEngine;
 import dk.netarkivet.common.utils.KeyValuePair;
+import dk.netarkivet.common.utils.Settings;
 
 /**
  * Class responsible for checksumming a list of files.
+ * <p>
+ * Unless {@link CommonSettings#CHECKSUM_FILES_PER_DISK} is 0, the files are checksummed by a
+ * {@link ChecksumEngine.Batch}, in parallel across disks, and the checksums are written to the output as each file is
+ * done. The output is then only complete, and the failed files only known, when the job is finished.
  */
 @SuppressWarnings({"serial"})
 public class ChecksumJob extends FileBatchJob {
@@ -50,24 +61,95 @@ public class ChecksumJob extends FileBatchJob {
      */
     public static final String STRING_FILENAME_SEPARATOR = "##";
 
+    /** The checksumming of the files in parallel, or null if the files are checksummed one at a time. */
+    private transient ChecksumEngine.Batch batch;
+
+    /** The files which could not be checksummed in parallel. */
+    private transient Set<File> failedFiles;
+
+    /** The names of the files to process, or null if the files to process are those matching the filename pattern. */
+    private Set<String> filenamesToProcess;
+
     /** The constructor. */
     public ChecksumJob() {
         // Keep the batchJobTimeout at default (-1) so it will be overridden
         // by the settings for default batch timeout.
     }
 
+    /**
+     * Mark the job to process only the files with the given names. Unlike processOnlyFilesNamed(List), the names are
+     * looked up in a set, so a long list of names does not give a long regular expression tried on every file. This
+     * will override any previous setting of which files to process.
+     *
+     * @param specifiedFilenames The names of the files to process (without paths).
+     * @throws ArgumentNotValid If the names are null.
+     */
+    public void processOnlyFilesIn(Collection<String> specifiedFilenames) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(specifiedFilenames, "Collection<String> specifiedFilenames");
+        processOnlyFilesMatching(".*");
+        filenamesToProcess = new HashSet<String>(specifiedFilenames);
+    }
+
+    /**
+     * Set this job to match only a certain pattern. This overrides any names given to processOnlyFilesIn().
+     *
+     * @param specifiedPattern Regular expression of file names that this job will operate on.
+     * @see FileBatchJob#processOnlyFilesMatching(String)
+     */
+    @Override
+    public void processOnlyFilesMatching(String specifiedPattern) {
+        super.processOnlyFilesMatching(specifiedPattern);
+        filenamesToProcess = null;
+    }
+
+    /**
+     * Tell whether this job processes a file: if names were given to processOnlyFilesIn(), the file is processed if
+     * its name is one of them. Otherwise, it is processed if it matches the filename pattern.
+     *
+     * @param filename The name of a file, without path.
+     * @return true, if the file is to be processed by this job.
+     */
+    @Override
+    public boolean processesFile(String filename) {
+        if (filenamesToProcess != null) {
+            return filenamesToProcess.contains(filename);
+        }
+        return super.processesFile(filename);
+    }
+
     /**
      * Initialization of a ChecksumJob: a new structure for storing files failed is created.
      *
      * @param os The output stream where the output data is written.
      * @see FileBatchJob#initialize(OutputStream)
      */
-    public void initialize(OutputStream os) {
+    public void initialize(final OutputStream os) {
+        failedFiles = new HashSet<File>();
+        batch = null;
+        if (Settings.getInt(CommonSettings.CHECKSUM_FILES_PER_DISK) > 0) {
+            batch = ChecksumEngine.getInstance().startBatch(ChecksumCalculator.MD5, new ChecksumEngine.Listener() {
+                @Override
+                public void checksummed(File file, String checksum) {
+                    try {
+                        writeChecksum(file, checksum, os);
+                    } catch (IOException e) {
+                        failed(file, e);
+                    }
+                }
+
+                @Override
+                public void failed(File file, Exception e) {
+                    log.warn("Checksumming of file {} failed: ", file.getName(), e);
+                    failedFiles.add(file);
+                }
+            });
+        }
     }
 
     /**
      * Generates MD5 checksum for file identified by 'file' and writes the checksum to the given OutputStream. Errors
-     * during checksumming are logged and files on which checksumming fails are stored in filesFailed.
+     * during checksumming are logged and files on which checksumming fails are stored in filesFailed. When the files
+     * are checksummed in parallel, the file is only submitted for checksumming, and true is returned.
      *
      * @param file The file to process.
      * @param os The outputStream to write the result to
@@ -76,9 +158,12 @@ public class ChecksumJob extends FileBatchJob {
      */
     public boolean processFile(File file, OutputStream os) {
         ArgumentNotValid.checkNotNull(file, "file");
+        if (batch != null) {
+            batch.submit(file);
+            return true;
+        }
         try {
-            os.write((file.getName() + STRING_FILENAME_SEPARATOR + ChecksumCalculator.calculateMd5(file) + "\n")
-                    .getBytes());
+            writeChecksum(file, ChecksumCalculator.calculateMd5(file), os);
         } catch (IOException e) {
             log.warn("Checksumming of file {} failed: ", file.getName(), e);
             return false;
@@ -87,12 +172,38 @@ public class ChecksumJob extends FileBatchJob {
     }
 
     /**
-     * Finishing the job requires nothing particular.
+     * Write the checksum of a file to the output. This is never called by two threads at the same time.
+     *
+     * @param file The file checksummed.
+     * @param checksum The MD5 checksum of the file.
+     * @param os The outputStream to write the result to
+     * @throws IOException If the checksum cannot be written.
+     */
+    protected void writeChecksum(File file, String checksum, OutputStream os) throws IOException {
+        os.write((makeLine(file.getName(), checksum) + "\n").getBytes());
+    }
+
+    /**
+     * Finishing the job waits for the files being checksummed in parallel, and adds those that failed to filesFailed.
      *
      * @param os The output stream where the output data is written.
+     * @throws BatchTermination If interrupted while waiting for the files.
      * @see FileBatchJob#finish(OutputStream)
      */
     public void finish(OutputStream os) {
+        if (batch == null) {
+            return;
+        }
+        try {
+            batch.await();
+        } catch (InterruptedException e) {
+            batch.cancel();
+            Thread.currentThread().interrupt();
+            throw new BatchTermination("The batchjob '" + this + "' was interrupted while checksumming");
+        } finally {
+            filesFailed.addAll(failedFiles);
+            batch = null;
+        }
     }
 
     /**
@@ -0,0 +1,317 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * A ledger of the files in a directory, recording for each file its size, modification time and file key (the inode
+ * on unix) together with the checksum last computed for the file and the time of that computation.
+ * <p>
+ * The ledger lets a {@link DatedChecksumJob} tell which files are new or have been changed since they were last
+ * checksummed, so unchanged files need not be read again. The ledger of a directory is stored next to the directory,
+ * in a file with the name of the directory followed by {@link #LEDGER_SUFFIX}, so it is not itself taken for a file in
+ * the directory.
+ */
+public class ChecksumLedger {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(ChecksumLedger.class);
+
+    /** The suffix of the ledger file. */
+    public static final String LEDGER_SUFFIX = ".checksumledger";
+
+    /** The separator of the fields in a line of the ledger file. */
+    private static final String SEPARATOR = ChecksumJob.STRING_FILENAME_SEPARATOR;
+
+    /** The value written for a file without a file key. */
+    private static final String NO_FILE_KEY = "-";
+
+    /** Serializes the reading and writing of ledger files in this JVM. */
+    private static final Object LEDGER_FILE_LOCK = new Object();
+
+    /** The directory holding the files of the ledger. */
+    private final File dir;
+
+    /** The file the ledger is stored in. */
+    private final File ledgerFile;
+
+    /** The entries of the ledger, from filename to entry. */
+    private final Map<String, Entry> entries;
+
+    /** The entries recorded since the ledger was read, from filename to entry. */
+    private final Map<String, Entry> updates = new HashMap<String, Entry>();
+
+    /**
+     * Create a ledger, and read the entries stored for the directory.
+     *
+     * @param dir The directory holding the files of the ledger.
+     */
+    private ChecksumLedger(File dir) {
+        this.dir = dir.getAbsoluteFile();
+        this.ledgerFile = new File(this.dir.getParentFile(), this.dir.getName() + LEDGER_SUFFIX);
+        synchronized (LEDGER_FILE_LOCK) {
+            this.entries = read(ledgerFile);
+        }
+    }
+
+    /**
+     * Get the ledger of a directory. If no ledger has been stored for the directory, the ledger is empty.
+     *
+     * @param dir The directory holding the files of the ledger.
+     * @return The ledger of the directory.
+     * @throws ArgumentNotValid If the directory is null.
+     * @throws IOFailure If the stored ledger cannot be read.
+     */
+    public static ChecksumLedger forDirectory(File dir) throws ArgumentNotValid, IOFailure {
+        ArgumentNotValid.checkNotNull(dir, "File dir");
+        return new ChecksumLedger(dir);
+    }
+
+    /**
+     * @return The file the ledger is stored in.
+     */
+    public File getLedgerFile() {
+        return ledgerFile;
+    }
+
+    /**
+     * Get the entry of a file.
+     *
+     * @param filename The name of a file in the directory.
+     * @return The entry of the file, or null if the file is not in the ledger.
+     */
+    public Entry get(String filename) {
+        ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
+        return entries.get(filename);
+    }
+
+    /**
+     * Record the entry of a file. The entry is not stored until {@link #save()} is called.
+     *
+     * @param filename The name of a file in the directory.
+     * @param entry The entry of the file.
+     */
+    public void record(String filename, Entry entry) {
+        ArgumentNotValid.checkNotNullOrEmpty(filename, "String filename");
+        ArgumentNotValid.checkNotNull(entry, "Entry entry");
+        entries.put(filename, entry);
+        updates.put(filename, entry);
+    }
+
+    /**
+     * Store the entries recorded since the ledger was read. The entries are merged into the stored ledger, so other
+     * ledgers of the same directory saved in the meantime are not overwritten. Entries of files no longer in the
+     * directory are left out.
+     *
+     * @throws IOFailure If the ledger cannot be stored.
+     */
+    public void save() throws IOFailure {
+        synchronized (LEDGER_FILE_LOCK) {
+            Map<String, Entry> merged = read(ledgerFile);
+            merged.putAll(updates);
+            String[] filenames = dir.list();
+            Set<String> existing = new HashSet<String>(filenames == null ? Arrays.<String>asList()
+                    : Arrays.asList(filenames));
+            merged.keySet().retainAll(existing);
+
+            File tmpFile = new File(ledgerFile.getParentFile(), ledgerFile.getName() + ".tmp");
+            BufferedWriter writer = null;
+            try {
+                writer = new BufferedWriter(new FileWriter(tmpFile));
+                for (Map.Entry<String, Entry> entry : merged.entrySet()) {
+                    writer.write(entry.getKey() + SEPARATOR + entry.getValue().toLine());
+                    writer.newLine();
+                }
+                writer.close();
+                writer = null;
+            } catch (IOException e) {
+                throw new IOFailure("Could not write the checksum ledger '" + tmpFile + "'", e);
+            } finally {
+                IOUtils.closeQuietly(writer);
+            }
+            if (!tmpFile.renameTo(ledgerFile)) {
+                FileUtils.copyFile(tmpFile, ledgerFile);
+                FileUtils.remove(tmpFile);
+            }
+            updates.clear();
+        }
+    }
+
+    /**
+     * Read a stored ledger. Lines that cannot be parsed are skipped.
+     *
+     * @param file The ledger file.
+     * @return The entries of the ledger, from filename to entry. Empty if the file does not exist.
+     * @throws IOFailure If the file cannot be read.
+     */
+    private static Map<String, Entry> read(File file) throws IOFailure {
+        Map<String, Entry> result = new HashMap<String, Entry>();
+        if (!file.isFile()) {
+            return result;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length != 6) {
+                    log.warn("Skipping malformed line '{}' in checksum ledger '{}'", line, file);
+                    continue;
+                }
+                try {
+                    result.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            NO_FILE_KEY.equals(parts[3]) ? null : parts[3], Long.parseLong(parts[4]), parts[5]));
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping malformed line '{}' in checksum ledger '{}'", line, file);
+                }
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Could not read the checksum ledger '" + file + "'", e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return result;
+    }
+
+    /**
+     * The ledger entry of a file.
+     */
+    public static final class Entry {
+
+        /** The size of the file. */
+        private final long size;
+
+        /** The modification time of the file. */
+        private final long lastModified;
+
+        /** The file key of the file, e.g. device and inode, or null if not known. */
+        private final String fileKey;
+
+        /** The time the checksum was computed, or 0 if no checksum has been computed. */
+        private final long verifiedAt;
+
+        /** The checksum of the file, or null if no checksum has been computed. */
+        private final String checksum;
+
+        /**
+         * Create an entry.
+         *
+         * @param size The size of the file.
+         * @param lastModified The modification time of the file.
+         * @param fileKey The file key of the file, or null if not known.
+         * @param verifiedAt The time the checksum was computed.
+         * @param checksum The checksum of the file.
+         */
+        private Entry(long size, long lastModified, String fileKey, long verifiedAt, String checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.verifiedAt = verifiedAt;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Read the current size, modification time and file key of a file.
+         *
+         * @param file The file.
+         * @return An entry of the file without a checksum.
+         * @throws IOException If the attributes of the file cannot be read.
+         */
+        public static Entry stat(File file) throws IOException {
+            ArgumentNotValid.checkNotNull(file, "File file");
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object key = attributes.fileKey();
+            return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    key == null ? null : key.toString(), 0L, null);
+        }
+
+        /**
+         * Make an entry of the same file with a checksum.
+         *
+         * @param newChecksum The checksum of the file.
+         * @param time The time the checksum was computed.
+         * @return The new entry.
+         */
+        public Entry verified(String newChecksum, long time) {
+            ArgumentNotValid.checkNotNullOrEmpty(newChecksum, "String newChecksum");
+            return new Entry(size, lastModified, fileKey, time, newChecksum);
+        }
+
+        /**
+         * Check whether another entry describes the file unchanged, i.e. with the same size, modification time and
+         * file key.
+         *
+         * @param other Another entry.
+         * @return true, if the file is unchanged.
+         */
+        public boolean isSameFile(Entry other) {
+            return other != null && size == other.size && lastModified == other.lastModified
+                    && (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+        }
+
+        /**
+         * @return The time the checksum was computed, or 0 if no checksum has been computed.
+         */
+        public long getVerifiedAt() {
+            return verifiedAt;
+        }
+
+        /**
+         * @return The checksum of the file, or null if no checksum has been computed.
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @return The entry as a line of the ledger file, without the filename.
+         */
+        private String toLine() {
+            return size + SEPARATOR + lastModified + SEPARATOR + (fileKey == null ? NO_FILE_KEY : fileKey) + SEPARATOR
+                    + verifiedAt + SEPARATOR + checksum;
+        }
+    }
+
+}
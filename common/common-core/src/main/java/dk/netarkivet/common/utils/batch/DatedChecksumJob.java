@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Netarchivesuite - common
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Job which returns the checksums of the files in the archive which are new or changed since they were last
+ * checksummed, together with a rotating sample of the unchanged files.
+ * <p>
+ * Each directory has a {@link ChecksumLedger} recording the size, modification time, file key and checksum of its
+ * files. A file is checksummed if it is not in the ledger, if it has changed according to the ledger, or if it is due
+ * for scrubbing. Every file has a fixed phase within the scrub period, and a file is scrubbed when its phase lies
+ * between the previous run ("since") and this run, or when it has not been checksummed for a whole scrub period. Runs
+ * spread over a scrub period thus reread each unchanged file about once.
+ * <p>
+ * The output only holds the checksummed files. Files left out are not missing, they are just not reread.
+ */
+@SuppressWarnings({"serial"})
+public class DatedChecksumJob extends ChecksumJob {
+
+    /** The time of the previous run. */
+    private final Date since;
+
+    /** The period in milliseconds in which every unchanged file is checksummed at least once. */
+    private final long scrubPeriod;
+
+    /** The ledgers of the directories of the processed files. Guards the ledgers and the pending files. */
+    private transient Map<File, ChecksumLedger> ledgers;
+
+    /** The files being checksummed, with the entries they had when submitted. */
+    private transient Map<File, ChecksumLedger.Entry> pending;
+
+    /** The time this run started. */
+    private transient long now;
+
+    /** The number of files not checksummed, since they are unchanged and not due for scrubbing. */
+    private transient int noOfFilesSkipped;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param since The time of the previous run.
+     * @param scrubPeriod The period in milliseconds in which every unchanged file is checksummed at least once.
+     * @throws ArgumentNotValid If since is null, or the scrub period is not positive.
+     */
+    public DatedChecksumJob(Date since, long scrubPeriod) throws ArgumentNotValid {
+        super();
+        ArgumentNotValid.checkNotNull(since, "Date since");
+        ArgumentNotValid.checkPositive(scrubPeriod, "long scrubPeriod");
+        this.since = since;
+        this.scrubPeriod = scrubPeriod;
+    }
+
+    /**
+     * Initialization of a DatedChecksumJob: the time of this run is recorded, and the ledgers are read on demand.
+     *
+     * @param os The output stream where the output data is written.
+     */
+    @Override
+    public void initialize(OutputStream os) {
+        super.initialize(os);
+        now = System.currentTimeMillis();
+        ledgers = new HashMap<File, ChecksumLedger>();
+        pending = new HashMap<File, ChecksumLedger.Entry>();
+        noOfFilesSkipped = 0;
+    }
+
+    /**
+     * Writes the checksum of the file to the OutputStream, if the file is new, changed or due for scrubbing. The
+     * ledger of the directory of the file is updated with the checksum.
+     *
+     * @param file The file to process.
+     * @param os The outputStream to write the result to
+     * @return false If checksumming of the file fails; true if the checksum is written or if the file is skipped.
+     */
+    @Override
+    public boolean processFile(File file, OutputStream os) {
+        ArgumentNotValid.checkNotNull(file, "file");
+        String filename = file.getName();
+        try {
+            ChecksumLedger.Entry current = ChecksumLedger.Entry.stat(file);
+            synchronized (ledgers) {
+                ChecksumLedger.Entry known = getLedger(file).get(filename);
+                if (current.isSameFile(known) && !isDueForScrub(filename, known.getVerifiedAt())) {
+                    noOfFilesSkipped++;
+                    return true;
+                }
+                pending.put(file, current);
+            }
+        } catch (IOException e) {
+            log.warn("Checksumming of file {} failed: ", filename, e);
+            return false;
+        }
+        return super.processFile(file, os);
+    }
+
+    /**
+     * Writes the checksum of the file to the OutputStream, and records it in the ledger of the directory of the file.
+     *
+     * @param file The file checksummed.
+     * @param checksum The MD5 checksum of the file.
+     * @param os The outputStream to write the result to
+     * @throws IOException If the checksum cannot be written.
+     */
+    @Override
+    protected void writeChecksum(File file, String checksum, OutputStream os) throws IOException {
+        super.writeChecksum(file, checksum, os);
+        synchronized (ledgers) {
+            ChecksumLedger ledger = getLedger(file);
+            ChecksumLedger.Entry current = pending.remove(file);
+            ChecksumLedger.Entry known = ledger.get(file.getName());
+            if (current.isSameFile(known) && !checksum.equals(known.getChecksum())) {
+                log.warn("The checksum of the unmodified file '{}' has changed from '{}' to '{}'", file,
+                        known.getChecksum(), checksum);
+            }
+            ledger.record(file.getName(), current.verified(checksum, now));
+        }
+    }
+
+    /**
+     * Waits for the files being checksummed, and stores the updated ledgers.
+     *
+     * @param os The output stream where the output data is written.
+     */
+    @Override
+    public void finish(OutputStream os) {
+        try {
+            super.finish(os);
+        } finally {
+            synchronized (ledgers) {
+                for (ChecksumLedger ledger : ledgers.values()) {
+                    ledger.save();
+                }
+                pending.clear();
+            }
+            log.info("Skipped {} unchanged files not due for scrubbing since {}", noOfFilesSkipped, since);
+        }
+    }
+
+    /**
+     * Decide whether an unchanged file is to be checksummed again.
+     *
+     * @param filename The name of the file.
+     * @param verifiedAt The time the file was last checksummed.
+     * @return true, if the file is to be checksummed.
+     */
+    boolean isDueForScrub(String filename, long verifiedAt) {
+        long from = since.getTime();
+        if (now - verifiedAt >= scrubPeriod || now - from >= scrubPeriod) {
+            return true;
+        }
+        if (from >= now) {
+            return false;
+        }
+        long phase = Math.floorMod(filename.hashCode() * 0x9E3779B97F4A7C15L, scrubPeriod);
+        long windowStart = Math.floorMod(from, scrubPeriod);
+        long windowEnd = Math.floorMod(now, scrubPeriod);
+        if (windowStart <= windowEnd) {
+            return phase > windowStart && phase <= windowEnd;
+        }
+        return phase > windowStart || phase <= windowEnd;
+    }
+
+    /**
+     * Get the ledger of the directory of a file, reading it the first time it is needed.
+     *
+     * @param file The file.
+     * @return The ledger of the directory.
+     */
+    private ChecksumLedger getLedger(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        ChecksumLedger ledger = ledgers.get(dir);
+        if (ledger == null) {
+            ledger = ChecksumLedger.forDirectory(dir);
+            ledgers.put(dir, ledger);
+        }
+        return ledger;
+    }
+
+    /**
+     * Write a human-readily description of this DatedChecksumJob object.
+     *
+     * @return a human-readily description of this DatedChecksumJob object
+     */
+    @Override
+    public String toString() {
+        return super.toString() + " [since = " + since + "; scrub period = " + scrubPeriod + " ms; files skipped = "
+                + noOfFilesSkipped + "]";
+    }
+
+}
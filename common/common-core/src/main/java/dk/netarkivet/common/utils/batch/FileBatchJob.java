@@ -162,6 +162,18 @@ public abstract class FileBatchJob implements Serializable {
         return filesToProcess;
     }
 
+    /**
+     * Tell whether this job processes a file. By default, the files processed are those matching the filename
+     * pattern. Batch runners must select the files to process with this method rather than with the pattern, as a
+     * job may select its files otherwise.
+     *
+     * @param filename The name of a file, without path.
+     * @return true, if the file is to be processed by this job.
+     */
+    public boolean processesFile(String filename) {
+        return filesToProcess.matcher(filename).matches();
+    }
+
     /**
      * Return the number of files processed in this job.
      *
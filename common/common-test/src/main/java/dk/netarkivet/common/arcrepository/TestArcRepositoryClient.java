@@ -135,7 +135,7 @@ public class TestArcRepositoryClient extends TrivialArcRepositoryClient {
         int processed = 0;
         List<File> failures = new ArrayList<File>();
         for (File f1 : files) {
-            if (job.getFilenamePattern().matcher(f1.getName()).matches()) {
+            if (job.processesFile(f1.getName())) {
                 processed++;
                 if (!job.processFile(f1, os)) {
                     failures.add(f1);
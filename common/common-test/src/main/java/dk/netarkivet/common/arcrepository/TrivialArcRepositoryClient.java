@@ -28,7 +28,7 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.regex.Pattern;
+import java.util.Collection;
 
 import org.archive.io.ArchiveReader;
 import org.archive.io.ArchiveReaderFactory;
@@ -158,9 +158,7 @@ public class TrivialArcRepositoryClient implements ArcRepositoryClient {
             os = new FileOutputStream(resultFile);
             File[] files = dir.listFiles(new FilenameFilter() {
                 public boolean accept(File dir, String name) {
-                    Pattern filenamePattern = job.getFilenamePattern();
-                    return new File(dir, name).isFile()
-                            && (filenamePattern == null || filenamePattern.matcher(name).matches());
+                    return new File(dir, name).isFile() && job.processesFile(name);
                 }
             });
             BatchLocalFiles batcher = new BatchLocalFiles(files);
@@ -232,6 +230,14 @@ public class TrivialArcRepositoryClient implements ArcRepositoryClient {
         throw new NotImplementedException("TODO: Implement me!");
     }
 
+    public File getChecksums(String replicaId, Collection<String> filenames) {
+        throw new NotImplementedException("TODO: Implement me!");
+    }
+
+    public File getChecksumsMatching(String replicaId, String filenamePattern) {
+        throw new NotImplementedException("TODO: Implement me!");
+    }
+
     public File getAllFilenames(String replicaId) {
         // TODO Auto-generated method stub
         throw new NotImplementedException("TODO: Implement me!");
@@ -614,6 +614,7 @@ public class JMSConnectionMockupMQ extends JMSConnection {
     public static class TestObjectMessage implements ObjectMessage, Serializable {
         protected Serializable serializable;
         public String id;
+        protected Map<String, String> stringProperties = new HashMap<String, String>();
 
         public TestObjectMessage(Serializable serializable) {
             this.serializable = serializable;
@@ -755,7 +756,7 @@ public class JMSConnectionMockupMQ extends JMSConnection {
         }
 
         public String getStringProperty(String s) throws JMSException {
-            throw new NotImplementedException("Empty implementation - dummy method");
+            return stringProperties.get(s);
         }
 
         public Object getObjectProperty(String s) throws JMSException {
@@ -795,7 +796,7 @@ public class JMSConnectionMockupMQ extends JMSConnection {
         }
 
         public void setStringProperty(String s, String s1) throws JMSException {
-            throw new NotImplementedException("Empty implementation - dummy method");
+            stringProperties.put(s, s1);
         }
 
         public void setObjectProperty(String s, Object o) throws JMSException {
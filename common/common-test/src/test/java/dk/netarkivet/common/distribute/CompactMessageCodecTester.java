@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import javax.jms.JMSException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.testutils.preconfigured.MockupJMS;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Tests the codec encoding messages field by field, and the choice of sending messages encoded.
+ */
+@SuppressWarnings({"serial"})
+public class CompactMessageCodecTester {
+
+    ReloadSettings rs = new ReloadSettings();
+    MockupJMS mj = new MockupJMS();
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        mj.setUp();
+    }
+
+    @After
+    public void tearDown() {
+        mj.tearDown();
+        rs.tearDown();
+    }
+
+    @Test
+    public void testEncodeAndDecode() {
+        CompactMessageCodec codec = new CompactMessageCodec();
+        TextMessage msg = new TextMessage("some text");
+        msg.setNotOk("an error");
+
+        TextMessage decoded = (TextMessage) codec.decode(codec.encode(msg));
+        assertEquals("Should keep the content", "some text", decoded.text);
+        assertEquals("Should keep the receiver", msg.getTo(), decoded.getTo());
+        assertEquals("Should keep the reply channel", msg.getReplyTo(), decoded.getReplyTo());
+        assertEquals("Should keep the error", msg.getErrMsg(), decoded.getErrMsg());
+        assertFalse("Should not have been sent", decoded.hasBeenSent());
+
+        TextMessage empty = (TextMessage) codec.decode(codec.encode(new TextMessage((String) null)));
+        assertEquals("Should keep a null field", null, empty.text);
+        assertTrue("Should keep the message ok", empty.isOk());
+    }
+
+    @Test
+    public void testEncodingIsCompact() throws IOException {
+        TextMessage msg = new TextMessage("some text");
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(msg);
+        out.close();
+
+        byte[] encoded = new CompactMessageCodec().encode(msg);
+        assertTrue("Encoding of " + encoded.length + " bytes should be much smaller than the " + serialized.size()
+                + " bytes of the serialized message", encoded.length * 2 < serialized.size());
+    }
+
+    @Test
+    public void testDoesNotEncodeOtherMessages() {
+        CompactMessageCodec codec = new CompactMessageCodec();
+        NetarkivetMessage msg = new SerializedMessage(Channels.getAnyBa(), Channels.getError());
+        assertFalse("Should not encode a message that is not compact", codec.canEncode(msg));
+        try {
+            codec.encode(msg);
+            fail("Should not encode a message that is not compact");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testDecodeUnknownFormat() {
+        try {
+            new CompactMessageCodec().decode(new byte[] {42, 1, 2, 3});
+            fail("Should not decode an unknown format");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+        try {
+            new CompactMessageCodec().decode(new byte[0]);
+            fail("Should not decode an empty message");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testGetCodec() {
+        MessageCodec codec = JMSConnection.getCodec(CompactMessageCodec.class.getName());
+        assertSame("Should reuse the codec", codec, JMSConnection.getCodec(CompactMessageCodec.class.getName()));
+        try {
+            JMSConnection.getCodec(String.class.getName());
+            fail("Should not accept a class that is not a codec");
+        } catch (ArgumentNotValid e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that messages are only encoded for channels which have announced that they accept the codec, so nodes
+     * not knowing the codec still receive ObjectMessages.
+     */
+    @Test
+    public void testEncodedOnlyForChannelsAcceptingTheCodec() throws JMSException {
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, "dk.netarkivet.common.distribute.JMSConnectionMockupMQ");
+        Settings.set(CommonSettings.JMS_MESSAGE_CODEC, CompactMessageCodec.class.getName());
+        // The codec is read when the connection is created
+        JMSConnectionFactory.getInstance().cleanup();
+        JMSConnection con = JMSConnectionFactory.getInstance();
+
+        ChannelID accepting = Channels.getTheRepos();
+        ChannelID other = Channels.getTheBamon();
+        TextMessage msg = new TextMessage(Channels.getAnyBa(), accepting, "some text");
+        assertFalse("Should not encode before the channel has announced the codec", con.isEncodedFor(msg, accepting));
+
+        // A node of an older version announces no codec
+        JMSConnection.unpack(new JMSConnectionMockupMQ.TestObjectMessage(msg));
+        assertFalse("Should not encode for a channel announcing no codec", con.isEncodedFor(msg, accepting));
+
+        JMSConnectionMockupMQ.TestObjectMessage announcing = new JMSConnectionMockupMQ.TestObjectMessage(msg);
+        announcing.setStringProperty(JMSConnection.ACCEPTS_CODEC_PROPERTY, CompactMessageCodec.class.getName());
+        JMSConnection.unpack(announcing);
+        assertTrue("Should encode for the channel announcing the codec", con.isEncodedFor(msg, accepting));
+        assertFalse("Should not encode for other channels", con.isEncodedFor(msg, other));
+        assertFalse("Should not encode messages the codec does not encode",
+                con.isEncodedFor(new SerializedMessage(Channels.getAnyBa(), Channels.getError()), accepting));
+
+        announcing = new JMSConnectionMockupMQ.TestObjectMessage(msg);
+        announcing.setStringProperty(JMSConnection.ACCEPTS_CODEC_PROPERTY, "some.other.Codec");
+        JMSConnection.unpack(announcing);
+        assertFalse("Should not encode for a channel announcing another codec", con.isEncodedFor(msg, accepting));
+    }
+
+    @Test
+    public void testListenedQueuesAcceptTheCodecUntilAnnouncementStops() throws JMSException {
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, "dk.netarkivet.common.distribute.JMSConnectionMockupMQ");
+        Settings.set(CommonSettings.JMS_MESSAGE_CODEC, CompactMessageCodec.class.getName());
+        JMSConnectionFactory.getInstance().cleanup();
+        JMSConnection con = JMSConnectionFactory.getInstance();
+
+        ChannelID replyTo = Channels.getTheRepos();
+        ChannelID listened = Channels.getTheBamon();
+        TextMessage msg = new TextMessage(Channels.getAnyBa(), replyTo, "some text");
+        JMSConnectionMockupMQ.TestObjectMessage announcing = new JMSConnectionMockupMQ.TestObjectMessage(msg);
+        announcing.setStringProperty(JMSConnection.ACCEPTS_CODEC_PROPERTY, CompactMessageCodec.class.getName());
+        announcing.setStringProperty(JMSConnection.ACCEPTS_CODEC_CHANNELS_PROPERTY, listened.getName());
+        JMSConnection.unpack(announcing);
+        assertTrue("Should encode for the reply channel", con.isEncodedFor(msg, replyTo));
+        assertTrue("Should encode for the queues the sender listens on", con.isEncodedFor(msg, listened));
+
+        // The node is replaced by a node of an older version
+        JMSConnection.unpack(new JMSConnectionMockupMQ.TestObjectMessage(msg));
+        assertFalse("Should fall back to unencoded messages when the announcement stops",
+                con.isEncodedFor(msg, replyTo));
+    }
+
+    /**
+     * A message encoded field by field.
+     */
+    private static class TextMessage extends NetarkivetMessage implements CompactMessage {
+        private final String text;
+
+        public TextMessage(String text) {
+            this(Channels.getAnyBa(), Channels.getError(), text);
+        }
+
+        public TextMessage(ChannelID to, ChannelID replyTo, String text) {
+            super(to, replyTo);
+            this.text = text;
+        }
+
+        public TextMessage(DataInput in) throws IOException {
+            super(in);
+            text = CompactMessageCodec.readString(in);
+        }
+
+        @Override
+        protected void writeFields(DataOutput out) throws IOException {
+            super.writeFields(out);
+            CompactMessageCodec.writeString(out, text);
+        }
+    }
+
+    /**
+     * A message only sent serialized.
+     */
+    private static class SerializedMessage extends NetarkivetMessage {
+        public SerializedMessage(ChannelID to, ChannelID replyTo) {
+            super(to, replyTo);
+        }
+    }
+
+}
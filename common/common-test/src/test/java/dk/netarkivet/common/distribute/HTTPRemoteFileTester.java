@@ -29,7 +29,13 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
 
 import org.junit.After;
 import org.junit.Before;
@@ -38,6 +44,7 @@ import org.junit.Test;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.testutils.preconfigured.MoveTestFiles;
 import dk.netarkivet.testutils.preconfigured.ReloadSettings;
 import dk.netarkivet.testutils.preconfigured.UseTestRemoteFile;
@@ -156,6 +163,62 @@ public class HTTPRemoteFileTester {
         assertEquals("Should get right checksum", ChecksumCalculator.calculateMd5(TestInfo.FILE1), rf.getChecksum());
     }
 
+    @Test
+    public void testRangeRequest() throws Exception {
+        HTTPRemoteFile rf = new ForceRemoteHTTPRemoteFile(TestInfo.FILE1, false, false, true);
+        byte[] contents = FileUtils.readBinaryFile(TestInfo.FILE1);
+
+        HttpURLConnection connection = (HttpURLConnection) rf.url.openConnection();
+        connection.setRequestProperty("Range", "bytes=5-9");
+        assertEquals("Should get partial content", HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+        assertEquals("Should get the range asked for", "bytes 5-9/" + contents.length,
+                connection.getHeaderField("Content-Range"));
+        assertEquals("Should get the bytes of the range", new String(contents, 5, 5),
+                new String(IOUtils.toByteArray(connection.getInputStream())));
+
+        connection = (HttpURLConnection) rf.url.openConnection();
+        connection.setRequestProperty("Range", "bytes=" + contents.length + "-");
+        assertEquals("Should not serve a range beyond the file", 416, connection.getResponseCode());
+    }
+
+    @Test
+    public void testResumeFromOffset() throws Exception {
+        HTTPRemoteFile rf = new ForceRemoteHTTPRemoteFile(TestInfo.FILE1, false, false, true);
+        byte[] contents = FileUtils.readBinaryFile(TestInfo.FILE1);
+        InputStream in = new HTTPRangeInputStream(HTTPRemoteFileRegistry.getInstance(), rf.url, 3, contents.length, 0);
+        try {
+            assertEquals("Should read from the offset to the end of the file",
+                    new String(contents, 3, contents.length - 3), new String(IOUtils.toByteArray(in)));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testCopyToInRanges() throws Exception {
+        Settings.set(HTTPRemoteFile.HTTPREMOTEFILE_PARALLEL_STREAMS, "3");
+        File bigFile = new File(TestInfo.WORKING_DIR, "bigfile");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        RandomAccessFile raf = new RandomAccessFile(bigFile, "rw");
+        try {
+            for (int i = 0; i < 33; i++) {
+                block[0] = (byte) i;
+                raf.write(block);
+            }
+            raf.write(block, 0, 4711);
+        } finally {
+            raf.close();
+        }
+        HTTPRemoteFile rf = new ForceRemoteHTTPRemoteFile(bigFile, true, false, false);
+        File destFile = new File(TestInfo.WORKING_DIR, "bigfile.copy");
+        rf.copyTo(destFile);
+        assertEquals("Copy should have the size of the original", bigFile.length(), destFile.length());
+        assertEquals("Copy should have the checksum of the original", ChecksumCalculator.calculateMd5(bigFile),
+                ChecksumCalculator.calculateMd5(destFile));
+        FileUtils.remove(destFile);
+    }
+
     private class ForceRemoteHTTPRemoteFile extends HTTPRemoteFile {
         public ForceRemoteHTTPRemoteFile(File f, boolean useChecksums, boolean fileDeletable,
                 boolean multipleDownloads) {
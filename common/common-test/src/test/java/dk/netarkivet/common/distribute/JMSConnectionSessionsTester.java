@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.QueueSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.exceptions.NotImplementedException;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.testutils.ReflectUtils;
+import dk.netarkivet.testutils.preconfigured.MockupJMS;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Tests the pool of send sessions and the concurrent consumers of JMSConnection.
+ */
+@SuppressWarnings({"serial"})
+public class JMSConnectionSessionsTester {
+
+    ReloadSettings rs = new ReloadSettings();
+    MockupJMS mj = new MockupJMS();
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        mj.setUp();
+        Settings.set(CommonSettings.JMS_BROKER_CLASS, "dk.netarkivet.common.distribute.JMSConnectionMockupMQ");
+    }
+
+    @After
+    public void tearDown() {
+        mj.tearDown();
+        rs.tearDown();
+    }
+
+    @Test
+    public void testSetListenerWithConcurrency() throws JMSException {
+        // The concurrency is read when the connection is created
+        JMSConnectionFactory.getInstance().cleanup();
+        Settings.set(CommonSettings.JMS_LISTENER_CONCURRENCY, "3");
+        JMSConnection con = JMSConnectionFactory.getInstance();
+
+        MessageListener listener = new MessageListener() {
+            public void onMessage(Message message) {
+                throw new NotImplementedException("Not implemented");
+            }
+
+            public String toString() {
+                return "listener";
+            }
+        };
+        ChannelID anyBa = Channels.getAnyBa();
+        con.setListener(anyBa, listener);
+        String queueKey = anyBa.getName() + "##listener";
+        assertEquals("Should have added listener for queue", listener, con.consumers.get(queueKey)
+                .getMessageListener());
+        assertEquals("Should have two more consumers for the queue", 2, con.additionalConsumers.get(queueKey).size());
+        for (MessageConsumer consumer : con.additionalConsumers.get(queueKey)) {
+            assertEquals("Should have added listener to each consumer", listener, consumer.getMessageListener());
+        }
+
+        ChannelID allBa = Channels.getAllBa();
+        con.setListener(allBa, listener);
+        assertFalse("Should not have more consumers for a topic",
+                con.additionalConsumers.containsKey(allBa.getName() + "##listener"));
+    }
+
+    @Test
+    public void testSendMetrics() {
+        JMSConnection con = JMSConnectionFactory.getInstance();
+        con.initConnection();
+        assertEquals("Should have sent no messages", 0, con.getSendCount());
+        assertEquals("Should have no latency without messages", 0, con.getAverageSendLatency(), 0);
+
+        con.send(new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), "testMSG"));
+        con.send(new TestMessage(Channels.getAllBa(), Channels.getTheBamon(), "testMSG"));
+        assertEquals("Should have counted the messages sent", 2, con.getSendCount());
+        assertTrue("Max latency should not be below the average",
+                con.getMaxSendLatency() >= con.getAverageSendLatency());
+    }
+
+    /**
+     * Test that a queue is browsed on a session of its own, which is closed afterwards, rather than on the session
+     * serving the consumers.
+     */
+    @Test
+    public void testQueueDepthIsBrowsedOnSessionOfItsOwn() throws Exception {
+        JMSConnection con = spy(JMSConnectionFactory.getInstance());
+        QueueSession browserSession = mock(QueueSession.class);
+        Queue queue = mock(Queue.class);
+        QueueBrowser browser = mock(QueueBrowser.class);
+        doReturn(browserSession).when(con).getQueueSession();
+        when(browserSession.createQueue(Channels.getTheRepos().getName())).thenReturn(queue);
+        when(browserSession.createBrowser(queue)).thenReturn(browser);
+        when(browser.getEnumeration()).thenReturn(Collections.enumeration(Arrays.asList("first", "second")));
+
+        assertEquals("Should count the messages on the queue", 2, con.getQueueDepth(Channels.getTheRepos()));
+        verify(browser).close();
+        verify(browserSession).close();
+    }
+
+    /**
+     * Test that messages are not sent on the session serving the consumers, since a send session must only be used by
+     * one thread at a time.
+     */
+    @Test
+    public void testSendSessionsAreNotTheConsumerSession() throws Exception {
+        JMSConnection con = JMSConnectionFactory.getInstance();
+        con.initConnection();
+        con.send(new TestMessage(Channels.getTheRepos(), Channels.getTheBamon(), "testMSG"));
+
+        Field idle = ReflectUtils.getPrivateField(JMSConnection.class, "idleSendSessions");
+        Collection<?> sendSessions = (Collection<?>) idle.get(con);
+        assertFalse("Should have an idle send session after sending", sendSessions.isEmpty());
+        for (Object sendSession : sendSessions) {
+            Field session = ReflectUtils.getPrivateField(sendSession.getClass(), "session");
+            assertNotSame("The send session should not be the consumer session", con.session,
+                    session.get(sendSession));
+        }
+    }
+
+    private static class TestMessage extends NetarkivetMessage {
+        private String testID;
+
+        public TestMessage(ChannelID to, ChannelID replyTo, String testID) {
+            super(to, replyTo);
+            this.testID = testID;
+        }
+
+        public String getTestID() {
+            return testID;
+        }
+    }
+
+}
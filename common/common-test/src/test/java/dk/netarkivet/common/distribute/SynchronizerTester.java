@@ -29,7 +29,11 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -40,6 +44,8 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.testutils.ReflectUtils;
 import dk.netarkivet.testutils.preconfigured.ReloadSettings;
 
 @SuppressWarnings({"serial"})
@@ -232,6 +238,56 @@ public class SynchronizerTester {
         assertEquals("The reply message should correspond to the request " + "message", msg, sr.getReceived());
     }
 
+    /**
+     * Tests that the future returned by sendAsync is completed with the reply.
+     */
+    @Test
+    public void testSendAsync() throws Exception {
+        NetarkivetMessage msg = new TestMessage(toQ, replyToQ);
+        Synchronizer sync = new Synchronizer();
+        // The sender is also the listener, so the message is its own reply
+        con.setListener(toQ, sync);
+
+        CompletableFuture<NetarkivetMessage> reply = sync.sendAsync(msg, 0);
+        assertEquals("The reply message should correspond to the request message", msg,
+                reply.get(WAIT_TIME, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Tests that the future returned by sendAsync is completed with null on timeout.
+     */
+    @Test
+    public void testSendAsyncTimeout() throws Exception {
+        NetarkivetMessage msg = new TestMessage(toQ, replyToQ);
+        Synchronizer sync = new Synchronizer();
+        con.setListener(replyToQ, sync);
+
+        CompletableFuture<NetarkivetMessage> reply = sync.sendAsync(msg, SHORT_TIME);
+        assertNull("Should have completed with null on timeout", reply.get(WAIT_TIME, TimeUnit.SECONDS));
+        assertNull("Should return null on timeout", sync.sendAndWaitForOneReply(new TestMessage(toQ, replyToQ),
+                SHORT_TIME));
+    }
+
+    /**
+     * Tests that a request is forgotten when the thread waiting for its reply is interrupted.
+     */
+    @Test
+    public void testInterruptedWaitRemovesRequest() throws Exception {
+        Synchronizer sync = new Synchronizer();
+        con.setListener(replyToQ, sync);
+
+        Thread.currentThread().interrupt();
+        try {
+            sync.sendAndWaitForOneReply(new TestMessage(toQ, replyToQ), 0);
+            fail("Should fail when interrupted while waiting");
+        } catch (IOFailure e) {
+            // Expected
+            assertTrue("The interrupt should be kept", Thread.interrupted());
+        }
+        Field requests = ReflectUtils.getPrivateField(Synchronizer.class, "requests");
+        assertTrue("The request should be removed", ((Map<?, ?>) requests.get(sync)).isEmpty());
+    }
+
     /**
      * This test checks that we handle being woken by other than expected means.
      * <p>
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dk.netarkivet.common.Constants;
+
+/**
+ * A tool comparing the throughput of the buffer strategies of the {@link ChecksumEngine} when checksumming a file:
+ * a stream with a small heap buffer as used before the engine, a single large buffer and two large buffers with read
+ * ahead, each with a range of buffer sizes and algorithms. Given a directory, the files of the directory are also
+ * checksummed as a batch with a range of files per disk.
+ * <p>
+ * The file should be larger than the memory of the machine, or the page cache dropped between runs, for the numbers
+ * to reflect reading from disk.
+ */
+public class ChecksumEngineBenchmark {
+
+    /** The buffer sizes compared. */
+    private static final int[] BUFFER_SIZES = {64 * 1024, 1024 * 1024, 8 * 1024 * 1024};
+
+    /** The numbers of files per disk compared for batches. */
+    private static final int[] FILES_PER_DISK = {1, 2, 4};
+
+    public static void main(String[] argv) throws Exception {
+        if (argv.length < 1 || argv.length > 2) {
+            System.out.println("Usage: java " + ChecksumEngineBenchmark.class.getName() + " file|dir [iterations]");
+            System.exit(1);
+        }
+        File target = new File(argv[0]);
+        int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 3;
+        List<String> algorithms = new ArrayList<String>();
+        for (String algorithm : new String[] {ChecksumCalculator.MD5, ChecksumCalculator.CRC32,
+                ChecksumCalculator.CRC32C}) {
+            if (ChecksumEngine.isSupported(algorithm)) {
+                algorithms.add(algorithm);
+            }
+        }
+
+        if (target.isDirectory()) {
+            benchmarkBatches(target, algorithms, iterations);
+        } else {
+            benchmarkFile(target, algorithms, iterations);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Checksum a file with each buffer strategy, buffer size and algorithm.
+     */
+    private static void benchmarkFile(File file, List<String> algorithms, int iterations) throws IOException {
+        long size = file.length();
+        for (String algorithm : algorithms) {
+            long start;
+            if (ChecksumCalculator.MD5.equals(algorithm)) {
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        ChecksumCalculator.digestInputStream(in, algorithm);
+                    } finally {
+                        in.close();
+                    }
+                }
+                report(algorithm, "stream", Constants.IO_BUFFER_SIZE, size * iterations, System.nanoTime() - start);
+            }
+            for (int bufferSize : BUFFER_SIZES) {
+                for (boolean readAhead : new boolean[] {false, true}) {
+                    ChecksumEngine engine = new ChecksumEngine(bufferSize, readAhead, 1);
+                    start = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        engine.digest(file, algorithm);
+                    }
+                    report(algorithm, readAhead ? "double buffer" : "single buffer", bufferSize, size * iterations,
+                            System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checksum the files of a directory as a batch with each number of files per disk.
+     */
+    private static void benchmarkBatches(File dir, List<String> algorithms, int iterations) throws Exception {
+        File[] files = dir.listFiles();
+        long size = 0;
+        for (File file : files) {
+            size += file.isFile() ? file.length() : 0;
+        }
+        for (String algorithm : algorithms) {
+            for (int filesPerDisk : FILES_PER_DISK) {
+                ChecksumEngine engine = new ChecksumEngine(1024 * 1024, true, filesPerDisk);
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    ChecksumEngine.Batch batch = engine.startBatch(algorithm, new ChecksumEngine.Listener() {
+                        @Override
+                        public void checksummed(File file, String checksum) {
+                        }
+
+                        @Override
+                        public void failed(File file, Exception e) {
+                            System.out.println("Failed on '" + file + "': " + e);
+                        }
+                    });
+                    for (File file : files) {
+                        if (file.isFile()) {
+                            batch.submit(file);
+                        }
+                    }
+                    batch.await();
+                }
+                report(algorithm, "batch, " + filesPerDisk + " per disk", 1024 * 1024, size * iterations,
+                        System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static void report(String algorithm, String strategy, int bufferSize, long bytes, long nanos) {
+        System.out.println(String.format(Locale.ROOT, "%-7s %-20s %8d KB buffer: %8.1f MB/s", algorithm, strategy,
+                bufferSize / 1024, bytes / 1048576.0 / (nanos / 1e9)));
+    }
+
+}
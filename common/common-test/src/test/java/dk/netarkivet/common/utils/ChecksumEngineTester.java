@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.Constants;
+import dk.netarkivet.common.exceptions.IllegalState;
+import dk.netarkivet.common.utils.batch.BatchLocalFiles;
+import dk.netarkivet.common.utils.batch.ChecksumJob;
+
+/**
+ * Unit tests for the ChecksumEngine class.
+ */
+public class ChecksumEngineTester {
+
+    private static final File WORKING = new File("tests/dk/netarkivet/common/utils", "checksumengine_working");
+
+    /** A buffer size small enough for the test files to span several buffers. */
+    private static final int BUFFER_SIZE = Constants.IO_BUFFER_SIZE;
+
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() {
+        FileUtils.removeRecursively(WORKING);
+        FileUtils.createDir(WORKING);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.removeRecursively(WORKING);
+    }
+
+    /**
+     * Test that files of one buffer, several buffers and no bytes get the digests of MessageDigest, both with and
+     * without reading ahead.
+     */
+    @Test
+    public void testDigest() throws Exception {
+        for (int size : new int[] {0, 100, BUFFER_SIZE, 2 * BUFFER_SIZE, 7 * BUFFER_SIZE / 2}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            File file = new File(WORKING, "file" + size);
+            FileUtils.writeBinaryFile(file, content);
+            for (boolean readAhead : new boolean[] {true, false}) {
+                ChecksumEngine engine = new ChecksumEngine(BUFFER_SIZE, readAhead, 1);
+                for (String algorithm : Arrays.asList(ChecksumCalculator.MD5, ChecksumCalculator.SHA1)) {
+                    assertEquals("The " + algorithm + " of " + size + " bytes should be correct with read ahead "
+                            + readAhead, ChecksumCalculator.toHex(MessageDigest.getInstance(algorithm)
+                            .digest(content)), engine.checksum(file, algorithm));
+                }
+            }
+            assertEquals("ChecksumCalculator should give the same MD5", ChecksumCalculator.calculateMd5(content),
+                    ChecksumCalculator.calculateMd5(file));
+        }
+    }
+
+    /**
+     * Test the CRC32 and CRC32C checksums, and that an unknown algorithm is rejected.
+     */
+    @Test
+    public void testChecksumAlgorithms() throws Exception {
+        byte[] content = new byte[5 * BUFFER_SIZE / 2];
+        random.nextBytes(content);
+        File file = new File(WORKING, "file");
+        FileUtils.writeBinaryFile(file, content);
+        ChecksumEngine engine = new ChecksumEngine(BUFFER_SIZE, true, 1);
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        assertEquals("The CRC32 should be correct", String.format("%08x", crc.getValue()),
+                engine.checksum(file, ChecksumCalculator.CRC32));
+        if (ChecksumEngine.isSupported(ChecksumCalculator.CRC32C)) {
+            assertEquals("The CRC32C should be 8 hex digits", 8,
+                    engine.checksum(file, ChecksumCalculator.CRC32C).length());
+        }
+
+        assertFalse("An unknown algorithm should not be supported", ChecksumEngine.isSupported("NoSuchAlgorithm"));
+        try {
+            engine.checksum(file, "NoSuchAlgorithm");
+            fail("An unknown algorithm should be rejected");
+        } catch (IllegalState e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that a batch tells the listener about every file, including those which cannot be checksummed.
+     */
+    @Test
+    public void testBatch() throws Exception {
+        Map<File, String> expected = new HashMap<File, String>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[random.nextInt(3 * BUFFER_SIZE)];
+            random.nextBytes(content);
+            File file = new File(WORKING, "file" + i);
+            FileUtils.writeBinaryFile(file, content);
+            expected.put(file, ChecksumCalculator.calculateMd5(content));
+        }
+        File missing = new File(WORKING, "missing");
+
+        final Map<File, String> checksums = new HashMap<File, String>();
+        final Set<File> failed = new HashSet<File>();
+        ChecksumEngine.Batch batch = new ChecksumEngine(BUFFER_SIZE, true, 2).startBatch(ChecksumCalculator.MD5,
+                new ChecksumEngine.Listener() {
+                    @Override
+                    public void checksummed(File file, String checksum) {
+                        checksums.put(file, checksum);
+                    }
+
+                    @Override
+                    public void failed(File file, Exception e) {
+                        failed.add(file);
+                    }
+                });
+        for (File file : expected.keySet()) {
+            batch.submit(file);
+        }
+        batch.submit(missing);
+        batch.await();
+
+        assertEquals("Every file should be checksummed correctly", expected, checksums);
+        assertEquals("The missing file should fail", Collections.singleton(missing), failed);
+    }
+
+    /**
+     * Test that a ChecksumJob checksumming the files in parallel writes all the checksums and reports the failed files
+     * when finished.
+     */
+    @Test
+    public void testChecksumJobInParallel() throws Exception {
+        Set<String> expected = new HashSet<String>();
+        File[] files = new File[6];
+        for (int i = 0; i < 5; i++) {
+            byte[] content = new byte[random.nextInt(3 * BUFFER_SIZE)];
+            random.nextBytes(content);
+            files[i] = new File(WORKING, "file" + i);
+            FileUtils.writeBinaryFile(files[i], content);
+            expected.add(ChecksumJob.makeLine(files[i].getName(), ChecksumCalculator.calculateMd5(content)));
+        }
+        files[5] = new File(WORKING, "missing");
+
+        ChecksumJob job = new ChecksumJob();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new BatchLocalFiles(files).run(job, os);
+
+        assertEquals("All the checksums should be written", expected,
+                new HashSet<String>(Arrays.asList(os.toString().split("\n"))));
+        assertEquals("All the files should be processed", 6, job.getNoOfFilesProcessed());
+        assertTrue("The missing file should fail", job.getFilesFailed().contains(files[5]));
+        assertEquals("Only the missing file should fail", 1, job.getFilesFailed().size());
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * Unittests for the class DigestBloomFilter.
+ */
+public class DigestBloomFilterTester {
+
+    private static final int ENTRIES = 10000;
+
+    @Test
+    public void testNoFalseNegativesAndFalsePositiveRate() {
+        DigestBloomFilter filter = DigestBloomFilter.create(ENTRIES, 0.01);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.put(makeDigest(i));
+        }
+        assertEquals("Should count the digests put", ENTRIES, filter.getEntries());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertTrue("Should never rule out a digest put in the filter", filter.mightContain(makeDigest(i)));
+        }
+        int falsePositives = 0;
+        for (int i = ENTRIES; i < 2 * ENTRIES; i++) {
+            if (filter.mightContain(makeDigest(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positive rate should be near 1%, but was " + falsePositives + " of " + ENTRIES,
+                falsePositives < ENTRIES * 0.02);
+        double expected = filter.getExpectedFalsePositiveRate();
+        assertTrue("Expected false positive rate should be near 1%, but was " + expected,
+                expected > 0.005 && expected < 0.02);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        DigestBloomFilter filter = DigestBloomFilter.create(100, 0.01);
+        for (int i = 0; i < 100; i++) {
+            filter.put(makeDigest(i));
+        }
+        File file = File.createTempFile("digests", ".bloom");
+        try {
+            filter.write(file);
+            DigestBloomFilter read = DigestBloomFilter.read(file);
+            assertEquals("Should keep the number of digests", 100, read.getEntries());
+            assertEquals("Should keep the size", filter.getNumBits(), read.getNumBits());
+            for (int i = 0; i < 200; i++) {
+                assertEquals("Should give the same answers after reading", filter.mightContain(makeDigest(i)),
+                        read.mightContain(makeDigest(i)));
+            }
+        } finally {
+            FileUtils.remove(file);
+        }
+    }
+
+    @Test
+    public void testCreateRejectsIllegalRates() {
+        try {
+            DigestBloomFilter.create(100, 0);
+            fail("Should not accept a false positive rate of 0");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+        try {
+            DigestBloomFilter.create(100, 1);
+            fail("Should not accept a false positive rate of 1");
+        } catch (ArgumentNotValid e) {
+            // expected
+        }
+    }
+
+    /**
+     * Make a SHA-1 digest.
+     *
+     * @param i A number.
+     * @return The digest of the number.
+     */
+    private static String makeDigest(int i) {
+        return ChecksumCalculator.calculateSha1(new ByteArrayInputStream(("http://www.netarkivet.dk/" + i).getBytes()));
+    }
+
+}
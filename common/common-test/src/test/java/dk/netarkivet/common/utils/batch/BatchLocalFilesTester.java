@@ -23,6 +23,7 @@
 package dk.netarkivet.common.utils.batch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
@@ -33,13 +34,22 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.testutils.Serial;
 
 /**
  * Unit test for BatchLocalFiles.
  */
 @SuppressWarnings({"serial"})
 public class BatchLocalFilesTester {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     // Reference to test files:
     private static final String INPUT_DIR = "tests/dk/netarkivet/arcutils/data/input/";
     private static final String[] TEST_FILE_NAMES = {"Reader1.cdx", "Reader2.cdx", "Reader3.cdx"};
@@ -85,6 +95,36 @@ public class BatchLocalFilesTester {
         assertEquals(1, finished);
     }
 
+    /**
+     * Tests that a ChecksumJob given a set of filenames processes only the files named in the set, also after being
+     * serialized, and that setting a pattern afterwards overrides the set.
+     */
+    @Test
+    public void testChecksumJobProcessesOnlyFilesInSet() throws Exception {
+        for (int i = 0; i < TEST_FILE_NAMES.length; i++) {
+            testFiles[i] = tempFolder.newFile(TEST_FILE_NAMES[i]);
+            FileUtils.writeBinaryFile(testFiles[i], TEST_FILE_NAMES[i].getBytes("UTF-8"));
+        }
+        blf = new BatchLocalFiles(testFiles);
+        ChecksumJob job = new ChecksumJob();
+        job.processOnlyFilesIn(Arrays.asList(TEST_FILE_NAMES[1], "notInBitarchive.cdx"));
+        job = Serial.serial(job);
+        assertTrue("Should process the file in the set", job.processesFile(TEST_FILE_NAMES[1]));
+        assertFalse("Should not process files not in the set", job.processesFile(TEST_FILE_NAMES[0]));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blf.run(job, out);
+        assertEquals("Should only process the file in the set", 1, job.getNoOfFilesProcessed());
+        assertEquals("Should only checksum the file in the set",
+                ChecksumJob.makeLine(TEST_FILE_NAMES[1], ChecksumCalculator.calculateMd5(testFiles[1])) + "\n",
+                out.toString());
+
+        job.processOnlyFilesMatching("Reader[13].*");
+        assertTrue("Should process the files matching the pattern set afterwards",
+                job.processesFile(TEST_FILE_NAMES[0]));
+        assertFalse("Should no longer use the set", job.processesFile(TEST_FILE_NAMES[1]));
+    }
+
     /**
      * Tests that a job throwing Exception during initialize() does not get executed, and that a representation of the
      * Exception is thrown.
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * Netarchivesuite - common - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.common.utils.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.arc.TestInfo;
+
+/**
+ * Unit tests for the class DatedChecksumJob.
+ */
+public class DatedChecksumJobTester {
+
+    /** One day in milliseconds, used as scrub period. */
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private File dir = new File(TestInfo.WORKING_DIR, "filedir");
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+        FileUtils.createDir(dir);
+        FileUtils.writeBinaryFile(new File(dir, "a.arc"), "first file".getBytes());
+        FileUtils.writeBinaryFile(new File(dir, "b.arc"), "second file".getBytes());
+        FileUtils.writeBinaryFile(new File(dir, "c.arc"), "third file".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+    }
+
+    /**
+     * Test that only new and changed files are checksummed, once the files are in the ledger.
+     */
+    @Test
+    public void testOnlyNewAndChangedFiles() throws Exception {
+        Set<String> firstRun = run(new DatedChecksumJob(new Date(), DAY));
+        assertEquals("All the files should be checksummed in the first run",
+                new HashSet<String>(Arrays.asList("a.arc", "b.arc", "c.arc")), firstRun);
+        assertTrue("The ledger should be stored next to the directory",
+                new File(TestInfo.WORKING_DIR, "filedir" + ChecksumLedger.LEDGER_SUFFIX).isFile());
+
+        File changed = new File(dir, "b.arc");
+        FileUtils.writeBinaryFile(changed, "second file, changed".getBytes());
+        changed.setLastModified(changed.lastModified() + 2000);
+        FileUtils.writeBinaryFile(new File(dir, "d.arc"), "fourth file".getBytes());
+
+        Set<String> secondRun = run(new DatedChecksumJob(new Date(), DAY));
+        assertEquals("Only the changed and the new file should be checksummed",
+                new HashSet<String>(Arrays.asList("b.arc", "d.arc")), secondRun);
+        assertEquals("The ledger should hold the checksum of the changed file",
+                ChecksumCalculator.calculateMd5(changed), ChecksumLedger.forDirectory(dir).get("b.arc")
+                        .getChecksum());
+    }
+
+    /**
+     * Test that all files are checksummed when a whole scrub period has passed since the previous run.
+     */
+    @Test
+    public void testFullScrubAfterPeriod() throws Exception {
+        run(new DatedChecksumJob(new Date(), DAY));
+        Set<String> result = run(new DatedChecksumJob(new Date(System.currentTimeMillis() - DAY), DAY));
+        assertEquals("All the files should be scrubbed", 3, result.size());
+    }
+
+    /**
+     * Test that a file not checksummed for a whole scrub period is due, as is every file when a whole period has
+     * passed since the previous run, and that no unchanged file is due right after the previous run.
+     */
+    @Test
+    public void testIsDueForScrub() {
+        DatedChecksumJob job = new DatedChecksumJob(new Date(System.currentTimeMillis() - DAY / 2), DAY);
+        job.initialize(new ByteArrayOutputStream());
+        DatedChecksumJob otherHalf = new DatedChecksumJob(new Date(System.currentTimeMillis() - DAY), DAY);
+        for (String filename : Arrays.asList("a.arc", "b.arc", "c.arc", "1-1-20170101000000-00000-host.warc")) {
+            long verifiedAt = System.currentTimeMillis();
+            assertTrue("A file not checksummed for a whole period is due",
+                    job.isDueForScrub(filename, System.currentTimeMillis() - 2 * DAY));
+            assertTrue("A full period since the previous run scrubs everything",
+                    isDue(otherHalf, filename, verifiedAt));
+        }
+        assertFalse("A run right after the previous one should scrub nothing",
+                isDue(new DatedChecksumJob(new Date(System.currentTimeMillis() + 1000), DAY), "a.arc",
+                        System.currentTimeMillis()));
+    }
+
+    /**
+     * Test that files removed from the directory are removed from the ledger.
+     */
+    @Test
+    public void testRemovedFilesLeaveLedger() throws Exception {
+        run(new DatedChecksumJob(new Date(), DAY));
+        FileUtils.remove(new File(dir, "c.arc"));
+        run(new DatedChecksumJob(new Date(), DAY));
+        assertNull("The removed file should no longer be in the ledger", ChecksumLedger.forDirectory(dir).get("c.arc"));
+    }
+
+    private static boolean isDue(DatedChecksumJob job, String filename, long verifiedAt) {
+        job.initialize(new ByteArrayOutputStream());
+        return job.isDueForScrub(filename, verifiedAt);
+    }
+
+    private Set<String> run(DatedChecksumJob job) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        job.initialize(os);
+        for (File file : dir.listFiles()) {
+            assertTrue("Processing should succeed", job.processFile(file, os));
+        }
+        job.finish(os);
+        Set<String> result = new HashSet<String>();
+        for (String line : os.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                result.add(ChecksumJob.parseLine(line).getKey());
+            }
+        }
+        return result;
+    }
+
+}
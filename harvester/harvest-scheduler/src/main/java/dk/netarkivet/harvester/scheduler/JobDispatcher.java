@@ -24,7 +24,6 @@ package dk.netarkivet.harvester.scheduler;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -33,6 +32,8 @@ import org.slf4j.LoggerFactory;
 import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.PermissionDenied;
+import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.ExceptionUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
@@ -64,19 +65,36 @@ public class JobDispatcher {
     private final HarvestDefinitionDAO harvestDefinitionDAO;
     private final JobDAO jobDao;
 
+    /** The jobs ready to be dispatched. */
+    private final JobReadyQueues readyQueues;
+
     /**
+     * Create a dispatcher dispatching the jobs in the shared {@link JobReadyQueues}.
+     *
      * @param jmsConnection The JMS connection to use.
      * @param hDao The HarvestDefinitionDAO to use.
      * @param jobDao The JobDAO to use.
      */
     public JobDispatcher(JMSConnection jmsConnection, HarvestDefinitionDAO hDao, JobDAO jobDao) {
+        this(jmsConnection, hDao, jobDao, JobReadyQueues.getInstance());
+    }
+
+    /**
+     * @param jmsConnection The JMS connection to use.
+     * @param hDao The HarvestDefinitionDAO to use.
+     * @param jobDao The JobDAO to use.
+     * @param readyQueues The jobs ready to be dispatched.
+     */
+    JobDispatcher(JMSConnection jmsConnection, HarvestDefinitionDAO hDao, JobDAO jobDao, JobReadyQueues readyQueues) {
         log.info("Creating JobDispatcher");
         ArgumentNotValid.checkNotNull(jmsConnection, "jmsConnection");
         ArgumentNotValid.checkNotNull(hDao, "hDao");
         ArgumentNotValid.checkNotNull(jobDao, "jobDao");
+        ArgumentNotValid.checkNotNull(readyQueues, "readyQueues");
         this.jmsConnection = jmsConnection;
         this.harvestDefinitionDAO = hDao;
         this.jobDao = jobDao;
+        this.readyQueues = readyQueues;
     }
 
     /**
@@ -137,26 +155,40 @@ public class JobDispatcher {
     }
 
     /**
-     * Will read the next job ready to run from the database and set the job to submitted. If no jobs are ready, null will be
-     * returned.
+     * Will take the next job ready to run from the ready queue of the channel and set the job to submitted. If no jobs
+     * are ready, null will be returned.
      * <p>
-     * Note the operation is synchronized, so only one thread may start the submission of a job.
+     * The operation is not synchronized, so several harvesters may be served at the same time. A job is claimed by
+     * updating its status, which fails if another thread (or application) has updated the job since it was read.
      *
      * @param channel the job channel.
      * @return A job ready to be submitted.
      */
-    private synchronized Job prepareNextJobForSubmission(HarvestChannel channel) {
-        Iterator<Long> jobsToSubmit = jobDao.getAllJobIds(JobStatus.NEW, channel);
-        if (!jobsToSubmit.hasNext()) {
-            return null;
-        } else {
-            final long jobID = jobsToSubmit.next();
-            Job jobToSubmit = jobDao.read(jobID);
+    private Job prepareNextJobForSubmission(HarvestChannel channel) {
+        Long jobID;
+        while ((jobID = readyQueues.poll(channel, jobDao)) != null) {
+            Job jobToSubmit;
+            try {
+                jobToSubmit = jobDao.read(jobID);
+            } catch (UnknownID e) {
+                log.debug("Ready job {} no longer exists. Skipping it", jobID);
+                continue;
+            }
+            if (jobToSubmit.getStatus() != JobStatus.NEW) {
+                log.debug("Ready job {} is no longer new, but {}. Skipping it", jobID, jobToSubmit.getStatus());
+                continue;
+            }
             jobToSubmit.setStatus(JobStatus.SUBMITTED);
             jobToSubmit.setSubmittedDate(new Date());
-            jobDao.update(jobToSubmit);
+            try {
+                jobDao.update(jobToSubmit);
+            } catch (PermissionDenied e) {
+                log.debug("Ready job {} was updated by someone else before it could be submitted. Skipping it", jobID);
+                continue;
+            }
             return jobToSubmit;
         }
+        return null;
     }
 
     /**
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.scheduler;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.harvester.datamodel.HarvestChannel;
+import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.datamodel.JobDAO;
+import dk.netarkivet.harvester.datamodel.JobStatus;
+
+/**
+ * The IDs of the jobs ready to be dispatched, per harvest channel.
+ * <p>
+ * The job generators add the jobs they create, so the dispatcher does not have to look for new jobs in the database
+ * every time a harvester is ready. The jobs of a channel are read from the database the first time the channel is
+ * used, and again whenever it has no jobs left, which also picks up jobs made ready by other applications, e.g.
+ * resubmitted from the GUI.
+ * <p>
+ * A job ID taken from a queue is only a candidate: the dispatcher must check that the job is still new, and claims it
+ * by updating its status, which fails if the job was updated by someone else in the meantime.
+ */
+public final class JobReadyQueues {
+
+    /** The logger to use. */
+    private static final Logger log = LoggerFactory.getLogger(JobReadyQueues.class);
+
+    /** The instance shared by the job generators and the dispatcher. */
+    private static JobReadyQueues instance;
+
+    /** The IDs of the ready jobs, lowest first, by channel name. */
+    private final ConcurrentMap<String, NavigableSet<Long>> queues = new ConcurrentHashMap<String, NavigableSet<Long>>();
+
+    /** The names of the channels whose jobs have been read from the database. */
+    private final Set<String> loadedChannels = new ConcurrentSkipListSet<String>();
+
+    /** Use {@link #getInstance()}. */
+    JobReadyQueues() {
+    }
+
+    /**
+     * @return The instance shared by the job generators and the dispatcher.
+     */
+    public static synchronized JobReadyQueues getInstance() {
+        if (instance == null) {
+            instance = new JobReadyQueues();
+        }
+        return instance;
+    }
+
+    /**
+     * Make a new job ready for dispatch on its channel.
+     *
+     * @param job A job stored in the database.
+     * @throws ArgumentNotValid if job is null.
+     */
+    public void add(Job job) {
+        ArgumentNotValid.checkNotNull(job, "Job job");
+        if (job.getStatus() != JobStatus.NEW || job.getChannel() == null) {
+            return;
+        }
+        getQueue(job.getChannel()).add(job.getJobID());
+    }
+
+    /**
+     * Take the ID of the oldest ready job of a channel. If the jobs of the channel have not been read from the
+     * database yet, or no jobs are left, the jobs in status NEW are read from the database first.
+     *
+     * @param channel A harvest channel.
+     * @param jobDao The DAO to read the jobs from.
+     * @return The ID of a job, that was new when it was added, or null if the channel has no new jobs.
+     */
+    Long poll(HarvestChannel channel, JobDAO jobDao) {
+        ArgumentNotValid.checkNotNull(channel, "HarvestChannel channel");
+        ArgumentNotValid.checkNotNull(jobDao, "JobDAO jobDao");
+        NavigableSet<Long> queue = getQueue(channel.getName());
+        Long jobID = loadedChannels.contains(channel.getName()) ? queue.pollFirst() : null;
+        if (jobID == null) {
+            load(channel, jobDao, queue);
+            jobID = queue.pollFirst();
+        }
+        return jobID;
+    }
+
+    /**
+     * @param channelName The name of a harvest channel.
+     * @return The number of jobs ready for dispatch on the channel, as far as known.
+     */
+    int size(String channelName) {
+        return getQueue(channelName).size();
+    }
+
+    /**
+     * Read the IDs of the new jobs of a channel from the database into its queue.
+     *
+     * @param channel A harvest channel.
+     * @param jobDao The DAO to read the jobs from.
+     * @param queue The queue of the channel.
+     */
+    private void load(HarvestChannel channel, JobDAO jobDao, NavigableSet<Long> queue) {
+        int count = 0;
+        Iterator<Long> jobIDs = jobDao.getAllJobIds(JobStatus.NEW, channel);
+        while (jobIDs.hasNext()) {
+            queue.add(jobIDs.next());
+            count++;
+        }
+        if (loadedChannels.add(channel.getName()) || count > 0) {
+            log.debug("Read {} new jobs for channel {} from the database", count, channel.getName());
+        }
+    }
+
+    /**
+     * @param channelName The name of a harvest channel.
+     * @return The queue of the channel, created if needed.
+     */
+    private NavigableSet<Long> getQueue(String channelName) {
+        NavigableSet<Long> queue = queues.get(channelName);
+        if (queue == null) {
+            queue = new ConcurrentSkipListSet<Long>();
+            NavigableSet<Long> existing = queues.putIfAbsent(channelName, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        return queue;
+    }
+
+}
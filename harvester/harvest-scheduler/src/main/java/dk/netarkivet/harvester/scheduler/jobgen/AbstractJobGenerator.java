@@ -27,12 +27,23 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.Constants;
@@ -45,11 +56,13 @@ import dk.netarkivet.harvester.datamodel.HarvestDefinition;
 import dk.netarkivet.harvester.datamodel.HarvestDefinitionDAO;
 import dk.netarkivet.harvester.datamodel.HeritrixTemplate;
 import dk.netarkivet.harvester.datamodel.Job;
+import dk.netarkivet.harvester.datamodel.JobDAO;
 import dk.netarkivet.harvester.datamodel.PartialHarvest;
 import dk.netarkivet.harvester.datamodel.Schedule;
 import dk.netarkivet.harvester.datamodel.SeedList;
 import dk.netarkivet.harvester.datamodel.TemplateDAO;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
+import dk.netarkivet.harvester.scheduler.JobReadyQueues;
 
 /**
  * A base class for {@link JobGenerator} implementations. It is recommended to extend this class to implement a new job
@@ -58,6 +71,12 @@ import dk.netarkivet.harvester.datamodel.eav.EAV;
  * The base algorithm iterates over domain configurations within the harvest definition, and according to the
  * configuration ({@link HarvesterSettings#JOBGEN_DOMAIN_CONFIG_SUBSET_SIZE}, constitutes a subset of domain
  * configurations from which one or more jobs will be generated.
+ * <p>
+ * Configurations with different harvest templates never share a job, so each subset is partitioned by harvest template
+ * and the partitions are processed concurrently on a pool of {@link HarvesterSettings#JOBGEN_PARALLELISM} threads. The
+ * next subset is read while the partitions of the previous one are processed, but a subset is not processed until the
+ * previous one is done. Implementations of {@link #processDomainConfigurationSubset(HarvestDefinition, Iterator)} must
+ * therefore allow concurrent calls for the same harvest definition with configurations of different templates.
  */
 abstract class AbstractJobGenerator implements JobGenerator {
 
@@ -72,6 +91,12 @@ abstract class AbstractJobGenerator implements JobGenerator {
     /** Is deduplication enabled or disabled in the settings* */
     private final boolean DEDUPLICATION_ENABLED = Settings.getBoolean(HarvesterSettings.DEDUPLICATION_ENABLED);
 
+    /** How many partitions of a subset to process at the same time. */
+    private final int PARALLELISM = Settings.getInt(HarvesterSettings.JOBGEN_PARALLELISM);
+
+    /** The threads processing partitions, shared by all job generators. Created when first needed. */
+    private static ExecutorService partitionExecutor;
+
     @Override
     public int generateJobs(HarvestDefinition harvest) {
         log.info("Generating jobs for harvestdefinition #{}", harvest.getOid());
@@ -81,6 +106,8 @@ abstract class AbstractJobGenerator implements JobGenerator {
         if (harvest.isSnapShot()) {
             HarvestDefinitionDAO.getInstance().update(harvest);
         }
+        List<Future<Integer>> previousSubset = Collections.emptyList();
+        int previousSubsetSize = 0;
         while (domainConfigurations.hasNext()) {
             List<DomainConfiguration> subset = new ArrayList<DomainConfiguration>();
             while (domainConfigurations.hasNext() && subset.size() < DOMAIN_CONFIG_SUBSET_SIZE) {
@@ -96,11 +123,12 @@ abstract class AbstractJobGenerator implements JobGenerator {
             if (subset.size() == 0) {
                 log.warn("Processing a domain config subset of zero size for HD #{}.", harvest.getOid());
             }
-            jobsMade += processDomainConfigurationSubset(harvest, subset.iterator());
-            if (jobsMade == 0) {
-                log.warn("Created 0 jobs for HD #{} from domain cfg subset size {}.", harvest.getOid(), subset.size());
-            }
+            // The previous subset must be done, before jobs are made from this one
+            jobsMade += awaitSubset(harvest, previousSubset, previousSubsetSize);
+            previousSubset = processSubset(harvest, subset);
+            previousSubsetSize = subset.size();
         }
+        jobsMade += awaitSubset(harvest, previousSubset, previousSubsetSize);
 
         if (!harvest.isSnapShot()) {
             PartialHarvest focused = (PartialHarvest) harvest;
@@ -135,6 +163,108 @@ abstract class AbstractJobGenerator implements JobGenerator {
         return jobsMade;
     }
 
+    /**
+     * Start processing a sorted subset of domain configurations. The subset is split into partitions of configurations
+     * with the same harvest template, keeping the sort order within each partition. If there is more than one partition
+     * and the parallelism allows it, the partitions are processed on the shared pool. Otherwise the subset is processed
+     * on the calling thread.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @param subset the sorted subset.
+     * @return The processing of the partitions. Each gives the number of jobs created from the partition.
+     */
+    private List<Future<Integer>> processSubset(final HarvestDefinition harvest, List<DomainConfiguration> subset) {
+        Map<String, List<DomainConfiguration>> partitions = new LinkedHashMap<String, List<DomainConfiguration>>();
+        for (DomainConfiguration cfg : subset) {
+            List<DomainConfiguration> partition = partitions.get(cfg.getOrderXmlName());
+            if (partition == null) {
+                partition = new ArrayList<DomainConfiguration>();
+                partitions.put(cfg.getOrderXmlName(), partition);
+            }
+            partition.add(cfg);
+        }
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        if (PARALLELISM <= 1 || partitions.size() <= 1) {
+            results.add(CompletableFuture.completedFuture(processDomainConfigurationSubset(harvest, subset.iterator())));
+            return results;
+        }
+        log.debug("Processing {} domainconfigs for harvest #{} in {} partitions by harvest template", subset.size(),
+                harvest.getOid(), partitions.size());
+        ExecutorService executor = getPartitionExecutor(PARALLELISM);
+        for (final List<DomainConfiguration> partition : partitions.values()) {
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return processDomainConfigurationSubset(harvest, partition.iterator());
+                }
+            }));
+        }
+        return results;
+    }
+
+    /**
+     * Wait for the processing of all partitions of a subset.
+     *
+     * @param harvest the {@link HarvestDefinition} being processed.
+     * @param partitions The processing of the partitions.
+     * @param subsetSize The number of configurations in the subset.
+     * @return The number of jobs created from the subset.
+     * @throws IllegalState if the processing of a partition failed or was interrupted. A RuntimeException thrown by the
+     * processing is rethrown as is. All partitions are done when this is thrown.
+     */
+    private int awaitSubset(HarvestDefinition harvest, List<Future<Integer>> partitions, int subsetSize) {
+        int jobsMade = 0;
+        Throwable failure = null;
+        for (Future<Integer> partition : partitions) {
+            try {
+                jobsMade += partition.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (ExecutionException e) {
+                log.warn("Failed to generate jobs for a partition of harvest #{}", harvest.getOid(), e.getCause());
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IllegalState("Job generation for harvest #" + harvest.getOid() + " failed", failure);
+        }
+        if (!partitions.isEmpty() && jobsMade == 0) {
+            log.warn("Created 0 jobs for HD #{} from domain cfg subset size {}.", harvest.getOid(), subsetSize);
+        }
+        return jobsMade;
+    }
+
+    /**
+     * Get the pool processing partitions, creating it if necessary. The pool threads are daemon threads, so they do not
+     * keep the scheduler alive.
+     *
+     * @param threads The number of threads of the pool, if created.
+     * @return The pool.
+     */
+    private static synchronized ExecutorService getPartitionExecutor(int threads) {
+        if (partitionExecutor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            partitionExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JobGeneratorPartition-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return partitionExecutor;
+    }
+
     /**
      * Instantiates a new job.
      *
@@ -217,6 +347,17 @@ abstract class AbstractJobGenerator implements JobGenerator {
         doc.enableOrDisableDeduplication(DEDUPLICATION_ENABLED);
     }
 
+    /**
+     * Store a finished job in the database, and make it ready for dispatch in the {@link JobReadyQueues}.
+     *
+     * @param dao The DAO to store the job with.
+     * @param job the job
+     */
+    protected void storeJob(JobDAO dao, Job job) {
+        dao.create(job);
+        JobReadyQueues.getInstance().add(job);
+    }
+
     /**
      * Tests that:
      * <ol>
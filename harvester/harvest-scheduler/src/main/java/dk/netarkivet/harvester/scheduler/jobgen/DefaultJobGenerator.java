@@ -177,7 +177,7 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
                 if (job != null) {
                     // If we're done with a job, write it out
                     ++jobsMade;
-                    dao.create(job);
+                    storeJob(dao, job);
                 }
                 job = getNewJob(harvest, cfg);
                 log.trace("Created new job for harvest #{} to add configuration {} for domain {}", harvest.getOid(),
@@ -193,7 +193,7 @@ public class DefaultJobGenerator extends AbstractJobGenerator {
         if (job != null) {
             ++jobsMade;
             editJobOrderXml(job);
-            dao.create(job);
+            storeJob(dao, job);
             if (log.isTraceEnabled()) {
                 log.trace("Generated job: '{}'", job.toString());
                 StringBuilder logMsg = new StringBuilder("Job configurationsDomain:");
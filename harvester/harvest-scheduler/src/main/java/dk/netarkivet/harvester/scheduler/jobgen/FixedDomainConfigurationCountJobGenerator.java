@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,9 +115,12 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
      * Maps jobs currently being filled, for a given harvest definition, with domain configurations by harvest template
      * name. These jobs keep getting new configurations until no more configurations are left to process or the
      * configured size has been reached.
+     * <p>
+     * The partitions of a subset are processed concurrently, each with its own harvest template and hence its own keys,
+     * so the map must allow concurrent updates.
      */
     @SuppressWarnings("serial")
-    private class HarvestJobGenerationState extends HashMap<DomainConfigurationKey, Job> {
+    private class HarvestJobGenerationState extends ConcurrentHashMap<DomainConfigurationKey, Job> {
     }
 
     /**
@@ -195,7 +199,7 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
                 for (Job job : jobsUnderConstruction.values()) {
                     // The job is ready, post-process and store it in DB
                     editJobOrderXml(job);
-                    dao.create(job);
+                    storeJob(dao, job);
 
                     // Increment counter
                     ++jobsComplete;
@@ -243,7 +247,7 @@ public class FixedDomainConfigurationCountJobGenerator extends AbstractJobGenera
                     // The job is ready, post-process and store it in DB
                     editJobOrderXml(match);
                     log.debug("Storing job {} to DB.", match);
-                    dao.create(match);
+                    storeJob(dao, match);
 
                     // Increment counter
                     ++jobsComplete;
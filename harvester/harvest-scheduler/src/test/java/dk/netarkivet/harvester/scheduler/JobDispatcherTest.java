@@ -27,7 +27,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -48,6 +50,7 @@ import org.mockito.internal.verification.Times;
 
 import dk.netarkivet.common.distribute.JMSConnection;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.harvester.datamodel.AliasInfo;
 import dk.netarkivet.harvester.datamodel.H1HeritrixTemplate;
 import dk.netarkivet.harvester.datamodel.HarvestChannel;
@@ -70,6 +73,7 @@ public class JobDispatcherTest {
     private HarvestDefinitionDAO harvestDefinitionDAO;
     private JobDAO jobDAO;
     private JMSConnection jmsConnection;
+    private JobReadyQueues readyQueues;
     private HarvestChannel SELECTIVE_HARVEST_CHANNEL = new HarvestChannel("FOCUSED", false, true, "");
     private final ArgumentCaptor<DoOneCrawlMessage> crawlMessageCaptor = ArgumentCaptor
             .forClass(DoOneCrawlMessage.class);
@@ -81,7 +85,8 @@ public class JobDispatcherTest {
         harvestDefinitionDAO = mock(HarvestDefinitionDAO.class);
         jobDAO = mock(JobDAO.class);
         jmsConnection = mock(JMSConnection.class);
-        jobDispatcher = new JobDispatcher(jmsConnection, harvestDefinitionDAO, jobDAO);
+        readyQueues = new JobReadyQueues();
+        jobDispatcher = new JobDispatcher(jmsConnection, harvestDefinitionDAO, jobDAO, readyQueues);
     }
 
     /**
@@ -179,6 +184,49 @@ public class JobDispatcherTest {
         assertEquals(HarvesterChannels.getHarvestJobChannelId(SNAPSHOT), crawlMessageCaptor.getValue().getTo());
     }
 
+    /**
+     * Test that jobs made ready after the channel was read from the database are dispatched without reading the
+     * database again.
+     */
+    @Test
+    public void testSubmitReadyJobs() {
+        prepareDefaultMockAnswers(SELECTIVE_HARVEST_CHANNEL, jobMock, false);
+        jobDispatcher.submitNextNewJob(SELECTIVE_HARVEST_CHANNEL);
+        reset(jmsConnection);
+
+        Job readyJob = createJob(2);
+        prepareDefaultMockAnswers(SELECTIVE_HARVEST_CHANNEL, readyJob, false);
+        readyQueues.add(readyJob);
+        jobDispatcher.submitNextNewJob(SELECTIVE_HARVEST_CHANNEL);
+
+        verify(jmsConnection).send(crawlMessageCaptor.capture());
+        assertTrue(readyJob == crawlMessageCaptor.getValue().getJob());
+        verify(jobDAO, new Times(1)).getAllJobIds(JobStatus.NEW, SELECTIVE_HARVEST_CHANNEL);
+    }
+
+    /**
+     * Test that ready jobs, that are no longer new or are claimed by someone else, are skipped.
+     */
+    @Test
+    public void testSkipClaimedJobs() {
+        Job submittedJob = createJob(2);
+        when(submittedJob.getStatus()).thenReturn(JobStatus.SUBMITTED);
+        Job updatedJob = createJob(3);
+        prepareDefaultMockAnswers(SELECTIVE_HARVEST_CHANNEL, jobMock, false);
+        prepareDefaultMockAnswers(SELECTIVE_HARVEST_CHANNEL, updatedJob, false);
+        when(jobDAO.getAllJobIds(JobStatus.NEW, SELECTIVE_HARVEST_CHANNEL)).thenReturn(
+                Arrays.asList(new Long[] {1L, 2L, 3L}).iterator());
+        when(jobDAO.read(2L)).thenReturn(submittedJob);
+        when(jobDAO.read(3L)).thenReturn(updatedJob);
+        doThrow(new PermissionDenied("Edition has expired")).when(jobDAO).update(jobMock);
+
+        jobDispatcher.submitNextNewJob(SELECTIVE_HARVEST_CHANNEL);
+
+        verify(jobDAO, never()).update(submittedJob);
+        verify(jmsConnection).send(crawlMessageCaptor.capture());
+        assertTrue(updatedJob == crawlMessageCaptor.getValue().getJob());
+    }
+
     /**
      * Verify handling of NULL value for Job Uses MessageTestHandler()
      */
@@ -202,6 +250,7 @@ public class JobDispatcherTest {
     private Job createJob(long jobID) {
         Job job = mock(Job.class);
         when(job.getJobID()).thenReturn(jobID);
+        when(job.getStatus()).thenReturn(JobStatus.NEW);
         when(job.getOrigHarvestDefinitionID()).thenReturn(9L);
         when(job.getOrderXMLdoc()).thenReturn(
         		new H1HeritrixTemplate(new DefaultDocument(), false)); //FIXME only works for H1 templates
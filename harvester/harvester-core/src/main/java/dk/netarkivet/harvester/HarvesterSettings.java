@@ -160,6 +160,15 @@ public class HarvesterSettings {
      */
     public static String JOBGEN_DOMAIN_CONFIG_SUBSET_SIZE = "settings.harvester.scheduler.jobGen.domainConfigSubsetSize";
 
+    /**
+     * <b>settings.harvester.scheduler.jobGen.parallelism</b>: <br>
+     * How many threads generate jobs from a subset of domain configurations at the same time. The subset is
+     * partitioned by harvest template, as configurations with different templates never share a job, and the
+     * partitions are processed concurrently. The threads are shared by all harvest definitions. Set to 1 to generate
+     * jobs on the job generator thread of the harvest definition only.
+     */
+    public static String JOBGEN_PARALLELISM = "settings.harvester.scheduler.jobGen.parallelism";
+
     /**
      * <b>settings.harvester.scheduler.jobGen.config.fixedDomainCountFocused</b>: <br>
      * If the job generator is {@link FixedDomainConfigurationCountJobGenerator}, then this parameter represents the
@@ -240,6 +249,22 @@ public class HarvesterSettings {
      */
     public static String HARVEST_SERVERDIR_MINSPACE = "settings.harvester.harvesting.minSpaceLeft";
 
+    /**
+     * <b>settings.harvester.harvesting.sharedIndexDir</b>: <br>
+     * A directory where the deduplication indices are stored once for all harvesters on the host, and from which
+     * each job gets hard links to its index. The directory must be on the same file system as the serverDir for the
+     * links to be made; otherwise the index files are copied. Empty (the default) means that each harvester uses its own
+     * copy of the indices.
+     */
+    public static String HARVEST_CONTROLLER_SHARED_INDEX_DIR = "settings.harvester.harvesting.sharedIndexDir";
+
+    /**
+     * <b>settings.harvester.harvesting.sharedIndexMaxSize</b>: <br>
+     * The number of bytes the indices in the sharedIndexDir may take up, before the least recently used indices not in
+     * use by any job are deleted.
+     */
+    public static String HARVEST_CONTROLLER_SHARED_INDEX_MAX_SIZE = "settings.harvester.harvesting.sharedIndexMaxSize";
+
     /**
      * <b>settings.harvester.harvesting.oldjobsDir</b>: <br>
      * The directory in which data from old jobs is kept after uploading. Each directory from serverDir will be moved to
@@ -247,6 +272,29 @@ public class HarvesterSettings {
      */
     public static String HARVEST_CONTROLLER_OLDJOBSDIR = "settings.harvester.harvesting.oldjobsDir";
 
+    /**
+     * <b>settings.harvester.harvesting.uploadThreads</b>: <br>
+     * The number of archive files uploaded to the archive at the same time after a harvest. Default value is 4.
+     */
+    public static String HARVEST_CONTROLLER_UPLOAD_THREADS = "settings.harvester.harvesting.uploadThreads";
+
+    /**
+     * <b>settings.harvester.harvesting.uploadRetries</b>: <br>
+     * The number of times the upload of an archive file is tried again after it has failed, waiting twice as long
+     * before each new try, starting with one minute. This comes in addition to the retries made by the arcrepository
+     * client itself. Default value is 1.
+     */
+    public static String HARVEST_CONTROLLER_UPLOAD_RETRIES = "settings.harvester.harvesting.uploadRetries";
+
+    /**
+     * <b>settings.harvester.harvesting.maxPendingPostProcessing</b>: <br>
+     * The post-processing (documentation and upload) of a job is done in the background, while the harvester harvests
+     * the next job. The harvester accepts no new jobs while this number of jobs await post-processing, including the
+     * one being post-processed. The value 1 makes the harvester wait for the post-processing of a job to end, before
+     * accepting the next job. Default value is 2.
+     */
+    public static String HARVEST_CONTROLLER_MAX_PENDING_POSTPROCESSING = "settings.harvester.harvesting.maxPendingPostProcessing";
+
     /**
      * <b>settings.harvester.harvesting.channel</b>: <br>
      * Harvest channel to take jobs from. This is the default channel assigned to the harvest controller.
@@ -281,6 +329,20 @@ public class HarvesterSettings {
      */
     public static String HARVEST_MONITOR_HISTORY_SAMPLE_RATE = "settings.harvester.monitor.historySampleRate";
 
+    /**
+     * <b>settings.harvester.monitor.flushInterval</b>:<br>
+     * Time interval in seconds between writes of the received crawl progress to the DB. Only the latest progress of a
+     * job is written. A value of 0 writes the progress as soon as it is received. Default value is 5 seconds.
+     */
+    public static String HARVEST_MONITOR_FLUSH_INTERVAL = "settings.harvester.monitor.flushInterval";
+
+    /**
+     * <b>settings.harvester.monitor.historyMaxAge</b>:<br>
+     * Age in days after which historical records are deleted from the DB, even if the job is still running. A value
+     * of 0 keeps the records until the job ends. Default value is 30 days.
+     */
+    public static String HARVEST_MONITOR_HISTORY_MAX_AGE = "settings.harvester.monitor.historyMaxAge";
+
     /**
      * <b>settings.harvester.monitor.historyChartGenIntervall</b>:<br>
      * Time interval in seconds between regenerating the chart of historical data for a running job. Default value is 5
@@ -300,6 +362,21 @@ public class HarvesterSettings {
      */
     public static String HARVEST_MONITOR_DISPLAYED_FRONTIER_QUEUE_SIZE = "settings.harvester.monitor.displayedFrontierQueuesSize";
 
+    /**
+     * <b>settings.harvester.monitor.maxFrontierReportLines</b>:<br>
+     * Maximum number of lines stored in the DB per frontier report, e.g. per job and filter. The lines of the largest
+     * queues are kept. A value of 0 stores all lines. Default value is 10000.
+     */
+    public static String HARVEST_MONITOR_MAX_FRONTIER_REPORT_LINES = "settings.harvester.monitor.maxFrontierReportLines";
+
+    /**
+     * <b>settings.harvester.monitor.frontierReportDeltas</b>:<br>
+     * If true, only the lines that changed since the previous frontier report of a job are written to the DB, and the
+     * lines of the queues no longer in the report are deleted. If false, all lines are deleted and written again for
+     * every report. Default value is true.
+     */
+    public static String HARVEST_MONITOR_FRONTIER_REPORT_DELTAS = "settings.harvester.monitor.frontierReportDeltas";
+
     /**
      * <b>settings.harvester.harvesting.heritrix.crawlLoopWaitTime</b>:<br>
      * Time interval in seconds to wait during a crawl loop in the harvest controller. Default value is 20 seconds.
@@ -660,6 +737,13 @@ public class HarvesterSettings {
      */
     public static String INDEXSERVER_INDEXING_MAXCLIENTS = "settings.harvester.indexserver.maxclients";
 
+    /**
+     * <b>settings.harvester.indexserver.maxconcurrentbuilds</b>: <br>
+     * Setting for the max number of indices the indexserver builds simultaneously. Requests for an index already being
+     * built wait for that build instead of starting a new one.
+     */
+    public static String INDEXSERVER_INDEXING_MAXCONCURRENTBUILDS = "settings.harvester.indexserver.maxconcurrentbuilds";
+
     /**
      * <b>settings.harvester.indexserver.maxthreads</b>: <br>
      * Setting for the max number of threads the deduplication indexer shall use.
@@ -684,6 +768,14 @@ public class HarvesterSettings {
      */
     public static String INDEXSERVER_INDEXING_MAX_SEGMENTS = "settings.harvester.indexserver.maxsegments";
 
+    /**
+     * <b>settings.harvester.indexserver.digestFilterFalsePositiveRate</b>: <br>
+     * The false positive rate of the filter over the digests of a crawl log index, which is built along with the index
+     * and used by the DeDuplicator to skip lookups of digests not in the index. A value of 0 disables the filter.
+     * Default: 0.01.
+     */
+    public static String INDEXSERVER_DIGEST_FILTER_FALSE_POSITIVE_RATE = "settings.harvester.indexserver.digestFilterFalsePositiveRate";
+
     /**
      * <b>settings.harvester.indexserver.listeningcheckinterval</b>: <br>
      * Setting for the interval between each listening check in milliseconds. The default is 30000 (5 minutes).
@@ -709,6 +801,21 @@ public class HarvesterSettings {
      */
     public static String INDEXSERVER_INDEXING_LOOKFORDATAINOTHERBITARCHIVEREPLICAS = "settings.harvester.indexserver.lookfordataInAllBitarchiveReplicas";
 
+    /**
+     * <b>settings.harvester.indexserver.useMetadataRecordLocator</b>: <br>
+     * Setting for whether or not the metadata records of a job are located once, and then fetched with positional gets,
+     * instead of running a batchjob over the replica each time metadata for a job is needed. The default is false.
+     */
+    public static String INDEXSERVER_USE_METADATA_RECORD_LOCATOR = "settings.harvester.indexserver.useMetadataRecordLocator";
+
+    /**
+     * <b>settings.harvester.indexserver.metadataRecordLocationsMaxAge</b>: <br>
+     * The time in milliseconds the located metadata records of a job are used, before the metadata files of the job are
+     * located again. This makes metadata files uploaded or reuploaded after a job was first looked up available. The
+     * default is one day.
+     */
+    public static String INDEXSERVER_METADATA_RECORD_LOCATIONS_MAX_AGE = "settings.harvester.indexserver.metadataRecordLocationsMaxAge";
+
     /***************************/
     /* Viewerproxy - settings. */
     /***************************/
@@ -23,8 +23,10 @@
 package dk.netarkivet.harvester.datamodel;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.UnknownID;
@@ -124,6 +126,17 @@ public abstract class DomainDAO implements DAO, Iterable<Domain> {
         }
     }
 
+    /**
+     * Read a number of domains from the persistent storage. The domains are read in batches, with a fixed number of
+     * queries per batch rather than per domain.
+     *
+     * @param domainNames the names of the domains to retrieve
+     * @return Map from domain name to the retrieved Domain. Names of domains that do not exist, and invalid domain
+     * names, are not in the map.
+     * @throws ArgumentNotValid if domainNames is null
+     */
+    public abstract Map<String, Domain> readDomains(Collection<String> domainNames);
+
     /**
      * Read a domain from the persistent storage.
      *
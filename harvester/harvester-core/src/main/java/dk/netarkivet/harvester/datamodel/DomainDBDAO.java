@@ -33,13 +33,17 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -51,7 +55,6 @@ import dk.netarkivet.common.exceptions.PermissionDenied;
 import dk.netarkivet.common.exceptions.UnknownID;
 import dk.netarkivet.common.utils.DBUtils;
 import dk.netarkivet.common.utils.DomainUtils;
-import dk.netarkivet.common.utils.FilterIterator;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.harvester.datamodel.eav.EAV;
 import dk.netarkivet.harvester.datamodel.eav.EAV.AttributeAndType;
@@ -74,6 +77,9 @@ public class DomainDBDAO extends DomainDAO {
     /** The log. */
     private static final Logger log = LoggerFactory.getLogger(DomainDBDAO.class);
 
+    /** The number of domains read with one set of queries, when reading domains in bulk. */
+    private static final int DOMAIN_BATCH_SIZE = 500;
+
     /**
      * Creates a database-based implementation of the DomainDAO. Will check that all schemas have correct versions, and
      * update the ones that haven't.
@@ -767,32 +773,9 @@ public class DomainDBDAO extends DomainDAO {
                 log.warn(message);
                 throw new IOFailure(message);
             }
-            int domainId = res.getInt(1);
-            String comments = res.getString(2);
-            String crawlertraps = res.getString(3);
-            long edition = res.getLong(4);
+            Domain d = getDomainFromResultset(domainName, res);
             String defaultconfig = res.getString(5);
-            String alias = res.getString(6);
-            Date lastAliasUpdate = DBUtils.getDateMaybeNull(res, 7);
             s.close();
-            Domain d = new Domain(domainName);
-            d.setComments(comments);
-            // don't throw exception if illegal regexps are found.
-            boolean strictMode = false; 
-            String[] traps = crawlertraps.split("\n");
-            List<String> insertList = new ArrayList<String>();
-            for (String trap: traps) {
-                if (!trap.isEmpty()) { // Ignore empty traps (NAS-2480)
-                    insertList.add(trap);
-                }
-            }
-            log.debug("Found {} crawlertraps for domain '{}' in database", insertList.size(), domainName);
-            d.setCrawlerTraps(insertList, strictMode);
-            d.setID(domainId);
-            d.setEdition(edition);
-            if (alias != null) {
-                d.setAliasInfo(new AliasInfo(domainName, alias, lastAliasUpdate));
-            }
 
             readSeedlists(c, d);
             readPasswords(c, d);
@@ -810,6 +793,43 @@ public class DomainDBDAO extends DomainDAO {
         return result;
     }
 
+    /**
+     * Make a Domain based on an entry from domains (domain_id, comments, crawlertraps, edition, default configuration
+     * name, alias name, lastaliasupdate). Seedlists, passwords, configurations, owner info and history are not read.
+     *
+     * @param domainName The name of the domain.
+     * @param res a ResultSet positioned at the entry.
+     * @return a Domain based on the ResultSet entry.
+     * @throws SQLException if unable to get data from database
+     */
+    private Domain getDomainFromResultset(String domainName, ResultSet res) throws SQLException {
+        int domainId = res.getInt(1);
+        String comments = res.getString(2);
+        String crawlertraps = res.getString(3);
+        long edition = res.getLong(4);
+        String alias = res.getString(6);
+        Date lastAliasUpdate = DBUtils.getDateMaybeNull(res, 7);
+        Domain d = new Domain(domainName);
+        d.setComments(comments);
+        // don't throw exception if illegal regexps are found.
+        boolean strictMode = false; 
+        String[] traps = crawlertraps.split("\n");
+        List<String> insertList = new ArrayList<String>();
+        for (String trap: traps) {
+            if (!trap.isEmpty()) { // Ignore empty traps (NAS-2480)
+                insertList.add(trap);
+            }
+        }
+        log.debug("Found {} crawlertraps for domain '{}' in database", insertList.size(), domainName);
+        d.setCrawlerTraps(insertList, strictMode);
+        d.setID(domainId);
+        d.setEdition(edition);
+        if (alias != null) {
+            d.setAliasInfo(new AliasInfo(domainName, alias, lastAliasUpdate));
+        }
+        return d;
+    }
+
     /**
      * Read the configurations for the domain. This should not be called until after passwords and seedlists are read.
      *
@@ -941,25 +961,7 @@ public class DomainDBDAO extends DomainDAO {
         s.setLong(1, d.getID());
         ResultSet res = s.executeQuery();
         while (res.next()) {
-            long hiID = res.getLong(1);
-            int stopreasonNum = res.getInt(2);
-            StopReason stopreason = StopReason.getStopReason(stopreasonNum);
-            long objectCount = res.getLong(3);
-            long byteCount = res.getLong(4);
-            String configName = res.getString(5);
-            Long jobId = res.getLong(6);
-            if (res.wasNull()) {
-                jobId = null;
-            }
-            long harvestId = res.getLong(7);
-            Date harvestTime = new Date(res.getTimestamp(8).getTime());
-            HarvestInfo hi;
-            // XML DAOs didn't keep the job id in harvestinfo, so some
-            // entries will be null.
-            hi = new HarvestInfo(harvestId, jobId, d.getName(), configName, harvestTime, byteCount, objectCount,
-                    stopreason);
-            hi.setID(hiID);
-            d.getHistory().addHarvestInfo(hi);
+            d.getHistory().addHarvestInfo(getHarvestInfoFromResultset(d.getName(), res));
         }
     }
 
@@ -1106,24 +1108,428 @@ public class DomainDBDAO extends DomainDAO {
                             + " WHERE domains.defaultconfig=configurations.config_id"
                             + " AND configurations.config_id=eav_attribute.entity_id");
             log.info("Retrieved all {} domains used for Snapshot harvesting that has attributes for their default configs", domainNamesWithAttributes.size());
-            domainNames = domainNames.stream().filter(DomainUtils::isValidDomainName).collect(Collectors.toList());
-            //  Remove the content of domainNamesWithAttributes from domainNames
-            domainNames.removeAll(domainNamesWithAttributes);
-            log.info("Removed all {} domains with attributes from the total list, reducing total-list to {}", domainNamesWithAttributes.size(), domainNames.size());
-            // Add the remainder of domainNames to domainNamesWithAttributes, so the domain configs with attributes will be handled first.
-            domainNamesWithAttributes.addAll(domainNames);
-            log.info("Remainder of total list merged with list of domains w/ attributes");
-
-            return new FilterIterator<String, Domain>(domainNamesWithAttributes.iterator()) {
-                public Domain filter(String s) {
-                    return readKnown(s);
+            // Put the domains with attributes first, so the domain configs with attributes will be handled first.
+            // The remainder is found with a set lookup per domain, as the lists may hold millions of domains.
+            Set<String> withAttributes = new HashSet<String>(domainNamesWithAttributes);
+            List<String> orderedDomainNames = new ArrayList<String>(domainNames.size());
+            for (String name : domainNamesWithAttributes) {
+                if (DomainUtils.isValidDomainName(name)) {
+                    orderedDomainNames.add(name);
                 }
-            };
+            }
+            for (String name : domainNames) {
+                if (!withAttributes.contains(name) && DomainUtils.isValidDomainName(name)) {
+                    orderedDomainNames.add(name);
+                }
+            }
+            log.info("Remainder of total list merged with list of domains w/ attributes, giving {} domains",
+                    orderedDomainNames.size());
+
+            return new DomainBatchIterator(orderedDomainNames.iterator());
         } finally {
             HarvestDBConnection.release(c);
         }
     }
 
+    @Override
+    public Map<String, Domain> readDomains(Collection<String> domainNames) {
+        ArgumentNotValid.checkNotNull(domainNames, "Collection<String> domainNames");
+        Map<String, Domain> domains = new HashMap<String, Domain>();
+        List<String> names = new ArrayList<String>(DOMAIN_BATCH_SIZE);
+        for (Iterator<String> i = domainNames.iterator(); i.hasNext();) {
+            String name = i.next();
+            if (DomainUtils.isValidDomainName(name)) {
+                names.add(name);
+            }
+            if (!names.isEmpty() && (names.size() == DOMAIN_BATCH_SIZE || !i.hasNext())) {
+                Connection c = HarvestDBConnection.get();
+                try {
+                    domains.putAll(readKnownBatch(c, names));
+                } finally {
+                    HarvestDBConnection.release(c);
+                }
+                names.clear();
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Iterates over domains given by name, reading them from the database in batches of {@link #DOMAIN_BATCH_SIZE}
+     * domains. Each batch is read with a fixed number of queries, rather than the handful of queries per domain that
+     * {@link #readKnown(Connection, String)} uses. A connection is only held while a batch is read.
+     */
+    private class DomainBatchIterator implements Iterator<Domain> {
+        /** The names of the domains not yet read. */
+        private final Iterator<String> domainNames;
+        /** The domains of the current batch not yet returned. */
+        private Iterator<Domain> batch = Collections.<Domain>emptyList().iterator();
+
+        /**
+         * Create an iterator over the given domains.
+         *
+         * @param domainNames The names of known domains, in the order they should be returned.
+         */
+        DomainBatchIterator(Iterator<String> domainNames) {
+            this.domainNames = domainNames;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!batch.hasNext() && domainNames.hasNext()) {
+                List<String> names = new ArrayList<String>(DOMAIN_BATCH_SIZE);
+                while (names.size() < DOMAIN_BATCH_SIZE && domainNames.hasNext()) {
+                    names.add(domainNames.next());
+                }
+                Map<String, Domain> domains;
+                Connection c = HarvestDBConnection.get();
+                try {
+                    domains = readKnownBatch(c, names);
+                } finally {
+                    HarvestDBConnection.release(c);
+                }
+                List<Domain> ordered = new ArrayList<Domain>(names.size());
+                for (String name : names) {
+                    Domain d = domains.get(name);
+                    if (d == null) {
+                        final String message = "Error reading existing domain '" + name
+                                + "' due to database inconsistency. Please ask your database admin to check "
+                                + "your 'domains' and 'configurations' tables for any inconsistencies.";
+                        log.warn(message);
+                        throw new IOFailure(message);
+                    }
+                    ordered.add(d);
+                }
+                batch = ordered.iterator();
+            }
+            return batch.hasNext();
+        }
+
+        @Override
+        public Domain next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more domains");
+            }
+            return batch.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove domains through this iterator");
+        }
+    }
+
+    /**
+     * Read a number of known domains with all their seedlists, passwords, configurations, owner info and history. This
+     * gives the same domains as {@link #readKnown(Connection, String)} for each name, but reads them with one query
+     * per table for the entire set of domains.
+     *
+     * @param c A connection to the database
+     * @param domainNames The names of the domains to read. At most {@link #DOMAIN_BATCH_SIZE} names.
+     * @return Map from domain name to domain. Names of domains that do not exist are not in the map.
+     * @throws IOFailure on SQL errors, or if a domain read is inconsistent.
+     */
+    private synchronized Map<String, Domain> readKnownBatch(Connection c, List<String> domainNames) {
+        ArgumentNotValid.checkNotNullOrEmpty(domainNames, "List<String> domainNames");
+        Map<Long, Domain> domains = new HashMap<Long, Domain>();
+        Map<Long, String> defaultConfigs = new HashMap<Long, String>();
+        PreparedStatement s = null;
+        try {
+            s = DBUtils.prepareStatement(c, "SELECT domains.domain_id, domains.comments, domains.crawlertraps, "
+                    + "domains.edition, configurations.name, (SELECT name FROM domains as aliasdomains"
+                    + "  WHERE aliasdomains.domain_id = domains.alias), domains.lastaliasupdate, domains.name "
+                    + "FROM domains, configurations WHERE domains.name IN " + makeParameterList(domainNames.size())
+                    + "  AND domains.defaultconfig = configurations.config_id", domainNames.toArray());
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                Domain d = getDomainFromResultset(res.getString(8), res);
+                domains.put(d.getID(), d);
+                defaultConfigs.put(d.getID(), res.getString(5));
+            }
+            s.close();
+            Map<String, Domain> result = new HashMap<String, Domain>();
+            if (domains.isEmpty()) {
+                return result;
+            }
+            readSeedlists(c, domains);
+            readPasswords(c, domains);
+            readConfigurations(c, domains);
+            for (Map.Entry<Long, Domain> entry : domains.entrySet()) {
+                // Now that configs are in, we can set the default
+                entry.getValue().setDefaultConfiguration(defaultConfigs.get(entry.getKey()));
+                result.put(entry.getValue().getName(), entry.getValue());
+            }
+            readOwnerInfo(c, domains);
+            readHistoryInfo(c, domains);
+            return result;
+        } catch (SQLException e) {
+            throw new IOFailure("SQL Error while reading " + domainNames.size() + " domains starting with "
+                    + domainNames.get(0) + "\n", e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
+    }
+
+    /**
+     * Make a parenthesized list of parameter markers for an SQL IN clause.
+     *
+     * @param size The number of parameters.
+     * @return A string like "(?,?,?)".
+     */
+    private static String makeParameterList(int size) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Read seedlists for a number of domains.
+     *
+     * @param c A connection to the database
+     * @param domains The domains being read, by ID.
+     * @throws SQLException If database errors occur.
+     */
+    private void readSeedlists(Connection c, Map<Long, Domain> domains) throws SQLException {
+        PreparedStatement s = DBUtils.prepareStatement(c, "SELECT seedlist_id, name, comments, seeds, domain_id"
+                + " FROM seedlists WHERE domain_id IN " + makeParameterList(domains.size()), domains.keySet()
+                .toArray());
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            final SeedList seedlist = getSeedListFromResultset(res);
+            domains.get(res.getLong(5)).addSeedList(seedlist);
+        }
+        s.close();
+        for (Domain d : domains.values()) {
+            if (!d.getAllSeedLists().hasNext()) {
+                final String msg = "Domain " + d + " loaded with no seedlists";
+                log.warn(msg);
+                throw new IOFailure(msg);
+            }
+        }
+    }
+
+    /**
+     * Read passwords for a number of domains.
+     *
+     * @param c A connection to the database
+     * @param domains The domains being read, by ID.
+     * @throws SQLException If database errors occur.
+     */
+    private void readPasswords(Connection c, Map<Long, Domain> domains) throws SQLException {
+        PreparedStatement s = DBUtils.prepareStatement(c, "SELECT password_id, name, comments, url, "
+                + "realm, username, password, domain_id FROM passwords WHERE domain_id IN "
+                + makeParameterList(domains.size()), domains.keySet().toArray());
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            final Password pwd = new Password(res.getString(2), res.getString(3), res.getString(4), res.getString(5),
+                    res.getString(6), res.getString(7));
+            pwd.setID(res.getLong(1));
+            domains.get(res.getLong(8)).addPassword(pwd);
+        }
+        s.close();
+    }
+
+    /**
+     * Read the configurations for a number of domains. This should not be called until after passwords and seedlists
+     * are read.
+     * <p>
+     * The EAV attributes are only read for the configurations that have any. The others get the attribute types
+     * without values, as read once for the first of them.
+     *
+     * @param c A connection to the database
+     * @param domains The domains being read, by ID.
+     * @throws SQLException If database errors occur.
+     */
+    private void readConfigurations(Connection c, Map<Long, Domain> domains) throws SQLException {
+        Object[] domainIds = domains.keySet().toArray();
+        String inDomains = makeParameterList(domainIds.length);
+        Map<Long, List<String>> seedlistNames = selectNamesByConfig(c, "SELECT config_seedlists.config_id, "
+                + "seedlists.name FROM configurations, config_seedlists, seedlists "
+                + "WHERE configurations.domain_id IN " + inDomains
+                + " AND config_seedlists.config_id = configurations.config_id"
+                + " AND config_seedlists.seedlist_id = seedlists.seedlist_id", domainIds);
+        Map<Long, List<String>> passwordNames = selectNamesByConfig(c, "SELECT config_passwords.config_id, "
+                + "passwords.name FROM configurations, config_passwords, passwords "
+                + "WHERE configurations.domain_id IN " + inDomains
+                + " AND config_passwords.config_id = configurations.config_id"
+                + " AND config_passwords.password_id = passwords.password_id", domainIds);
+        Object[] eavArgs = new Object[domainIds.length + 1];
+        eavArgs[0] = EAV.DOMAIN_TREE_ID;
+        System.arraycopy(domainIds, 0, eavArgs, 1, domainIds.length);
+        Set<Long> configsWithAttributes = new HashSet<Long>(DBUtils.selectLongList(c, "SELECT DISTINCT "
+                + "configurations.config_id FROM configurations, eav_attribute WHERE eav_attribute.tree_id = ?"
+                + " AND configurations.domain_id IN " + inDomains
+                + " AND eav_attribute.entity_id = configurations.config_id", eavArgs));
+        List<AttributeAndType> noAttributes = null;
+
+        PreparedStatement s = DBUtils.prepareStatement(c, "SELECT config_id, configurations.name, comments, "
+                + "ordertemplates.name, maxobjects, maxrate, maxbytes, domain_id"
+                + " FROM configurations, ordertemplates WHERE domain_id IN " + inDomains
+                + "  AND configurations.template_id = ordertemplates.template_id", domainIds);
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            long domainconfigId = res.getLong(1);
+            String domainconfigName = res.getString(2);
+            Domain d = domains.get(res.getLong(8));
+            List<SeedList> seedlists = new ArrayList<SeedList>();
+            if (seedlistNames.containsKey(domainconfigId)) {
+                for (String seedlistName : seedlistNames.get(domainconfigId)) {
+                    seedlists.add(d.getSeedList(seedlistName));
+                }
+            }
+            if (seedlists.isEmpty()) {
+                String message = "Configuration " + domainconfigName + " of " + d + " has no seedlists";
+                log.warn(message);
+                throw new IOFailure(message);
+            }
+            List<Password> passwords = new ArrayList<Password>();
+            if (passwordNames.containsKey(domainconfigId)) {
+                for (String passwordName : passwordNames.get(domainconfigId)) {
+                    passwords.add(d.getPassword(passwordName));
+                }
+            }
+            DomainConfiguration dc = new DomainConfiguration(domainconfigName, d, seedlists, passwords);
+            dc.setOrderXmlName(res.getString(4));
+            dc.setMaxObjects(res.getLong(5));
+            dc.setMaxRequestRate(res.getInt(6));
+            dc.setComments(res.getString(3));
+            dc.setMaxBytes(res.getLong(7));
+            dc.setID(domainconfigId);
+            d.addConfiguration(dc);
+
+            // EAV
+            List<AttributeAndType> attributesAndTypes;
+            if (configsWithAttributes.contains(domainconfigId)) {
+                attributesAndTypes = EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID, (int) domainconfigId);
+            } else {
+                if (noAttributes == null) {
+                    noAttributes = EAV.getInstance().getAttributesAndTypes(EAV.DOMAIN_TREE_ID, (int) domainconfigId);
+                }
+                attributesAndTypes = new ArrayList<AttributeAndType>(noAttributes.size());
+                for (AttributeAndType aat : noAttributes) {
+                    attributesAndTypes.add(new AttributeAndType(aat.attributeType, null));
+                }
+            }
+            dc.setAttributesAndTypes(attributesAndTypes);
+        }
+        s.close();
+        for (Domain d : domains.values()) {
+            if (!d.getAllConfigurations().hasNext()) {
+                String message = "Loaded domain " + d + " with no configurations";
+                log.warn(message);
+                throw new IOFailure(message);
+            }
+        }
+    }
+
+    /**
+     * Select (config_id, name) pairs, grouped by config_id.
+     *
+     * @param c A connection to the database
+     * @param query A query selecting a config_id and a name.
+     * @param args The arguments of the query.
+     * @return Map from config_id to the names selected for it.
+     * @throws SQLException If database errors occur.
+     */
+    private static Map<Long, List<String>> selectNamesByConfig(Connection c, String query, Object... args)
+            throws SQLException {
+        Map<Long, List<String>> names = new HashMap<Long, List<String>>();
+        PreparedStatement s = DBUtils.prepareStatement(c, query, args);
+        try {
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                long configId = res.getLong(1);
+                List<String> configNames = names.get(configId);
+                if (configNames == null) {
+                    configNames = new ArrayList<String>();
+                    names.put(configId, configNames);
+                }
+                configNames.add(res.getString(2));
+            }
+        } finally {
+            s.close();
+        }
+        return names;
+    }
+
+    /**
+     * Read owner info entries for a number of domains.
+     *
+     * @param c A connection to the database
+     * @param domains The domains being read, by ID.
+     * @throws SQLException If database errors occur.
+     */
+    private void readOwnerInfo(Connection c, Map<Long, Domain> domains) throws SQLException {
+        PreparedStatement s = DBUtils.prepareStatement(c, "SELECT ownerinfo_id, created, info, domain_id"
+                + " FROM ownerinfo WHERE domain_id IN " + makeParameterList(domains.size()), domains.keySet()
+                .toArray());
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            final DomainOwnerInfo ownerinfo = new DomainOwnerInfo(new Date(res.getTimestamp(2).getTime()),
+                    res.getString(3));
+            ownerinfo.setID(res.getLong(1));
+            domains.get(res.getLong(4)).addOwnerInfo(ownerinfo);
+        }
+        s.close();
+    }
+
+    /**
+     * Read history info entries for a number of domains.
+     *
+     * @param c A connection to the database
+     * @param domains The domains being read, by ID.
+     * @throws SQLException If database errors occur.
+     */
+    private void readHistoryInfo(Connection c, Map<Long, Domain> domains) throws SQLException {
+        PreparedStatement s = DBUtils.prepareStatement(c, "SELECT historyinfo_id, stopreason, objectcount, "
+                + "bytecount, name, job_id, harvest_id, harvest_time, configurations.domain_id "
+                + "FROM historyinfo, configurations WHERE configurations.domain_id IN "
+                + makeParameterList(domains.size()) + "  AND historyinfo.config_id = configurations.config_id",
+                domains.keySet().toArray());
+        ResultSet res = s.executeQuery();
+        while (res.next()) {
+            Domain d = domains.get(res.getLong(9));
+            HarvestInfo hi = getHarvestInfoFromResultset(d.getName(), res);
+            d.getHistory().addHarvestInfo(hi);
+        }
+        s.close();
+    }
+
+    /**
+     * Make a HarvestInfo based on an entry from historyinfo (historyinfo_id, stopreason, objectcount, bytecount,
+     * configuration name, job_id, harvest_id, harvest_time).
+     *
+     * @param domainName The name of the domain harvested.
+     * @param res a ResultSet positioned at the entry.
+     * @return a HarvestInfo based on the ResultSet entry.
+     * @throws SQLException if unable to get data from database
+     */
+    private static HarvestInfo getHarvestInfoFromResultset(String domainName, ResultSet res) throws SQLException {
+        long hiID = res.getLong(1);
+        int stopreasonNum = res.getInt(2);
+        StopReason stopreason = StopReason.getStopReason(stopreasonNum);
+        long objectCount = res.getLong(3);
+        long byteCount = res.getLong(4);
+        String configName = res.getString(5);
+        Long jobId = res.getLong(6);
+        if (res.wasNull()) {
+            jobId = null;
+        }
+        long harvestId = res.getLong(7);
+        Date harvestTime = new Date(res.getTimestamp(8).getTime());
+        // XML DAOs didn't keep the job id in harvestinfo, so some
+        // entries will be null.
+        HarvestInfo hi = new HarvestInfo(harvestId, jobId, domainName, configName, harvestTime, byteCount,
+                objectCount, stopreason);
+        hi.setID(hiID);
+        return hi;
+    }
+
     @Override
     public List<String> getDomains(String glob) {
         ArgumentNotValid.checkNotNullOrEmpty(glob, "glob");
@@ -1540,18 +1946,128 @@ public class DomainDBDAO extends DomainDAO {
         ArgumentNotValid.checkNotNull(previousHarvestDefinition, "previousHarvestDefinition");
         // For each domainConfig, get harvest infos if there is any for the
         // previous harvest definition
-        return new FilterIterator<DomainConfiguration, HarvestInfo>(previousHarvestDefinition.getDomainConfigurations()) {
-            /**
-             * @see FilterIterator#filter(Object)
-             */
-            protected HarvestInfo filter(DomainConfiguration o) {
-                DomainConfiguration config = o;
-                DomainHistory domainHistory = getDomainHistory(config.getDomainName());
-                HarvestInfo hi = domainHistory.getSpecifiedHarvestInfo(previousHarvestDefinition.getOid(),
-                        config.getName());
-                return hi;
+        return new HarvestInfoBatchIterator(previousHarvestDefinition.getDomainConfigurations(),
+                previousHarvestDefinition.getOid());
+    }
+
+    /**
+     * Iterates over the newest harvest infos of domain configurations for a given harvest definition, in the order of
+     * the configurations. Configurations not harvested by the harvest definition are skipped. The harvest infos are
+     * read for {@link #DOMAIN_BATCH_SIZE} configurations at a time, with one query per batch. A connection is only held
+     * while a batch is read.
+     */
+    private class HarvestInfoBatchIterator implements Iterator<HarvestInfo> {
+        /** The configurations not yet looked up. */
+        private final Iterator<DomainConfiguration> configurations;
+        /** The ID of the harvest definition. */
+        private final Long harvestId;
+        /** The harvest infos of the current batch not yet returned. */
+        private Iterator<HarvestInfo> batch = Collections.<HarvestInfo>emptyList().iterator();
+
+        /**
+         * Create an iterator over the harvest infos of the given configurations.
+         *
+         * @param configurations The domain configurations, in the order the harvest infos should be returned.
+         * @param harvestId The ID of the harvest definition.
+         */
+        HarvestInfoBatchIterator(Iterator<DomainConfiguration> configurations, Long harvestId) {
+            this.configurations = configurations;
+            this.harvestId = harvestId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!batch.hasNext() && configurations.hasNext()) {
+                List<DomainConfiguration> configs = new ArrayList<DomainConfiguration>(DOMAIN_BATCH_SIZE);
+                while (configs.size() < DOMAIN_BATCH_SIZE && configurations.hasNext()) {
+                    configs.add(configurations.next());
+                }
+                Map<String, Map<String, HarvestInfo>> harvestInfos;
+                Connection c = HarvestDBConnection.get();
+                try {
+                    harvestInfos = getNewestHarvestInfos(c, configs, harvestId);
+                } finally {
+                    HarvestDBConnection.release(c);
+                }
+                List<HarvestInfo> found = new ArrayList<HarvestInfo>(configs.size());
+                for (DomainConfiguration config : configs) {
+                    Map<String, HarvestInfo> domainInfos = harvestInfos.get(config.getDomainName());
+                    if (domainInfos != null && domainInfos.containsKey(config.getName())) {
+                        found.add(domainInfos.get(config.getName()));
+                    }
+                }
+                batch = found.iterator();
             }
-        }; // Here ends the above return-statement
+            return batch.hasNext();
+        }
+
+        @Override
+        public HarvestInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more harvest infos");
+            }
+            return batch.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove harvest infos through this iterator");
+        }
+    }
+
+    /**
+     * Get the newest harvest info of a number of domain configurations for a given harvest definition. This gives the
+     * same result as {@link DomainHistory#getSpecifiedHarvestInfo(Long, String)} on the history of each domain, but
+     * reads the harvest infos with one join over the domains of the configurations.
+     *
+     * @param c A connection to the database
+     * @param configs The domain configurations. At most {@link #DOMAIN_BATCH_SIZE} configurations.
+     * @param harvestId The ID of the harvest definition.
+     * @return The newest harvest info by configuration name by domain name. Configurations that have not been
+     * harvested by the harvest definition are not in the map.
+     * @throws IOFailure on trouble reading from the database.
+     */
+    private Map<String, Map<String, HarvestInfo>> getNewestHarvestInfos(Connection c,
+            List<DomainConfiguration> configs, Long harvestId) {
+        Set<String> domainNames = new HashSet<String>();
+        for (DomainConfiguration config : configs) {
+            ArgumentNotValid.checkTrue(DomainUtils.isValidDomainName(config.getDomainName()),
+                    "Cannot read invalid domain name " + config.getDomainName());
+            domainNames.add(config.getDomainName());
+        }
+        List<Object> args = new ArrayList<Object>(domainNames.size() + 1);
+        args.add(harvestId);
+        args.addAll(domainNames);
+        Map<String, Map<String, HarvestInfo>> harvestInfos = new HashMap<String, Map<String, HarvestInfo>>();
+        PreparedStatement s = null;
+        try {
+            s = DBUtils.prepareStatement(c, "SELECT historyinfo_id, stopreason, objectcount, bytecount, "
+                    + "configurations.name, job_id, harvest_id, harvest_time, domains.name "
+                    + "FROM historyinfo, configurations, domains WHERE historyinfo.harvest_id = ?"
+                    + "  AND historyinfo.config_id = configurations.config_id"
+                    + "  AND configurations.domain_id = domains.domain_id"
+                    + "  AND domains.name IN " + makeParameterList(domainNames.size())
+                    + " ORDER BY harvest_time DESC", args.toArray());
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                String domainName = res.getString(9);
+                Map<String, HarvestInfo> domainInfos = harvestInfos.get(domainName);
+                if (domainInfos == null) {
+                    domainInfos = new HashMap<String, HarvestInfo>();
+                    harvestInfos.put(domainName, domainInfos);
+                }
+                if (!domainInfos.containsKey(res.getString(5))) {
+                    // The newest harvest of the configuration, as older harvests come later
+                    domainInfos.put(res.getString(5), getHarvestInfoFromResultset(domainName, res));
+                }
+            }
+            return harvestInfos;
+        } catch (SQLException e) {
+            throw new IOFailure("Error while fetching the harvest infos of " + configs.size()
+                    + " configurations for harvest definition " + harvestId + ": ", e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+        }
     }
 
     @Override
@@ -1570,24 +2086,7 @@ public class DomainDBDAO extends DomainDAO {
             s.setString(1, domainName);
             ResultSet res = s.executeQuery();
             while (res.next()) {
-                long hiID = res.getLong(1);
-                int stopreasonNum = res.getInt(2);
-                StopReason stopreason = StopReason.getStopReason(stopreasonNum);
-                long objectCount = res.getLong(3);
-                long byteCount = res.getLong(4);
-                String configName = res.getString(5);
-                Long jobId = res.getLong(6);
-                if (res.wasNull()) {
-                    jobId = null;
-                }
-                long harvestId = res.getLong(7);
-                Date harvestTime = new Date(res.getTimestamp(8).getTime());
-                HarvestInfo hi;
-
-                hi = new HarvestInfo(harvestId, jobId, domainName, configName, harvestTime, byteCount, objectCount,
-                        stopreason);
-                hi.setID(hiID);
-                history.addHarvestInfo(hi);
+                history.addHarvestInfo(getHarvestInfoFromResultset(domainName, res));
             }
         } catch (SQLException e) {
             throw new IOFailure("Error while fetching DomainHistory for domain '" + domainName + "': ", e);
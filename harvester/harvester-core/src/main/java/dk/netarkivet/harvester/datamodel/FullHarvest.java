@@ -22,8 +22,16 @@
  */
 package dk.netarkivet.harvester.datamodel;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.inject.Provider;
 
@@ -44,6 +52,9 @@ public class FullHarvest extends HarvestDefinition {
     /** The class logger. */
     private static final Logger log = LoggerFactory.getLogger(FullHarvest.class);
 
+    /** The number of harvest infos of the previous harvest for which the domains are read at a time. */
+    private static final int PREVIOUS_HARVEST_BATCH_SIZE = 500;
+
     /** The maximum number of objects retrieved from each domain during a snapshot harvest. */
     private long maxCountObjects;
 
@@ -164,19 +175,24 @@ public class FullHarvest extends HarvestDefinition {
         // An iterative snapshot harvest
         final DomainDAO dao = domainDAOProvider.get();
         // Get what has been harvested
-        Iterator<HarvestInfo> i = dao.getHarvestInfoBasedOnPreviousHarvestDefinition(getPreviousHarvestDefinition());
-        //
+        Iterator<HarvestInfo> harvestInfos = dao.getHarvestInfoBasedOnPreviousHarvestDefinition(
+                getPreviousHarvestDefinition());
+        // Read the domains in batches, for both the configuration and the alias check
+        final PreviousHarvestBatchIterator i = new PreviousHarvestBatchIterator(harvestInfos, dao);
         return new FilterIterator<HarvestInfo, DomainConfiguration>(i) {
             protected DomainConfiguration filter(HarvestInfo harvestInfo) {
 
-                if (harvestInfo.getStopReason() == StopReason.DOWNLOAD_COMPLETE
-                        || harvestInfo.getStopReason() == StopReason.DOWNLOAD_UNFINISHED) {
+                if (!mayHarvestAgain(harvestInfo)) {
                     // Don't include the ones that finished or died
                     // in an unclean fashion
                     return null;
                 }
 
-                DomainConfiguration config = getConfigurationFromPreviousHarvest(harvestInfo, dao);
+                Domain d = i.getDomain(harvestInfo);
+                if (d == null) {
+                    return null;
+                }
+                DomainConfiguration config = getConfigurationFromPreviousHarvest(harvestInfo, d);
                 if (harvestInfo.getStopReason() == StopReason.CONFIG_SIZE_LIMIT) {
                     // Check if MaxBytes limit for DomainConfiguration have
                     // been raised since previous harvest.
@@ -200,8 +216,6 @@ public class FullHarvest extends HarvestDefinition {
                         return config;
                     }
                 }
-                Domain d = dao.read(config.getDomainName());
-
                 if (d.getAliasInfo() != null && !d.getAliasInfo().isExpired()) {
                     // Don't include aliases
                     return null;
@@ -213,45 +227,162 @@ public class FullHarvest extends HarvestDefinition {
     }
 
     /**
-     * Get the configuration used in a previous harvest. If the configuration in the harvestinfo cannot be found
-     * (deleted), uses the default configuration.
+     * Tells whether a harvest info of the previous harvest may give a configuration to harvest, and so requires the
+     * domain to be read.
      *
      * @param harvestInfo A harvest info object from a previous harvest.
-     * @param dao The dao to read configurations from.
-     * @return A configuration if found and the download in this harvestinfo was complete, null otherwise
+     * @return false if the previous harvest of the configuration finished or died in an unclean fashion.
+     */
+    private static boolean mayHarvestAgain(HarvestInfo harvestInfo) {
+        return harvestInfo.getStopReason() != StopReason.DOWNLOAD_COMPLETE
+                && harvestInfo.getStopReason() != StopReason.DOWNLOAD_UNFINISHED;
+    }
+
+    /**
+     * Iterates over the harvest infos of a previous harvest, reading the domains of the harvest infos of
+     * {@link #PREVIOUS_HARVEST_BATCH_SIZE} configurations at a time. Only the domains of harvest infos that may give a
+     * configuration to harvest are read.
+     */
+    private static class PreviousHarvestBatchIterator implements Iterator<HarvestInfo> {
+        /** The harvest infos not yet read. */
+        private final Iterator<HarvestInfo> harvestInfos;
+        /** The dao to read the domains from. */
+        private final DomainDAO dao;
+        /** The harvest infos of the current batch not yet returned. */
+        private Iterator<HarvestInfo> batch = Collections.<HarvestInfo>emptyList().iterator();
+        /** The domains of the current batch by name. */
+        private Map<String, Domain> domains = Collections.emptyMap();
+
+        /**
+         * Create an iterator over the given harvest infos.
+         *
+         * @param harvestInfos The harvest infos of a previous harvest.
+         * @param dao The dao to read the domains from.
+         */
+        PreviousHarvestBatchIterator(Iterator<HarvestInfo> harvestInfos, DomainDAO dao) {
+            this.harvestInfos = harvestInfos;
+            this.dao = dao;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!batch.hasNext() && harvestInfos.hasNext()) {
+                List<HarvestInfo> infos = new ArrayList<HarvestInfo>(PREVIOUS_HARVEST_BATCH_SIZE);
+                Set<String> domainNames = new HashSet<String>();
+                while (infos.size() < PREVIOUS_HARVEST_BATCH_SIZE && harvestInfos.hasNext()) {
+                    HarvestInfo harvestInfo = harvestInfos.next();
+                    infos.add(harvestInfo);
+                    if (mayHarvestAgain(harvestInfo)) {
+                        domainNames.add(harvestInfo.getDomainName());
+                    }
+                }
+                domains = readPreviouslyHarvestedDomains(domainNames, dao);
+                batch = infos.iterator();
+            }
+            return batch.hasNext();
+        }
+
+        @Override
+        public HarvestInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more harvest infos");
+            }
+            return batch.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove harvest infos through this iterator");
+        }
+
+        /**
+         * Get the domain of a harvest info of the current batch.
+         *
+         * @param harvestInfo A harvest info returned by this iterator.
+         * @return The domain, or null if it no longer exists or cannot be read.
+         */
+        Domain getDomain(HarvestInfo harvestInfo) {
+            Domain d = domains.get(harvestInfo.getDomainName());
+            if (d == null) {
+                log.debug("Previously harvested domain '{}' no longer exists. Ignoring this domain.",
+                        harvestInfo.getDomainName());
+            }
+            return d;
+        }
+    }
+
+    /**
+     * Read the domains of a previous harvest. If a domain of the batch cannot be read, the domains are read one at a
+     * time instead, so only the domains that cannot be read are left out.
+     *
+     * @param domainNames The names of the domains.
+     * @param dao The dao to read the domains from.
+     * @return The domains by name. Domains that no longer exist or cannot be read are not in the map.
      */
-    private DomainConfiguration getConfigurationFromPreviousHarvest(final HarvestInfo harvestInfo, DomainDAO dao) {
-        // For each bit of harvest info that did not complete
+    private static Map<String, Domain> readPreviouslyHarvestedDomains(Set<String> domainNames, DomainDAO dao) {
+        if (domainNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
         try {
-            Domain domain = dao.read(harvestInfo.getDomainName());
-            // Read the domain
-            DomainConfiguration configuration;
-            // Read the configuration
-            try {
-                configuration = domain.getConfiguration(harvestInfo.getDomainConfigurationName());
-            } catch (UnknownID e) {
-                // If the old configuration cannot be found, fall
-                // back on default configuration
-                configuration = domain.getDefaultConfiguration();
-                log.debug(
-                        "Previous configuration '{}' for harvesting domain '{}' not found. Using default '{}' instead.",
-                        harvestInfo.getDomainConfigurationName(), harvestInfo.getDomainName(), configuration.getName(),
-                        e);
+            return dao.readDomains(domainNames);
+        } catch (IOFailure e) {
+            log.debug("Unable to read {} previously harvested domains at once. Reading them one at a time.",
+                    domainNames.size(), e);
+        }
+        Map<String, Domain> domains = new HashMap<String, Domain>();
+        for (String domainName : domainNames) {
+            Domain d = readPreviouslyHarvestedDomain(domainName, dao);
+            if (d != null) {
+                domains.put(domainName, d);
             }
-            // Add the configuration to the list to harvest
-            return configuration;
+        }
+        return domains;
+    }
+
+    /**
+     * Read the domain of a previous harvest.
+     *
+     * @param domainName The name of a domain from a previous harvest.
+     * @param dao The dao to read the domain from.
+     * @return The domain, or null if it no longer exists or cannot be read.
+     */
+    private static Domain readPreviouslyHarvestedDomain(String domainName, DomainDAO dao) {
+        try {
+            return dao.read(domainName);
         } catch (UnknownID e) {
             // If the domain doesn't exist, warn
-            log.debug("Previously harvested domain '{}' no longer exists. Ignoring this domain.",
-                    harvestInfo.getDomainName(), e);
+            log.debug("Previously harvested domain '{}' no longer exists. Ignoring this domain.", domainName, e);
         } catch (IOFailure e) {
             // If the domain can't be read, warn
-            log.debug("Previously harvested domain '{}' can't be read. Ignoring this domain.",
-                    harvestInfo.getDomainName(), e);
+            log.debug("Previously harvested domain '{}' can't be read. Ignoring this domain.", domainName, e);
         }
         return null;
     }
 
+    /**
+     * Get the configuration used in a previous harvest. If the configuration in the harvestinfo cannot be found
+     * (deleted), uses the default configuration.
+     *
+     * @param harvestInfo A harvest info object from a previous harvest.
+     * @param domain The domain harvested.
+     * @return The configuration to harvest the domain with.
+     */
+    private DomainConfiguration getConfigurationFromPreviousHarvest(final HarvestInfo harvestInfo, Domain domain) {
+        DomainConfiguration configuration;
+        // Read the configuration
+        try {
+            configuration = domain.getConfiguration(harvestInfo.getDomainConfigurationName());
+        } catch (UnknownID e) {
+            // If the old configuration cannot be found, fall
+            // back on default configuration
+            configuration = domain.getDefaultConfiguration();
+            log.debug("Previous configuration '{}' for harvesting domain '{}' not found. Using default '{}' instead.",
+                    harvestInfo.getDomainConfigurationName(), harvestInfo.getDomainName(), configuration.getName(), e);
+        }
+        // Add the configuration to the list to harvest
+        return configuration;
+    }
+
     /**
      * Check if this harvest definition should be run, given the time now.
      *
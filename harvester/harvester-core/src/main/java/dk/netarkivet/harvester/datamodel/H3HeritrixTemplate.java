@@ -26,6 +26,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
@@ -72,6 +73,14 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
     private static final Logger log = LoggerFactory.getLogger(H3HeritrixTemplate.class);
 
     private String template;
+
+    /**
+     * Crawler traps inserted since the template was last rendered, as &lt;value&gt; elements. They are collected here
+     * while a job is filled with domain configurations, and rendered into the template in one pass when the template
+     * is read, written or serialized. Inserting them into the template one domain at a time would copy the growing
+     * template once per domain.
+     */
+    private StringBuilder pendingCrawlerTraps = new StringBuilder();
     
     /** QuotaEnforcer states for this template. TODO necessary?? */
     private Long forceMaxbytesPerDomain;
@@ -176,6 +185,7 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
      */
     @Override
     public String getXML() {
+        renderCrawlerTraps();
         return template;
     }
     
@@ -451,15 +461,15 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 
 	@Override
 	/**
-	 * With H3 template, we insert the crawlertraps into the template at once.
-	 * They are inserted to be part of a org.archive.modules.deciderules.MatchesListRegexDecideRule
+	 * With H3 template, the crawlertraps are collected and inserted into the template at once,
+	 * when the template is next read, written or serialized. They are inserted to be part of a dk.netarkivet.harvester.harvesting.IndexedMatchesListRegexDecideRule
 	 * bean.
 	 * 
 	 * @param elementName The elementName is currently not used with H3
 	 * @param crawlertraps A list of crawlertraps to be inserted
 	 */
 	public void insertCrawlerTraps(String elementName, List<String> crawlertraps) {
-//      <bean class="org.archive.modules.deciderules.MatchesListRegexDecideRule">
+//      <bean class="dk.netarkivet.harvester.harvesting.IndexedMatchesListRegexDecideRule">
 //      <!-- <property name="listLogicalOr" value="true" /> -->
 //      <!-- <property name="regexList">
 //            <list>
@@ -476,18 +486,41 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
     				crawlertraps);
     		return;
     	} else {
-    		log.info("Inserting {} crawlertraps into the template", crawlertraps.size());
-    		StringBuilder sb = new StringBuilder();
+    		log.debug("Adding {} crawlertraps to the traps to be inserted into the template", crawlertraps.size());
+    		if (pendingCrawlerTraps == null) {
+    			pendingCrawlerTraps = new StringBuilder();
+    		}
     		for (String trap: crawlertraps) {
-    			sb.append("<value>" + trap + "</value>\n");
+    			pendingCrawlerTraps.append("<value>").append(trap).append("</value>\n");
     		}
-    		// Adding the placeholder again to be able to insert crawlertraps multiple times.
-    		sb.append(CRAWLERTRAPS_PLACEHOLDER + "\n"); 
-    		String templateNew = template.replace(CRAWLERTRAPS_PLACEHOLDER, sb.toString());
-    		this.template = templateNew;
     	}
  	}
-	
+
+	/**
+	 * Insert the crawler traps collected by {@link #insertCrawlerTraps(String, List)} into the template. The
+	 * placeholder is kept after the traps, so more traps can be inserted later.
+	 */
+	private void renderCrawlerTraps() {
+		if (pendingCrawlerTraps == null || pendingCrawlerTraps.length() == 0) {
+			return;
+		}
+		log.info("Inserting {} characters of crawlertraps into the template", pendingCrawlerTraps.length());
+		pendingCrawlerTraps.append(CRAWLERTRAPS_PLACEHOLDER).append("\n");
+		this.template = template.replace(CRAWLERTRAPS_PLACEHOLDER, pendingCrawlerTraps);
+		pendingCrawlerTraps.setLength(0);
+	}
+
+	/**
+	 * Render the collected crawler traps before serializing, so the receiver gets the complete template.
+	 *
+	 * @param out The stream to serialize to.
+	 * @throws IOException If the serialization fails.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		renderCrawlerTraps();
+		out.defaultWriteObject();
+	}
+
 	public String getMetadataInfo(MetadataInfo info) {
 		String infoStr = null;
 		if(metadataInfoMap.containsKey(info)) {
@@ -498,6 +531,7 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 
 	@Override
 	public void writeTemplate(OutputStream os) throws IOFailure {
+		renderCrawlerTraps();
 		try {
 			os.write(template.getBytes(Charset.forName("UTF-8")));
 		} catch (IOException e) {
@@ -513,6 +547,7 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 
 	@Override
 	public void writeToFile(File orderXmlFile) {
+		renderCrawlerTraps();
 		BufferedWriter writer = null;
 		try {
 			writer = new BufferedWriter( new FileWriter(orderXmlFile));
@@ -766,6 +801,7 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 
 	@Override
 	public void writeTemplate(JspWriter out) throws IOFailure {
+		renderCrawlerTraps();
 		try {
 			out.write(template);
 		} catch (IOException e) {
@@ -778,6 +814,7 @@ public class H3HeritrixTemplate extends HeritrixTemplate implements Serializable
 	 *  manipulation is completed.
 	 */
 	public void removePlaceholders() {
+		renderCrawlerTraps();
 		template = template.replace(METADATA_ITEMS_PLACEHOLDER, "");
 		template = template.replace(CRAWLERTRAPS_PLACEHOLDER, "");
 		
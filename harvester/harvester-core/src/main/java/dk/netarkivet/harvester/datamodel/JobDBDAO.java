@@ -36,10 +36,14 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import dk.netarkivet.common.CommonSettings;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
@@ -63,6 +67,19 @@ public class JobDBDAO extends JobDAO {
     /** The logger for this class. */
     private static final Logger log = LoggerFactory.getLogger(JobDBDAO.class);
 
+    /** The number of minutes the job IDs for duplicate reduction of a harvest run are cached. */
+    private static final long DUPLICATE_REDUCTION_CACHE_MINUTES = 10;
+
+    /**
+     * The job IDs for duplicate reduction, by harvest definition and run number. All jobs of a run share these, so
+     * they are only calculated once per run while its jobs are dispatched. When a job is created here, only the entry
+     * of the following run of its harvest definition is removed, since that is the run using the jobs of the run of
+     * the new job. The cache is emptied when a job is rescheduled, and entries expire to pick up jobs created by other
+     * applications, or added to the chains of full harvests used by later full harvests.
+     */
+    private final Cache<String, List<Long>> duplicateReductionCache = CacheBuilder.newBuilder()
+            .maximumSize(1000).expireAfterWrite(DUPLICATE_REDUCTION_CACHE_MINUTES, TimeUnit.MINUTES).build();
+
     /**
      * Create a new JobDAO implemented using database. This constructor also tries to upgrade the jobs and jobs_configs
      * tables in the current database. throws and IllegalState exception, if it is impossible to make the necessary
@@ -96,6 +113,7 @@ public class JobDBDAO extends JobDAO {
             throw new UnknownID("No harvestdefinition with ID=" + harvestId);
         }
 
+        duplicateReductionCache.invalidate(getRunKey(harvestId, job.getHarvestNum() + 1));
         Connection connection = HarvestDBConnection.get();
         if (job.getJobID() != null) {
             log.warn("The jobId for the job is already set. This should probably never happen.");
@@ -750,12 +768,22 @@ public class JobDBDAO extends JobDAO {
     public synchronized List<Long> getJobIDsForDuplicateReduction(long jobID) throws UnknownID {
 
         Connection connection = HarvestDBConnection.get();
+        PreparedStatement s = null;
         List<Long> jobs;
         // Select the previous harvest from the same harvestdefinition
         try {
-            if (!exists(connection, jobID)) {
+            s = DBUtils.prepareStatement(connection, "SELECT harvest_id, harvest_num FROM jobs WHERE job_id = ?",
+                    jobID);
+            ResultSet res = s.executeQuery();
+            if (!res.next()) {
                 throw new UnknownID("Job ID '" + jobID + "' does not exist in database");
             }
+            String run = getRunKey(res.getLong(1), res.getInt(2));
+            s.close();
+            List<Long> cached = duplicateReductionCache.getIfPresent(run);
+            if (cached != null) {
+                return new ArrayList<Long>(cached);
+            }
 
             jobs = DBUtils.selectLongList(connection, "SELECT jobs.job_id FROM jobs, jobs AS original_jobs"
                     + " WHERE original_jobs.job_id=?" + " AND jobs.harvest_id=original_jobs.harvest_id"
@@ -766,12 +794,28 @@ public class JobDBDAO extends JobDAO {
                 jobs.addAll(DBUtils.selectLongList(connection, "SELECT jobs.job_id FROM jobs"
                         + " WHERE jobs.harvest_id IN (" + StringUtils.conjoin(",", harvestDefinitions) + ")"));
             }
+            duplicateReductionCache.put(run, new ArrayList<Long>(jobs));
             return jobs;
+        } catch (SQLException e) {
+            throw new IOFailure("SQL error finding the harvest run of job " + jobID + "\n"
+                    + ExceptionUtils.getSQLExceptionCause(e), e);
         } finally {
+            DBUtils.closeStatementIfOpen(s);
             HarvestDBConnection.release(connection);
         }
     }
 
+    /**
+     * Get the key of a harvest run in the cache of job IDs for duplicate reduction.
+     *
+     * @param harvestId The ID of the harvest definition.
+     * @param harvestNum The run number.
+     * @return The key of the run.
+     */
+    private static String getRunKey(long harvestId, int harvestNum) {
+        return harvestId + "-" + harvestNum;
+    }
+
     /**
      * Find the harvest definition ids from this chain of snapshot harvests and the previous chain of snapshot harvests.
      *
@@ -839,6 +883,7 @@ public class JobDBDAO extends JobDAO {
 
     @Override
     public synchronized long rescheduleJob(long oldJobID) {
+        duplicateReductionCache.invalidateAll();
         Connection connection = HarvestDBConnection.get();
         long newJobID = generateNextID(connection);
         PreparedStatement statement = null;
@@ -1178,16 +1223,40 @@ public class JobDBDAO extends JobDAO {
     }
 
     /**
-     * Get a list of AliasInfo objects for all the domains included in the job.
+     * Get a list of AliasInfo objects for all the domains included in the job. For a stored job, the aliases are read
+     * with a single query over the configurations of the job.
      *
      * @return a list of AliasInfo objects for all the domains included in the job.
      */
     public List<AliasInfo> getJobAliasInfo(Job job) {
+        ArgumentNotValid.checkNotNull(job, "Job job");
         List<AliasInfo> aliases = new ArrayList<AliasInfo>();
-        DomainDAO dao = DomainDAO.getInstance();
-        for (String domain : job.getDomainConfigurationMap().keySet()) {
-            aliases.addAll(dao.getAliases(domain));
+        if (job.getJobID() == null) {
+            DomainDAO dao = DomainDAO.getInstance();
+            for (String domain : job.getDomainConfigurationMap().keySet()) {
+                aliases.addAll(dao.getAliases(domain));
+            }
+            return aliases;
+        }
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement s = null;
+        try {
+            s = DBUtils.prepareStatement(c, "SELECT aliasdomains.name, domains.name, aliasdomains.lastaliasupdate"
+                    + " FROM job_configs, configurations, domains, domains AS aliasdomains"
+                    + " WHERE job_configs.job_id = ? AND configurations.config_id = job_configs.config_id"
+                    + " AND domains.domain_id = configurations.domain_id AND aliasdomains.alias = domains.domain_id"
+                    + " ORDER BY domains.name, aliasdomains.name", job.getJobID());
+            ResultSet res = s.executeQuery();
+            while (res.next()) {
+                aliases.add(new AliasInfo(res.getString(1), res.getString(2), DBUtils.getDateMaybeNull(res, 3)));
+            }
+            return aliases;
+        } catch (SQLException e) {
+            throw new IOFailure("SQL error getting alias information for job " + job.getJobID() + "\n"
+                    + ExceptionUtils.getSQLExceptionCause(e), e);
+        } finally {
+            DBUtils.closeStatementIfOpen(s);
+            HarvestDBConnection.release(c);
         }
-        return aliases;
     }
 }
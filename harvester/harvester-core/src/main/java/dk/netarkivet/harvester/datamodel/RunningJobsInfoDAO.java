@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportDelta;
 import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
 import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.harvesting.monitor.StartedJobInfo;
@@ -68,6 +69,12 @@ public abstract class RunningJobsInfoDAO implements DAO {
      */
     public abstract void store(StartedJobInfo startedJobInfo);
 
+    /**
+     * Writes any records not yet written to the persistent storage, and stops writing records in the background.
+     * Records stored afterwards are written at once. This must be called before the database connections are closed.
+     */
+    public abstract void close();
+
     /**
      * Returns the most recent record for every job, partitioned by harvest definition name.
      *
@@ -121,6 +128,16 @@ public abstract class RunningJobsInfoDAO implements DAO {
      */
     public abstract int storeFrontierReport(String filterId, InMemoryFrontierReport report, Long jobId);
 
+    /**
+     * Store the changes between two frontier reports to the persistent storage.
+     *
+     * @param filterId the id of the filter that produced the reports
+     * @param delta the changes from the stored report to the new report
+     * @param jobId The ID of the harvestjob responsible for the reports
+     * @return the update count
+     */
+    public abstract int storeFrontierReportDelta(String filterId, FrontierReportDelta delta, Long jobId);
+
     /**
      * Returns the list of the available frontier report types.
      *
@@ -32,12 +32,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +56,7 @@ import dk.netarkivet.common.utils.ExceptionUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlStatus;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportDelta;
 import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
 import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
 import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
@@ -95,6 +102,27 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
         }
     }
 
+    /** The SQL updating a row of the runningJobsMonitor table. The row is identified by the two last parameters. */
+    private static final String UPDATE_MONITOR_SQL;
+
+    /** The SQL inserting a row in the runningJobsMonitor table. */
+    private static final String INSERT_MONITOR_SQL = "INSERT INTO runningJobsMonitor (" + HM_COLUMN.getColumnsInOrder()
+            + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    /** The SQL inserting a row in the runningJobsHistory table. */
+    private static final String INSERT_HISTORY_SQL = "INSERT INTO runningJobsHistory (" + HM_COLUMN.getColumnsInOrder()
+            + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    static {
+        StringBuilder sql = new StringBuilder("UPDATE runningJobsMonitor SET ");
+        for (HM_COLUMN setCol : HM_COLUMN.values()) {
+            sql.append(setCol.name()).append("=?, ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(" WHERE jobId=? AND harvestName=?");
+        UPDATE_MONITOR_SQL = sql.toString();
+    }
+
     /**
      * Date of last history record per job.
      */
@@ -106,6 +134,44 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
     private static final long HISTORY_SAMPLE_RATE = 1000 * Settings
             .getLong(HarvesterSettings.HARVEST_MONITOR_HISTORY_SAMPLE_RATE);
 
+    /**
+     * Interval in milliseconds between writes of the buffered progress records to the database.
+     */
+    private final long flushInterval;
+
+    /**
+     * Age in milliseconds after which history records are pruned. Zero or less means that they are kept until the job
+     * ends.
+     */
+    private final long historyMaxAge;
+
+    /** Time in milliseconds to wait for a write in progress when closing. */
+    private static final long FLUSHER_TERMINATION_TIMEOUT = 60 * 1000;
+
+    /** Interval in milliseconds between prunings of the history table. */
+    private static final long HISTORY_PRUNE_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * The latest progress record not yet written to the monitor table, per job and harvest name. Guarded by the map
+     * itself, which also guards {@link #pendingHistory} and {@link #lastSampleDateByJobId}.
+     */
+    private final Map<String, StartedJobInfo> pendingProgress = new LinkedHashMap<String, StartedJobInfo>();
+
+    /** The sampled progress records not yet written to the history table, in the order they were sampled. */
+    private final List<StartedJobInfo> pendingHistory = new ArrayList<StartedJobInfo>();
+
+    /** Lock held while buffered records are written, so that writes and deletes of a job do not interleave. */
+    private final Object flushLock = new Object();
+
+    /** The time of the last pruning of the history table. Guarded by {@link #flushLock}. */
+    private long lastHistoryPrune;
+
+    /** The executor writing the buffered records at intervals, or null if records are written at once. */
+    private ScheduledExecutorService flusher;
+
+    /** Whether {@link #close()} has been called, after which records are written at once. */
+    private volatile boolean closed;
+
     /**
      * The constructor of RunningJobsInfoDBDAO. Attempts to update/install the necessary database tables, if they need
      * to be updated.
@@ -123,159 +189,260 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
         } finally {
             HarvestDBConnection.release(connection);
         }
+        flushInterval = 1000 * Settings.getLong(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL);
+        historyMaxAge = 24L * 60 * 60 * 1000 * Settings.getLong(HarvesterSettings.HARVEST_MONITOR_HISTORY_MAX_AGE);
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "RunningJobsInfoFlusher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (Throwable t) {
+                        log.warn("Failed to write buffered running job infos, will retry", t);
+                    }
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the database, and stops writing them at intervals. Records stored afterwards are
+     * written at once.
+     *
+     * @throws IOFailure if the buffered records cannot be written.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(FLUSHER_TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
     }
 
     /**
      * Stores a {@link StartedJobInfo} record to the persistent storage. The record is stored in the monitor table, and
      * if the elapsed time since the last history sample is equal or superior to the history sample rate, also to the
      * history table.
+     * <p>
+     * The records are buffered, and written at the interval given by
+     * {@link HarvesterSettings#HARVEST_MONITOR_FLUSH_INTERVAL}. Only the latest record of a job is written to the
+     * monitor table. Reads from this DAO write the buffered records first, and {@link #close()} writes the records
+     * left when shutting down.
      *
      * @param startedJobInfo the record to store.
      */
     @Override
-    public synchronized void store(StartedJobInfo startedJobInfo) {
+    public void store(StartedJobInfo startedJobInfo) {
         ArgumentNotValid.checkNotNull(startedJobInfo, "StartedJobInfo startedJobInfo");
 
-        Connection c = HarvestDBConnection.get();
+        synchronized (pendingProgress) {
+            pendingProgress.put(startedJobInfo.getJobId() + "-" + startedJobInfo.getHarvestName(), startedJobInfo);
 
-        try {
-            PreparedStatement stm = null;
-
-            // First is there a record in the monitor table?
-            boolean update = false;
-            try {
-                stm = c.prepareStatement("SELECT jobId FROM runningJobsMonitor WHERE jobId=? AND harvestName=?");
-                stm.setLong(1, startedJobInfo.getJobId());
-                stm.setString(2, startedJobInfo.getHarvestName());
-
-                // One row expected, as per PK definition
-                update = stm.executeQuery().next();
+            // Should we store an history record?
+            Long lastHistoryStore = lastSampleDateByJobId.get(startedJobInfo.getJobId());
+            long time = System.currentTimeMillis();
+            if (lastHistoryStore == null || time >= lastHistoryStore + HISTORY_SAMPLE_RATE) {
+                log.debug("Adding history Record for job {} to runningJobsHistory table", startedJobInfo.getJobId());
+                pendingHistory.add(startedJobInfo);
+                // Remember last sampling date
+                lastSampleDateByJobId.put(startedJobInfo.getJobId(), time);
+            }
+        }
+        if (flushInterval <= 0 || closed) {
+            flush();
+        }
+    }
 
-            } catch (SQLException e) {
-                String message = "SQL error checking running jobs monitor table" + "\n"
-                        + ExceptionUtils.getSQLExceptionCause(e);
-                log.warn(message, e);
-                throw new IOFailure(message, e);
+    /**
+     * Writes the buffered progress records to the database. The monitor table rows are updated in one batch, and the
+     * rows that did not exist are inserted in a second batch. The history records are inserted in a third batch. If
+     * the write fails, the records are buffered again, unless newer records of the same jobs have been buffered since.
+     * <p>
+     * At most once every {@link #HISTORY_PRUNE_INTERVAL}, history records older than the maximum age given by
+     * {@link HarvesterSettings#HARVEST_MONITOR_HISTORY_MAX_AGE} are deleted.
+     *
+     * @throws IOFailure if the records cannot be written.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            Map<String, StartedJobInfo> progress;
+            List<StartedJobInfo> history;
+            synchronized (pendingProgress) {
+                progress = new LinkedHashMap<String, StartedJobInfo>(pendingProgress);
+                history = new ArrayList<StartedJobInfo>(pendingHistory);
+                pendingProgress.clear();
+                pendingHistory.clear();
+            }
+            boolean prune = historyMaxAge > 0
+                    && System.currentTimeMillis() >= lastHistoryPrune + HISTORY_PRUNE_INTERVAL;
+            if (progress.isEmpty() && history.isEmpty() && !prune) {
+                return;
             }
 
+            Connection c = HarvestDBConnection.get();
+            PreparedStatement stm = null;
             try {
-                // Update or insert latest progress information for this job
                 c.setAutoCommit(false);
-
-                StringBuffer sql = new StringBuffer();
-
-                if (update) {
-                    sql.append("UPDATE runningJobsMonitor SET ");
-
-                    StringBuffer columns = new StringBuffer();
-                    // FIXME Seriously, construct an identical SQL string every time and use an enum...?!
-                    for (HM_COLUMN setCol : HM_COLUMN.values()) {
-                        columns.append(setCol.name() + "=?, ");
+                if (!progress.isEmpty()) {
+                    List<StartedJobInfo> infos = new ArrayList<StartedJobInfo>(progress.values());
+                    stm = c.prepareStatement(UPDATE_MONITOR_SQL);
+                    for (StartedJobInfo info : infos) {
+                        setProgressParameters(stm, info);
+                        stm.setLong(HM_COLUMN.values().length + 1, info.getJobId());
+                        stm.setString(HM_COLUMN.values().length + 2, info.getHarvestName());
+                        stm.addBatch();
+                    }
+                    int[] updateCounts = stm.executeBatch();
+                    stm.close();
+
+                    List<StartedJobInfo> newInfos = new ArrayList<StartedJobInfo>();
+                    for (int i = 0; i < infos.size(); i++) {
+                        StartedJobInfo info = infos.get(i);
+                        if (mustInsert(c, updateCounts[i], "SELECT jobId FROM runningJobsMonitor"
+                                + " WHERE jobId=? AND harvestName=?", info.getJobId(), info.getHarvestName())) {
+                            newInfos.add(info);
+                        }
+                    }
+                    if (!newInfos.isEmpty()) {
+                        stm = c.prepareStatement(INSERT_MONITOR_SQL);
+                        for (StartedJobInfo info : newInfos) {
+                            setProgressParameters(stm, info);
+                            stm.addBatch();
+                        }
+                        stm.executeBatch();
+                        stm.close();
                     }
-                    sql.append(columns.substring(0, columns.lastIndexOf(",")));
-                    sql.append(" WHERE jobId=? AND harvestName=?");
-                } else {
-                    sql.append("INSERT INTO runningJobsMonitor (");
-                    sql.append(HM_COLUMN.getColumnsInOrder());
-                    sql.append(") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
                 }
-
-                stm = c.prepareStatement(sql.toString());
-                stm.setLong(HM_COLUMN.jobId.rank(), startedJobInfo.getJobId());
-                stm.setString(HM_COLUMN.harvestName.rank(), startedJobInfo.getHarvestName());
-                stm.setLong(HM_COLUMN.elapsedSeconds.rank(), startedJobInfo.getElapsedSeconds());
-                stm.setString(HM_COLUMN.hostUrl.rank(), startedJobInfo.getHostUrl());
-                stm.setDouble(HM_COLUMN.progress.rank(), startedJobInfo.getProgress());
-                stm.setLong(HM_COLUMN.queuedFilesCount.rank(), startedJobInfo.getQueuedFilesCount());
-                stm.setLong(HM_COLUMN.totalQueuesCount.rank(), startedJobInfo.getTotalQueuesCount());
-                stm.setLong(HM_COLUMN.activeQueuesCount.rank(), startedJobInfo.getActiveQueuesCount());
-                stm.setLong(HM_COLUMN.retiredQueuesCount.rank(), startedJobInfo.getRetiredQueuesCount());
-                stm.setLong(HM_COLUMN.exhaustedQueuesCount.rank(), startedJobInfo.getExhaustedQueuesCount());
-                stm.setLong(HM_COLUMN.alertsCount.rank(), startedJobInfo.getAlertsCount());
-                stm.setLong(HM_COLUMN.downloadedFilesCount.rank(), startedJobInfo.getDownloadedFilesCount());
-                stm.setLong(HM_COLUMN.currentProcessedKBPerSec.rank(), startedJobInfo.getCurrentProcessedKBPerSec());
-                stm.setLong(HM_COLUMN.processedKBPerSec.rank(), startedJobInfo.getProcessedKBPerSec());
-                stm.setDouble(HM_COLUMN.currentProcessedDocsPerSec.rank(),
-                        startedJobInfo.getCurrentProcessedDocsPerSec());
-                stm.setDouble(HM_COLUMN.processedDocsPerSec.rank(), startedJobInfo.getProcessedDocsPerSec());
-                stm.setInt(HM_COLUMN.activeToeCount.rank(), startedJobInfo.getActiveToeCount());
-                stm.setInt(HM_COLUMN.status.rank(), startedJobInfo.getStatus().ordinal());
-                stm.setTimestamp(HM_COLUMN.tstamp.rank(), new Timestamp(startedJobInfo.getTimestamp().getTime()));
-
-                if (update) {
-                    stm.setLong(HM_COLUMN.values().length + 1, startedJobInfo.getJobId());
-                    stm.setString(HM_COLUMN.values().length + 2, startedJobInfo.getHarvestName());
+                if (!history.isEmpty()) {
+                    stm = c.prepareStatement(INSERT_HISTORY_SQL);
+                    for (StartedJobInfo info : history) {
+                        setProgressParameters(stm, info);
+                        stm.addBatch();
+                    }
+                    stm.executeBatch();
+                    stm.close();
                 }
-
-                stm.executeUpdate();
-
                 c.commit();
+                log.debug("Stored {} running job infos and {} history records", progress.size(), history.size());
             } catch (SQLException e) {
-                String message = "SQL error storing started job info " + startedJobInfo + " in monitor table" + "\n"
-                        + ExceptionUtils.getSQLExceptionCause(e);
+                synchronized (pendingProgress) {
+                    for (Map.Entry<String, StartedJobInfo> entry : progress.entrySet()) {
+                        if (!pendingProgress.containsKey(entry.getKey())) {
+                            pendingProgress.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    pendingHistory.addAll(0, history);
+                }
+                String message = "SQL error storing " + progress.size() + " started job infos and " + history.size()
+                        + " history records" + "\n" + ExceptionUtils.getSQLExceptionCause(e);
                 log.warn(message, e);
                 throw new IOFailure(message, e);
             } finally {
                 DBUtils.closeStatementIfOpen(stm);
-                DBUtils.rollbackIfNeeded(c, "store started job info", startedJobInfo);
+                DBUtils.rollbackIfNeeded(c, "store started job infos", progress.keySet());
+                HarvestDBConnection.release(c);
             }
 
-            // Should we store an history record?
-            Long lastHistoryStore = lastSampleDateByJobId.get(startedJobInfo.getJobId());
-
-            long time = System.currentTimeMillis();
-            boolean shouldSample = lastHistoryStore == null || time >= lastHistoryStore + HISTORY_SAMPLE_RATE;
-
-            if (!shouldSample) {
-                return; // we're done
+            if (prune) {
+                lastHistoryPrune = System.currentTimeMillis();
+                pruneHistory(new Timestamp(lastHistoryPrune - historyMaxAge));
             }
-            log.debug("Adding history Record for job {} to runningJobsHistory table", startedJobInfo.getJobId());
-            try {
-                c.setAutoCommit(false);
-
-                stm = c.prepareStatement("INSERT INTO runningJobsHistory (" + HM_COLUMN.getColumnsInOrder()
-                        + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
-                stm.setLong(HM_COLUMN.jobId.rank(), startedJobInfo.getJobId());
-                stm.setString(HM_COLUMN.harvestName.rank(), startedJobInfo.getHarvestName());
-                stm.setLong(HM_COLUMN.elapsedSeconds.rank(), startedJobInfo.getElapsedSeconds());
-                stm.setString(HM_COLUMN.hostUrl.rank(), startedJobInfo.getHostUrl());
-                stm.setDouble(HM_COLUMN.progress.rank(), startedJobInfo.getProgress());
-                stm.setLong(HM_COLUMN.queuedFilesCount.rank(), startedJobInfo.getQueuedFilesCount());
-                stm.setLong(HM_COLUMN.totalQueuesCount.rank(), startedJobInfo.getTotalQueuesCount());
-                stm.setLong(HM_COLUMN.activeQueuesCount.rank(), startedJobInfo.getActiveQueuesCount());
-                stm.setLong(HM_COLUMN.retiredQueuesCount.rank(), startedJobInfo.getRetiredQueuesCount());
-                stm.setLong(HM_COLUMN.exhaustedQueuesCount.rank(), startedJobInfo.getExhaustedQueuesCount());
-                stm.setLong(HM_COLUMN.alertsCount.rank(), startedJobInfo.getAlertsCount());
-                stm.setLong(HM_COLUMN.downloadedFilesCount.rank(), startedJobInfo.getDownloadedFilesCount());
-                stm.setLong(HM_COLUMN.currentProcessedKBPerSec.rank(), startedJobInfo.getCurrentProcessedKBPerSec());
-                stm.setLong(HM_COLUMN.processedKBPerSec.rank(), startedJobInfo.getProcessedKBPerSec());
-                stm.setDouble(HM_COLUMN.currentProcessedDocsPerSec.rank(),
-                        startedJobInfo.getCurrentProcessedDocsPerSec());
-                stm.setDouble(HM_COLUMN.processedDocsPerSec.rank(), startedJobInfo.getProcessedDocsPerSec());
-                stm.setInt(HM_COLUMN.activeToeCount.rank(), startedJobInfo.getActiveToeCount());
-                stm.setInt(HM_COLUMN.status.rank(), startedJobInfo.getStatus().ordinal());
-                stm.setTimestamp(HM_COLUMN.tstamp.rank(), new Timestamp(startedJobInfo.getTimestamp().getTime()));
+        }
+    }
 
-                stm.executeUpdate();
+    /**
+     * Tells whether a row must be inserted, after a batched update of the row returned the given update count. A
+     * driver may return {@link Statement#SUCCESS_NO_INFO} for an update, which does not tell whether the row exists,
+     * so the row is then looked up.
+     *
+     * @param c the connection the update was made on.
+     * @param updateCount the update count of the row.
+     * @param selectSql a query selecting the row, with its key as parameters.
+     * @param key the key of the row.
+     * @return true, if the row was not updated.
+     */
+    private static boolean mustInsert(Connection c, int updateCount, String selectSql, Object... key) {
+        if (updateCount == Statement.SUCCESS_NO_INFO) {
+            return DBUtils.selectFirstLongValueIfAny(c, selectSql, key) == null;
+        }
+        return updateCount <= 0;
+    }
 
-                c.commit();
-            } catch (SQLException e) {
-                String message = "SQL error storing started job info " + startedJobInfo + " in history table" + "\n"
-                        + ExceptionUtils.getSQLExceptionCause(e);
-                log.warn(message, e);
-                throw new IOFailure(message, e);
-            } finally {
-                DBUtils.closeStatementIfOpen(stm);
-                DBUtils.rollbackIfNeeded(c, "store started job info", startedJobInfo);
+    /**
+     * Deletes the history records older than a given time.
+     *
+     * @param cutoff the time of the oldest history records kept.
+     * @throws IOFailure if the records cannot be deleted.
+     */
+    private void pruneHistory(Timestamp cutoff) {
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement stm = null;
+        try {
+            c.setAutoCommit(false);
+            stm = c.prepareStatement("DELETE FROM runningJobsHistory WHERE tstamp<?");
+            stm.setTimestamp(1, cutoff);
+            int deleteCount = stm.executeUpdate();
+            c.commit();
+            if (deleteCount > 0) {
+                log.info("Deleted {} history records older than {}", deleteCount, cutoff);
             }
-
-            // Remember last sampling date
-            lastSampleDateByJobId.put(startedJobInfo.getJobId(), time);
+        } catch (SQLException e) {
+            String message = "SQL error deleting history records older than " + cutoff + "\n"
+                    + ExceptionUtils.getSQLExceptionCause(e);
+            log.warn(message, e);
+            throw new IOFailure(message, e);
         } finally {
+            DBUtils.closeStatementIfOpen(stm);
+            DBUtils.rollbackIfNeeded(c, "pruneHistory", cutoff);
             HarvestDBConnection.release(c);
         }
     }
 
+    /**
+     * Sets the parameters of a statement listing the columns of the monitor and history tables in the order given by
+     * {@link HM_COLUMN}.
+     *
+     * @param stm the statement.
+     * @param startedJobInfo the record holding the values of the columns.
+     * @throws SQLException if a parameter cannot be set.
+     */
+    private static void setProgressParameters(PreparedStatement stm, StartedJobInfo startedJobInfo)
+            throws SQLException {
+        stm.setLong(HM_COLUMN.jobId.rank(), startedJobInfo.getJobId());
+        stm.setString(HM_COLUMN.harvestName.rank(), startedJobInfo.getHarvestName());
+        stm.setLong(HM_COLUMN.elapsedSeconds.rank(), startedJobInfo.getElapsedSeconds());
+        stm.setString(HM_COLUMN.hostUrl.rank(), startedJobInfo.getHostUrl());
+        stm.setDouble(HM_COLUMN.progress.rank(), startedJobInfo.getProgress());
+        stm.setLong(HM_COLUMN.queuedFilesCount.rank(), startedJobInfo.getQueuedFilesCount());
+        stm.setLong(HM_COLUMN.totalQueuesCount.rank(), startedJobInfo.getTotalQueuesCount());
+        stm.setLong(HM_COLUMN.activeQueuesCount.rank(), startedJobInfo.getActiveQueuesCount());
+        stm.setLong(HM_COLUMN.retiredQueuesCount.rank(), startedJobInfo.getRetiredQueuesCount());
+        stm.setLong(HM_COLUMN.exhaustedQueuesCount.rank(), startedJobInfo.getExhaustedQueuesCount());
+        stm.setLong(HM_COLUMN.alertsCount.rank(), startedJobInfo.getAlertsCount());
+        stm.setLong(HM_COLUMN.downloadedFilesCount.rank(), startedJobInfo.getDownloadedFilesCount());
+        stm.setLong(HM_COLUMN.currentProcessedKBPerSec.rank(), startedJobInfo.getCurrentProcessedKBPerSec());
+        stm.setLong(HM_COLUMN.processedKBPerSec.rank(), startedJobInfo.getProcessedKBPerSec());
+        stm.setDouble(HM_COLUMN.currentProcessedDocsPerSec.rank(), startedJobInfo.getCurrentProcessedDocsPerSec());
+        stm.setDouble(HM_COLUMN.processedDocsPerSec.rank(), startedJobInfo.getProcessedDocsPerSec());
+        stm.setInt(HM_COLUMN.activeToeCount.rank(), startedJobInfo.getActiveToeCount());
+        stm.setInt(HM_COLUMN.status.rank(), startedJobInfo.getStatus().ordinal());
+        stm.setTimestamp(HM_COLUMN.tstamp.rank(), new Timestamp(startedJobInfo.getTimestamp().getTime()));
+    }
+
     /**
      * Returns an array of all progress records chronologically sorted for the given job ID.
      *
@@ -284,6 +451,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
      */
     @Override
     public StartedJobInfo[] getFullJobHistory(long jobId) {
+        flush();
         Connection c = HarvestDBConnection.get();
         PreparedStatement stm = null;
         try {
@@ -314,6 +482,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
      */
     @Override
     public Map<String, List<StartedJobInfo>> getMostRecentByHarvestName() {
+        flush();
         Connection c = HarvestDBConnection.get();
 
         Map<String, List<StartedJobInfo>> infoMap = new TreeMap<String, List<StartedJobInfo>>();
@@ -375,6 +544,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
      */
     @Override
     public Set<Long> getHistoryRecordIds() {
+        flush();
         Connection c = HarvestDBConnection.get();
         Set<Long> jobIds = new TreeSet<Long>();
         Statement stm = null;
@@ -425,10 +595,10 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
      */
     @Override
     public StartedJobInfo[] getMostRecentByJobId(long jobId, long startTime, int limit) {
-
         ArgumentNotValid.checkNotNull(jobId, "jobId");
         ArgumentNotValid.checkNotNull(startTime, "startTime");
         ArgumentNotValid.checkNotNull(limit, "limit");
+        flush();
 
         Connection c = HarvestDBConnection.get();
         PreparedStatement stm = null;
@@ -463,6 +633,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
      */
     @Override
     public StartedJobInfo getMostRecentByJobId(long jobId) {
+        flush();
         Connection c = HarvestDBConnection.get();
         Statement stm = null;
         try {
@@ -517,6 +688,34 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
     public int removeInfoForJob(long jobId) {
         ArgumentNotValid.checkNotNull(jobId, "jobId");
 
+        synchronized (flushLock) {
+            // Drop the buffered records, and delete while no buffered records are written
+            synchronized (pendingProgress) {
+                Iterator<StartedJobInfo> it = pendingProgress.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().getJobId() == jobId) {
+                        it.remove();
+                    }
+                }
+                it = pendingHistory.iterator();
+                while (it.hasNext()) {
+                    if (it.next().getJobId() == jobId) {
+                        it.remove();
+                    }
+                }
+                lastSampleDateByJobId.remove(jobId);
+            }
+            return deleteInfoForJob(jobId);
+        }
+    }
+
+    /**
+     * Deletes all records pertaining to the given job ID from the monitor and history tables.
+     *
+     * @param jobId the job id.
+     * @return the number of deleted records.
+     */
+    private int deleteInfoForJob(long jobId) {
         Connection c = HarvestDBConnection.get();
         PreparedStatement stm = null;
 
@@ -628,33 +827,10 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
             try {
                 c.setAutoCommit(false);
 
-                stm = c.prepareStatement("INSERT INTO frontierReportMonitor(" + FR_COLUMN.getColumnsInOrder()
-                        + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+                stm = c.prepareStatement(INSERT_FRONTIER_LINE_SQL);
 
                 for (FrontierReportLine frl : report.getLines()) {
-                    stm.setLong(FR_COLUMN.jobId.rank(), jobId);
-                    stm.setString(FR_COLUMN.filterId.rank(), filterId);
-                    stm.setTimestamp(FR_COLUMN.tstamp.rank(), new Timestamp(report.getTimestamp()));
-                    stm.setString(FR_COLUMN.domainName.rank(), frl.getDomainName());
-                    stm.setLong(FR_COLUMN.currentSize.rank(), frl.getCurrentSize());
-                    stm.setLong(FR_COLUMN.totalEnqueues.rank(), frl.getTotalEnqueues());
-                    stm.setLong(FR_COLUMN.sessionBalance.rank(), frl.getSessionBalance());
-                    stm.setDouble(FR_COLUMN.lastCost.rank(), frl.getLastCost());
-                    stm.setDouble(FR_COLUMN.averageCost.rank(),
-                            correctNumericIfIllegalAverageCost(frl.getAverageCost()));
-                    stm.setString(FR_COLUMN.lastDequeueTime.rank(), frl.getLastDequeueTime());
-                    stm.setString(FR_COLUMN.wakeTime.rank(), frl.getWakeTime());
-                    stm.setLong(FR_COLUMN.totalSpend.rank(), frl.getTotalSpend());
-                    stm.setLong(FR_COLUMN.totalBudget.rank(), frl.getTotalBudget());
-                    stm.setLong(FR_COLUMN.errorCount.rank(), frl.getErrorCount());
-
-                    // URIs are to be truncated to 1000 characters
-                    // (see SQL scripts)
-                    DBUtils.setStringMaxLength(stm, FR_COLUMN.lastPeekUri.rank(), frl.getLastPeekUri(), MAX_URL_LENGTH,
-                            frl, "lastPeekUri");
-                    DBUtils.setStringMaxLength(stm, FR_COLUMN.lastQueuedUri.rank(), frl.getLastQueuedUri(),
-                            MAX_URL_LENGTH, frl, "lastQueuedUri");
-
+                    setLineParameters(stm, jobId, filterId, report.getTimestamp(), frl);
                     stm.addBatch();
                 }
 
@@ -682,6 +858,150 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
         }
     }
 
+    /** The SQL inserting a line in the frontierReportMonitor table. */
+    private static final String INSERT_FRONTIER_LINE_SQL = "INSERT INTO frontierReportMonitor("
+            + FR_COLUMN.getColumnsInOrder() + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    /** The SQL updating a line of the frontierReportMonitor table. The line is identified by the 3 last parameters. */
+    private static final String UPDATE_FRONTIER_LINE_SQL;
+
+    static {
+        StringBuilder sql = new StringBuilder("UPDATE frontierReportMonitor SET ");
+        for (FR_COLUMN setCol : FR_COLUMN.values()) {
+            sql.append(setCol.name()).append("=?, ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(" WHERE jobId=? AND filterId=? AND domainName=?");
+        UPDATE_FRONTIER_LINE_SQL = sql.toString();
+    }
+
+    /**
+     * Store the changes between two frontier reports to the persistent storage. The changed lines are updated, or
+     * inserted if they are not stored, and the lines of the removed queues are deleted, all in one transaction.
+     *
+     * @param filterId the id of the filter that produced the reports
+     * @param delta the changes from the stored report to the new report
+     * @param jobId The ID of the job responsible for the reports
+     * @return the update count
+     * @throws IOFailure if the changes cannot be stored.
+     */
+    @Override
+    public int storeFrontierReportDelta(String filterId, FrontierReportDelta delta, Long jobId) {
+        ArgumentNotValid.checkNotNull(delta, "FrontierReportDelta delta");
+        ArgumentNotValid.checkNotNull(jobId, "jobId");
+        if (delta.isEmpty()) {
+            return 0;
+        }
+
+        Connection c = HarvestDBConnection.get();
+        PreparedStatement stm = null;
+        try {
+            c.setAutoCommit(false);
+            int updCountTotal = 0;
+
+            List<FrontierReportLine> changedLines = delta.getChangedLines();
+            if (!changedLines.isEmpty()) {
+                int keyIndex = FR_COLUMN.values().length;
+                stm = c.prepareStatement(UPDATE_FRONTIER_LINE_SQL);
+                for (FrontierReportLine frl : changedLines) {
+                    setLineParameters(stm, jobId, filterId, delta.getTimestamp(), frl);
+                    stm.setLong(keyIndex + 1, jobId);
+                    stm.setString(keyIndex + 2, filterId);
+                    stm.setString(keyIndex + 3, frl.getDomainName());
+                    stm.addBatch();
+                }
+                int[] updCounts = stm.executeBatch();
+                stm.close();
+
+                List<FrontierReportLine> newLines = new ArrayList<FrontierReportLine>();
+                for (int i = 0; i < updCounts.length; i++) {
+                    FrontierReportLine frl = changedLines.get(i);
+                    if (mustInsert(c, updCounts[i], "SELECT jobId FROM frontierReportMonitor"
+                            + " WHERE jobId=? AND filterId=? AND domainName=?", jobId, filterId,
+                            frl.getDomainName())) {
+                        newLines.add(frl);
+                    } else {
+                        updCountTotal += Math.max(updCounts[i], 1);
+                    }
+                }
+                if (!newLines.isEmpty()) {
+                    stm = c.prepareStatement(INSERT_FRONTIER_LINE_SQL);
+                    for (FrontierReportLine frl : newLines) {
+                        setLineParameters(stm, jobId, filterId, delta.getTimestamp(), frl);
+                        stm.addBatch();
+                    }
+                    for (int count : stm.executeBatch()) {
+                        updCountTotal += count;
+                    }
+                    stm.close();
+                }
+            }
+
+            if (!delta.getRemovedDomains().isEmpty()) {
+                stm = c.prepareStatement("DELETE FROM frontierReportMonitor"
+                        + " WHERE jobId=? AND filterId=? AND domainName=?");
+                for (String domainName : delta.getRemovedDomains()) {
+                    stm.setLong(1, jobId);
+                    stm.setString(2, filterId);
+                    stm.setString(3, domainName);
+                    stm.addBatch();
+                }
+                for (int count : stm.executeBatch()) {
+                    updCountTotal += count;
+                }
+            }
+
+            c.commit();
+            return updCountTotal;
+        } catch (SQLException e) {
+            String message = "SQL error writing changed records for job ID " + jobId + " and filterId " + filterId
+                    + "\n" + ExceptionUtils.getSQLExceptionCause(e);
+            log.warn(message, e);
+            throw new IOFailure(message, e);
+        } finally {
+            DBUtils.closeStatementIfOpen(stm);
+            DBUtils.rollbackIfNeeded(c, "storeFrontierReportDelta", jobId);
+            HarvestDBConnection.release(c);
+        }
+    }
+
+    /**
+     * Sets the parameters of a statement listing the columns of the frontierReportMonitor table in the order given by
+     * {@link FR_COLUMN}.
+     *
+     * @param stm the statement.
+     * @param jobId the ID of the job responsible for the report.
+     * @param filterId the id of the filter that produced the report.
+     * @param timestamp the timestamp of the report.
+     * @param frl the report line.
+     * @throws SQLException if a parameter cannot be set.
+     */
+    private void setLineParameters(PreparedStatement stm, Long jobId, String filterId, long timestamp,
+            FrontierReportLine frl) throws SQLException {
+        stm.setLong(FR_COLUMN.jobId.rank(), jobId);
+        stm.setString(FR_COLUMN.filterId.rank(), filterId);
+        stm.setTimestamp(FR_COLUMN.tstamp.rank(), new Timestamp(timestamp));
+        stm.setString(FR_COLUMN.domainName.rank(), frl.getDomainName());
+        stm.setLong(FR_COLUMN.currentSize.rank(), frl.getCurrentSize());
+        stm.setLong(FR_COLUMN.totalEnqueues.rank(), frl.getTotalEnqueues());
+        stm.setLong(FR_COLUMN.sessionBalance.rank(), frl.getSessionBalance());
+        stm.setDouble(FR_COLUMN.lastCost.rank(), frl.getLastCost());
+        stm.setDouble(FR_COLUMN.averageCost.rank(),
+                correctNumericIfIllegalAverageCost(frl.getAverageCost()));
+        stm.setString(FR_COLUMN.lastDequeueTime.rank(), frl.getLastDequeueTime());
+        stm.setString(FR_COLUMN.wakeTime.rank(), frl.getWakeTime());
+        stm.setLong(FR_COLUMN.totalSpend.rank(), frl.getTotalSpend());
+        stm.setLong(FR_COLUMN.totalBudget.rank(), frl.getTotalBudget());
+        stm.setLong(FR_COLUMN.errorCount.rank(), frl.getErrorCount());
+
+        // URIs are to be truncated to 1000 characters
+        // (see SQL scripts)
+        DBUtils.setStringMaxLength(stm, FR_COLUMN.lastPeekUri.rank(), frl.getLastPeekUri(), MAX_URL_LENGTH,
+                frl, "lastPeekUri");
+        DBUtils.setStringMaxLength(stm, FR_COLUMN.lastQueuedUri.rank(), frl.getLastQueuedUri(),
+                MAX_URL_LENGTH, frl, "lastQueuedUri");
+    }
+
     /**
      * Correct the given double if it is equal to 4.9E-324. Part of fix for NAS-2168
      *
@@ -751,15 +1071,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
 
             ResultSet rs = stm.executeQuery();
 
-            // Process first line to get report timestamp
-            if (rs.next()) {
-                report.setTimestamp(rs.getTimestamp(FR_COLUMN.tstamp.rank()).getTime());
-                report.addLine(getLine(rs));
-
-                while (rs.next()) {
-                    report.addLine(getLine(rs));
-                }
-            }
+            readLines(rs, report);
 
         } catch (SQLException e) {
             String message = "SQL error fetching report for job ID " + jobId + " and filterId " + filterId + "\n"
@@ -811,15 +1123,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
 
             ResultSet rs = stm.executeQuery();
 
-            // Process first line to get report timestamp
-            if (rs.next()) {
-                report.setTimestamp(rs.getTimestamp(FR_COLUMN.tstamp.rank()).getTime());
-                report.addLine(getLine(rs));
-
-                while (rs.next()) {
-                    report.addLine(getLine(rs));
-                }
-            }
+            readLines(rs, report);
 
         } catch (SQLException e) {
             String message = "SQL error fetching report for job ID " + jobId + " and limit " + limit + "\n"
@@ -865,15 +1169,7 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
 
             ResultSet rs = stm.executeQuery();
 
-            // Process first line to get report timestamp
-            if (rs.next()) {
-                report.setTimestamp(rs.getTimestamp(FR_COLUMN.tstamp.rank()).getTime());
-                report.addLine(getLine(rs));
-
-                while (rs.next()) {
-                    report.addLine(getLine(rs));
-                }
-            }
+            readLines(rs, report);
 
         } catch (SQLException e) {
             String message = "SQL error fetching report for job ID " + jobId + " and limit " + limit + "\n"
@@ -921,6 +1217,25 @@ public class RunningJobsInfoDBDAO extends RunningJobsInfoDAO {
         }
     }
 
+    /**
+     * Adds the lines of a result set to a report. The report timestamp is set to the latest timestamp of the lines, as
+     * lines that did not change are not written again when a new report is stored.
+     *
+     * @param rs the resultset with data from table frontierReportMonitor
+     * @param report the report to add the lines to
+     * @throws SQLException If unable to read the lines
+     */
+    private void readLines(ResultSet rs, InMemoryFrontierReport report) throws SQLException {
+        long timestamp = 0;
+        while (rs.next()) {
+            timestamp = Math.max(timestamp, rs.getTimestamp(FR_COLUMN.tstamp.rank()).getTime());
+            report.addLine(getLine(rs));
+        }
+        if (timestamp > 0) {
+            report.setTimestamp(timestamp);
+        }
+    }
+
     /**
      * Get a frontierReportLine from the resultSet.
      *
@@ -23,6 +23,8 @@
 
 package dk.netarkivet.harvester.distribute;
 
+import java.io.DataInput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import dk.netarkivet.common.distribute.ChannelID;
@@ -45,6 +47,16 @@ public abstract class HarvesterMessage extends NetarkivetMessage implements Seri
         super(to, replyTo);
     }
 
+    /**
+     * Creates a HarvesterMessage from the fields written by {@link #writeFields(java.io.DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    protected HarvesterMessage(DataInput in) throws IOException {
+        super(in);
+    }
+
     /**
      * Should be implemented as a part of the visitor pattern. fx.: public void accept(HarvesterMessageVisitor v) {
      * v.visit(this); }
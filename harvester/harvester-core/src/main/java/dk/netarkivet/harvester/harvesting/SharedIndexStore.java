@@ -0,0 +1,464 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.HarvesterSettings;
+
+/**
+ * A store of deduplication indices shared by all harvesters on a host.
+ * <p>
+ * Each index is stored once in the store directory, no matter how many harvesters on the host use it. A job using an
+ * index gets its own directory with hard links to the files of the stored index, so all jobs read the same files and
+ * share them in the page cache. A job holds a reference to the stored index from it is acquired until it is released,
+ * or until the directory of the job is gone, if the harvester died before releasing it. When the store grows beyond
+ * its size budget, the least recently used indices without references are evicted.
+ * <p>
+ * The store is used by several processes at a time, so changes to it are made while holding a lock on a file in the
+ * store directory.
+ */
+public class SharedIndexStore {
+
+    /** The class logger. */
+    private static final Logger log = LoggerFactory.getLogger(SharedIndexStore.class);
+
+    /** The name of the file locked while changing the store. */
+    private static final String STORE_LOCK = "store.lock";
+
+    /** Suffix of the lock files held while loading an index. */
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /** Suffix of the directories holding the references to an index. */
+    private static final String REFS_SUFFIX = ".refs";
+
+    /** Suffix of the directories holding an index while it is added. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Locks held within this JVM, by lock file. File locks are held per process, so they don't exclude threads. */
+    private static final ConcurrentMap<String, ReentrantLock> jvmLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /** Accepts the directories holding the stored indices. */
+    private static final FileFilter INDEX_FILTER = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isDirectory() && !f.getName().endsWith(REFS_SUFFIX) && !f.getName().endsWith(TMP_SUFFIX);
+        }
+    };
+
+    /** The instance using the configured store, if any. */
+    private static SharedIndexStore instance;
+
+    /** The directory of the store. */
+    private final File storeDir;
+
+    /** The maximum number of bytes held by indices without references. */
+    private final long maxSize;
+
+    /**
+     * Loads an index not yet in the store.
+     */
+    public interface IndexLoader {
+        /**
+         * Load the index.
+         *
+         * @return A directory with the files of the index.
+         */
+        File load();
+    }
+
+    /**
+     * Create a store.
+     *
+     * @param storeDir The directory of the store. Created if it doesn't exist.
+     * @param maxSize The size in bytes that the stored indices may take up, before unreferenced indices are evicted.
+     */
+    public SharedIndexStore(File storeDir, long maxSize) {
+        ArgumentNotValid.checkNotNull(storeDir, "File storeDir");
+        ArgumentNotValid.checkNotNegative(maxSize, "long maxSize");
+        FileUtils.createDir(storeDir);
+        this.storeDir = storeDir.getAbsoluteFile();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the store configured by {@link HarvesterSettings#HARVEST_CONTROLLER_SHARED_INDEX_DIR}.
+     *
+     * @return The store, or null if no store is configured.
+     */
+    public static synchronized SharedIndexStore getInstance() {
+        String dir = Settings.get(HarvesterSettings.HARVEST_CONTROLLER_SHARED_INDEX_DIR);
+        if (dir.trim().isEmpty()) {
+            return null;
+        }
+        File storeDir = new File(dir).getAbsoluteFile();
+        if (instance == null || !instance.storeDir.equals(storeDir)) {
+            instance = new SharedIndexStore(storeDir,
+                    Settings.getLong(HarvesterSettings.HARVEST_CONTROLLER_SHARED_INDEX_MAX_SIZE));
+        }
+        return instance;
+    }
+
+    /**
+     * Make the key of an index over a set of jobs.
+     *
+     * @param prefix The type of index, e.g. the name of the cache it is from.
+     * @param jobIDs The jobs of the index.
+     * @return The key.
+     */
+    public static String makeKey(String prefix, Set<Long> jobIDs) {
+        ArgumentNotValid.checkNotNullOrEmpty(prefix, "String prefix");
+        ArgumentNotValid.checkNotNull(jobIDs, "Set<Long> jobIDs");
+        List<Long> sortedIDs = new ArrayList<Long>(jobIDs);
+        Collections.sort(sortedIDs);
+        return prefix + "-" + ChecksumCalculator.calculateMd5(StringUtils.conjoin("-", sortedIDs).getBytes());
+    }
+
+    /**
+     * Acquire an index, loading it into the store if it isn't there already.
+     *
+     * @param key The key of the index.
+     * @param linkDir The directory to make the hard links to the files of the index in. Must not exist. The reference
+     * to the index is held for as long as this directory exists, or until the index is released.
+     * @param loader Loads the index, if not in the store.
+     * @return linkDir
+     * @throws IOFailure If the index could not be added to the store, or linked.
+     */
+    public File acquire(String key, File linkDir, IndexLoader loader) {
+        ArgumentNotValid.checkNotNullOrEmpty(key, "String key");
+        ArgumentNotValid.checkNotNull(linkDir, "File linkDir");
+        ArgumentNotValid.checkNotNull(loader, "IndexLoader loader");
+        File indexDir = getIndexDir(key);
+        boolean linked = false;
+        while (!linked) {
+            // Only one process at a time loads a given index; others wait for it to be added.
+            Lock loadLock = lock(new File(storeDir, key + LOCK_SUFFIX));
+            try {
+                if (!indexDir.isDirectory()) {
+                    add(indexDir, loader.load());
+                }
+            } finally {
+                loadLock.release();
+            }
+            Lock storeLock = lock(new File(storeDir, STORE_LOCK));
+            try {
+                // The index may have been evicted after it was added, in which case it is loaded again.
+                if (indexDir.isDirectory()) {
+                    addReference(key, linkDir);
+                    linkFiles(indexDir, linkDir);
+                    indexDir.setLastModified(System.currentTimeMillis());
+                    linked = true;
+                }
+            } finally {
+                storeLock.release();
+            }
+        }
+        log.info("Acquired shared index '{}' in '{}' with {} references", key, linkDir, getReferenceCount(key));
+        evict();
+        return linkDir;
+    }
+
+    /**
+     * Release an index acquired with {@link #acquire(String, File, IndexLoader)}. The directory with links to the
+     * index is removed.
+     *
+     * @param key The key of the index.
+     * @param linkDir The directory the index was linked into.
+     */
+    public void release(String key, File linkDir) {
+        ArgumentNotValid.checkNotNullOrEmpty(key, "String key");
+        ArgumentNotValid.checkNotNull(linkDir, "File linkDir");
+        Lock storeLock = lock(new File(storeDir, STORE_LOCK));
+        try {
+            FileUtils.remove(getReferenceFile(key, linkDir));
+            FileUtils.removeRecursively(linkDir);
+        } finally {
+            storeLock.release();
+        }
+        log.info("Released shared index '{}' from '{}'", key, linkDir);
+        evict();
+    }
+
+    /**
+     * Get the number of live references to an index. References of directories that no longer exist are not counted.
+     *
+     * @param key The key of an index.
+     * @return The number of references.
+     */
+    public int getReferenceCount(String key) {
+        ArgumentNotValid.checkNotNullOrEmpty(key, "String key");
+        File[] refs = new File(storeDir, key + REFS_SUFFIX).listFiles();
+        if (refs == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File ref : refs) {
+            if (isLive(ref)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the directory an index is stored in.
+     *
+     * @param key The key of an index.
+     * @return The directory. It doesn't exist, if the index isn't stored.
+     */
+    public File getIndexDir(String key) {
+        return new File(storeDir, key);
+    }
+
+    /**
+     * Evict the least recently used indices without references, until the store is within its size budget.
+     */
+    public void evict() {
+        Lock storeLock = lock(new File(storeDir, STORE_LOCK));
+        try {
+            File[] indexDirs = storeDir.listFiles(INDEX_FILTER);
+            if (indexDirs == null) {
+                return;
+            }
+            long totalSize = 0;
+            List<File> unreferenced = new ArrayList<File>();
+            for (File indexDir : indexDirs) {
+                totalSize += getSize(indexDir);
+                if (getReferenceCount(indexDir.getName()) == 0) {
+                    unreferenced.add(indexDir);
+                }
+            }
+            Collections.sort(unreferenced, new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    return Long.compare(f1.lastModified(), f2.lastModified());
+                }
+            });
+            for (File indexDir : unreferenced) {
+                if (totalSize <= maxSize) {
+                    break;
+                }
+                long size = getSize(indexDir);
+                FileUtils.removeRecursively(indexDir);
+                FileUtils.removeRecursively(new File(storeDir, indexDir.getName() + REFS_SUFFIX));
+                totalSize -= size;
+                log.info("Evicted shared index '{}' of {} bytes. The store now holds {} bytes", indexDir.getName(),
+                        size, totalSize);
+            }
+        } finally {
+            storeLock.release();
+        }
+    }
+
+    /**
+     * Add an index to the store. The files are hard linked into the store if possible, so the loaded index takes up no
+     * further space.
+     *
+     * @param indexDir The directory to store the index in.
+     * @param loadedDir A directory with the files of the index.
+     */
+    private void add(File indexDir, File loadedDir) {
+        ArgumentNotValid.checkExistsDirectory(loadedDir, "File loadedDir");
+        File tmpDir = new File(storeDir, indexDir.getName() + TMP_SUFFIX);
+        FileUtils.removeRecursively(tmpDir);
+        linkFiles(loadedDir, tmpDir);
+        if (!tmpDir.renameTo(indexDir)) {
+            FileUtils.removeRecursively(tmpDir);
+            throw new IOFailure("Unable to move '" + tmpDir + "' to '" + indexDir + "'");
+        }
+        log.info("Added index '{}' from '{}' to the shared index store '{}'", indexDir.getName(), loadedDir, storeDir);
+    }
+
+    /**
+     * Record a reference to an index.
+     *
+     * @param key The key of the index.
+     * @param linkDir The directory holding the reference.
+     */
+    private void addReference(String key, File linkDir) {
+        File ref = getReferenceFile(key, linkDir);
+        FileUtils.createDir(ref.getParentFile());
+        FileUtils.writeBinaryFile(ref, linkDir.getAbsolutePath().getBytes());
+    }
+
+    /**
+     * Get the file recording a reference to an index.
+     *
+     * @param key The key of the index.
+     * @param linkDir The directory holding the reference.
+     * @return The reference file.
+     */
+    private File getReferenceFile(String key, File linkDir) {
+        return new File(new File(storeDir, key + REFS_SUFFIX), ChecksumCalculator.calculateMd5(linkDir
+                .getAbsolutePath().getBytes()));
+    }
+
+    /**
+     * Check whether a reference is live, i.e. its directory still exists. References that are not live are removed.
+     *
+     * @param ref A reference file.
+     * @return true, if the reference is live.
+     */
+    private static boolean isLive(File ref) {
+        try {
+            if (new File(FileUtils.readFile(ref).trim()).isDirectory()) {
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read reference '{}'", ref, e);
+        }
+        log.debug("Removing stale reference '{}'", ref);
+        FileUtils.remove(ref);
+        return false;
+    }
+
+    /**
+     * Link (or copy) all files of a directory into a new directory.
+     *
+     * @param fromDir The directory to link the files of.
+     * @param toDir The directory to make the links in.
+     */
+    private static void linkFiles(File fromDir, File toDir) {
+        FileUtils.createDir(toDir);
+        File[] files = fromDir.listFiles();
+        if (files == null) {
+            throw new IOFailure("Unable to list the files of '" + fromDir + "'");
+        }
+        for (File f : files) {
+            File link = new File(toDir, f.getName());
+            try {
+                Files.createLink(link.toPath(), f.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Unable to hard link '{}' to '{}'. Copying instead", f, link, e);
+                FileUtils.copyFile(f, link);
+            }
+        }
+    }
+
+    /**
+     * @param dir A directory.
+     * @return The total size of the files in the directory.
+     */
+    private static long getSize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                size += f.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Take a lock on a file, excluding other threads and processes.
+     *
+     * @param lockFile The file to lock.
+     * @return The lock.
+     * @throws IOFailure If the file could not be locked.
+     */
+    private static Lock lock(File lockFile) {
+        ReentrantLock jvmLock = jvmLocks.get(lockFile.getAbsolutePath());
+        if (jvmLock == null) {
+            jvmLocks.putIfAbsent(lockFile.getAbsolutePath(), new ReentrantLock());
+            jvmLock = jvmLocks.get(lockFile.getAbsolutePath());
+        }
+        jvmLock.lock();
+        try {
+            return new Lock(jvmLock, lockFile);
+        } catch (IOException e) {
+            jvmLock.unlock();
+            throw new IOFailure("Unable to lock '" + lockFile + "'", e);
+        }
+    }
+
+    /**
+     * A lock held on a file by this thread.
+     */
+    private static class Lock {
+        /** The lock excluding other threads. */
+        private final ReentrantLock jvmLock;
+        /** The open lock file. */
+        private final RandomAccessFile file;
+        /** The lock excluding other processes, or null if the thread already held it. */
+        private final FileLock fileLock;
+
+        /**
+         * Take the file lock, unless this thread holds it already.
+         *
+         * @param jvmLock The lock excluding other threads, held by this thread.
+         * @param lockFile The file to lock.
+         * @throws IOException If the file could not be locked.
+         */
+        Lock(ReentrantLock jvmLock, File lockFile) throws IOException {
+            this.jvmLock = jvmLock;
+            if (jvmLock.getHoldCount() > 1) {
+                file = null;
+                fileLock = null;
+            } else {
+                file = new RandomAccessFile(lockFile, "rw");
+                try {
+                    fileLock = file.getChannel().lock();
+                } catch (IOException e) {
+                    file.close();
+                    throw e;
+                }
+            }
+        }
+
+        /** Release the lock. */
+        void release() {
+            try {
+                if (fileLock != null) {
+                    fileLock.release();
+                    file.close();
+                }
+            } catch (IOException e) {
+                log.warn("Unable to release lock", e);
+            } finally {
+                jvmLock.unlock();
+            }
+        }
+    }
+
+}
@@ -22,12 +22,17 @@
  */
 package dk.netarkivet.harvester.harvesting.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.CompactMessage;
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.harvester.distribute.HarvesterMessage;
 import dk.netarkivet.harvester.distribute.HarvesterMessageVisitor;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
@@ -38,10 +43,10 @@ import dk.netarkivet.harvester.harvesting.report.Heritrix1Constants;
  * crawl progress.
  * <p>
  * Additionally this object extends {@link HarvesterMessage} so that it can be sent on the JMS bus to be processed by
- * {@link HarvestMonitor}.
+ * {@link HarvestMonitor}. As it is sent every few seconds by each harvester, it is a {@link CompactMessage}.
  */
 @SuppressWarnings({"serial"})
-public class CrawlProgressMessage extends HarvesterMessage implements Serializable {
+public class CrawlProgressMessage extends HarvesterMessage implements Serializable, CompactMessage {
 
 	/** The logger for this class. */
 	
@@ -297,6 +302,64 @@ public class CrawlProgressMessage extends HarvesterMessage implements Serializab
         this(harvestID, jobId, "");
     }
 
+    /**
+     * Creates a crawl progress message from the fields written by {@link #writeFields(DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    public CrawlProgressMessage(DataInput in) throws IOException {
+        super(in);
+        jobID = in.readLong();
+        harvestID = in.readLong();
+        hostUrl = CompactMessageCodec.readString(in);
+        String statusName = CompactMessageCodec.readString(in);
+        try {
+            status = statusName == null ? null : CrawlStatus.valueOf(statusName);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown crawl status '" + statusName + "'", e);
+        }
+        progressStatisticsLegend = CompactMessageCodec.readString(in);
+        heritrixStatus.setAlertCount(in.readInt());
+        heritrixStatus.setCrawling(in.readBoolean());
+        heritrixStatus.setCurrentJob(CompactMessageCodec.readString(in));
+        jobStatus.setDiscoveredFilesCount(in.readLong());
+        jobStatus.setDownloadedFilesCount(in.readLong());
+        jobStatus.setFrontierShortReport(CompactMessageCodec.readString(in));
+        jobStatus.setElapsedSeconds(in.readLong());
+        jobStatus.setCurrentProcessedKBPerSec(in.readLong());
+        jobStatus.setProcessedKBPerSec(in.readLong());
+        jobStatus.setCurrentProcessedDocsPerSec(in.readDouble());
+        jobStatus.setProcessedDocsPerSec(in.readDouble());
+        jobStatus.setActiveToeCount(in.readInt());
+        jobStatus.setProgressStatistics(CompactMessageCodec.readString(in));
+        jobStatus.setStatus(CompactMessageCodec.readString(in));
+    }
+
+    @Override
+    protected void writeFields(DataOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeLong(jobID);
+        out.writeLong(harvestID);
+        CompactMessageCodec.writeString(out, hostUrl);
+        CompactMessageCodec.writeString(out, status == null ? null : status.name());
+        CompactMessageCodec.writeString(out, progressStatisticsLegend);
+        out.writeInt(heritrixStatus.getAlertCount());
+        out.writeBoolean(heritrixStatus.isCrawling());
+        CompactMessageCodec.writeString(out, heritrixStatus.getCurrentJob());
+        out.writeLong(jobStatus.getDiscoveredFilesCount());
+        out.writeLong(jobStatus.getDownloadedFilesCount());
+        CompactMessageCodec.writeString(out, jobStatus.getFrontierShortReport());
+        out.writeLong(jobStatus.getElapsedSeconds());
+        out.writeLong(jobStatus.getCurrentProcessedKBPerSec());
+        out.writeLong(jobStatus.getProcessedKBPerSec());
+        out.writeDouble(jobStatus.getCurrentProcessedDocsPerSec());
+        out.writeDouble(jobStatus.getProcessedDocsPerSec());
+        out.writeInt(jobStatus.getActiveToeCount());
+        CompactMessageCodec.writeString(out, jobStatus.getProgressStatistics());
+        CompactMessageCodec.writeString(out, jobStatus.getStatus());
+    }
+
     public long getHarvestID() {
         return harvestID;
     }
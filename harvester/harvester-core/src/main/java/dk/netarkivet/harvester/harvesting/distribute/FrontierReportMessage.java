@@ -22,18 +22,26 @@
  */
 package dk.netarkivet.harvester.harvesting.distribute;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import dk.netarkivet.common.distribute.Channels;
+import dk.netarkivet.common.distribute.CompactMessage;
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.harvester.distribute.HarvesterMessage;
 import dk.netarkivet.harvester.distribute.HarvesterMessageVisitor;
 import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
 import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
 
 /**
- * Sends a frontier report to the {@link HarvestMonitor}.
+ * Sends a frontier report to the {@link HarvestMonitor}. As each harvester sends reports regularly, it is a
+ * {@link CompactMessage}.
  */
 @SuppressWarnings({"serial"})
-public class FrontierReportMessage extends HarvesterMessage {
+public class FrontierReportMessage extends HarvesterMessage implements CompactMessage {
 
     /** The id of the filter that generated this report. */
     private String filterId;
@@ -57,6 +65,91 @@ public class FrontierReportMessage extends HarvesterMessage {
         this.jobID = jobID;
     }
 
+    /**
+     * Creates a frontier report message from the fields written by {@link #writeFields(DataOutput)}.
+     *
+     * @param in The input to read the fields from.
+     * @throws IOException If the fields cannot be read.
+     */
+    public FrontierReportMessage(DataInput in) throws IOException {
+        super(in);
+        filterId = CompactMessageCodec.readString(in);
+        jobID = in.readBoolean() ? in.readLong() : null;
+        report = new InMemoryFrontierReport(CompactMessageCodec.readString(in));
+        report.setTimestamp(in.readLong());
+        int lineCount = in.readInt();
+        for (int i = 0; i < lineCount; i++) {
+            report.addLine(readLine(in));
+        }
+    }
+
+    @Override
+    protected void writeFields(DataOutput out) throws IOException {
+        super.writeFields(out);
+        CompactMessageCodec.writeString(out, filterId);
+        out.writeBoolean(jobID != null);
+        if (jobID != null) {
+            out.writeLong(jobID);
+        }
+        CompactMessageCodec.writeString(out, report.getJobName());
+        out.writeLong(report.getTimestamp());
+        FrontierReportLine[] lines = report.getLines();
+        out.writeInt(lines.length);
+        for (FrontierReportLine line : lines) {
+            writeLine(out, line);
+        }
+    }
+
+    /**
+     * Write the fields of a line of a frontier report.
+     *
+     * @param out The output to write the fields to.
+     * @param line The line.
+     * @throws IOException If the fields cannot be written.
+     */
+    private static void writeLine(DataOutput out, FrontierReportLine line) throws IOException {
+        CompactMessageCodec.writeString(out, line.getDomainName());
+        out.writeLong(line.getCurrentSize());
+        out.writeLong(line.getPrecedence());
+        out.writeLong(line.getTotalEnqueues());
+        out.writeLong(line.getSessionBalance());
+        out.writeDouble(line.getLastCost());
+        out.writeDouble(line.getAverageCost());
+        CompactMessageCodec.writeString(out, line.getLastDequeueTime());
+        CompactMessageCodec.writeString(out, line.getWakeTime());
+        out.writeLong(line.getTotalSpend());
+        out.writeLong(line.getTotalBudget());
+        out.writeLong(line.getErrorCount());
+        CompactMessageCodec.writeString(out, line.getLastPeekUri());
+        CompactMessageCodec.writeString(out, line.getLastQueuedUri());
+    }
+
+    /**
+     * Read a line of a frontier report written by {@link #writeLine(DataOutput, FrontierReportLine)}.
+     *
+     * @param in The input to read the fields from.
+     * @return The line.
+     * @throws IOException If the fields cannot be read.
+     */
+    private static FrontierReportLine readLine(DataInput in) throws IOException {
+        FrontierReportLine line = new FrontierReportLine();
+        line.setDomainName(CompactMessageCodec.readString(in));
+        line.setCurrentSize(in.readLong());
+        line.setPrecedence(in.readLong());
+        line.setTotalEnqueues(in.readLong());
+        line.setSessionBalance(in.readLong());
+        line.setLastCost(in.readDouble());
+        line.setAverageCost(in.readDouble());
+        line.setLastDequeueTime(CompactMessageCodec.readString(in));
+        line.setWakeTime(CompactMessageCodec.readString(in));
+        line.setTotalSpend(in.readLong());
+        line.setTotalBudget(in.readLong());
+        line.setErrorCount(in.readLong());
+        line.setLastPeekUri(CompactMessageCodec.readString(in));
+        line.setLastQueuedUri(CompactMessageCodec.readString(in));
+        return line;
+    }
+
     @Override
     public void accept(HarvesterMessageVisitor v) {
         v.visit(this);
@@ -47,4 +47,12 @@ public class ExhaustedQueuesFilter extends MaxSizeFrontierReportExtract {
         return result;
     }
 
+    /**
+     * Accepts only lines of exhausted queues.
+     */
+    @Override
+    boolean accept(FrontierReportLine line) {
+        return line.getCurrentSize() == 0;
+    }
+
 }
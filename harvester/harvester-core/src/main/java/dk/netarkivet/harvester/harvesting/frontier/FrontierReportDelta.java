@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.frontier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+
+/**
+ * The difference between two successive frontier reports produced by the same filter for the same job. Lines are
+ * matched by queue, e.g. by domain name.
+ * <p>
+ * Applying the delta to the stored lines of the previous report gives the lines of the new report: the changed lines
+ * are stored (updated, or inserted if the queue is new) and the lines of the removed queues are deleted.
+ */
+public class FrontierReportDelta {
+
+    /** The lines of the new report that are new or differ from the previous report. */
+    private final List<FrontierReportLine> changedLines = new ArrayList<FrontierReportLine>();
+
+    /** The domain names of the queues in the previous report that are not in the new report. */
+    private final List<String> removedDomains = new ArrayList<String>();
+
+    /** The timestamp of the new report. */
+    private final long timestamp;
+
+    /**
+     * Computes the difference between two reports.
+     *
+     * @param previous the previous report.
+     * @param current the new report.
+     */
+    public FrontierReportDelta(InMemoryFrontierReport previous, InMemoryFrontierReport current) {
+        ArgumentNotValid.checkNotNull(previous, "InMemoryFrontierReport previous");
+        ArgumentNotValid.checkNotNull(current, "InMemoryFrontierReport current");
+        for (FrontierReportLine line : current.getLines()) {
+            FrontierReportLine previousLine = previous.getLineForDomain(line.getDomainName());
+            if (previousLine == null || !sameValues(previousLine, line)) {
+                changedLines.add(line);
+            }
+        }
+        for (FrontierReportLine previousLine : previous.getLines()) {
+            if (current.getLineForDomain(previousLine.getDomainName()) == null) {
+                removedDomains.add(previousLine.getDomainName());
+            }
+        }
+        this.timestamp = current.getTimestamp();
+    }
+
+    /**
+     * @return the lines of the new report that are new or differ from the previous report.
+     */
+    public List<FrontierReportLine> getChangedLines() {
+        return Collections.unmodifiableList(changedLines);
+    }
+
+    /**
+     * @return the domain names of the queues in the previous report that are not in the new report.
+     */
+    public List<String> getRemovedDomains() {
+        return Collections.unmodifiableList(removedDomains);
+    }
+
+    /**
+     * @return the timestamp of the new report.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return true if the new report holds the same lines as the previous report.
+     */
+    public boolean isEmpty() {
+        return changedLines.isEmpty() && removedDomains.isEmpty();
+    }
+
+    /**
+     * Compares the values of two lines for the same queue.
+     *
+     * @param l1 a line.
+     * @param l2 another line.
+     * @return true if all the values of the lines are equal.
+     */
+    static boolean sameValues(FrontierReportLine l1, FrontierReportLine l2) {
+        return l1.getCurrentSize() == l2.getCurrentSize() && l1.getTotalEnqueues() == l2.getTotalEnqueues()
+                && l1.getSessionBalance() == l2.getSessionBalance()
+                && Double.compare(l1.getLastCost(), l2.getLastCost()) == 0
+                && Double.compare(l1.getAverageCost(), l2.getAverageCost()) == 0
+                && equal(l1.getLastDequeueTime(), l2.getLastDequeueTime()) && equal(l1.getWakeTime(), l2.getWakeTime())
+                && l1.getTotalSpend() == l2.getTotalSpend() && l1.getTotalBudget() == l2.getTotalBudget()
+                && l1.getErrorCount() == l2.getErrorCount() && equal(l1.getLastPeekUri(), l2.getLastPeekUri())
+                && equal(l1.getLastQueuedUri(), l2.getLastQueuedUri());
+    }
+
+    /**
+     * Compares two strings that may be null.
+     *
+     * @param s1 a string.
+     * @param s2 another string.
+     * @return true if both strings are null or equal.
+     */
+    private static boolean equal(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+}
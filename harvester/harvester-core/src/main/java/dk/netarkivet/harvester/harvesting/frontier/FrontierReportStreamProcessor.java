@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.frontier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+
+/**
+ * Applies frontier report filters to an Heritrix frontier report in a single pass over its lines, without building a
+ * document, a copy of the text or a database of the full report.
+ * <p>
+ * Each filter keeps only the lines it selects, in a heap limited to the maximum size of the filtered report. Only the
+ * filters extending {@link MaxSizeFrontierReportExtract} can be applied this way; other filters need a
+ * {@link FullFrontierReport}.
+ */
+public class FrontierReportStreamProcessor {
+
+    /** The logger for this class. */
+    private static final Logger LOG = LoggerFactory.getLogger(FrontierReportStreamProcessor.class);
+
+    /** The size of the buffer used when reading a report. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The Heritrix job name. */
+    private final String jobName;
+
+    /** The filters to apply. */
+    private final List<MaxSizeFrontierReportExtract> filters = new ArrayList<MaxSizeFrontierReportExtract>();
+
+    /**
+     * The lines selected so far by each filter, in the same order as {@link #filters}. The head of each heap is the
+     * last of the selected lines in the order of the filter, e.g. the first to be dropped.
+     */
+    private final List<PriorityQueue<FrontierReportLine>> selections =
+            new ArrayList<PriorityQueue<FrontierReportLine>>();
+
+    /** The characters of the line being read. */
+    private final StringBuilder partialLine = new StringBuilder();
+
+    /** Whether the header line of the report has been read. */
+    private boolean headerRead;
+
+    /** The number of lines processed. */
+    private long lineCount;
+
+    /** The number of lines that could not be parsed. */
+    private long invalidLineCount;
+
+    /**
+     * Builds a processor applying the given filters.
+     *
+     * @param jobName the Heritrix job name
+     * @param filters the filters to apply. They must all be supported by {@link #canProcess(FrontierReportFilter)}.
+     */
+    public FrontierReportStreamProcessor(String jobName, List<? extends FrontierReportFilter> filters) {
+        ArgumentNotValid.checkNotNullOrEmpty(jobName, "String jobName");
+        ArgumentNotValid.checkNotNull(filters, "List<? extends FrontierReportFilter> filters");
+        this.jobName = jobName;
+        for (FrontierReportFilter filter : filters) {
+            if (!canProcess(filter)) {
+                throw new ArgumentNotValid("The filter " + filter.getFilterId()
+                        + " cannot be applied to a stream of report lines");
+            }
+            MaxSizeFrontierReportExtract extract = (MaxSizeFrontierReportExtract) filter;
+            this.filters.add(extract);
+            this.selections.add(new PriorityQueue<FrontierReportLine>(Math.max(1, Math.min(extract.getMaxSize(),
+                    BUFFER_SIZE)), Collections.reverseOrder(extract.getOrder())));
+        }
+    }
+
+    /**
+     * Determines whether a filter can be applied to a stream of report lines.
+     *
+     * @param filter a filter.
+     * @return true if the filter can be applied by this class.
+     */
+    public static boolean canProcess(FrontierReportFilter filter) {
+        return filter instanceof MaxSizeFrontierReportExtract;
+    }
+
+    /**
+     * Processes a line of the report.
+     *
+     * @param line a report line.
+     */
+    public void addLine(FrontierReportLine line) {
+        ArgumentNotValid.checkNotNull(line, "FrontierReportLine line");
+        lineCount++;
+        for (int i = 0; i < filters.size(); i++) {
+            MaxSizeFrontierReportExtract filter = filters.get(i);
+            if (!filter.accept(line)) {
+                continue;
+            }
+            PriorityQueue<FrontierReportLine> selection = selections.get(i);
+            if (selection.size() < filter.getMaxSize()) {
+                selection.add(line);
+            } else if (!selection.isEmpty() && selection.comparator().compare(line, selection.peek()) > 0) {
+                // The line comes before the last selected line, which is dropped.
+                selection.poll();
+                selection.add(line);
+            }
+        }
+    }
+
+    /**
+     * Processes a report in the text format of Heritrix: a header line, followed by one line per queue.
+     *
+     * @param report a reader of the report.
+     * @throws IOFailure if the report cannot be read.
+     */
+    public void parse(Reader report) {
+        ArgumentNotValid.checkNotNull(report, "Reader report");
+        char[] buffer = new char[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = report.read(buffer)) != -1) {
+                appendText(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Failed to read the frontier report of job " + jobName, e);
+        }
+        endLine();
+    }
+
+    /**
+     * Processes a report in the text format of Heritrix, found as the text of the first element with the given name in
+     * an XML document. This is the format of the reports returned by the REST API of Heritrix 3.
+     *
+     * @param xml the XML document.
+     * @param tagName the name of the element holding the report.
+     * @throws IOFailure if the document cannot be parsed.
+     */
+    public void parseXML(InputStream xml, String tagName) {
+        ArgumentNotValid.checkNotNull(xml, "InputStream xml");
+        ArgumentNotValid.checkNotNullOrEmpty(tagName, "String tagName");
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(xml);
+            boolean inReport = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && tagName.equals(reader.getLocalName())) {
+                    inReport = true;
+                } else if (inReport
+                        && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                    appendText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                } else if (inReport && event == XMLStreamConstants.END_ELEMENT
+                        && tagName.equals(reader.getLocalName())) {
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOFailure("Failed to parse the frontier report of job " + jobName, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    LOG.debug("Failed to close XML reader", e);
+                }
+            }
+        }
+        endLine();
+    }
+
+    /**
+     * Returns the filtered reports.
+     *
+     * @return the filtered report of each filter, in the order the filters were given.
+     */
+    public Map<FrontierReportFilter, InMemoryFrontierReport> getReports() {
+        if (invalidLineCount > 0) {
+            LOG.warn("Skipped {} invalid lines of the frontier report of job {}", invalidLineCount, jobName);
+        }
+        LOG.debug("Processed {} lines of the frontier report of job {}", lineCount, jobName);
+        Map<FrontierReportFilter, InMemoryFrontierReport> reports =
+                new LinkedHashMap<FrontierReportFilter, InMemoryFrontierReport>();
+        for (int i = 0; i < filters.size(); i++) {
+            InMemoryFrontierReport report = new InMemoryFrontierReport(jobName);
+            for (FrontierReportLine line : selections.get(i)) {
+                report.addLine(line);
+            }
+            reports.put(filters.get(i), report);
+        }
+        return reports;
+    }
+
+    /**
+     * Appends report text to the lines read, processing each complete line.
+     *
+     * @param chars the characters holding the text.
+     * @param start the index of the first character of the text.
+     * @param length the length of the text.
+     */
+    private void appendText(char[] chars, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                endLine();
+            } else if (c != '\r') {
+                partialLine.append(c);
+            }
+        }
+    }
+
+    /**
+     * Processes the line being read, unless it is blank or the header line.
+     */
+    private void endLine() {
+        String lineToken = partialLine.toString().trim();
+        partialLine.setLength(0);
+        if (lineToken.isEmpty()) {
+            return;
+        }
+        if (!headerRead) {
+            headerRead = true;
+            return;
+        }
+        FrontierReportLine line;
+        try {
+            line = new FrontierReportLine(lineToken);
+        } catch (RuntimeException e) {
+            LOG.debug("Skipping invalid frontier report line '{}'", lineToken, e);
+            invalidLineCount++;
+            return;
+        }
+        addLine(line);
+    }
+
+}
@@ -22,6 +22,8 @@
  */
 package dk.netarkivet.harvester.harvesting.frontier;
 
+import java.util.Comparator;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,4 +63,22 @@ abstract class MaxSizeFrontierReportExtract extends AbstractFrontierReportFilter
         return maxSize;
     }
 
+    /**
+     * Determines whether a line belongs in the filtered report.
+     *
+     * @param line a frontier report line.
+     * @return true if the line belongs in the filtered report.
+     */
+    abstract boolean accept(FrontierReportLine line);
+
+    /**
+     * Returns the order in which the accepted lines are selected: the filtered report holds the first lines in this
+     * order, at most {@link #getMaxSize()}. The default is the natural order of the lines.
+     *
+     * @return the order of selection of the lines.
+     */
+    Comparator<? super FrontierReportLine> getOrder() {
+        return FrontierReportLineNaturalOrder.getInstance();
+    }
+
 }
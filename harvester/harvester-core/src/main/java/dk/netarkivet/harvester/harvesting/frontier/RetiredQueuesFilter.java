@@ -22,6 +22,8 @@
  */
 package dk.netarkivet.harvester.harvesting.frontier;
 
+import java.util.Comparator;
+
 import dk.netarkivet.harvester.harvesting.frontier.FullFrontierReport.ReportIterator;
 
 public class RetiredQueuesFilter extends MaxSizeFrontierReportExtract {
@@ -37,7 +39,7 @@ public class RetiredQueuesFilter extends MaxSizeFrontierReportExtract {
             int maxSize = getMaxSize();
             while (addedLines <= maxSize && iter.hasNext()) {
                 FrontierReportLine l = iter.next();
-                if (isOverBudget(l)) {
+                if (accept(l)) {
                     result.addLine(new FrontierReportLine(l));
                     addedLines++;
                 }
@@ -58,9 +60,27 @@ public class RetiredQueuesFilter extends MaxSizeFrontierReportExtract {
      * @return true if the queue is retired, false otherwise.
      * @see WorkQueue#isOverBudget()
      */
-    private boolean isOverBudget(FrontierReportLine l) {
+    @Override
+    boolean accept(FrontierReportLine l) {
         long totalBudget = l.getTotalBudget();
         return totalBudget >= 0 && l.getTotalSpend() >= totalBudget;
     }
 
+    /**
+     * Selects the lines by increasing totalSpend, then by natural order.
+     */
+    @Override
+    Comparator<? super FrontierReportLine> getOrder() {
+        return new Comparator<FrontierReportLine>() {
+            @Override
+            public int compare(FrontierReportLine l1, FrontierReportLine l2) {
+                int spendComp = Long.valueOf(l1.getTotalSpend()).compareTo(l2.getTotalSpend());
+                if (spendComp == 0) {
+                    return FrontierReportLineNaturalOrder.getInstance().compare(l1, l2);
+                }
+                return spendComp;
+            }
+        };
+    }
+
 }
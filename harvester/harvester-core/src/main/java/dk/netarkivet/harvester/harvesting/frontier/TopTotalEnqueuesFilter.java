@@ -53,12 +53,7 @@ public class TopTotalEnqueuesFilter extends MaxSizeFrontierReportExtract {
                 }
 
                 FrontierReportLine fetch = iter.next();
-                long totalBudget = fetch.getTotalBudget();
-
-                // Add only lines that are neither retired or exhausted
-                if (fetch.getCurrentSize() > 0
-                        && fetch.getSessionBalance() > 0
-                        && (totalBudget == Constants.HERITRIX_MAXOBJECTS_INFINITY || fetch.getTotalSpend() < totalBudget)) {
+                if (accept(fetch)) {
                     topRep.addLine(new FrontierReportLine(fetch));
                     addedLines++;
                 }
@@ -73,4 +68,14 @@ public class TopTotalEnqueuesFilter extends MaxSizeFrontierReportExtract {
         return topRep;
     }
 
+    /**
+     * Accepts only lines that are neither retired or exhausted.
+     */
+    @Override
+    boolean accept(FrontierReportLine line) {
+        long totalBudget = line.getTotalBudget();
+        return line.getCurrentSize() > 0 && line.getSessionBalance() > 0
+                && (totalBudget == Constants.HERITRIX_MAXOBJECTS_INFINITY || line.getTotalSpend() < totalBudget);
+    }
+
 }
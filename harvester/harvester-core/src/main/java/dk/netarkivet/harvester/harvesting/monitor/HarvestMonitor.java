@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jms.MessageListener;
 
@@ -39,6 +40,7 @@ import org.slf4j.LoggerFactory;
 import dk.netarkivet.common.distribute.ChannelID;
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.harvester.HarvesterSettings;
@@ -51,6 +53,8 @@ import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage;
 import dk.netarkivet.harvester.harvesting.distribute.FrontierReportMessage;
 import dk.netarkivet.harvester.harvesting.distribute.JobEndedMessage;
 import dk.netarkivet.harvester.harvesting.frontier.ExhaustedQueuesFilter;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportDelta;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
 import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.harvesting.frontier.RetiredQueuesFilter;
 import dk.netarkivet.harvester.harvesting.frontier.TopTotalEnqueuesFilter;
@@ -76,8 +80,23 @@ public class HarvestMonitor extends HarvesterMessageHandler implements MessageLi
 
     private Set<Long> runningJobs = new TreeSet<Long>();
 
+    /**
+     * The last frontier report stored per job and filter, from which the changes of the next report are computed. Only
+     * used if {@link HarvesterSettings#HARVEST_MONITOR_FRONTIER_REPORT_DELTAS} is true.
+     */
+    private Map<String, InMemoryFrontierReport> storedFrontierReports =
+            new ConcurrentHashMap<String, InMemoryFrontierReport>();
+
+    /** The maximum number of lines stored per frontier report. */
+    private final int maxFrontierReportLines;
+
+    /** If true, only the changes between successive frontier reports are stored. */
+    private final boolean frontierReportDeltas;
+
     private HarvestMonitor() {
     	refreshInterval = Settings.getInt(HarvesterSettings.HARVEST_MONITOR_REFRESH_INTERVAL);
+        maxFrontierReportLines = Settings.getInt(HarvesterSettings.HARVEST_MONITOR_MAX_FRONTIER_REPORT_LINES);
+        frontierReportDeltas = Settings.getBoolean(HarvesterSettings.HARVEST_MONITOR_FRONTIER_REPORT_DELTAS);
     	LOG.info("Initializing HarvestMonitor with refreshInterval={} seconds", refreshInterval);
     	
         // Perform initial cleanup (in case apps crashed)
@@ -90,7 +109,7 @@ public class HarvestMonitor extends HarvesterMessageHandler implements MessageLi
 
     /**
      * Close down the HarvestMonitor singleton. This removes the HarvestMonitor as listener to the JMS scheduler and
-     * frontier channels, closes the persistence container, and resets the singleton.
+     * frontier channels, writes the buffered progress records, and resets the singleton.
      *
      * @see CleanupIF#cleanup()
      */
@@ -100,6 +119,11 @@ public class HarvestMonitor extends HarvesterMessageHandler implements MessageLi
         for (StartedJobHistoryChartGen chartGen : chartGenByJobId.values()) {
             chartGen.cleanup();
         }
+        try {
+            RunningJobsInfoDAO.getInstance().close();
+        } catch (IOFailure e) {
+            LOG.warn("Failed to write the buffered progress records", e);
+        }
 
         instance = null;
     }
@@ -156,6 +180,12 @@ public class HarvestMonitor extends HarvesterMessageHandler implements MessageLi
                 newStatus.name());
 
         runningJobs.remove(jobId);
+        Iterator<String> storedReportKeys = storedFrontierReports.keySet().iterator();
+        while (storedReportKeys.hasNext()) {
+            if (storedReportKeys.next().startsWith(jobId + "-")) {
+                storedReportKeys.remove();
+            }
+        }
 
         // Stop chart generation
         StartedJobHistoryChartGen gen = chartGenByJobId.get(jobId);
@@ -201,12 +231,56 @@ public class HarvestMonitor extends HarvesterMessageHandler implements MessageLi
     public void visit(FrontierReportMessage msg) {
         ArgumentNotValid.checkNotNull(msg, "msg");
 
-        int insertCount = RunningJobsInfoDAO.getInstance().storeFrontierReport(msg.getFilterId(), msg.getReport(),
-                msg.getJobID());
-        if (LOG.isInfoEnabled() && insertCount > 0) {
-            LOG.info("Stored frontier report {}-{}' ({} lines): inserted {} lines in the DB", msg.getReport()
-                    .getJobName(), msg.getFilterId(), msg.getReport().getSize(), insertCount);
+        String filterId = msg.getFilterId();
+        long jobId = msg.getJobID();
+        InMemoryFrontierReport report = limitLines(msg.getReport(), maxFrontierReportLines);
+        String key = jobId + "-" + filterId;
+        InMemoryFrontierReport storedReport = storedFrontierReports.remove(key);
+
+        RunningJobsInfoDAO dao = RunningJobsInfoDAO.getInstance();
+        if (storedReport == null) {
+            int insertCount = dao.storeFrontierReport(filterId, report, jobId);
+            if (LOG.isInfoEnabled() && insertCount > 0) {
+                LOG.info("Stored frontier report {}-{}' ({} lines): inserted {} lines in the DB", report.getJobName(),
+                        filterId, report.getSize(), insertCount);
+            }
+            if (frontierReportDeltas && (insertCount > 0 || report.getSize() == 0)) {
+                storedFrontierReports.put(key, report);
+            }
+            return;
+        }
+
+        FrontierReportDelta delta = new FrontierReportDelta(storedReport, report);
+        try {
+            int updateCount = dao.storeFrontierReportDelta(filterId, delta, jobId);
+            LOG.debug("Stored frontier report {}-{}' ({} lines): {} changed and {} removed lines, {} lines updated in "
+                    + "the DB", report.getJobName(), filterId, report.getSize(), delta.getChangedLines().size(), delta
+                    .getRemovedDomains().size(), updateCount);
+            storedFrontierReports.put(key, report);
+        } catch (IOFailure e) {
+            // The stored report is unknown, so the next report is stored in full.
+            LOG.warn("Failed to store the changes of frontier report {}-{}'", report.getJobName(), filterId, e);
+        }
+    }
+
+    /**
+     * Limits a report to its first lines, e.g. the lines of the largest queues.
+     *
+     * @param report a report.
+     * @param maxLines the maximum number of lines. Zero or less means no limit.
+     * @return the report, or a copy with only the first maxLines lines.
+     */
+    private static InMemoryFrontierReport limitLines(InMemoryFrontierReport report, int maxLines) {
+        if (maxLines <= 0 || report.getSize() <= maxLines) {
+            return report;
+        }
+        InMemoryFrontierReport limited = new InMemoryFrontierReport(report.getJobName());
+        limited.setTimestamp(report.getTimestamp());
+        FrontierReportLine[] lines = report.getLines();
+        for (int i = 0; i < maxLines; i++) {
+            limited.addLine(lines[i]);
         }
+        return limited;
     }
 
     /**
@@ -27,8 +27,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -39,6 +42,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.SimpleFSDirectory;
@@ -47,6 +52,7 @@ import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.distribute.indexserver.JobIndexCache;
 import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.DigestBloomFilter;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.TimeUtils;
@@ -60,6 +66,9 @@ import is.hi.bok.deduplicator.DigestIndexer;
  * software: http://deduplicator.sourceforge.net/apidocs/is/hi/bok/deduplicator/DigestIndexer.html Upon combination of
  * underlying files, each file in the Lucene index is gzipped and the compressed versions are stored in the directory
  * given by getCacheFile(). The subclass has to determine in its constructor call which mime types are included.
+ * <p>
+ * The index of each job is kept as a segment in a {@link JobIndexSegmentCache}, and the indices of sets of jobs are
+ * combined from these segments, so a job is only indexed once.
  */
 public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Long> implements JobIndexCache {
 
@@ -82,6 +91,9 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
     /** Number to separate logs the different combine tasks. */
     private int indexingJobCount = 0;
 
+    /** The index segments of the single jobs. */
+    private final JobIndexSegmentCache segmentCache;
+
     /**
      * Constructor for the CrawlLogIndexCache class.
      *
@@ -93,6 +105,40 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         super(name, new CrawlLogDataCache());
         useBlacklist = blacklist;
         this.mimeFilter = mimeFilter;
+        segmentCache = new JobIndexSegmentCache(name, this);
+    }
+
+    /**
+     * @return The cache of the index segments of the single jobs, which the indices of this cache are combined from.
+     */
+    public JobIndexSegmentCache getSegmentCache() {
+        return segmentCache;
+    }
+
+    /**
+     * Index a single job into a new Lucene index, with the options of this cache.
+     *
+     * @param id The ID of the job.
+     * @param indexDir The directory to make the index in.
+     * @return true, if the job was indexed; false, if the data of the job could not be found or indexed.
+     */
+    boolean indexJob(Long id, File indexDir) {
+        Long cachedLog = rawcache.cache(id);
+        Long cachedCDX = cdxcache.cache(id);
+        if (cachedLog == null || cachedCDX == null) {
+            log.warn("Unable to index job {}. Unable to retrieve the crawl log or the cdx-file of the job.", id);
+            return false;
+        }
+        return new DigestIndexerWorker(indexDir.getAbsolutePath(), id, rawcache.getCacheFile(cachedLog),
+                cdxcache.getCacheFile(cachedCDX), getIndexingOptions(), "segment of job " + id).call();
+    }
+
+    /**
+     * @return The options used when indexing a job for this cache.
+     */
+    private DigestOptions getIndexingOptions() {
+        final boolean verboseIndexing = false;
+        return new DigestOptions(this.useBlacklist, verboseIndexing, this.mimeFilter);
     }
 
     /**
@@ -138,8 +184,7 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         ThreadPoolExecutor executor = null;
         try {
             DigestIndexer indexer = createStandardIndexer(indexLocation);
-            final boolean verboseIndexing = false;
-            DigestOptions indexingOptions = new DigestOptions(this.useBlacklist, verboseIndexing, this.mimeFilter);
+            DigestOptions indexingOptions = getIndexingOptions();
             long count = 0;
             Set<IndexingState> outstandingJobs = new HashSet<IndexingState>();
             final int maxThreads = Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAXTHREADS);
@@ -149,12 +194,12 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
 
             for (Map.Entry<Long, File> entry : rawfiles.entrySet()) {
-                Long jobId = entry.getKey();
+                final Long jobId = entry.getKey();
                 File crawlLog = entry.getValue();
                 // Generate UUID to ensure a unique filedir for the index.
                 File tmpFile = new File(FileUtils.getTempDir(), UUID.randomUUID().toString());
                 tmpfiles.add(tmpFile);
-                String localindexLocation = tmpFile.getAbsolutePath();
+                final String localindexLocation = tmpFile.getAbsolutePath();
                 Long cached = cdxcache.cache(jobId);
                 if (cached == null) {
                     log.warn("Skipping the ingest of logs for job {}. Unable to retrieve cdx-file for job.",
@@ -164,13 +209,43 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
                 File cachedCDXFile = cdxcache.getCacheFile(cached);
 
                 // Dispatch this indexing task to a separate thread that
+                // either unpacks the stored segment of the job, or
                 // handles the sorting of the logfiles and the generation
-                // of a lucene index for this crawllog and cdxfile.
+                // of a lucene index for this crawllog and cdxfile, which
+                // is then stored as the segment of the job.
                 ++count;
                 String taskID = count + " out of " + datasetSize;
-                log.debug("Making subthread for indexing job " + jobId + " - task " + taskID);
-                Callable<Boolean> task = new DigestIndexerWorker(localindexLocation, jobId, crawlLog, cachedCDXFile,
-                        indexingOptions, taskID);
+                final File segmentDir = segmentCache.getCacheFile(jobId);
+                Callable<Boolean> task;
+                if (segmentDir.isDirectory()) {
+                    log.debug("Making subthread for unpacking the index segment of job " + jobId + " - task " + taskID);
+                    task = new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            ZipUtils.gunzipFiles(segmentDir, new File(localindexLocation));
+                            return true;
+                        }
+                    };
+                } else {
+                    log.debug("Making subthread for indexing job " + jobId + " - task " + taskID);
+                    final DigestIndexerWorker worker = new DigestIndexerWorker(localindexLocation, jobId, crawlLog,
+                            cachedCDXFile, indexingOptions, taskID);
+                    task = new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            if (!worker.call()) {
+                                return false;
+                            }
+                            try {
+                                segmentCache.store(jobId, new File(localindexLocation));
+                            } catch (IOFailure e) {
+                                // The index of the job can still be used, so just index the job again next time
+                                log.warn("Unable to store the index segment of job {}", jobId, e);
+                            }
+                            return true;
+                        }
+                    };
+                }
                 Future<Boolean> result = executor.submit(task);
                 outstandingJobs.add(new IndexingState(jobId, localindexLocation, result));
             }
@@ -261,8 +336,10 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
             indexer.close();
             log.info("Closed index (related to combine task #{}", indexingJobCount);
 
-            // Now the index is made, gzip it up.
             File totalIndexDir = new File(indexLocation);
+            writeDigestFilter(totalIndexDir);
+
+            // Now the index is made, gzip it up.
             log.info("Gzip-compressing the individual {} index files of combine task # {}",
                     totalIndexDir.list().length, indexingJobCount);
             ZipUtils.gzipFiles(totalIndexDir, resultDir);
@@ -281,6 +358,71 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
         }
     }
 
+    /**
+     * Combine the index segments of single jobs into a new index with a digest filter, the way the index of the set of
+     * jobs is made by this cache.
+     *
+     * @param segmentDirs The directories of the Lucene indices of the single jobs, not gzipped.
+     * @param indexDir The directory to make the index in.
+     * @throws IOFailure If the index cannot be made.
+     */
+    public static void combineSegments(Collection<File> segmentDirs, File indexDir) throws IOFailure {
+        List<Directory> subindices = new ArrayList<Directory>(segmentDirs.size());
+        try {
+            DigestIndexer indexer = createStandardIndexer(indexDir.getAbsolutePath());
+            try {
+                for (File segmentDir : segmentDirs) {
+                    subindices.add(new SimpleFSDirectory(segmentDir));
+                }
+                IndexWriter totalIndex = indexer.getIndex();
+                totalIndex.addIndexes(subindices.toArray(new Directory[0]));
+                totalIndex.forceMerge(Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAX_SEGMENTS));
+                totalIndex.commit();
+            } finally {
+                indexer.close();
+                for (Directory luceneDir : subindices) {
+                    luceneDir.close();
+                }
+            }
+            writeDigestFilter(indexDir);
+        } catch (IOException e) {
+            throw new IOFailure("Error combining " + segmentDirs.size() + " index segments into '" + indexDir + "'", e);
+        }
+    }
+
+    /**
+     * Build a filter over the digests in a finished index, and store it in the index directory, so it is shipped along
+     * with the index. The DeDuplicator uses it to skip the lookup of digests that are definitely not in the index. No
+     * filter is made if the configured false positive rate is not between 0 and 1.
+     *
+     * @param indexDir The directory of the finished index.
+     * @throws IOException If the index cannot be read.
+     */
+    public static void writeDigestFilter(File indexDir) throws IOException {
+        double falsePositiveRate = Settings.getDouble(HarvesterSettings.INDEXSERVER_DIGEST_FILTER_FALSE_POSITIVE_RATE);
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            log.debug("No digest filter made for the index in '{}'", indexDir);
+            return;
+        }
+        Directory directory = new SimpleFSDirectory(indexDir);
+        IndexReader reader = null;
+        try {
+            reader = DirectoryReader.open(directory);
+            DigestBloomFilter filter = DigestBloomFilter.createFromIndex(reader, DigestIndexer.FIELD_DIGEST,
+                    falsePositiveRate);
+            if (filter != null) {
+                filter.write(new File(indexDir, DigestBloomFilter.FILENAME));
+                log.info("Made digest filter with {} digests in {} bits for the index in '{}'", filter.getEntries(),
+                        filter.getNumBits(), indexDir);
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            directory.close();
+        }
+    }
+
     /**
      * Try to release all resources connected to the given ThreadPoolExecutor.
      *
@@ -399,7 +541,7 @@ public abstract class CrawlLogIndexCache extends CombiningMultiFileBasedCache<Lo
      * @return the created deduplication indexer.
      * @throws IOException If unable to open the index.
      */
-    protected static DigestIndexer createStandardIndexer(String indexLocation) throws IOException {
+    public static DigestIndexer createStandardIndexer(String indexLocation) throws IOException {
         // Setup Lucene for indexing our crawllogs
         // MODE_BOTH: Both URL's and Hash are indexed: Alternatives:
         // DigestIndexer.MODE_HASH or DigestIndexer.MODE_URL
@@ -99,6 +99,17 @@ public abstract class FileBasedCache<T> {
      */
     protected abstract T cacheData(T id);
 
+    /**
+     * Check whether the data cached for the given id is outdated, and must be cached again. By default, cached data
+     * never becomes outdated.
+     *
+     * @param id Some identifier for an item in the cache. The cache file for the id exists.
+     * @return true, if the cache file for the id must be removed and the data cached again.
+     */
+    protected boolean isStale(T id) {
+        return false;
+    }
+
     /**
      * Ensure that a file containing the appropriate content exists for the ID. If the content cannot be found, this
      * method may return null (if I is a simple type) or an appropriate subset (if I is, say, a Set) indicating the data
@@ -139,9 +150,13 @@ public abstract class FileBasedCache<T> {
                         throw new IOException(e.getMessage(), e);
                     }
                     // Now we know nobody else touches the file.
-                    // If the file already exists, just return it.
+                    // If the file already exists, just return it, unless it is outdated.
                     if (cachedFile.exists()) {
-                        return id;
+                        if (!isStale(id)) {
+                            return id;
+                        }
+                        log.debug("Removing outdated cache file '{}'", cachedFile.getAbsolutePath());
+                        FileUtils.remove(cachedFile);
                     }
                     return cacheData(id);
                 } finally {
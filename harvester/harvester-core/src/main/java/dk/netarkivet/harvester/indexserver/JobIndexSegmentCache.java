@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+import java.io.File;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.ZipUtils;
+
+/**
+ * A cache of the Lucene index segments of single jobs, which the indices of sets of jobs are combined from. The index
+ * of a job only depends on the crawl log and CDX data of that job, so the segment of a job is the same in every index
+ * it is part of. This lets an index client that already holds the segments of some jobs receive only the segments of
+ * the other jobs, and combine the index itself.
+ * <p>
+ * Like the indices of sets of jobs, each file of a segment is gzipped, and the gzipped files are stored in the
+ * directory given by getCacheFile().
+ */
+public class JobIndexSegmentCache extends FileBasedCache<Long> {
+
+    /** The log. */
+    private static final Logger log = LoggerFactory.getLogger(JobIndexSegmentCache.class);
+
+    /** The cache of indices of sets of jobs, which indexes the jobs. */
+    private final CrawlLogIndexCache indexCache;
+
+    /**
+     * Create a cache of the segments of the jobs indexed by the given index cache.
+     *
+     * @param name The name of the index cache. The segments are stored in a directory with this name followed by
+     * "-segments".
+     * @param indexCache The cache of indices of sets of jobs, which indexes the jobs.
+     */
+    JobIndexSegmentCache(String name, CrawlLogIndexCache indexCache) {
+        super(name + "-segments");
+        ArgumentNotValid.checkNotNull(indexCache, "CrawlLogIndexCache indexCache");
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * Get the directory holding the gzipped files of the segment of a job.
+     *
+     * @param id The ID of a job.
+     * @return The directory of the segment, which may not exist.
+     */
+    @Override
+    public File getCacheFile(Long id) {
+        return new File(getCacheDir(), id + "-segment");
+    }
+
+    /**
+     * Index a job, and store the index as the segment of the job.
+     *
+     * @param id The ID of a job.
+     * @return The ID, or null if the job could not be indexed.
+     */
+    @Override
+    protected Long cacheData(Long id) {
+        File indexDir = new File(FileUtils.getTempDir(), UUID.randomUUID().toString());
+        try {
+            if (!indexCache.indexJob(id, indexDir)) {
+                return null;
+            }
+            store(id, indexDir);
+            return id;
+        } finally {
+            FileUtils.removeRecursively(indexDir);
+        }
+    }
+
+    /**
+     * Store the index of a job as its segment, unless the segment is already stored. The segment appears atomically.
+     *
+     * @param id The ID of the job.
+     * @param indexDir The directory of the Lucene index of the job alone.
+     * @throws IOFailure If the segment could not be stored.
+     */
+    void store(Long id, File indexDir) throws IOFailure {
+        File segmentDir = getCacheFile(id);
+        if (segmentDir.isDirectory()) {
+            return;
+        }
+        try {
+            ZipUtils.gzipFiles(indexDir, segmentDir);
+            log.debug("Stored the index segment of job {} in '{}'", id, segmentDir);
+        } catch (RuntimeException e) {
+            // The segment of a job may be stored by two index builds at the same time
+            if (!segmentDir.isDirectory()) {
+                throw new IOFailure("Unable to store the index segment of job " + id + " in '" + segmentDir + "'", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.distribute.arcrepository.BatchStatus;
+import dk.netarkivet.common.distribute.arcrepository.BitarchiveRecord;
+import dk.netarkivet.common.distribute.arcrepository.ViewerArcRepositoryClient;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.common.utils.batch.ArchiveBatchFilter;
+import dk.netarkivet.common.utils.cdx.ArchiveExtractCDXJob;
+import dk.netarkivet.common.utils.cdx.CDXRecord;
+import dk.netarkivet.harvester.HarvesterSettings;
+
+/**
+ * A persistent index locating the records of the metadata files of a job.
+ * <p>
+ * For each job, the cache file holds a CDX of all records in the metadata files of the job, i.e. the url, mimetype,
+ * filename and offset of every record. The CDX is made by a single batch job the first time a job is looked up. After
+ * that, the records of the job are fetched directly from the default replica with positional gets, so the users of the
+ * metadata (the crawl log and CDX caches, and the QA reports) no longer need a batch job over the entire replica to
+ * find them.
+ * <p>
+ * The locations of a job are located again when they are older than
+ * {@link HarvesterSettings#INDEXSERVER_METADATA_RECORD_LOCATIONS_MAX_AGE}, or after {@link #invalidate(Long)}, so
+ * metadata files uploaded or reuploaded after the first lookup are found.
+ */
+public class MetadataRecordLocator extends FileBasedCache<Long> {
+
+    /** The logger for this class. */
+    private static final Logger log = LoggerFactory.getLogger(MetadataRecordLocator.class);
+
+    /** The name of this cache. */
+    private static final String CACHE_NAME = "metadatalocations";
+
+    /**
+     * The arc repository interface used for locating and fetching records.
+     */
+    private final ViewerArcRepositoryClient arcrep;
+
+    /**
+     * Create a locator, using the directory metadatalocations in the cache directory. All locators share the record
+     * locations stored in this directory.
+     *
+     * @param arcrep The arc repository client used for locating and fetching the records.
+     */
+    public MetadataRecordLocator(ViewerArcRepositoryClient arcrep) {
+        super(CACHE_NAME);
+        ArgumentNotValid.checkNotNull(arcrep, "ViewerArcRepositoryClient arcrep");
+        this.arcrep = arcrep;
+    }
+
+    /**
+     * Get the pattern matching the names of the metadata files of a job. The names are either
+     * &lt;jobID&gt;-metadata-&lt;n&gt;, or &lt;prefix&gt;-&lt;jobID&gt;-&lt;harvestID&gt;-metadata-&lt;n&gt; when a
+     * prefix is used (see {@link dk.netarkivet.harvester.harvesting.metadata.MetadataFileWriter}), followed by the
+     * extension. The job ID must be a whole part of the name, so the files of e.g. job 12 are not matched for job 2.
+     *
+     * @param id A job ID.
+     * @return A regular expression matching the metadata filenames of the job.
+     */
+    public static String getMetadataFilePattern(Long id) {
+        ArgumentNotValid.checkNotNull(id, "Long id");
+        return "(" + id + "|.*-" + id + "-[0-9]+)" + Settings.get(CommonSettings.METADATAFILE_REGEX_SUFFIX);
+    }
+
+    /**
+     * Get the file holding the record locations for the given job.
+     *
+     * @param id The job to locate records for.
+     * @return The file where the record locations for the job is stored.
+     * @see FileBasedCache#getCacheFile(Object)
+     */
+    @Override
+    public File getCacheFile(Long id) {
+        ArgumentNotValid.checkNotNull(id, "job ID");
+        ArgumentNotValid.checkNotNegative(id, "job ID");
+        return new File(getCacheDir(), CACHE_NAME + "-" + id + "-cache");
+    }
+
+    /**
+     * Check whether the record locations of a job are older than the maximum age, and must be located again.
+     *
+     * @param id A job ID.
+     * @return true, if the record locations of the job are outdated.
+     * @see FileBasedCache#isStale(Object)
+     */
+    @Override
+    protected boolean isStale(Long id) {
+        long maxAge = Settings.getLong(HarvesterSettings.INDEXSERVER_METADATA_RECORD_LOCATIONS_MAX_AGE);
+        return System.currentTimeMillis() - getCacheFile(id).lastModified() > maxAge;
+    }
+
+    /**
+     * Forget the record locations of a job, so the metadata files of the job are located again on the next lookup.
+     * This should be called when the located records could not be fetched, e.g. because the metadata files of the job
+     * have been replaced.
+     *
+     * @param id A job ID.
+     */
+    public void invalidate(Long id) {
+        File cacheFile = getCacheFile(id);
+        if (cacheFile.exists()) {
+            log.info("Forgetting the located metadata records of job '{}'", id);
+            FileUtils.remove(cacheFile);
+        }
+    }
+
+    /**
+     * Make the CDX of the metadata files of a job with a batch job on the default replica.
+     *
+     * @param id A job ID.
+     * @return The id, if at least one metadata file was processed, otherwise null.
+     * @see FileBasedCache#cacheData(Object)
+     */
+    @Override
+    protected Long cacheData(Long id) {
+        final String replicaUsed = Settings.get(CommonSettings.USE_REPLICA_ID);
+        ArchiveExtractCDXJob cdxJob = new ArchiveExtractCDXJob(false) {
+            @Override
+            public ArchiveBatchFilter getFilter() {
+                return ArchiveBatchFilter.EXCLUDE_NON_WARCINFO_RECORDS;
+            }
+        };
+        cdxJob.processOnlyFilesMatching(getMetadataFilePattern(id));
+        log.debug("Locating the metadata records of job '{}' on replica '{}'", id, replicaUsed);
+        BatchStatus b = arcrep.batch(cdxJob, replicaUsed);
+        if (b.hasResultFile() && b.getNoOfFilesProcessed() > b.getFilesFailed().size()) {
+            File cacheFile = getCacheFile(id);
+            b.copyResults(cacheFile);
+            if (cacheFile.length() == 0) {
+                // Metadata files always have records, so the files are not completely uploaded yet.
+                log.info("No metadata records located in the metadata files of job '{}'", id);
+                FileUtils.remove(cacheFile);
+                return null;
+            }
+            log.debug("Located the metadata records of job '{}' in {} files", id, b.getNoOfFilesProcessed());
+            return id;
+        }
+        log.info("No metadata records located for job '{}' on replica '{}'", id, replicaUsed);
+        return null;
+    }
+
+    /**
+     * Get the locations of all metadata records of a job.
+     *
+     * @param id A job ID.
+     * @return The CDX records of the metadata files of the job, or null if no metadata files were found for the job.
+     */
+    public List<CDXRecord> getRecords(Long id) {
+        ArgumentNotValid.checkNotNull(id, "Long id");
+        if (cache(id) == null) {
+            return null;
+        }
+        List<CDXRecord> records = new ArrayList<CDXRecord>();
+        for (String line : FileUtils.readListFromFile(getCacheFile(id))) {
+            if (!line.trim().isEmpty()) {
+                records.add(new CDXRecord(line.split("\\s+")));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Fetch the content of all metadata records of a job matching the given patterns, and write it to a file. The
+     * records are fetched with positional gets in the order they appear in the metadata files.
+     *
+     * @param id A job ID.
+     * @param urlPattern A pattern for matching URLs of the desired records.
+     * @param mimePattern A pattern for matching mime-types of the desired records.
+     * @param destination The file to write the content of the records to. Any content of the file is overwritten.
+     * @return false, if the metadata files of the job could not be located. The destination is not written in that
+     * case.
+     * @throws IOFailure if a located record could not be fetched, or the destination could not be written.
+     */
+    public boolean copyRecords(Long id, Pattern urlPattern, Pattern mimePattern, File destination) {
+        ArgumentNotValid.checkNotNull(urlPattern, "Pattern urlPattern");
+        ArgumentNotValid.checkNotNull(mimePattern, "Pattern mimePattern");
+        ArgumentNotValid.checkNotNull(destination, "File destination");
+        List<CDXRecord> records = getRecords(id);
+        if (records == null) {
+            return false;
+        }
+        OutputStream out = null;
+        int fetched = 0;
+        try {
+            out = new FileOutputStream(destination);
+            for (CDXRecord record : records) {
+                if (record.getURL() == null || !urlPattern.matcher(record.getURL()).matches()
+                        || !mimePattern.matcher(record.getMimetype()).matches()) {
+                    continue;
+                }
+                BitarchiveRecord bitarchiveRecord = arcrep.get(record.getArcfile(), record.getOffset());
+                if (bitarchiveRecord == null) {
+                    throw new IOFailure("Unable to get the metadata record at offset " + record.getOffset()
+                            + " in '" + record.getArcfile() + "' for job " + id);
+                }
+                bitarchiveRecord.getData(out);
+                fetched++;
+            }
+        } catch (IOException e) {
+            throw new IOFailure("Unable to write metadata records of job " + id + " to '" + destination + "'", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        log.debug("Fetched {} metadata records of job '{}' matching url '{}' and mimetype '{}'", fetched, id,
+                urlPattern, mimePattern);
+        return true;
+    }
+
+}
@@ -73,6 +73,15 @@ public class RawMetadataCache extends FileBasedCache<Long> implements RawDataCac
     /** The actual pattern to be used for matching the url in the metadata record */
     private Pattern urlPattern;
 
+    /** The actual pattern to be used for matching the mimetype in the metadata record */
+    private Pattern mimePattern;
+
+    /** The pattern matching the url of the duplicationmigration metadata record. */
+    private static final Pattern DUPLICATION_MIGRATION_URL_PATTERN = Pattern.compile(".*duplicationmigration.*");
+
+    /** The pattern matching the mimetype of the duplicationmigration metadata record. */
+    private static final Pattern DUPLICATION_MIGRATION_MIME_PATTERN = Pattern.compile("text/plain");
+
     /**
      * Create a new RawMetadataCache. For a given job ID, this will fetch and cache selected content from metadata files
      * (&lt;ID&gt;-metadata-[0-9]+.arc). Any entry in a metadata file that matches both patterns will be returned. The
@@ -100,6 +109,7 @@ public class RawMetadataCache extends FileBasedCache<Long> implements RawDataCac
         } else {
             mimeMatcher1 = MATCH_ALL_PATTERN;
         }
+        mimePattern = mimeMatcher1;
         log.info("Metadata cache for '{}' is fetching metadata with urls matching '{}' and mimetype matching '{}'",
                 prefix, urlMatcher1.toString(), mimeMatcher1);
         job = new GetMetadataArchiveBatchJob(urlMatcher1, mimeMatcher1);
@@ -128,10 +138,22 @@ public class RawMetadataCache extends FileBasedCache<Long> implements RawDataCac
      */
     protected Long cacheData(Long id) {
         final String replicaUsed = Settings.get(CommonSettings.USE_REPLICA_ID);
+        if (Settings.getBoolean(HarvesterSettings.INDEXSERVER_USE_METADATA_RECORD_LOCATOR)) {
+            try {
+                if (cacheDataFromLocatedRecords(id)) {
+                    return id;
+                }
+            } catch (IOFailure e) {
+                log.warn("Unable to fetch the located metadata records for job '{}'. Falling back to a batchjob", id,
+                        e);
+                FileUtils.remove(getCacheFile(id));
+                new MetadataRecordLocator(arcrep).invalidate(id);
+            }
+        }
         final String metadataFilePatternSuffix = Settings.get(CommonSettings.METADATAFILE_REGEX_SUFFIX);
         log.debug("Extract using a batchjob of type '{}' cachedata from files matching '{}{}' on replica '{}'", job
                 .getClass().getName(), id, metadataFilePatternSuffix, replicaUsed);
-        final String specifiedPattern = ".*" + id + ".*" + metadataFilePatternSuffix; // FIXME I think this pattern accepts too many metadatafilenames
+        final String specifiedPattern = MetadataRecordLocator.getMetadataFilePattern(id);
         job.processOnlyFilesMatching(specifiedPattern);
         BatchStatus b = arcrep.batch(job, replicaUsed);
         // This check ensures that we got data from at least one file.
@@ -181,87 +203,135 @@ public class RawMetadataCache extends FileBasedCache<Long> implements RawDataCac
      */
     private void migrateDuplicates(Long id, String replicaUsed, String specifiedPattern, BatchStatus originalBatchJob) {
         File cacheFileName = getCacheFile(id);
-        Pattern duplicatePattern = Pattern.compile(".*duplicate:\"([^,]+),([0-9]+).*");
         if (urlPattern.pattern().equals(MetadataFile.CRAWL_LOG_PATTERN)) {
-            GetMetadataArchiveBatchJob job2 = new GetMetadataArchiveBatchJob(Pattern.compile(".*duplicationmigration.*"), Pattern.compile("text/plain"));
+            GetMetadataArchiveBatchJob job2 = new GetMetadataArchiveBatchJob(DUPLICATION_MIGRATION_URL_PATTERN,
+                    DUPLICATION_MIGRATION_MIME_PATTERN);
             job2.processOnlyFilesMatching(specifiedPattern);
             BatchStatus b2 = arcrep.batch(job2, replicaUsed);
-            File migration = null;
-            try {
-                migration = File.createTempFile("migration", "txt");
-            } catch (IOException e) {
-                throw new IOFailure("Could not create temporary output file.");
-            }
+            File migration = createTempFile("migration");
             if (b2.hasResultFile()) {
                 b2.copyResults(migration);
             }
-            boolean doMigration =  migration.exists() && migration.length() > 0;
-            Hashtable<Pair<String, Long>, Long> lookup = new Hashtable<>();
-            if (doMigration) {
-                log.info("Doing migration for {}", id);
-                try {
-                    final List<String> migrationLines = org.apache.commons.io.FileUtils.readLines(migration);
-                    log.info("{} migration records found for job {}", migrationLines.size(), id);
-                    // duplicationmigration lines should look like this: "FILENAME 496812 393343 1282069269000"
-                    // But only the first 3 entries are used.
-                    for (String line : migrationLines) {
-                    	// duplicationmigration lines look like this: "FILENAME 496812 393343 1282069269000"
-                        String[] splitLine = StringUtils.split(line);
-                        if (splitLine.length >= 3) { 
-                            lookup.put(new Pair<String, Long>(splitLine[0], Long.parseLong(splitLine[1])),
-                                 Long.parseLong(splitLine[2])); 
-                          } else {
-                               log.warn("Line '" + line + "' has a wrong format. Ignoring line");
-                          }
-                    }
-                } catch (IOException e) {
-                    throw new IOFailure("Could not read " + migration.getAbsolutePath());
-                } finally {
-                    migration.delete();
-                }
+            File crawllog = createTempFile("dedup");
+            originalBatchJob.copyResults(crawllog);
+            migrateDuplicates(id, crawllog, migration);
+        } else {
+            originalBatchJob.copyResults(cacheFileName);
+        }
+        log.debug("Cached data for job '{}' for '{}'", id, prefix);
+    }
+
+    /**
+     * Cache the data for the given ID by fetching the matching records with positional gets, using the locations found
+     * by the {@link MetadataRecordLocator}. Duplicate annotations in crawl logs are migrated as in
+     * {@link #migrateDuplicates(Long, String, String, BatchStatus)}.
+     *
+     * @param id A job ID to cache data for.
+     * @return true, if the data was cached. false, if the metadata records of the job could not be located.
+     * @throws IOFailure if the located records could not be fetched.
+     */
+    private boolean cacheDataFromLocatedRecords(Long id) {
+        MetadataRecordLocator locator = new MetadataRecordLocator(arcrep);
+        if (urlPattern.pattern().equals(MetadataFile.CRAWL_LOG_PATTERN)) {
+            File crawllog = createTempFile("dedup");
+            if (!locator.copyRecords(id, urlPattern, mimePattern, crawllog)) {
+                FileUtils.remove(crawllog);
+                return false;
             }
-            if (doMigration) {
-                File crawllog = null;
-                try {
-                    crawllog = File.createTempFile("dedup", "txt");
-                } catch (IOException e) {
-                    throw new IOFailure("Could not create temporary output file.");
+            File migration = createTempFile("migration");
+            locator.copyRecords(id, DUPLICATION_MIGRATION_URL_PATTERN, DUPLICATION_MIGRATION_MIME_PATTERN, migration);
+            migrateDuplicates(id, crawllog, migration);
+        } else if (!locator.copyRecords(id, urlPattern, mimePattern, getCacheFile(id))) {
+            return false;
+        }
+        log.debug("Cached data for job '{}' for '{}' from located metadata records", id, prefix);
+        return true;
+    }
+
+    /**
+     * Create a temporary file.
+     *
+     * @param prefix The prefix of the filename.
+     * @return A new empty temporary file.
+     * @throws IOFailure if the file could not be created.
+     */
+    private static File createTempFile(String prefix) {
+        try {
+            return File.createTempFile(prefix, "txt");
+        } catch (IOException e) {
+            throw new IOFailure("Could not create temporary output file.");
+        }
+    }
+
+    /**
+     * Migrate the duplicate annotations of a crawl log using the data from the duplicationmigration metadata record,
+     * and write the result to the cache file for the id. If there is no migration data, the crawl log is used as is.
+     * Both given files are deleted afterwards.
+     *
+     * @param id the id of the cache
+     * @param crawllog A file with the unmigrated crawl log.
+     * @param migration A file with the content of the duplicationmigration record, possibly empty.
+     */
+    private void migrateDuplicates(Long id, File crawllog, File migration) {
+        File cacheFileName = getCacheFile(id);
+        Pattern duplicatePattern = Pattern.compile(".*duplicate:\"([^,]+),([0-9]+).*");
+        boolean doMigration =  migration.exists() && migration.length() > 0;
+        Hashtable<Pair<String, Long>, Long> lookup = new Hashtable<>();
+        if (doMigration) {
+            log.info("Doing migration for {}", id);
+            try {
+                final List<String> migrationLines = org.apache.commons.io.FileUtils.readLines(migration);
+                log.info("{} migration records found for job {}", migrationLines.size(), id);
+                // duplicationmigration lines should look like this: "FILENAME 496812 393343 1282069269000"
+                // But only the first 3 entries are used.
+                for (String line : migrationLines) {
+                	// duplicationmigration lines look like this: "FILENAME 496812 393343 1282069269000"
+                    String[] splitLine = StringUtils.split(line);
+                    if (splitLine.length >= 3) { 
+                        lookup.put(new Pair<String, Long>(splitLine[0], Long.parseLong(splitLine[1])),
+                             Long.parseLong(splitLine[2])); 
+                      } else {
+                           log.warn("Line '" + line + "' has a wrong format. Ignoring line");
+                      }
                 }
-                originalBatchJob.copyResults(crawllog);
-                try {
-                    int matches = 0;
-                    int errors = 0;
-                    for (String line :  org.apache.commons.io.FileUtils.readLines(crawllog)) {
-                        Matcher m = duplicatePattern.matcher(line);
-                        if (m.matches()) {
-                            matches++;
-                            Long newOffset = lookup.get(new Pair<String, Long>(m.group(1), Long.parseLong(m.group(2))));
-                            if (newOffset == null) {
-                                log.warn("Could not migrate duplicate in " + line);
-                                FileUtils.appendToFile(cacheFileName, line);
-                                errors++;
-                            } else {
-                                String newLine = line.substring(0, m.start(2)) + newOffset + line.substring(m.end(2));
-                                newLine = newLine.replace(m.group(1), m.group(1) + ".gz");
-                                FileUtils.appendToFile(cacheFileName, newLine);
-                            }
-                        } else {
+            } catch (IOException e) {
+                throw new IOFailure("Could not read " + migration.getAbsolutePath());
+            } finally {
+                migration.delete();
+            }
+        }
+        if (doMigration) {
+            try {
+                int matches = 0;
+                int errors = 0;
+                for (String line :  org.apache.commons.io.FileUtils.readLines(crawllog)) {
+                    Matcher m = duplicatePattern.matcher(line);
+                    if (m.matches()) {
+                        matches++;
+                        Long newOffset = lookup.get(new Pair<String, Long>(m.group(1), Long.parseLong(m.group(2))));
+                        if (newOffset == null) {
+                            log.warn("Could not migrate duplicate in " + line);
                             FileUtils.appendToFile(cacheFileName, line);
+                            errors++;
+                        } else {
+                            String newLine = line.substring(0, m.start(2)) + newOffset + line.substring(m.end(2));
+                            newLine = newLine.replace(m.group(1), m.group(1) + ".gz");
+                            FileUtils.appendToFile(cacheFileName, newLine);
                         }
+                    } else {
+                        FileUtils.appendToFile(cacheFileName, line);
                     }
-                    log.info("Found and migrated {} duplicate lines for job {} with {} errors", matches, id, errors); 
-                } catch (IOException e) {
-                    throw new IOFailure("Could not read " + crawllog.getAbsolutePath());
-                } finally {
-                    crawllog.delete();
                 }
-            } else {
-                originalBatchJob.copyResults(cacheFileName);
+                log.info("Found and migrated {} duplicate lines for job {} with {} errors", matches, id, errors); 
+            } catch (IOException e) {
+                throw new IOFailure("Could not read " + crawllog.getAbsolutePath());
+            } finally {
+                crawllog.delete();
             }
         } else {
-            originalBatchJob.copyResults(cacheFileName);
+            FileUtils.remove(migration);
+            FileUtils.moveFile(crawllog, cacheFileName);
         }
-        log.debug("Cached data for job '{}' for '{}'", id, prefix);
     }
 
 }
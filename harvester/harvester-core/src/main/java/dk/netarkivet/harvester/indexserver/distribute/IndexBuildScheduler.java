@@ -0,0 +1,262 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver.distribute;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.netarkivet.common.distribute.indexserver.RequestType;
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.ChecksumCalculator;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.harvester.indexserver.FileBasedCache;
+
+/**
+ * Schedules the index builds of the {@link IndexRequestServer}.
+ * <p>
+ * Builds in progress are shared: a request for the same type of index over the same set of jobs as a build that is
+ * queued or running does not start a new build, but waits for the result of the existing one. At most a fixed number of
+ * builds run at the same time; the rest are queued. Builds requested by a harvester waiting for the index are run
+ * before builds requested ahead of time by the scheduler.
+ * <p>
+ * Builds over different but overlapping sets of jobs share the data per job, since that is fetched once into the raw
+ * data caches of the index caches.
+ */
+class IndexBuildScheduler {
+
+    /** The class logger. */
+    private static final Logger log = LoggerFactory.getLogger(IndexBuildScheduler.class);
+
+    /** The builds that are queued or running, by type and set of jobs. */
+    private final ConcurrentMap<String, Build> inFlight = new ConcurrentHashMap<String, Build>();
+
+    /** The executor running the builds. */
+    private final ThreadPoolExecutor executor;
+
+    /** Sequence numbers, making builds with the same priority run in the order they were requested. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /** satisfactoryThreshold percentage as an integer. */
+    private final int satisfactoryThresholdPercentage;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param maxConcurrentBuilds The maximum number of builds running at the same time.
+     * @param satisfactoryThresholdPercentage The percentage of the requested jobs that must be found, for an index
+     * over the found jobs to be accepted in place of the requested one.
+     */
+    IndexBuildScheduler(int maxConcurrentBuilds, int satisfactoryThresholdPercentage) {
+        ArgumentNotValid.checkPositive(maxConcurrentBuilds, "int maxConcurrentBuilds");
+        this.satisfactoryThresholdPercentage = satisfactoryThresholdPercentage;
+        this.executor = new ThreadPoolExecutor(maxConcurrentBuilds, maxConcurrentBuilds, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Get the build of an index over a set of jobs, scheduling a new build if no build over the same set of jobs is
+     * queued or running.
+     *
+     * @param type The type of index.
+     * @param handler The cache building the index.
+     * @param jobIDs The set of jobs to build the index over.
+     * @param urgent True, if the requester is waiting for the index. An urgent request for an already queued build
+     * moves the build ahead of the builds that are not urgent.
+     * @return The build. Its result is the set of jobs the index in the cache file for jobIDs covers: jobIDs itself if
+     * the index was built, or the subset of jobs for which data was found if not.
+     */
+    Future<Set<Long>> schedule(RequestType type, FileBasedCache<Set<Long>> handler, Set<Long> jobIDs, boolean urgent) {
+        ArgumentNotValid.checkNotNull(type, "RequestType type");
+        ArgumentNotValid.checkNotNull(handler, "FileBasedCache<Set<Long>> handler");
+        ArgumentNotValid.checkNotNull(jobIDs, "Set<Long> jobIDs");
+        String key = getKey(type, jobIDs);
+        Build build = new Build(key, handler, jobIDs, urgent, sequence.getAndIncrement());
+        Build existing = inFlight.putIfAbsent(key, build);
+        if (existing == null) {
+            log.debug("Scheduling build '{}' of an index over {} jobs", key, jobIDs.size());
+            executor.execute(build);
+            return build;
+        }
+        log.info("Request for an index of type '{}' over {} jobs joins the build '{}' already in progress", type,
+                jobIDs.size(), key);
+        if (urgent && !existing.urgent && executor.getQueue().remove(existing)) {
+            // Still queued, so requeue it with the higher priority.
+            existing.urgent = true;
+            executor.execute(existing);
+        }
+        return existing;
+    }
+
+    /**
+     * @return The number of builds that are queued or running.
+     */
+    int getBuildsInProgress() {
+        return inFlight.size();
+    }
+
+    /** Stop running builds and discard queued builds. */
+    void shutdown() {
+        executor.shutdownNow();
+        inFlight.clear();
+    }
+
+    /**
+     * Make the key identifying a build.
+     *
+     * @param type The type of index.
+     * @param jobIDs The set of jobs.
+     * @return A key unique for the type and set of jobs.
+     */
+    private static String getKey(RequestType type, Set<Long> jobIDs) {
+        List<Long> sortedList = new ArrayList<Long>(jobIDs);
+        Collections.sort(sortedList);
+        String allIDsString = StringUtils.conjoin("-", sortedList);
+        return type + "-" + ChecksumCalculator.calculateMd5(allIDsString.getBytes());
+    }
+
+    /**
+     * Build an index over a set of jobs. If data is only found for a subset of the jobs, but the subset is large
+     * enough, the index over the subset is made available as the index over the entire set.
+     *
+     * @param handler The cache building the index.
+     * @param jobIDs The set of jobs to build the index over.
+     * @return The set of jobs the index in the cache file for jobIDs covers.
+     */
+    private Set<Long> build(FileBasedCache<Set<Long>> handler, Set<Long> jobIDs) {
+        Set<Long> foundIDs = handler.cache(jobIDs);
+        if (foundIDs.equals(jobIDs) || !satisfactoryTresholdReached(foundIDs, jobIDs)) {
+            return foundIDs;
+        }
+        log.info("Data for full index w/ {} jobs not available. Only found data for {} jobs - "
+                + "but satisfactoryTreshold reached, so assuming presence of all data", jobIDs.size(),
+                foundIDs.size());
+        // Make sure that the index of the data available is generated
+        Set<Long> theFoundIDs = handler.cache(foundIDs);
+        // TheFoundIDS should be identical to foundIDs
+        // Lets make sure of that
+        Set<Long> diffSet = new HashSet<Long>(foundIDs);
+        diffSet.removeAll(theFoundIDs);
+
+        // Make a copy of the index available, and give it the name of
+        // the index cache file wanted.
+        File cacheFileWanted = handler.getCacheFile(jobIDs);
+        File cacheFileCreated = handler.getCacheFile(foundIDs);
+
+        log.info("Satisfactory threshold reached - copying index {} '{}' to full index: {}",
+                (cacheFileCreated.isDirectory() ? "dir" : "file"), cacheFileCreated.getAbsolutePath(),
+                cacheFileWanted.getAbsolutePath());
+        if (cacheFileCreated.isDirectory()) {
+            // create destination cacheFileWanted, and
+            // copy all files in cacheFileCreated to cacheFileWanted.
+            cacheFileWanted.mkdirs();
+            FileUtils.copyDirectory(cacheFileCreated, cacheFileWanted);
+        } else {
+            FileUtils.copyFile(cacheFileCreated, cacheFileWanted);
+        }
+
+        // TODO This delete-operation commented out, because it is deemed too dangerous,
+        // as the cachedir represented by cacheFileCreated may still be used
+        log.info("We keep the index '{}', as we don't know if anybody is using it",
+                cacheFileCreated.getAbsolutePath());
+        return jobIDs;
+    }
+
+    /**
+     * Threshold for when the created index contains enough data to be considered a satisfactory index.
+     *
+     * @param foundIDs The list of IDs contained in the index
+     * @param requestedIDs The list of IDs requested in the index.
+     * @return true, if the ratio foundIDs/requestedIDs is above the satisfactoryThresholdPercentage.
+     */
+    private boolean satisfactoryTresholdReached(Set<Long> foundIDs, Set<Long> requestedIDs) {
+        int jobsRequested = requestedIDs.size();
+        int jobsFound = foundIDs.size();
+        int percentage = (jobsFound * 100) / jobsRequested;
+        return percentage > satisfactoryThresholdPercentage;
+    }
+
+    /**
+     * A scheduled build. Urgent builds are ordered before builds that are not, and otherwise in the order they were
+     * scheduled.
+     */
+    private class Build extends FutureTask<Set<Long>> implements Comparable<Build> {
+        /** The key identifying this build. */
+        private final String key;
+        /** True, if a requester is waiting for this build. */
+        private volatile boolean urgent;
+        /** The sequence number of this build. */
+        private final long seqNo;
+
+        /**
+         * Create a build.
+         *
+         * @param key The key identifying this build.
+         * @param handler The cache building the index.
+         * @param jobIDs The set of jobs to build the index over.
+         * @param urgent True, if a requester is waiting for this build.
+         * @param seqNo The sequence number of this build.
+         */
+        Build(String key, final FileBasedCache<Set<Long>> handler, final Set<Long> jobIDs, boolean urgent, long seqNo) {
+            super(new Callable<Set<Long>>() {
+                @Override
+                public Set<Long> call() {
+                    return build(handler, jobIDs);
+                }
+            });
+            this.key = key;
+            this.urgent = urgent;
+            this.seqNo = seqNo;
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+        }
+
+        @Override
+        public int compareTo(Build other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            return Long.compare(seqNo, other.seqNo);
+        }
+    }
+
+}
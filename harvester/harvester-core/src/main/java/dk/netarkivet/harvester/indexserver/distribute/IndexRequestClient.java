@@ -24,6 +24,7 @@ package dk.netarkivet.harvester.indexserver.distribute;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
@@ -52,6 +53,7 @@ import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.common.utils.TimeUtils;
 import dk.netarkivet.common.utils.ZipUtils;
 import dk.netarkivet.harvester.distribute.HarvesterChannels;
+import dk.netarkivet.harvester.indexserver.CrawlLogIndexCache;
 import dk.netarkivet.harvester.indexserver.MultiFileBasedCache;
 
 /**
@@ -59,6 +61,9 @@ import dk.netarkivet.harvester.indexserver.MultiFileBasedCache;
  * <p>
  * Allows to request an index of some type over a list of jobs. Factory method will return the index request client of
  * the type wished.
+ * <p>
+ * Indices combined from the index segments of single jobs are received as the segments the client does not hold yet.
+ * The segments are kept in the "segments" directory of the cache, and the index is combined locally from them.
  */
 public class IndexRequestClient extends MultiFileBasedCache<Long> implements JobIndexCache {
 
@@ -101,6 +106,17 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
      */
     public static final String INDEXREQUEST_USE_LOCAL_FTPSERVER = "settings.common.indexClient.useLocalFtpServer";
 
+    /**
+     * <b>settings.common.indexClient.useSegmentDelta</b>: <br>
+     * Setting for receiving indices combined from the index segments of single jobs as the segments not already held
+     * by this client, and combining the index locally. Consecutive jobs mostly use indices of the same jobs, so this
+     * avoids transferring the same index data again and again. Set to true by default.
+     */
+    public static final String INDEXREQUEST_USE_SEGMENT_DELTA = "settings.common.indexClient.useSegmentDelta";
+
+    /** The name of the directory in the cache directory holding the index segments of single jobs. */
+    private static final String SEGMENTS_DIRNAME = "segments";
+
     /**
      * Initialise this client, handling requests of a given type. Start listening to channel if not done yet.
      *
@@ -174,6 +190,12 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
 
         // Send request to server
         IndexRequestMessage irMsg = new IndexRequestMessage(requestType, jobSet, ftpSettings);
+        if (useSegmentDelta()) {
+            Set<Long> knownSegments = getKnownSegments(jobSet);
+            log.debug("Telling the indexserver that the index segments of {} of the {} jobs are held locally",
+                    knownSegments.size(), jobSet.size());
+            irMsg.setKnownSegments(knownSegments);
+        }
         if (log.isDebugEnabled()) {
             log.debug("Waiting {} for the index", TimeUtils.readableTimeInterval(getIndexTimeout()));
         }
@@ -192,7 +214,9 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
                         StringUtils.conjoin(",", jobSet));
             }
             try {
-                if (reply.isIndexIsStoredInDirectory()) {
+                if (reply.getResultSegments() != null) {
+                    combineSegments(jobSet, reply.getResultSegments(), getCacheFile(jobSet));
+                } else if (reply.isIndexIsStoredInDirectory()) {
                     gunzipToDir(reply.getResultFiles(), getCacheFile(jobSet));
                 } else {
                     unzipAndDeleteRemoteFile(reply.getResultFile(), getCacheFile(jobSet));
@@ -239,6 +263,83 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
         }
     }
 
+    /**
+     * Get the jobs for which the index segment is held locally.
+     *
+     * @param jobSet The jobs of the requested index.
+     * @return The jobs of the set, for which the segment is held.
+     */
+    private Set<Long> getKnownSegments(Set<Long> jobSet) {
+        Set<Long> knownSegments = new HashSet<Long>();
+        for (Long jobId : jobSet) {
+            if (getSegmentDir(jobId).isDirectory()) {
+                knownSegments.add(jobId);
+            }
+        }
+        return knownSegments;
+    }
+
+    /**
+     * Get the directory holding the index segment of a job, not gzipped.
+     *
+     * @param jobId The ID of a job.
+     * @return The directory, which may not exist.
+     */
+    private File getSegmentDir(Long jobId) {
+        return new File(new File(getCacheDir(), SEGMENTS_DIRNAME), Long.toString(jobId));
+    }
+
+    /**
+     * Store the received index segments, and combine the index of a set of jobs from the segments of the jobs. The
+     * index is combined in a temporary directory which gets renamed, so the directory appears to be created
+     * atomically.
+     *
+     * @param jobSet The jobs of the index.
+     * @param resultSegments The gzipped files of the segments not held locally, by job ID. The RemoteFiles will be
+     * deleted as part of the process.
+     * @param toDir The directory that the index will eventually be placed in.
+     * @throws IOFailure If errors occur during unzipping or combining, e.g. disk full, or if the segment of a job is
+     * neither received nor held locally.
+     */
+    private void combineSegments(Set<Long> jobSet, Map<Long, List<RemoteFile>> resultSegments, File toDir)
+            throws IOFailure {
+        for (Map.Entry<Long, List<RemoteFile>> segment : resultSegments.entrySet()) {
+            File segmentDir = getSegmentDir(segment.getKey());
+            if (segmentDir.isDirectory()) {
+                // Received by another request at the same time
+                continue;
+            }
+            FileUtils.createDir(segmentDir.getParentFile());
+            try {
+                gunzipToDir(segment.getValue(), segmentDir);
+            } catch (IOFailure e) {
+                if (!segmentDir.isDirectory()) {
+                    throw e;
+                }
+            }
+        }
+        List<File> segmentDirs = new ArrayList<File>(jobSet.size());
+        for (Long jobId : jobSet) {
+            File segmentDir = getSegmentDir(jobId);
+            if (!segmentDir.isDirectory()) {
+                throw new IOFailure("The index segment of job " + jobId + " was neither received nor held locally");
+            }
+            segmentDirs.add(segmentDir);
+        }
+        File tmpDir = FileUtils.createUniqueTempDir(toDir.getParentFile(), toDir.getName());
+        try {
+            CrawlLogIndexCache.combineSegments(segmentDirs, tmpDir);
+            if (!tmpDir.renameTo(toDir)) {
+                throw new IOFailure("Error renaming temp dir '" + tmpDir + "' to target directory '"
+                        + toDir.getAbsolutePath() + "'");
+            }
+            log.info("Combined the index '{}' from the segments of {} jobs, {} of which were received", toDir.getName(),
+                    jobSet.size(), resultSegments.size());
+        } finally {
+            FileUtils.removeRecursively(tmpDir);
+        }
+    }
+
     /**
      * Unzip a RemoteFile to a given file, deleting the RemoteFile afterwards. Problems arising while deleting are
      * logged, but do not cause exceptions.
@@ -279,6 +380,15 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
         return Settings.getLong(INDEXREQUEST_TIMEOUT);
     }
 
+    /**
+     * Check if we should only receive the index segments not already held locally, for indices combined from segments.
+     *
+     * @return true, if the jobs with segments held locally should be reported to the indexserver.
+     */
+    protected boolean useSegmentDelta() {
+        return Settings.getBoolean(INDEXREQUEST_USE_SEGMENT_DELTA);
+    }
+
     /**
      * Check if we should use local ftpserver or not, provided you are using FTPRemoteFile as the
      * {@link CommonSettings#REMOTE_FILE_CLASS}. This always returns false, when
@@ -338,7 +448,14 @@ public class IndexRequestClient extends MultiFileBasedCache<Long> implements Job
 
         if (jobSet.equals(foundJobs)) {
             // Files should only be present if jobSet=foundJobs
-            if (reply.isIndexIsStoredInDirectory()) {
+            if (reply.getResultSegments() != null) {
+                Set<Long> missingSegments = new HashSet<Long>(reply.getResultSegments().keySet());
+                missingSegments.removeAll(jobSet);
+                if (!missingSegments.isEmpty()) {
+                    throw new ArgumentNotValid("Segments of jobs not requested in reply to index request for jobs "
+                            + StringUtils.conjoin(",", jobSet) + ": " + StringUtils.conjoin(",", missingSegments));
+                }
+            } else if (reply.isIndexIsStoredInDirectory()) {
                 List<RemoteFile> files;
                 files = reply.getResultFiles();
                 if (files == null) {
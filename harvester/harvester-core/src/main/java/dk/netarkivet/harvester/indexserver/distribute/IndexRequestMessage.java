@@ -25,8 +25,10 @@ package dk.netarkivet.harvester.indexserver.distribute;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -92,6 +94,19 @@ public class IndexRequestMessage extends HarvesterMessage {
      */
     private RemoteFileSettings optionalConnectionSettings;
 
+    /**
+     * Optionally, the jobs for which the client already holds the index segment. If set, and the index is combined from
+     * segments of single jobs, the reply carries the segments of the other jobs in resultSegments instead of the index.
+     */
+    private Set<Long> knownSegments;
+
+    /**
+     * The gzipped files of the index segments of the jobs not among knownSegments, by job ID. Should only be set on
+     * reply, and only if the index was generated for all jobs. The client combines the index from these segments and
+     * the segments it already holds.
+     */
+    private Map<Long, List<RemoteFile>> resultSegments;
+
     /**
      * Generate an index request message. Receiver is always the index server channel, replyTo is always this index
      * client.
@@ -258,6 +273,9 @@ public class IndexRequestMessage extends HarvesterMessage {
         if (this.resultFiles != null) {
             throw new IllegalState(this + " already has result files " + this.resultFiles + " set.");
         }
+        if (this.resultSegments != null) {
+            throw new IllegalState(this + " already has result segments set.");
+        }
         resultFiles = new ArrayList<RemoteFile>(1);
         resultFiles.add(resultFile);
         indexIsStoredInDirectory = false;
@@ -281,11 +299,70 @@ public class IndexRequestMessage extends HarvesterMessage {
         if (this.resultFiles != null) {
             throw new IllegalState(this + " already has result files " + this.resultFiles + " set.");
         }
+        if (this.resultSegments != null) {
+            throw new IllegalState(this + " already has result segments set.");
+        }
         log.debug("Sending result containing {} files", resultFiles.size());
         this.resultFiles = resultFiles;
         indexIsStoredInDirectory = true;
     }
 
+    /**
+     * Get the jobs for which the client already holds the index segment.
+     *
+     * @return The set of job IDs, or null if the client wants the index itself.
+     */
+    public Set<Long> getKnownSegments() {
+        return knownSegments;
+    }
+
+    /**
+     * Tell the index server that the client holds the index segments of the given jobs, and can combine the index
+     * from segments. If the index is combined from segments of single jobs, the server then replies with the segments
+     * of the other jobs instead of the index.
+     *
+     * @param knownSegments The jobs for which the client holds the index segment. May be empty.
+     * @throws ArgumentNotValid on null argument.
+     */
+    public void setKnownSegments(Set<Long> knownSegments) throws ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(knownSegments, "Set<Long> knownSegments");
+        // Note: Copy the set, since the received set may not be serializable.
+        this.knownSegments = new HashSet<Long>(knownSegments);
+    }
+
+    /**
+     * Get the index segments of the jobs the client did not hold the segments of.
+     *
+     * @return The gzipped files of each segment by job ID, or null if the reply carries the index itself.
+     */
+    public Map<Long, List<RemoteFile>> getResultSegments() {
+        return resultSegments;
+    }
+
+    /**
+     * On reply, set the index segments of the requested jobs that the client did not hold the segments of. Should
+     * _only_ be set when an index over ALL requested jobs is present, and instead of the result files.
+     *
+     * @param resultSegments The gzipped files of each segment by job ID.
+     * @throws ArgumentNotValid on null argument or null element.
+     * @throws IllegalState if the result files or segments have already been set.
+     */
+    public void setResultSegments(Map<Long, List<RemoteFile>> resultSegments) throws IllegalState, ArgumentNotValid {
+        ArgumentNotValid.checkNotNull(resultSegments, "Map<Long, List<RemoteFile>> resultSegments");
+        for (Map.Entry<Long, List<RemoteFile>> segment : resultSegments.entrySet()) {
+            if (segment.getValue() == null || segment.getValue().contains(null)) {
+                throw new ArgumentNotValid("The segment of job " + segment.getKey() + " contains a null element");
+            }
+        }
+        if (this.resultFiles != null || this.resultSegments != null) {
+            throw new IllegalState(this + " already has result files set.");
+        }
+        log.debug("Sending result containing the segments of {} jobs", resultSegments.size());
+        // Note: Copy the map, since the received map may not be serializable.
+        this.resultSegments = new HashMap<Long, List<RemoteFile>>(resultSegments);
+        indexIsStoredInDirectory = true;
+    }
+
     /**
      * If true, this message may carry multiple files that should be stored in a directory.
      *
@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
@@ -54,7 +56,6 @@ import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.exceptions.UnknownID;
-import dk.netarkivet.common.utils.ChecksumCalculator;
 import dk.netarkivet.common.utils.CleanupIF;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.Settings;
@@ -62,8 +63,10 @@ import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.distribute.HarvesterMessageHandler;
 import dk.netarkivet.harvester.distribute.IndexReadyMessage;
+import dk.netarkivet.harvester.indexserver.CrawlLogIndexCache;
 import dk.netarkivet.harvester.indexserver.FileBasedCache;
 import dk.netarkivet.harvester.indexserver.IndexRequestServerInterface;
+import dk.netarkivet.harvester.indexserver.JobIndexSegmentCache;
 
 /**
  * Index request server singleton.
@@ -98,8 +101,8 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
     /** The timer that initiates the checkIflisteningTask. */
     private Timer checkIflisteningTimer = new Timer();
 
-    /** satisfactoryThreshold percentage as an integer. */
-    private int satisfactoryThresholdPercentage;
+    /** The scheduler of the index builds. */
+    private IndexBuildScheduler buildScheduler;
 
     /**
      * The directory to store backup copies of the currentJobs. In case of the indexserver crashing.
@@ -113,8 +116,9 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
         maxConcurrentJobs = Settings.getLong(HarvesterSettings.INDEXSERVER_INDEXING_MAXCLIENTS);
         requestDir = Settings.getFile(HarvesterSettings.INDEXSERVER_INDEXING_REQUESTDIR);
         listeningInterval = Settings.getLong(HarvesterSettings.INDEXSERVER_INDEXING_LISTENING_INTERVAL);
-        satisfactoryThresholdPercentage = Settings
-                .getInt(HarvesterSettings.INDEXSERVER_INDEXING_SATISFACTORYTHRESHOLD_PERCENTAGE);
+        buildScheduler = new IndexBuildScheduler(
+                Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_MAXCONCURRENTBUILDS),
+                Settings.getInt(HarvesterSettings.INDEXSERVER_INDEXING_SATISFACTORYTHRESHOLD_PERCENTAGE));
 
         currentJobs = new HashMap<String, IndexRequestMessage>();
         handlers = new EnumMap<RequestType, FileBasedCache<Set<Long>>>(RequestType.class);
@@ -322,78 +326,33 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
             }
             FileBasedCache<Set<Long>> handler = handlers.get(type);
 
-            // Here we need to make sure that we don't accidentally process more than
-            // one message at the time before the whole process is over
-            List<Long> sortedList = new ArrayList<Long>(jobIDs);
-            String allIDsString = StringUtils.conjoin("-", sortedList);
-            String checksum = ChecksumCalculator.calculateMd5(allIDsString.getBytes());
-            log.debug("Waiting to enter the synchronization zone for the indexing job of size {} with checksum '{}'",
-                    jobIDs.size(), checksum);
-            // Begin synchronization
-            synchronized (checksum.intern()) {
-                log.debug("The indexing job of size {} with checksum '{}' is now in the synchronization zone",
-                        jobIDs.size(), checksum);
-                Set<Long> foundIDs = handler.cache(jobIDs);
-                irMsg.setFoundJobs(foundIDs);
-                if (foundIDs.equals(jobIDs)) {
-                    if (log.isInfoEnabled()) {
-                        log.info("Retrieved successfully index of type '{}' for the {} jobs [{}]", type, jobIDs.size(),
-                                StringUtils.conjoin(",", jobIDs));
-                    }
-                    File cacheFile = handler.getCacheFile(jobIDs);
-                    if (mustReturnIndex) { // return index now!
-                        packageResultFiles(irMsg, cacheFile);
-                    }
-                } else if (satisfactoryTresholdReached(foundIDs, jobIDs)) {
-                    log.info("Data for full index w/ {} jobs not available. Only found data for {} jobs - "
-                            + "but satisfactoryTreshold reached, so assuming presence of all data", jobIDs.size(),
-                            foundIDs.size());
-                    // Make sure that the index of the data available is generated
-                    Set<Long> theFoundIDs = handler.cache(foundIDs);
-                    // TheFoundIDS should be identical to foundIDs
-                    // Lets make sure of that
-                    Set<Long> diffSet = new HashSet<Long>(foundIDs);
-                    diffSet.removeAll(theFoundIDs);
-
-                    // Make a copy of the index available, and give it the name of
-                    // the index cache file wanted.
-                    File cacheFileWanted = handler.getCacheFile(jobIDs);
-                    File cacheFileCreated = handler.getCacheFile(foundIDs);
-
-                    log.info("Satisfactory threshold reached - copying index {} '{}' to full index: {}",
-                            (cacheFileCreated.isDirectory() ? "dir" : "file"), cacheFileCreated.getAbsolutePath(),
-                            cacheFileWanted.getAbsolutePath());
-                    if (cacheFileCreated.isDirectory()) {
-                        // create destination cacheFileWanted, and
-                        // copy all files in cacheFileCreated to cacheFileWanted.
-                        cacheFileWanted.mkdirs();
-                        FileUtils.copyDirectory(cacheFileCreated, cacheFileWanted);
+            // Identical requests share the same build, and harvesters waiting for the index go first
+            Future<Set<Long>> build = buildScheduler.schedule(type, handler, jobIDs, mustReturnIndex);
+            Set<Long> foundIDs = build.get();
+            irMsg.setFoundJobs(foundIDs);
+            if (foundIDs.equals(jobIDs)) {
+                if (log.isInfoEnabled()) {
+                    log.info("Retrieved successfully index of type '{}' for the {} jobs [{}]", type, jobIDs.size(),
+                            StringUtils.conjoin(",", jobIDs));
+                }
+                File cacheFile = handler.getCacheFile(jobIDs);
+                if (mustReturnIndex) { // return index now!
+                    if (irMsg.getKnownSegments() != null && handler instanceof CrawlLogIndexCache) {
+                        packageResultSegments(irMsg, ((CrawlLogIndexCache) handler).getSegmentCache());
                     } else {
-                        FileUtils.copyFile(cacheFileCreated, cacheFileWanted);
-                    }
-
-                    // TODO This delete-operation commented out, because it is deemed too dangerous,
-                    // as the cachedir represented by cacheFileCreated may still be used
-
-                    // log.info("Deleting the temporary index "
-                    // + cacheFileCreated.getAbsolutePath());
-                    // FileUtils.removeRecursively(cacheFileCreated);
-                    log.info("We keep the index '{}', as we don't know if anybody is using it",
-                            cacheFileCreated.getAbsolutePath());
-
-                    // Information needed by recipient to store index in local cache
-                    irMsg.setFoundJobs(jobIDs);
-                    if (mustReturnIndex) { // return index now.
-                        packageResultFiles(irMsg, cacheFileWanted);
+                        packageResultFiles(irMsg, cacheFile);
                     }
-                } else {
-                    Set<Long> missingJobIds = new HashSet<Long>(jobIDs);
-                    missingJobIds.removeAll(foundIDs);
-                    log.warn("Failed generating index of type '{}' for the jobs [{}]. Missing data for jobs [{}].",
-                            type, StringUtils.conjoin(",", jobIDs), StringUtils.conjoin(",", missingJobIds));
                 }
-
-            } // End of synchronization block
+            } else {
+                Set<Long> missingJobIds = new HashSet<Long>(jobIDs);
+                missingJobIds.removeAll(foundIDs);
+                log.warn("Failed generating index of type '{}' for the jobs [{}]. Missing data for jobs [{}].", type,
+                        StringUtils.conjoin(",", jobIDs), StringUtils.conjoin(",", missingJobIds));
+            }
+        } catch (ExecutionException e) {
+            log.warn("Unable to generate index for jobs [" + StringUtils.conjoin(",", irMsg.getRequestedJobs()) + "]",
+                    e.getCause());
+            irMsg.setNotOk(e.getCause());
         } catch (Throwable t) {
             log.warn("Unable to generate index for jobs [" + StringUtils.conjoin(",", irMsg.getRequestedJobs()) + "]",
                     t);
@@ -452,23 +411,35 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
     }
 
     /**
-     * Threshold for when the created index contains enough data to be considered a satisfactory index. Uses the
-     * {@link IndexRequestServer#satisfactoryThresholdPercentage}.
+     * Package the index segments of the requested jobs that the client does not hold with the message reply, so the
+     * client can combine the index itself.
      *
-     * @param foundIDs The list of IDs contained in the index
-     * @param requestedIDs The list of IDs requested in the index.
-     * @return true, if the ratio foundIDs/requestedIDs is above the
-     * {@link IndexRequestServer#satisfactoryThresholdPercentage}.
+     * @param irMsg the message being answered
+     * @param segmentCache The cache of the index segments of the single jobs.
+     * @throws IOFailure If the segment of a job cannot be made.
      */
-    private boolean satisfactoryTresholdReached(Set<Long> foundIDs, Set<Long> requestedIDs) {
-        int jobsRequested = requestedIDs.size();
-        int jobsFound = foundIDs.size();
-        int percentage = (jobsFound * 100) / jobsRequested;
-        if (percentage > satisfactoryThresholdPercentage) {
-            return true;
-        } else {
-            return false;
+    private void packageResultSegments(IndexRequestMessage irMsg, JobIndexSegmentCache segmentCache)
+            throws IOFailure {
+        Set<Long> knownSegments = irMsg.getKnownSegments();
+        Map<Long, List<RemoteFile>> resultSegments = new HashMap<Long, List<RemoteFile>>();
+        for (Long jobId : irMsg.getRequestedJobs()) {
+            if (knownSegments.contains(jobId)) {
+                continue;
+            }
+            // The segments of indices made before the segments were kept are made now
+            if (!jobId.equals(segmentCache.cache(jobId))) {
+                throw new IOFailure("Unable to make the index segment of job " + jobId);
+            }
+            File[] segmentFiles = segmentCache.getCacheFile(jobId).listFiles();
+            List<RemoteFile> resultFiles = new ArrayList<RemoteFile>(segmentFiles.length);
+            for (File f : segmentFiles) {
+                resultFiles.add(RemoteFileFactory.getCopyfileInstance(f, irMsg.getRemoteFileSettings()));
+            }
+            resultSegments.put(jobId, resultFiles);
         }
+        log.info("Sending the index segments of {} of the {} requested jobs. The client holds the rest",
+                resultSegments.size(), irMsg.getRequestedJobs().size());
+        irMsg.setResultSegments(resultSegments);
     }
 
     /**
@@ -514,6 +485,7 @@ public final class IndexRequestServer extends HarvesterMessageHandler implements
     public void cleanup() {
         // shutdown listening timer.
         checkIflisteningTimer.cancel();
+        buildScheduler.shutdown();
         conn.removeListener(Channels.getTheIndexServer(), this);
         handlers.clear();
 
@@ -35,6 +35,7 @@ import dk.netarkivet.harvester.datamodel.GlobalCrawlerTrapListDAO;
 import dk.netarkivet.harvester.datamodel.HarvestDBConnection;
 import dk.netarkivet.harvester.datamodel.HarvestDefinitionDAO;
 import dk.netarkivet.harvester.datamodel.JobDAO;
+import dk.netarkivet.harvester.datamodel.RunningJobsInfoDAO;
 import dk.netarkivet.harvester.datamodel.ScheduleDAO;
 import dk.netarkivet.harvester.datamodel.TemplateDAO;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
@@ -104,8 +105,12 @@ public class DefinitionsSiteSection extends SiteSection {
         HarvestMonitor.getInstance();
     }
 
-    /** Release DB resources. */
+    /** Write the buffered harvest progress, and release DB resources. */
     public void close() {
-        HarvestDBConnection.cleanup();
+        try {
+            RunningJobsInfoDAO.getInstance().close();
+        } finally {
+            HarvestDBConnection.cleanup();
+        }
     }
 }
@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 
@@ -47,6 +48,8 @@ import dk.netarkivet.common.utils.batch.FileBatchJob;
 import dk.netarkivet.common.utils.batch.FileListJob;
 import dk.netarkivet.common.utils.cdx.ArchiveExtractCDXJob;
 import dk.netarkivet.common.utils.cdx.CDXRecord;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.harvester.indexserver.MetadataRecordLocator;
 
 /**
  * Methods for generating the batch results needed by the QA pages.
@@ -111,6 +114,21 @@ public class Reporting {
      */
     public static List<CDXRecord> getMetadataCDXRecordsForJob(long jobid) {
         ArgumentNotValid.checkPositive(jobid, "jobid");
+        if (Settings.getBoolean(HarvesterSettings.INDEXSERVER_USE_METADATA_RECORD_LOCATOR)) {
+            List<CDXRecord> located = new MetadataRecordLocator(
+                    ArcRepositoryClientFactory.getViewerInstance()).getRecords(jobid);
+            if (located != null) {
+                // The locator may know of more files than the ones matching the pattern used here.
+                Pattern metadataFilePattern = Pattern.compile(getMetadataFilePatternForJobId(jobid));
+                List<CDXRecord> records = new ArrayList<CDXRecord>();
+                for (CDXRecord record : located) {
+                    if (metadataFilePattern.matcher(record.getArcfile()).matches()) {
+                        records.add(record);
+                    }
+                }
+                return records;
+            }
+        }
         FileBatchJob cdxJob = new ArchiveExtractCDXJob(false) {
             @Override
             public ArchiveBatchFilter getFilter() {
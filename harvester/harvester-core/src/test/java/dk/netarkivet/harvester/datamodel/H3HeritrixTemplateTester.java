@@ -5,12 +5,14 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 
 import org.junit.Test;
 
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IllegalState;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.testutils.Serial;
 
 public class H3HeritrixTemplateTester {
 
@@ -82,4 +84,32 @@ public class H3HeritrixTemplateTester {
 		}
 	}
 
+	@Test
+	public void testInsertCrawlerTraps() throws IOException, ClassNotFoundException {
+		URL url = this.getClass().getClassLoader().getResource("heritrix3");
+	    File basedir = new File(url.getFile());
+	    File beansWithPlaceholders = new File(basedir, correctTemplateName);
+		H3HeritrixTemplate template = new H3HeritrixTemplate(100L, FileUtils.readFile(beansWithPlaceholders));
+		template.insertCrawlerTraps("kb.dk", Arrays.asList(".*kb\\.dk/trap1.*", ".*kb\\.dk/trap2.*"));
+		template.insertCrawlerTraps("dr.dk", Arrays.asList(".*dr\\.dk/trap.*"));
+
+		String xml = template.getXML();
+		int first = xml.indexOf("<value>.*kb\\.dk/trap1.*</value>");
+		int second = xml.indexOf("<value>.*kb\\.dk/trap2.*</value>");
+		int third = xml.indexOf("<value>.*dr\\.dk/trap.*</value>");
+		int placeholder = xml.indexOf(H3HeritrixTemplate.CRAWLERTRAPS_PLACEHOLDER);
+		assertTrue("All traps should be inserted in order before the placeholder",
+				first >= 0 && first < second && second < third && third < placeholder);
+
+		// Traps inserted after the template has been read are inserted after the previous ones
+		template.insertCrawlerTraps("sb.dk", Arrays.asList(".*sb\\.dk/trap.*"));
+		H3HeritrixTemplate copy = Serial.serial(template);
+		String copyXml = copy.getXML();
+		assertTrue("Traps should survive serialization",
+				copyXml.indexOf("<value>.*sb\\.dk/trap.*</value>") > copyXml.indexOf("<value>.*dr\\.dk/trap.*</value>"));
+		copy.removePlaceholders();
+		assertFalse("Placeholder should be removed",
+				copy.getXML().contains(H3HeritrixTemplate.CRAWLERTRAPS_PLACEHOLDER));
+	}
+
 }
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *       the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.frontier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link FrontierReportDelta} class.
+ */
+public class FrontierReportDeltaTest {
+
+    @Test
+    public void testDelta() {
+        InMemoryFrontierReport previous = new InMemoryFrontierReport("job");
+        previous.addLine(line("a.dk", 10));
+        previous.addLine(line("b.dk", 20));
+        previous.addLine(line("c.dk", 30));
+
+        InMemoryFrontierReport current = new InMemoryFrontierReport("job");
+        current.setTimestamp(42L);
+        current.addLine(line("a.dk", 10));
+        current.addLine(line("b.dk", 21));
+        current.addLine(line("d.dk", 5));
+
+        FrontierReportDelta delta = new FrontierReportDelta(previous, current);
+        assertFalse(delta.isEmpty());
+        assertEquals(42L, delta.getTimestamp());
+        assertEquals(2, delta.getChangedLines().size());
+        assertTrue(delta.getChangedLines().contains(line("b.dk", 21)));
+        assertTrue(delta.getChangedLines().contains(line("d.dk", 5)));
+        assertEquals(Arrays.asList("c.dk"), delta.getRemovedDomains());
+    }
+
+    @Test
+    public void testNoChanges() {
+        InMemoryFrontierReport previous = new InMemoryFrontierReport("job");
+        previous.addLine(line("a.dk", 10));
+        InMemoryFrontierReport current = new InMemoryFrontierReport("job");
+        current.addLine(line("a.dk", 10));
+        assertTrue(new FrontierReportDelta(previous, current).isEmpty());
+
+        FrontierReportLine changed = line("a.dk", 10);
+        changed.setLastQueuedUri("http://a.dk/other");
+        assertFalse(FrontierReportDelta.sameValues(line("a.dk", 10), changed));
+    }
+
+    private static FrontierReportLine line(String domainName, long totalEnqueues) {
+        FrontierReportLine line = new FrontierReportLine();
+        line.setDomainName(domainName);
+        line.setTotalEnqueues(totalEnqueues);
+        line.setLastDequeueTime("-");
+        line.setWakeTime("-");
+        line.setLastPeekUri("http://" + domainName + "/");
+        line.setLastQueuedUri("http://" + domainName + "/");
+        return line;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *       the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.frontier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link FrontierReportStreamProcessor} class.
+ */
+public class FrontierReportStreamProcessorTest {
+
+    /** The header line of an Heritrix 3 frontier report. */
+    private static final String HEADER = "queue precedence currentSize totalEnqueues sessionBalance "
+            + "lastCost(averageCost) lastDequeueTime wakeTime totalSpend/totalBudget errorCount lastPeekUri "
+            + "lastQueuedUri\n";
+
+    @Test
+    public void testFilters() {
+        StringBuilder report = new StringBuilder(HEADER);
+        // Active queues
+        report.append(line("a.dk", 5, 100, 10, 50, -1));
+        report.append(line("b.dk", 5, 300, 10, 50, -1));
+        report.append(line("c.dk", 5, 200, 10, 50, 100));
+        report.append(line("d.dk", 5, 400, 10, 50, -1));
+        // Exhausted queues
+        report.append(line("e.dk", 0, 10, 10, 50, -1));
+        report.append(line("f.dk", 0, 20, 10, 50, -1));
+        report.append(line("g.dk", 0, 30, 10, 50, -1));
+        // Retired queues
+        report.append(line("h.dk", 5, 500, 10, 70, 60));
+        report.append(line("i.dk", 5, 600, 10, 60, 60));
+        report.append(line("j.dk", 5, 700, 10, 80, 60));
+        report.append("this is not a frontier report line\n");
+
+        List<FrontierReportFilter> filters = Arrays.asList(filter(new TopTotalEnqueuesFilter(), 2),
+                filter(new ExhaustedQueuesFilter(), 2), filter(new RetiredQueuesFilter(), 2));
+        FrontierReportStreamProcessor processor = new FrontierReportStreamProcessor("job", filters);
+        processor.parse(new StringReader(report.toString()));
+        Map<FrontierReportFilter, InMemoryFrontierReport> reports = processor.getReports();
+
+        assertEquals(filters, new ArrayList<FrontierReportFilter>(reports.keySet()));
+        assertArrayEquals(new String[] {"d.dk", "b.dk"}, domains(reports.get(filters.get(0))));
+        assertArrayEquals(new String[] {"g.dk", "f.dk"}, domains(reports.get(filters.get(1))));
+        // Selected by increasing totalSpend, listed by natural order
+        assertArrayEquals(new String[] {"i.dk", "h.dk"}, domains(reports.get(filters.get(2))));
+    }
+
+    @Test
+    public void testParseXML() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<script><rawOutput>" + HEADER
+                + line("a.dk", 5, 100, 10, 50, -1) + line("b.dk", 5, 300, 10, 50, -1)
+                + "</rawOutput><other>ignored</other></script>";
+        List<FrontierReportFilter> filters = Arrays.<FrontierReportFilter> asList(filter(new TopTotalEnqueuesFilter(),
+                10));
+        FrontierReportStreamProcessor processor = new FrontierReportStreamProcessor("job", filters);
+        processor.parseXML(new ByteArrayInputStream(xml.getBytes()), "rawOutput");
+        assertArrayEquals(new String[] {"b.dk", "a.dk"}, domains(processor.getReports().get(filters.get(0))));
+    }
+
+    private static FrontierReportFilter filter(MaxSizeFrontierReportExtract filter, int maxSize) {
+        filter.init(new String[] {Integer.toString(maxSize)});
+        return filter;
+    }
+
+    private static String line(String queue, long currentSize, long totalEnqueues, long sessionBalance,
+            long totalSpend, long totalBudget) {
+        return queue + " 1 " + currentSize + " " + totalEnqueues + " " + sessionBalance + " 1(1.5) - - " + totalSpend
+                + "/" + totalBudget + " 0 http://" + queue + "/ http://" + queue + "/\n";
+    }
+
+    private static String[] domains(InMemoryFrontierReport report) {
+        FrontierReportLine[] lines = report.getLines();
+        String[] domains = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            domains[i] = lines[i].getDomainName();
+        }
+        return domains;
+    }
+
+}
@@ -33,8 +33,10 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Before;
@@ -755,6 +757,134 @@ public class DomainDAOTester extends DataModelTestCase {
     }
 
     /** Check constructor of DomainHarvestInfo(). */
+    /**
+     * Test that the domains read in batches are the same as the domains read one by one.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testGetAllDomainsInSnapshotHarvestOrderReadsSameDomains() {
+        DomainDAO dao = DomainDAO.getInstance();
+        Domain d = dao.read("netarkivet.dk");
+        d.addPassword(TestInfo.password);
+        d.getDefaultConfiguration().addPassword(d, TestInfo.password);
+        d.getHistory().addHarvestInfo(new HarvestInfo(Long.valueOf(42L), d.getName(),
+                d.getDefaultConfiguration().getName(), new Date(), 1L, 1L, StopReason.DOWNLOAD_COMPLETE));
+        dao.update(d);
+
+        Iterator<Domain> i = dao.getAllDomainsInSnapshotHarvestOrder();
+        int count = 0;
+        while (i.hasNext()) {
+            Domain batched = i.next();
+            assertEquals("The domain read in a batch should be the same as the domain read alone",
+                    describe(dao.read(batched.getName())), describe(batched));
+            count++;
+        }
+        assertEquals("Should have read all domains", dao.getCountDomains(), count);
+    }
+
+    /**
+     * Test that the domains read together are the same as the domains read one by one, and that unknown domains are
+     * left out.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testReadDomainsReadsSameDomains() {
+        DomainDAO dao = DomainDAO.getInstance();
+        List<String> names = dao.getAllDomainNames();
+        List<String> requested = new ArrayList<String>(names);
+        requested.add("unknown-domain.dk");
+        Map<String, Domain> domains = dao.readDomains(requested);
+        assertEquals("Should read all known domains", new HashSet<String>(names), domains.keySet());
+        for (String name : names) {
+            assertEquals("The domain read with others should be the same as the domain read alone",
+                    describe(dao.read(name)), describe(domains.get(name)));
+        }
+    }
+
+    /**
+     * Describe the content of a domain read from the database.
+     */
+    private static String describe(Domain d) {
+        StringBuilder sb = new StringBuilder(d.getName()).append(" ID ").append(d.getID()).append(" edition ")
+                .append(d.getEdition()).append(" comments ").append(d.getComments()).append(" traps ")
+                .append(d.getCrawlerTraps()).append(" alias ").append(d.getAliasInfo()).append(" default ")
+                .append(d.getDefaultConfiguration().getName()).append(" owners ")
+                .append(d.getAllDomainOwnerInfo().length).append('\n');
+        for (Iterator<DomainConfiguration> i = d.getAllConfigurations(); i.hasNext();) {
+            DomainConfiguration cfg = i.next();
+            sb.append("config ").append(cfg.getName()).append(' ').append(cfg.getOrderXmlName()).append(' ')
+                    .append(cfg.getMaxObjects()).append(' ').append(cfg.getMaxBytes()).append(' ')
+                    .append(cfg.getComments()).append(" seedlists");
+            for (Iterator<SeedList> j = cfg.getSeedLists(); j.hasNext();) {
+                sb.append(' ').append(j.next().getName());
+            }
+            sb.append(" passwords");
+            for (Iterator<Password> j = cfg.getPasswords(); j.hasNext();) {
+                sb.append(' ').append(j.next().getName());
+            }
+            sb.append('\n');
+        }
+        for (Iterator<SeedList> i = d.getAllSeedLists(); i.hasNext();) {
+            SeedList seedList = i.next();
+            sb.append("seedlist ").append(seedList.getName()).append(' ').append(seedList.getSeedsAsString())
+                    .append('\n');
+        }
+        for (Iterator<Password> i = d.getAllPasswords(); i.hasNext();) {
+            sb.append("password ").append(i.next().getName()).append('\n');
+        }
+        for (Iterator<HarvestInfo> i = d.getHistory().getHarvestInfo(); i.hasNext();) {
+            sb.append("harvest ").append(i.next()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test that the harvest infos of the previous harvest definition are those found in the history of each
+     * configuration of the harvest definition, in the order of the configurations.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testGetHarvestInfoBasedOnPreviousHarvestDefinitionMatchesDomainHistory() {
+        DomainDAO dao = DomainDAO.getInstance();
+        HarvestDefinition hd = HarvestDefinition.createFullHarvest("Full Harvest", "Test of full harvest", null, 2000,
+                Constants.DEFAULT_MAX_BYTES, Constants.DEFAULT_MAX_JOB_RUNNING_TIME);
+        hd.setSubmissionDate(new Date());
+        HarvestDefinitionDAO.getInstance().create(hd);
+
+        long time = System.currentTimeMillis() / 1000 * 1000;
+        Domain domain0 = dao.read("dr.dk");
+        String config0 = domain0.getDefaultConfiguration().getName();
+        HarvestInfo older = new HarvestInfo(hd.getOid(), domain0.getName(), config0, new Date(time), 1L, 1L,
+                StopReason.OBJECT_LIMIT);
+        HarvestInfo newer = new HarvestInfo(hd.getOid(), domain0.getName(), config0, new Date(time + 1000), 2L, 2L,
+                StopReason.SIZE_LIMIT);
+        domain0.getHistory().addHarvestInfo(older);
+        domain0.getHistory().addHarvestInfo(newer);
+        dao.update(domain0);
+        Domain domain1 = dao.read("netarkivet.dk");
+        domain1.getHistory().addHarvestInfo(new HarvestInfo(hd.getOid(), domain1.getName(),
+                domain1.getDefaultConfiguration().getName(), new Date(time), 1L, 1L, StopReason.DOWNLOAD_COMPLETE));
+        domain1.getHistory().addHarvestInfo(new HarvestInfo(Long.valueOf(42L), domain1.getName(),
+                domain1.getDefaultConfiguration().getName(), new Date(time + 2000), 1L, 1L,
+                StopReason.DOWNLOAD_COMPLETE));
+        dao.update(domain1);
+
+        List<HarvestInfo> expected = new ArrayList<HarvestInfo>();
+        for (Iterator<DomainConfiguration> i = hd.getDomainConfigurations(); i.hasNext();) {
+            DomainConfiguration cfg = i.next();
+            HarvestInfo hi = dao.getDomainHistory(cfg.getDomainName()).getSpecifiedHarvestInfo(hd.getOid(),
+                    cfg.getName());
+            if (hi != null) {
+                expected.add(hi);
+            }
+        }
+        List<HarvestInfo> actual = IteratorUtils.toList(dao.getHarvestInfoBasedOnPreviousHarvestDefinition(hd));
+        assertEquals("Should get the harvest infos found in the domain histories", expected, actual);
+        assertEquals("Should get one harvest info for each harvested configuration", 2, actual.size());
+        assertTrue("Should get the newest harvest info of a configuration", actual.contains(newer));
+        assertFalse("Should not get an older harvest info of a configuration", actual.contains(older));
+    }
+
     @Category(SlowTest.class)
     @Test
     public void testDomainHarvestInfoConstructor() {
@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.exceptions.UnknownID;
+import dk.netarkivet.common.utils.IteratorUtils;
+import dk.netarkivet.harvester.datamodel.extendedfield.ExtendedFieldDAO;
+
+/**
+ * Tests the reading of the domains of the previous harvest by an iterative {@link FullHarvest}, with mocked DAOs.
+ */
+public class FullHarvestPreviousHarvestTester {
+
+    private static final Long PREVIOUS_HARVEST_ID = 1L;
+
+    private HarvestDefinitionDAO hdDao = mock(HarvestDefinitionDAO.class);
+    private DomainDAO domainDao = mock(DomainDAO.class);
+    private ExtendedFieldDAO extendedFieldDao = mock(ExtendedFieldDAO.class);
+    private FullHarvest fullHarvest;
+
+    private DomainConfiguration limitedConfig = mock(DomainConfiguration.class);
+    private Domain limitedDomain = mock(Domain.class);
+
+    @Before
+    public void setUp() {
+        HarvestDefinition previous = mock(HarvestDefinition.class);
+        when(hdDao.read(PREVIOUS_HARVEST_ID)).thenReturn(previous);
+        when(limitedDomain.getConfiguration("limited")).thenReturn(limitedConfig);
+        List<HarvestInfo> harvestInfos = Arrays.asList(
+                new HarvestInfo(PREVIOUS_HARVEST_ID, "limited.dk", "limited", new Date(), 100L, 10L,
+                        StopReason.SIZE_LIMIT),
+                new HarvestInfo(PREVIOUS_HARVEST_ID, "complete.dk", "complete", new Date(), 100L, 10L,
+                        StopReason.DOWNLOAD_COMPLETE),
+                new HarvestInfo(PREVIOUS_HARVEST_ID, "deleted.dk", "deleted", new Date(), 100L, 10L,
+                        StopReason.OBJECT_LIMIT));
+        when(domainDao.getHarvestInfoBasedOnPreviousHarvestDefinition(previous)).thenReturn(harvestInfos.iterator());
+        fullHarvest = new FullHarvest("full", "", PREVIOUS_HARVEST_ID, 1L, 1L, 1L, false,
+                new Provider<HarvestDefinitionDAO>() {
+                    @Override
+                    public HarvestDefinitionDAO get() {
+                        return hdDao;
+                    }
+                }, null, new Provider<ExtendedFieldDAO>() {
+                    @Override
+                    public ExtendedFieldDAO get() {
+                        return extendedFieldDao;
+                    }
+                }, new Provider<DomainDAO>() {
+                    @Override
+                    public DomainDAO get() {
+                        return domainDao;
+                    }
+                });
+    }
+
+    /**
+     * Test that the domains that may be harvested again are read together, and not one by one.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReadsDomainsOfPreviousHarvestTogether() {
+        Map<String, Domain> domains = new HashMap<String, Domain>();
+        domains.put("limited.dk", limitedDomain);
+        when(domainDao.readDomains(any(Collection.class))).thenReturn(domains);
+
+        List<DomainConfiguration> configs = IteratorUtils.toList(fullHarvest.getDomainConfigurations());
+        assertEquals("Should harvest the configuration stopped by a limit of the harvest",
+                Collections.singletonList(limitedConfig), configs);
+        verify(domainDao, times(1)).readDomains(new HashSet<String>(Arrays.asList("limited.dk", "deleted.dk")));
+        verify(domainDao, never()).read(anyString());
+    }
+
+    /**
+     * Test that a domain that cannot be read only leaves that domain out.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReadsDomainsOneByOneIfOneCannotBeRead() {
+        when(domainDao.readDomains(any(Collection.class))).thenThrow(new IOFailure("Inconsistent domain"));
+        when(domainDao.read("limited.dk")).thenReturn(limitedDomain);
+        when(domainDao.read("deleted.dk")).thenThrow(new UnknownID("No domain deleted.dk"));
+
+        List<DomainConfiguration> configs = IteratorUtils.toList(fullHarvest.getDomainConfigurations());
+        assertEquals("Should harvest the configuration of the domain that can be read",
+                Collections.singletonList(limitedConfig), configs);
+        verify(domainDao, never()).read("complete.dk");
+    }
+
+}
@@ -32,9 +32,11 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -48,6 +50,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import com.google.common.cache.Cache;
+
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.exceptions.IllegalState;
@@ -57,6 +61,7 @@ import dk.netarkivet.harvester.test.utils.OrderXmlBuilder;
 import dk.netarkivet.harvester.webinterface.DomainDefinition;
 import dk.netarkivet.harvester.webinterface.HarvestStatusQuery;
 import dk.netarkivet.harvester.webinterface.HarvestStatusTester;
+import dk.netarkivet.testutils.ReflectUtils;
 
 @Category(SlowTest.class)
 public class JobDAOTester extends DataModelTestCase {
@@ -653,6 +658,69 @@ public class JobDAOTester extends DataModelTestCase {
         assertEquals("There should be 3 AliasInfo objects in the List returned", 3, aliases.size());
     }
 
+    /**
+     * Test that the aliases of a stored job, read with one query, are the aliases of each domain of the job.
+     */
+    @Test
+    public void testGetJobAliasInfoForStoredJob() {
+        DomainDAO ddao = DomainDAO.getInstance();
+        DomainDefinition.createDomains("alias1.dk", "alias2.dk", "alias3.dk");
+        DomainConfiguration dc1 = TestInfo.getConfig(ddao.read("kb.dk"), "aliasKonfig");
+        DomainConfiguration dc2 = TestInfo.getConfig(ddao.read("dr.dk"), "aliasKonfig2");
+        Domain d = ddao.read("alias1.dk");
+        d.updateAlias("kb.dk");
+        ddao.update(d);
+        d = ddao.read("alias2.dk");
+        d.updateAlias("kb.dk");
+        ddao.update(d);
+        d = ddao.read("alias3.dk");
+        d.updateAlias("dr.dk");
+        ddao.update(d);
+        Job job = createDefaultJob(0);
+        job.addConfiguration(dc1);
+        job.addConfiguration(dc2);
+        createJobInDB(job);
+        assertNotNull("The job should be stored", job.getJobID());
+
+        List<String> expected = new ArrayList<String>();
+        for (String domain : job.getDomainConfigurationMap().keySet()) {
+            for (AliasInfo alias : ddao.getAliases(domain)) {
+                expected.add(alias.getDomain() + " -> " + alias.getAliasOf() + " " + alias.getLastChange());
+            }
+        }
+        List<String> actual = new ArrayList<String>();
+        for (AliasInfo alias : jobDAO.getJobAliasInfo(job)) {
+            actual.add(alias.getDomain() + " -> " + alias.getAliasOf() + " " + alias.getLastChange());
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals("Should read the aliases of each domain of the job", expected, actual);
+        assertEquals("There should be 3 AliasInfo objects in the List returned", 3, actual.size());
+    }
+
+    /**
+     * Test that creating a job only forgets the cached job IDs for duplicate reduction of the following run.
+     */
+    @Test
+    public void testDuplicateReductionCacheIsInvalidatedForFollowingRun() throws Exception {
+        Job first = createDefaultJobInDB(0);
+        Job next = createDefaultJobInDB(1);
+        assertEquals("Should use the job of the previous run", Arrays.asList(first.getJobID()),
+                jobDAO.getJobIDsForDuplicateReduction(next.getJobID()));
+
+        Job second = createDefaultJobInDB(0);
+        List<Long> result = jobDAO.getJobIDsForDuplicateReduction(next.getJobID());
+        Collections.sort(result);
+        assertEquals("Should use a job created in the previous run after the first lookup",
+                Arrays.asList(first.getJobID(), second.getJobID()), result);
+
+        createDefaultJobInDB(1);
+        Field field = ReflectUtils.getPrivateField(JobDBDAO.class, "duplicateReductionCache");
+        Cache<?, ?> cache = (Cache<?, ?>) field.get(jobDAO);
+        assertNotNull("Creating a job should not forget the job IDs of its own run",
+                cache.getIfPresent(TestInfo.HARVESTID + "-1"));
+    }
+
     @Test
     public void testMaxBytesBug652() throws Exception {
         DomainConfiguration defaultConfig = DomainConfigurationTest.createDefaultDomainConfiguration();
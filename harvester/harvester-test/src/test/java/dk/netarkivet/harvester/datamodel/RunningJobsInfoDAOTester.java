@@ -22,6 +22,19 @@
  */
 package dk.netarkivet.harvester.datamodel;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -29,8 +42,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.DBUtils;
+import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.SlowTest;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlStatus;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportDelta;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
+import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.harvesting.monitor.StartedJobInfo;
+import dk.netarkivet.testutils.ReflectUtils;
 
 @SuppressWarnings({"unused"})
 public class RunningJobsInfoDAOTester extends DataModelTestCase {
@@ -60,4 +82,193 @@ public class RunningJobsInfoDAOTester extends DataModelTestCase {
         dao.removeInfoForJob(42L);
         // jobDAO.storeFrontierReport(filterId, report);
     }
+
+    /**
+     * Test that progress records are buffered until they are read, and only the latest record of a job is written to
+     * the monitor table.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testStoreIsBuffered() {
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL, "3600");
+        RunningJobsInfoDBDAO dao = new RunningJobsInfoDBDAO();
+        dao.store(createInfo(42L, 1, new Date()));
+        dao.store(createInfo(42L, 2, new Date()));
+        assertEquals("Should not have written the buffered records", 0, countMonitorRows(42L));
+
+        StartedJobInfo info = dao.getMostRecentByJobId(42L);
+        assertNotNull("Should have written the buffered records before reading", info);
+        assertEquals("Should have written the latest record", 2, info.getDownloadedFilesCount());
+        assertEquals("Should have one monitor row for the job", 1, countMonitorRows(42L));
+
+        dao.store(createInfo(42L, 3, new Date()));
+        assertEquals("Should have updated the monitor row", 3,
+                dao.getMostRecentByJobId(42L).getDownloadedFilesCount());
+        assertEquals("Should still have one monitor row for the job", 1, countMonitorRows(42L));
+        dao.close();
+    }
+
+    /**
+     * Test that closing writes the buffered records, and that records stored afterwards are written at once.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testCloseWritesBufferedRecords() {
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL, "3600");
+        RunningJobsInfoDBDAO dao = new RunningJobsInfoDBDAO();
+        dao.store(createInfo(43L, 1, new Date()));
+        dao.close();
+        assertEquals("Should have written the buffered record when closing", 1, countMonitorRows(43L));
+
+        dao.store(createInfo(44L, 1, new Date()));
+        assertEquals("Should write records at once after closing", 1, countMonitorRows(44L));
+    }
+
+    /**
+     * Test that records which could not be written are buffered again, and dropped when the job is removed.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testFailedWriteIsBufferedAgain() throws Exception {
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL, "3600");
+        RunningJobsInfoDBDAO dao = new RunningJobsInfoDBDAO();
+        // The harvest name is longer than the column allows
+        StringBuilder name = new StringBuilder();
+        while (name.length() <= 300) {
+            name.append("harvest");
+        }
+        StartedJobInfo info = new StartedJobInfo(name.toString(), 45L);
+        info.setStatus(CrawlStatus.CRAWLER_ACTIVE);
+        dao.store(info);
+        try {
+            dao.getMostRecentByJobId(45L);
+            fail("Should fail writing the buffered record");
+        } catch (IOFailure e) {
+            // expected
+        }
+        assertEquals("Should have buffered the progress record again", 1, getPending(dao, "pendingProgress").size());
+        assertEquals("Should have buffered the history record again", 1, getPending(dao, "pendingHistory").size());
+
+        dao.removeInfoForJob(45L);
+        assertEquals("Should have dropped the progress record", 0, getPending(dao, "pendingProgress").size());
+        assertEquals("Should have dropped the history record", 0, getPending(dao, "pendingHistory").size());
+        dao.close();
+    }
+
+    /**
+     * Test that history records older than the maximum age are deleted.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testHistoryIsPruned() {
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL, "3600");
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_HISTORY_MAX_AGE, "1");
+        RunningJobsInfoDBDAO dao = new RunningJobsInfoDBDAO();
+        dao.store(createInfo(46L, 1, new Date(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L)));
+        dao.store(createInfo(47L, 1, new Date()));
+        assertEquals("Should have deleted the history record older than a day", 0,
+                dao.getFullJobHistory(46L).length);
+        assertEquals("Should have kept the recent history record", 1, dao.getFullJobHistory(47L).length);
+        dao.close();
+    }
+
+    /**
+     * Test that a row is only inserted after an update returning {@link Statement#SUCCESS_NO_INFO} if it does not
+     * exist.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testMustInsertChecksRowWithoutUpdateCount() throws Exception {
+        Settings.set(HarvesterSettings.HARVEST_MONITOR_FLUSH_INTERVAL, "0");
+        RunningJobsInfoDBDAO dao = new RunningJobsInfoDBDAO();
+        dao.store(createInfo(48L, 1, new Date()));
+        Method mustInsert = ReflectUtils.getPrivateMethod(RunningJobsInfoDBDAO.class, "mustInsert", Connection.class,
+                int.class, String.class, Object[].class);
+        String sql = "SELECT jobId FROM runningJobsMonitor WHERE jobId=? AND harvestName=?";
+        Connection c = HarvestDBConnection.get();
+        try {
+            assertFalse("Should not insert an existing row", (Boolean) mustInsert.invoke(null, c,
+                    Statement.SUCCESS_NO_INFO, sql, new Object[] {48L, "harvest"}));
+            assertTrue("Should insert a missing row", (Boolean) mustInsert.invoke(null, c,
+                    Statement.SUCCESS_NO_INFO, sql, new Object[] {49L, "harvest"}));
+            assertTrue("Should insert a row which was not updated", (Boolean) mustInsert.invoke(null, c, 0, sql,
+                    new Object[] {48L, "harvest"}));
+            assertFalse("Should not insert an updated row", (Boolean) mustInsert.invoke(null, c, 1, sql,
+                    new Object[] {49L, "harvest"}));
+        } finally {
+            HarvestDBConnection.release(c);
+        }
+        dao.close();
+    }
+
+    /**
+     * Test that the changed lines of a frontier report are updated or inserted, and the removed lines deleted.
+     */
+    @Category(SlowTest.class)
+    @Test
+    public void testStoreFrontierReportDelta() {
+        RunningJobsInfoDAO dao = RunningJobsInfoDAO.getInstance();
+        InMemoryFrontierReport empty = createReport();
+        InMemoryFrontierReport first = createReport(createLine("a.dk", 1), createLine("b.dk", 1));
+        assertEquals("Should have inserted two lines", 2,
+                dao.storeFrontierReportDelta("filter", new FrontierReportDelta(empty, first), 50L));
+
+        InMemoryFrontierReport second = createReport(createLine("a.dk", 2), createLine("b.dk", 1),
+                createLine("c.dk", 1));
+        second.setTimestamp(first.getTimestamp() + 1);
+        dao.storeFrontierReportDelta("filter", new FrontierReportDelta(first, second), 50L);
+        InMemoryFrontierReport stored = dao.getFrontierReport(50L, "filter");
+        assertEquals("Should have stored three lines", 3, stored.getSize());
+        assertEquals("Should have updated the changed line", 2, stored.getLineForDomain("a.dk").getCurrentSize());
+        assertNotNull("Should have inserted the new line", stored.getLineForDomain("c.dk"));
+
+        InMemoryFrontierReport third = createReport(createLine("a.dk", 2), createLine("c.dk", 1));
+        assertEquals("Should have deleted the removed line", 1,
+                dao.storeFrontierReportDelta("filter", new FrontierReportDelta(second, third), 50L));
+        assertEquals("Should have two lines left", 2, dao.getFrontierReport(50L, "filter").getSize());
+        dao.deleteFrontierReports(50L);
+    }
+
+    private static InMemoryFrontierReport createReport(FrontierReportLine... lines) {
+        InMemoryFrontierReport report = new InMemoryFrontierReport("job");
+        report.setTimestamp(System.currentTimeMillis());
+        for (FrontierReportLine line : lines) {
+            report.addLine(line);
+        }
+        return report;
+    }
+
+    private static FrontierReportLine createLine(String domainName, long currentSize) {
+        FrontierReportLine line = new FrontierReportLine();
+        line.setDomainName(domainName);
+        line.setCurrentSize(currentSize);
+        line.setLastDequeueTime("");
+        line.setWakeTime("");
+        line.setLastPeekUri("");
+        line.setLastQueuedUri("");
+        return line;
+    }
+
+    private static StartedJobInfo createInfo(long jobId, long downloadedFilesCount, Date timestamp) {
+        StartedJobInfo info = new StartedJobInfo("harvest", jobId);
+        info.setDownloadedFilesCount(downloadedFilesCount);
+        info.setStatus(CrawlStatus.CRAWLER_ACTIVE);
+        info.setTimestamp(timestamp);
+        return info;
+    }
+
+    private static int countMonitorRows(long jobId) {
+        Connection c = HarvestDBConnection.get();
+        try {
+            return DBUtils.selectIntValue(c, "SELECT COUNT(*) FROM runningJobsMonitor WHERE jobId=?", jobId);
+        } finally {
+            HarvestDBConnection.release(c);
+        }
+    }
+
+    private static Collection<?> getPending(RunningJobsInfoDBDAO dao, String fieldName) throws Exception {
+        Field field = ReflectUtils.getPrivateField(RunningJobsInfoDBDAO.class, fieldName);
+        Object pending = field.get(dao);
+        return pending instanceof Map ? ((Map<?, ?>) pending).values() : (Collection<?>) pending;
+    }
 }
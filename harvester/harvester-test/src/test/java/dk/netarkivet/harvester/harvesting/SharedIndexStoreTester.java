@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.FileUtils;
+
+/**
+ * Unittests for the class SharedIndexStore.
+ */
+public class SharedIndexStoreTester {
+
+    private static final File STORE_DIR = new File(TestInfo.WORKING_DIR, "sharedindex");
+    private static final File SOURCE_DIR = new File(TestInfo.WORKING_DIR, "cache");
+    private static final File CRAWL_DIR_1 = new File(TestInfo.WORKING_DIR, "1_1000");
+    private static final File CRAWL_DIR_2 = new File(TestInfo.WORKING_DIR, "2_2000");
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+        FileUtils.createDir(CRAWL_DIR_1);
+        FileUtils.createDir(CRAWL_DIR_2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+    }
+
+    /**
+     * Verify that an index is loaded once, linked into each job, and reference counted.
+     */
+    @Test
+    public void testAcquireLoadsOnceAndLinks() throws Exception {
+        SharedIndexStore store = new SharedIndexStore(STORE_DIR, 1000000L);
+        CountingLoader loader = new CountingLoader("index1", 100);
+        String key = SharedIndexStore.makeKey("dedupcrawllogindex", new HashSet<Long>(Arrays.asList(1L, 2L)));
+        assertEquals("The key should not depend on the order of the jobs", key,
+                SharedIndexStore.makeKey("dedupcrawllogindex", new HashSet<Long>(Arrays.asList(2L, 1L))));
+
+        File linkDir1 = store.acquire(key, new File(CRAWL_DIR_1, "index"), loader);
+        File linkDir2 = store.acquire(key, new File(CRAWL_DIR_2, "index"), loader);
+        assertEquals("The index should only be loaded once", 1, loader.loads);
+        assertEquals("Both jobs should hold a reference", 2, store.getReferenceCount(key));
+        File stored = new File(store.getIndexDir(key), "_0.cfs");
+        assertTrue("The jobs should read the stored files",
+                Files.isSameFile(stored.toPath(), new File(linkDir1, "_0.cfs").toPath())
+                        || FileUtils.readFile(stored).equals(FileUtils.readFile(new File(linkDir1, "_0.cfs"))));
+        assertTrue("The second job should have the files too", new File(linkDir2, "_0.cfs").isFile());
+
+        store.release(key, linkDir1);
+        assertFalse("The released link dir should be removed", linkDir1.exists());
+        assertEquals("One reference should be left", 1, store.getReferenceCount(key));
+
+        // A job that died without releasing the index does not keep it alive after its crawl dir is gone.
+        FileUtils.removeRecursively(CRAWL_DIR_2);
+        assertEquals("The reference of a removed crawl dir should not count", 0, store.getReferenceCount(key));
+    }
+
+    /**
+     * Verify that the least recently used indices without references are evicted when the store grows too large.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsedUnreferenced() throws Exception {
+        SharedIndexStore store = new SharedIndexStore(STORE_DIR, 250L);
+        File linkDir1 = store.acquire("index1", new File(CRAWL_DIR_1, "index"), new CountingLoader("index1", 100));
+        store.release("index1", linkDir1);
+        store.getIndexDir("index1").setLastModified(System.currentTimeMillis() - 60000L);
+        store.acquire("index2", new File(CRAWL_DIR_2, "index"), new CountingLoader("index2", 100));
+        assertTrue("Both indices fit within the budget", store.getIndexDir("index1").isDirectory());
+
+        File linkDir3 = store.acquire("index3", new File(CRAWL_DIR_1, "index3"), new CountingLoader("index3", 100));
+        assertFalse("The least recently used index should be evicted", store.getIndexDir("index1").exists());
+        assertTrue("An index in use should not be evicted", store.getIndexDir("index2").isDirectory());
+        assertTrue("The new index should be stored", store.getIndexDir("index3").isDirectory());
+        assertTrue("The job should still have its index", new File(linkDir3, "_0.cfs").isFile());
+    }
+
+    /** Makes an index directory with two files, and counts the number of times it is asked to. */
+    private static class CountingLoader implements SharedIndexStore.IndexLoader {
+        private final String name;
+        private final int size;
+        int loads = 0;
+
+        CountingLoader(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public File load() {
+            loads++;
+            File dir = new File(SOURCE_DIR, name);
+            FileUtils.createDir(dir);
+            FileUtils.writeBinaryFile(new File(dir, "_0.cfs"), new byte[size / 2]);
+            FileUtils.writeBinaryFile(new File(dir, "segments_1"), new byte[size / 2]);
+            return dir;
+        }
+    }
+
+}
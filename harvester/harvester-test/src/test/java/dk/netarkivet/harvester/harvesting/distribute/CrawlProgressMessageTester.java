@@ -23,9 +23,11 @@
 package dk.netarkivet.harvester.harvesting.distribute;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import dk.netarkivet.common.distribute.CompactMessageCodec;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlStatus;
 
 /**
@@ -43,4 +45,39 @@ public class CrawlProgressMessageTester {
         assertEquals(CrawlStatus.PRE_CRAWL, msg.getStatus());
         assertEquals("", msg.getProgressStatisticsLegend());
     }
+
+    @Test
+    public void testCompactEncoding() {
+        CrawlProgressMessage msg = new CrawlProgressMessage(2L, 42L, "legend");
+        msg.setHostUrl("http://harvester:8192");
+        msg.setStatus(CrawlStatus.CRAWLER_ACTIVE);
+        msg.getHeritrixStatus().setAlertCount(3);
+        msg.getHeritrixStatus().setCrawling(true);
+        msg.getHeritrixStatus().setCurrentJob("42_1");
+        msg.getJobStatus().setDiscoveredFilesCount(1000L);
+        msg.getJobStatus().setDownloadedFilesCount(400L);
+        msg.getJobStatus().setElapsedSeconds(60L);
+        msg.getJobStatus().setProcessedDocsPerSec(6.5);
+        msg.getJobStatus().setActiveToeCount(25);
+        msg.getJobStatus().setProgressStatistics("400 1000");
+        CompactMessageCodec codec = new CompactMessageCodec();
+        assertTrue("Progress messages should be encoded compactly", codec.canEncode(msg));
+
+        CrawlProgressMessage decoded = (CrawlProgressMessage) codec.decode(codec.encode(msg));
+        assertEquals(2L, decoded.getHarvestID());
+        assertEquals(42L, decoded.getJobID());
+        assertEquals("legend", decoded.getProgressStatisticsLegend());
+        assertEquals("http://harvester:8192", decoded.getHostUrl());
+        assertEquals(CrawlStatus.CRAWLER_ACTIVE, decoded.getStatus());
+        assertEquals(3, decoded.getHeritrixStatus().getAlertCount());
+        assertTrue(decoded.getHeritrixStatus().isCrawling());
+        assertEquals("42_1", decoded.getHeritrixStatus().getCurrentJob());
+        assertEquals(600L, decoded.getJobStatus().getQueuedUriCount());
+        assertEquals(60L, decoded.getJobStatus().getElapsedSeconds());
+        assertEquals(6.5, decoded.getJobStatus().getProcessedDocsPerSec(), 0);
+        assertEquals(25, decoded.getJobStatus().getActiveToeCount());
+        assertEquals("400 1000", decoded.getJobStatus().getProgressStatistics());
+        assertEquals(null, decoded.getJobStatus().getStatus());
+        assertEquals(msg.getTo(), decoded.getTo());
+    }
 }
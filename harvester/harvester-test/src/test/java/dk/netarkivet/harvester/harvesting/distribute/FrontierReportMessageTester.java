@@ -0,0 +1,86 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.distribute.CompactMessageCodec;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportLine;
+import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
+
+/**
+ * Unit tests for the class {@link FrontierReportMessage}.
+ */
+public class FrontierReportMessageTester {
+
+    @Test
+    public void testCompactEncoding() {
+        FrontierReportFilter filter = mock(FrontierReportFilter.class);
+        when(filter.getFilterId()).thenReturn("TopTotalEnqueuesFilter");
+        InMemoryFrontierReport report = new InMemoryFrontierReport("42_1");
+        report.addLine(newLine("netarkivet.dk", 100L));
+        report.addLine(newLine("kb.dk", 200L));
+        FrontierReportMessage msg = new FrontierReportMessage(filter, report, 42L);
+        CompactMessageCodec codec = new CompactMessageCodec();
+        assertTrue("Frontier reports should be encoded compactly", codec.canEncode(msg));
+
+        FrontierReportMessage decoded = (FrontierReportMessage) codec.decode(codec.encode(msg));
+        assertEquals("TopTotalEnqueuesFilter", decoded.getFilterId());
+        assertEquals(Long.valueOf(42L), decoded.getJobID());
+        assertEquals("42_1", decoded.getReport().getJobName());
+        assertEquals(report.getTimestamp(), decoded.getReport().getTimestamp());
+        assertEquals("Should keep all lines", 2, decoded.getReport().getSize());
+        FrontierReportLine line = decoded.getReport().getLineForDomain("kb.dk");
+        assertEquals(200L, line.getTotalEnqueues());
+        assertEquals(7L, line.getPrecedence());
+        assertEquals(1.5, line.getAverageCost(), 0);
+        assertEquals("http://kb.dk/", line.getLastPeekUri());
+        assertNull(line.getWakeTime());
+        assertEquals("Should keep the order of the lines", report.getLines()[0].getDomainName(),
+                decoded.getReport().getLines()[0].getDomainName());
+
+        FrontierReportMessage withoutJob = (FrontierReportMessage) codec.decode(codec.encode(new FrontierReportMessage(
+                filter, new InMemoryFrontierReport("43_1"), null)));
+        assertNull("Should keep a missing job ID", withoutJob.getJobID());
+        assertEquals(0, withoutJob.getReport().getSize());
+    }
+
+    private static FrontierReportLine newLine(String domainName, long totalEnqueues) {
+        FrontierReportLine line = new FrontierReportLine();
+        line.setDomainName(domainName);
+        line.setTotalEnqueues(totalEnqueues);
+        line.setCurrentSize(totalEnqueues / 2);
+        line.setPrecedence(7L);
+        line.setAverageCost(1.5);
+        line.setLastPeekUri("http://" + domainName + "/");
+        return line;
+    }
+
+}
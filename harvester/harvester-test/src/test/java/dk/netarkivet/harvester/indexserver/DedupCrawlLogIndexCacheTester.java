@@ -57,8 +57,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import dk.netarkivet.common.utils.AllDocsCollector;
+import dk.netarkivet.common.utils.DigestBloomFilter;
 import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.StringUtils;
+import dk.netarkivet.common.utils.ZipUtils;
 import is.hi.bok.deduplicator.DigestIndexer;
 
 /**
@@ -158,6 +160,54 @@ public class DedupCrawlLogIndexCacheTester extends CacheTestCase {
                 origins.isEmpty());
     }
 
+    @Test
+    public void testCombineStoresSegmentsOfJobs() throws Exception {
+        Map<String, String> origins = new HashMap<String, String>(8);
+        // "job" #4
+        origins.put("http://www.kb.dk/bevarbogen/images/menu_03.gif",
+                "54-8-20050620183552-00016-kb-prod-har-001.kb.dk.arc,92248220,20050506114818000");
+        origins.put("http://www.kb.dk/bevarbogen/script.js", "check-arc,42");
+        // "job" #1
+        origins.put("http://www.kb.dk/clear.gif", "54-8-20050620183552-00016-kb-prod-har-001.kb.dk.arc,55983420,20050506114732000");
+
+        Map<Long, File> files = new HashMap<Long, File>();
+        files.put(1L, TestInfo.CRAWL_LOG_1);
+        files.put(4L, TestInfo.CRAWL_LOG_4);
+
+        DedupCrawlLogIndexCache cache = new DedupCrawlLogIndexCache();
+        JobIndexSegmentCache segmentCache = cache.getSegmentCache();
+        cache.combine(files);
+
+        List<File> segmentDirs = new ArrayList<File>();
+        for (Long jobId : files.keySet()) {
+            File segmentDir = segmentCache.getCacheFile(jobId);
+            assertTrue("Should have stored the segment of job " + jobId, segmentDir.isDirectory());
+            File unzipped = new File(TestInfo.WORKING_DIR, "segment-" + jobId);
+            ZipUtils.gunzipFiles(segmentDir, unzipped);
+            segmentDirs.add(unzipped);
+        }
+        long segmentModified = segmentCache.getCacheFile(1L).lastModified();
+
+        // Combining again reuses the stored segments
+        FileUtils.removeRecursively(cache.getCacheFile(files.keySet()));
+        cache.combine(files);
+        assertEquals("Should have reused the stored segment", segmentModified,
+                segmentCache.getCacheFile(1L).lastModified());
+
+        File indexDir = new File(TestInfo.WORKING_DIR, "combined");
+        CrawlLogIndexCache.combineSegments(segmentDirs, indexDir);
+        assertTrue("Should have written the digest filter of the combined index",
+                new File(indexDir, DigestBloomFilter.FILENAME).isFile());
+        IndexReader reader = DirectoryReader.open(new MMapDirectory(indexDir));
+        try {
+            verifySearchResult(origins, new IndexSearcher(reader));
+        } finally {
+            reader.close();
+        }
+        assertTrue("Should have found the origins of both jobs in the combined segments, but have still "
+                + origins.size() + " left: " + origins, origins.isEmpty());
+    }
+
     private void verifySearchResult(Map<String, String> origins, IndexSearcher index) throws IOException {
         Set<String> urls = new HashSet<String>(origins.keySet());
         List<String> errors = new ArrayList<String>();
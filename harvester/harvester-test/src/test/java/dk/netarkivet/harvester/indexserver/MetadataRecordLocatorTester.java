@@ -0,0 +1,122 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.arcrepository.TestArcRepositoryClient;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.testutils.preconfigured.MockupJMS;
+
+/**
+ * Unittests for the class MetadataRecordLocator.
+ */
+public class MetadataRecordLocatorTester extends CacheTestCase {
+    MockupJMS mjms = new MockupJMS();
+    TestArcRepositoryClient tarc;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mjms.setUp();
+        tarc = new TestArcRepositoryClient(new File(TestInfo.WORKING_DIR, "arcfiles"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tarc.close();
+        mjms.tearDown();
+        super.tearDown();
+    }
+
+    @Test
+    public void testGetMetadataFilePattern() {
+        Pattern pattern = Pattern.compile(MetadataRecordLocator.getMetadataFilePattern(2L));
+        assertTrue("Should match a metadata file of the job", pattern.matcher("2-metadata-1.warc").matches());
+        assertTrue("Should match a prefixed metadata file of the job",
+                pattern.matcher("netarkivet-2-7-metadata-1.warc.gz").matches());
+        assertFalse("Should not match a metadata file of job 12", pattern.matcher("12-metadata-1.warc").matches());
+        assertFalse("Should not match a metadata file of job 21", pattern.matcher("21-metadata-1.arc").matches());
+        assertFalse("Should not match a prefixed metadata file of job 7 in harvest 2",
+                pattern.matcher("netarkivet-7-2-metadata-1.warc").matches());
+        assertFalse("Should not match a prefixed metadata file of job 12",
+                pattern.matcher("netarkivet-12-7-metadata-1.warc").matches());
+        assertFalse("Should not match other files of the job", pattern.matcher("2-1-20161205100306320-00000.warc")
+                .matches());
+    }
+
+    @Test
+    public void testGetRecordsIsLocatedOnce() {
+        MetadataRecordLocator locator = new MetadataRecordLocator(tarc);
+        assertNotNull("Should locate the records of job 4", locator.getRecords(4L));
+        assertEquals("Should have located the records with one batch job", 1, tarc.batchCounter);
+        assertEquals("Should have located the records of the metadata file of job 4 only",
+                "4-metadata-1.arc", locator.getRecords(4L).get(0).getArcfile());
+        assertEquals("Should not run another batch job for the same job", 1, tarc.batchCounter);
+
+        assertNull("Should get null for a job without metadata files", locator.getRecords(5L));
+        assertFalse("Should not remember that a job has no metadata files", locator.getCacheFile(5L).exists());
+    }
+
+    @Test
+    public void testOutdatedLocationsAreLocatedAgain() {
+        MetadataRecordLocator locator = new MetadataRecordLocator(tarc);
+        locator.getRecords(4L);
+        assertEquals("Should have located the records with one batch job", 1, tarc.batchCounter);
+
+        assertTrue("Should be able to age the record locations",
+                locator.getCacheFile(4L).setLastModified(System.currentTimeMillis() - 2 * 86400000L));
+        assertNotNull("Should locate the records of job 4 again", locator.getRecords(4L));
+        assertEquals("Should locate outdated record locations again", 2, tarc.batchCounter);
+        locator.getRecords(4L);
+        assertEquals("Should use the record locations located again", 2, tarc.batchCounter);
+
+        Settings.set(HarvesterSettings.INDEXSERVER_METADATA_RECORD_LOCATIONS_MAX_AGE, "-1");
+        locator.getRecords(4L);
+        assertEquals("Should locate the records every time with a negative max age", 3, tarc.batchCounter);
+    }
+
+    @Test
+    public void testInvalidate() {
+        MetadataRecordLocator locator = new MetadataRecordLocator(tarc);
+        locator.getRecords(4L);
+        locator.invalidate(4L);
+        assertFalse("Should have forgotten the record locations", locator.getCacheFile(4L).exists());
+        assertNotNull("Should locate the records of job 4 again", locator.getRecords(4L));
+        assertEquals("Should locate invalidated record locations again", 2, tarc.batchCounter);
+        locator.invalidate(5L);
+    }
+
+}
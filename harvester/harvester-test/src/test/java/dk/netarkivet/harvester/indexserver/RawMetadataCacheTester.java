@@ -37,7 +37,9 @@ import org.junit.Test;
 
 import dk.netarkivet.common.arcrepository.TestArcRepositoryClient;
 import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.archive.ArchiveBatchJob;
+import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.harvesting.metadata.MetadataFile;
 import dk.netarkivet.testutils.FileAsserts;
 import dk.netarkivet.testutils.ReflectUtils;
@@ -113,6 +115,32 @@ public class RawMetadataCacheTester extends CacheTestCase {
         }
     }
 
+    @Test
+    public void testCacheDataFromLocatedRecords() throws Exception {
+        Settings.set(HarvesterSettings.INDEXSERVER_USE_METADATA_RECORD_LOCATOR, "true");
+        TestArcRepositoryClient tarc = new TestArcRepositoryClient(new File(TestInfo.WORKING_DIR, "arcfiles"));
+        Field arcrepfield = ReflectUtils.getPrivateField(RawMetadataCache.class, "arcrep");
+        RawMetadataCache rmc = new RawMetadataCache("test9", Pattern.compile(".*index/cdx.*"), null);
+        arcrepfield.set(rmc, tarc);
+        Long id1 = rmc.cache(4L);
+        assertEquals("Should have exactly the one id asked for", (Long) 4L, id1);
+        assertEquals("Should have located the records with one batch job", 1, tarc.batchCounter);
+        FileAsserts.assertFileContains("Should have two entries in the result",
+                "file 4 block 1\nmetadata file 4 block 2", rmc.getCacheFile(id1));
+
+        // Another cache for the same job should use the located records.
+        rmc = new RawMetadataCache("test10", Pattern.compile(".*/cdx\\?.*"), Pattern.compile(".*/x-cdx"));
+        arcrepfield.set(rmc, tarc);
+        id1 = rmc.cache(4L);
+        assertEquals("Should have exactly the one id asked for", (Long) 4L, id1);
+        assertEquals("Should not have run another batch job", 1, tarc.batchCounter);
+        FileAsserts.assertFileContains("Should have one entry in the result", "file 4 block 1",
+                rmc.getCacheFile(id1));
+
+        // A job without metadata files should fall back to the batch job.
+        assertNull("Should get null for non-existing job", rmc.cache(5L));
+    }
+
     @Test
     public void testCacheData() throws Exception {
         TestArcRepositoryClient tarc = new TestArcRepositoryClient(new File(TestInfo.WORKING_DIR, "arcfiles"));
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester - test
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.indexserver.distribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.distribute.indexserver.RequestType;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.indexserver.FileBasedCache;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Unittests for the class IndexBuildScheduler.
+ */
+public class IndexBuildSchedulerTester {
+    private static final Set<Long> JOB_SET = new HashSet<Long>(Arrays.asList(new Long[] {2L, 4L, 8L, 16L, 32L}));
+    private static final Set<Long> JOB_SET2 = new HashSet<Long>(Arrays.asList(new Long[] {1L, 3L, 7L, 15L, 31L}));
+    private static final Set<Long> JOB_SET3 = new HashSet<Long>(Arrays.asList(new Long[] {5L, 6L}));
+
+    ReloadSettings rs = new ReloadSettings();
+    IndexBuildScheduler scheduler;
+    BlockingCache cache;
+
+    @Before
+    public void setUp() {
+        rs.setUp();
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+        Settings.set(CommonSettings.CACHE_DIR, new File(TestInfo.WORKING_DIR, "cache").getAbsolutePath());
+        cache = new BlockingCache("blocking");
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        FileUtils.removeRecursively(TestInfo.WORKING_DIR);
+        rs.tearDown();
+    }
+
+    /**
+     * Verify that requests for an index over the same set of jobs as a build in progress join that build.
+     */
+    @Test
+    public void testIdenticalRequestsShareBuild() throws Exception {
+        scheduler = new IndexBuildScheduler(2, 70);
+        Future<Set<Long>> first = scheduler.schedule(RequestType.CDX, cache, JOB_SET, true);
+        Future<Set<Long>> second = scheduler.schedule(RequestType.CDX, cache, new HashSet<Long>(JOB_SET), false);
+        assertSame("Identical requests should share the build", first, second);
+        assertEquals("Only one build should be in progress", 1, scheduler.getBuildsInProgress());
+
+        cache.release.countDown();
+        assertEquals("Both requesters should get the result", JOB_SET, second.get(10, TimeUnit.SECONDS));
+        assertEquals("The index should only be built once", Collections.singletonList(JOB_SET), cache.built);
+
+        BlockingCache otherCache = new BlockingCache("otherblocking");
+        otherCache.release.countDown();
+        Future<Set<Long>> other = scheduler.schedule(RequestType.DEDUP_CRAWL_LOG, otherCache, JOB_SET, true);
+        assertEquals("A different type of index should be built separately", JOB_SET,
+                other.get(10, TimeUnit.SECONDS));
+        assertEquals("The other index should be built", Collections.singletonList(JOB_SET), otherCache.built);
+    }
+
+    /**
+     * Verify that queued builds for waiting harvesters are run before builds that are not waited for.
+     */
+    @Test
+    public void testUrgentBuildsRunFirst() throws Exception {
+        scheduler = new IndexBuildScheduler(1, 70);
+        Future<Set<Long>> running = scheduler.schedule(RequestType.CDX, cache, JOB_SET, false);
+        cache.started.await(10, TimeUnit.SECONDS);
+        Future<Set<Long>> queued = scheduler.schedule(RequestType.CDX, cache, JOB_SET2, false);
+        scheduler.schedule(RequestType.CDX, cache, JOB_SET3, false);
+        // A harvester now waits for the last scheduled index
+        Future<Set<Long>> urgent = scheduler.schedule(RequestType.CDX, cache, JOB_SET3, true);
+
+        cache.release.countDown();
+        running.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+        urgent.get(10, TimeUnit.SECONDS);
+        assertEquals("The urgent build should run before the earlier queued build",
+                Arrays.asList(JOB_SET, JOB_SET3, JOB_SET2), cache.built);
+        assertEquals("No builds should be left in progress", 0, scheduler.getBuildsInProgress());
+    }
+
+    /** A cache recording the builds made, which blocks building until released. */
+    private static class BlockingCache extends FileBasedCache<Set<Long>> {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Set<Long>> built = Collections.synchronizedList(new ArrayList<Set<Long>>());
+
+        BlockingCache(String cacheName) {
+            super(cacheName);
+        }
+
+        @Override
+        public File getCacheFile(Set<Long> id) {
+            List<Long> sorted = new ArrayList<Long>(id);
+            Collections.sort(sorted);
+            return new File(getCacheDir(), sorted.toString().replaceAll("[^0-9]+", "-") + "cache");
+        }
+
+        @Override
+        protected Set<Long> cacheData(Set<Long> id) {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            built.add(id);
+            FileUtils.writeBinaryFile(getCacheFile(id), id.toString().getBytes());
+            return id;
+        }
+    }
+
+}
@@ -32,9 +32,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -169,6 +171,46 @@ public class IndexRequestMessageTester {
         }
     }
 
+    /**
+     * Test setter/getter of the segments.
+     */
+    @Test
+    public void testSetResultSegments() throws Exception {
+        IndexRequestMessage irMsg = new IndexRequestMessage(RequestType.DEDUP_CRAWL_LOG, JOB_SET, null);
+        assertNull("No known segments yet", irMsg.getKnownSegments());
+        irMsg.setKnownSegments(Collections.singleton(1L));
+        assertEquals("Should have the known segments", Collections.singleton(1L), irMsg.getKnownSegments());
+        try {
+            irMsg.setResultSegments(null);
+            fail("Should throw ArgumentNotValid");
+        } catch (ArgumentNotValid e) {
+            assertTrue("Should be the right exception", e.getMessage().contains("resultSegments"));
+        }
+        assertNull("No segments yet", irMsg.getResultSegments());
+        File tempFile = File.createTempFile("temp", "temp", TestInfo.WORKING_DIR);
+        List<RemoteFile> segmentFiles = new ArrayList<RemoteFile>(1);
+        segmentFiles.add(new TestRemoteFile(tempFile, false, false, false));
+        Map<Long, List<RemoteFile>> resultSegments = new HashMap<Long, List<RemoteFile>>();
+        resultSegments.put(2L, segmentFiles);
+        irMsg.setResultSegments(resultSegments);
+        assertEquals("Should have the segment of the unknown job only", Collections.singleton(2L),
+                irMsg.getResultSegments().keySet());
+        assertNull("Should carry no result files", irMsg.getResultFiles());
+        try {
+            irMsg.setResultFiles(segmentFiles);
+            fail("Should be impossible to set results files besides the segments");
+        } catch (IllegalState e) {
+            StringAsserts.assertStringContains("Should mention already set", "already has result segments",
+                    e.getMessage());
+        }
+        try {
+            irMsg.setResultSegments(resultSegments);
+            fail("Should be impossible to set the segments again");
+        } catch (IllegalState e) {
+            StringAsserts.assertStringContains("Should mention already set", "already has result", e.getMessage());
+        }
+    }
+
     @Test
     public void testSetResultFile() throws IOException {
         IndexRequestMessage irMsg = new IndexRequestMessage(RequestType.CDX, JOB_SET, null);
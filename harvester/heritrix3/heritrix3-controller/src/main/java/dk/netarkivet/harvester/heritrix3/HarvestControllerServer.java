@@ -80,17 +80,18 @@ import dk.netarkivet.harvester.harvesting.metadata.MetadataEntry;
  * It is necessary to be able to run the Heritrix harvester on several machines and several processes on each machine.
  * Each instance of Heritrix is started and monitored by a HarvestControllerServer.
  * <p>
- * Initially, all directories under serverdir are scanned for harvestinfo files. If any are found, they are parsed for
- * information, and all remaining files are attempted uploaded to the bitarchive. It will then send back a
- * CrawlStatusMessage with status failed.
+ * Initially, all directories under serverdir are scanned for harvestinfo files. If any are found, they are queued for
+ * post-processing, and all remaining files are attempted uploaded to the bitarchive. It will then send back a
+ * CrawlStatusMessage with status failed, unless the crawl had ended before the HarvestControllerServer stopped.
  * <p>
  * A new thread is started for each actual crawl, in which the JMS listener is removed. Threading is required since JMS
  * will not let the called thread remove the listener that's being handled.
  * <p>
- * After a harvestjob has been terminated, either successfully or unsuccessfully, the serverdir is again scanned for
- * harvestInfo files to attempt upload of files not yet uploaded. Then it begins to listen again after new jobs, if
- * there is enough room available on the machine. If not, it logs a warning about this, which is also sent as a
- * notification.
+ * After a harvestjob has been terminated, either successfully or unsuccessfully, the crawldir is handed over to
+ * post-processing (documentation and upload), which runs in the background. The serverdir is again scanned for
+ * harvestInfo files to attempt upload of files not yet uploaded. Then it begins to listen again after new jobs, as
+ * soon as fewer than 'settings.harvester.harvesting.maxPendingPostProcessing' jobs await post-processing, if there is
+ * enough room available on the machine. If not, it logs a warning about this, which is also sent as a notification.
  */
 public class HarvestControllerServer extends HarvesterMessageHandler implements CleanupIF {
 
@@ -109,6 +110,15 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
     /** Min. space required to start a job. */
     private final long minSpaceRequired;
 
+    /** The number of jobs awaiting post-processing, at which no new jobs are accepted. */
+    private final int maxPendingPostProcessing;
+
+    /**
+     * True from the end of a crawl, until new jobs are accepted again. While true, the status messages check whether
+     * the post-processing of earlier jobs has progressed enough to accept new jobs.
+     */
+    private boolean awaitingPostProcessing = false;
+
     /** The JMSConnection to use. */
     private JMSConnection jmsConnection;
 
@@ -167,6 +177,12 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
             throw new ArgumentNotValid("Wrong setting of minSpaceLeft read from Settings: " + minSpaceRequired);
         }
         log.info("Harvesting requires at least {} bytes free.", minSpaceRequired);
+        maxPendingPostProcessing = Settings.getInt(HarvesterSettings.HARVEST_CONTROLLER_MAX_PENDING_POSTPROCESSING);
+        if (maxPendingPostProcessing <= 0) {
+            log.warn("Wrong setting of maxPendingPostProcessing read from Settings: {}", maxPendingPostProcessing);
+            throw new ArgumentNotValid("Wrong setting of maxPendingPostProcessing read from Settings: "
+                    + maxPendingPostProcessing);
+        }
         
         // If shutdown.txt found in serverdir, just close down the HarvestControllerApplication at once.
         shutdownNowOrContinue();
@@ -185,7 +201,7 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
         status = new CrawlStatus();
         log.info("SEND_READY_DELAY used by HarvestControllerServer is {}", status.getSendReadyDelay());
 
-        // If any unprocessed jobs are left on the server, process them now
+        // If any unprocessed jobs are left on the server, queue them for post-processing now
         postProcessing.processOldJobs();
 
         // Register for listening to harvest channel validity responses
@@ -219,6 +235,10 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
         }
         // Stop the sending of status messages
         status.stopSending();
+        // Let the post-processing in progress end, so its uploads are not interrupted
+        if (postProcessing != null) {
+            postProcessing.cleanup();
+        }
         instance = null;
     }
 
@@ -249,11 +269,13 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
         // Environment and connections are now ready for processing of messages
         jobChannel = HarvesterChannels.getHarvestJobChannelId(channelName, msg.isSnapshot());
 
-        // Only listen for harvester jobs if enough available space
-        beginListeningIfSpaceAvailable();
-
-        // Notify the harvest dispatcher that we are ready
-        startAcceptingJobs();
+        // Only listen for harvester jobs if enough available space, and the post-processing of old jobs allows it.
+        // Then notify the harvest dispatcher that we are ready
+        synchronized (this) {
+            stopAcceptingJobs();
+            awaitingPostProcessing = true;
+        }
+        resumeIfPostProcessingAllows();
         status.startSending();
     }
 
@@ -271,6 +293,46 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
         }
     }
 
+    /**
+     * If the crawl has ended, start accepting jobs again, as soon as fewer than maxPendingPostProcessing jobs await
+     * post-processing. If no space is available on the machine, this waits for all jobs to be post-processed, since
+     * that frees space.
+     */
+    private void resumeIfPostProcessingAllows() {
+        synchronized (this) {
+            if (!awaitingPostProcessing) {
+                return;
+            }
+            int pendingJobs = postProcessing.getPendingJobs();
+            if (!postProcessingAllowsJobs(pendingJobs, maxPendingPostProcessing, serverDir, minSpaceRequired)) {
+                log.debug("Not accepting jobs yet, {} job(s) await post-processing", pendingJobs);
+                return;
+            }
+            awaitingPostProcessing = false;
+        }
+        startAcceptingJobs();
+        beginListeningIfSpaceAvailable();
+    }
+
+    /**
+     * Decide whether the post-processing of earlier jobs allows accepting new jobs. This is the case when fewer than
+     * maxPendingPostProcessing jobs await post-processing, and either no job awaits post-processing or there is
+     * enough space available in the serverdir.
+     *
+     * @param pendingJobs The number of jobs awaiting post-processing.
+     * @param maxPendingPostProcessing The number of jobs awaiting post-processing, at which no new jobs are accepted.
+     * @param serverDir The dir in which the crawls take place.
+     * @param minSpaceRequired The space required in serverDir to accept a job while jobs await post-processing.
+     * @return true, if new jobs may be accepted.
+     */
+    static boolean postProcessingAllowsJobs(int pendingJobs, int maxPendingPostProcessing, File serverDir,
+            long minSpaceRequired) {
+        if (pendingJobs >= maxPendingPostProcessing) {
+            return false;
+        }
+        return pendingJobs == 0 || FileUtils.getBytesFree(serverDir) > minSpaceRequired;
+    }
+
     /**
      * Start listening for new crawl requests again. This actually doesn't re-add a listener, but the listener only gets
      * removed when we're so far committed that we're going to exit at the end. So to start accepting jobs again, we
@@ -303,6 +365,8 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
      * TODO In a later implementation, the harvestControllerServer could
      * be notified over JMX. Now we just look for a "shutdown.txt" file in the HARVEST_CONTROLLER_SERVERDIR 
      * log that we're shutting down, send a notification about this, and then shutdown.
+     * The post-processing in progress is finished before shutting down, while the jobs queued for post-processing are
+     * post-processed after a restart.
      */
     private void shutdownNowOrContinue() {
         File shutdownFile = new File(serverDir, "shutdown.txt");
@@ -325,8 +389,9 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
      * and return</br> 2. Check the job for validity</br> 3. Send a CrawlStatus message that crawl has STARTED</br> In a
      * separate thread:</br> 4. Unregister this HACO as listener</br> 5. Create a new crawldir (based on the JobID and a
      * timestamp)</br> 6. Write a harvestInfoFile (using JobID and crawldir) and metadata</br> 7. Instantiate a new
-     * HeritrixLauncher</br> 8. Start a crawl</br> 9. Store the generated arc-files and metadata in the known
-     * bit-archives </br>10. _Always_ send CrawlStatus DONE or FAILED</br> 11. Move crawldir into oldJobs dir</br>
+     * HeritrixLauncher</br> 8. Start a crawl</br> 9. Hand the crawldir over to post-processing</br> In the
+     * post-processing thread:</br> 10. Store the generated arc-files and metadata in the known bit-archives </br>11.
+     * _Always_ send CrawlStatus DONE or FAILED</br> 12. Move crawldir into oldJobs dir</br>
      *
      * @param msg The crawl job
      * @throws IOFailure On trouble harvesting, uploading or processing harvestInfo
@@ -461,7 +526,8 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
 
         /**
          * The thread body for the harvester thread. Removes the JMS listener, sets up the files for Heritrix, then
-         * passes control to the HarvestController to perform the actual harvest.
+         * passes control to the HarvestController to perform the actual harvest. When the harvest has ended, the
+         * crawldir is handed over to post-processing.
          * <p>
          *
          * @throws PermissionDenied if we cannot create the crawl directory.
@@ -487,7 +553,8 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
                     crawlException = e;
                     throw new IOFailure(msg, e);
                 } finally {
-                	postProcessing.doPostProcessing(files.getCrawlDir(), crawlException);
+                	harvestJob.releaseDeduplicateIndex();
+                	postProcessing.enqueue(files.getCrawlDir(), crawlException);
                 }
             } catch (Throwable t) {
                 String msg = "Fatal error while operating job '" + job + "'";
@@ -498,8 +565,10 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
                 // process serverdir for files not yet uploaded.
                 postProcessing.processOldJobs();
                 instance.shutdownNowOrContinue();
-                startAcceptingJobs();
-                beginListeningIfSpaceAvailable();
+                synchronized (HarvestControllerServer.this) {
+                    awaitingPostProcessing = true;
+                }
+                resumeIfPostProcessingAllows();
             }
         }
     }
@@ -569,6 +638,7 @@ public class HarvestControllerServer extends HarvesterMessageHandler implements
             } catch (Exception e) {
                 log.error("Unable to sleep", e);
             }
+            resumeIfPostProcessingAllows();
             if (!running) {
                 jmsConnection.send(new HarvesterReadyMessage(applicationInstanceId + " on " + physicalServerName,
                         HarvestControllerServer.CHANNEL));
@@ -46,6 +46,7 @@ import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.datamodel.HarvestDefinitionInfo;
 import dk.netarkivet.harvester.datamodel.Job;
 import dk.netarkivet.harvester.harvesting.PersistentJobData;
+import dk.netarkivet.harvester.harvesting.SharedIndexStore;
 import dk.netarkivet.harvester.harvesting.metadata.MetadataEntry;
 
 public class HarvestJob {
@@ -53,6 +54,9 @@ public class HarvestJob {
     /** The instance logger. */
     private static final Logger log = LoggerFactory.getLogger(HarvestJob.class);
 
+    /** The name of the directory holding the deduplication index of a job in its crawl dir. */
+    private static final String DEDUPLICATION_INDEX_NAME = "dedupcrawllogindex";
+
     private HarvestControllerServer hcs;
 
     /** The harvester Job in this thread. */
@@ -71,6 +75,9 @@ public class HarvestJob {
     private Heritrix3Files files;
 
     private String jobName;
+
+    /** The key of the deduplication index in the shared index store, or null if the index is not shared. */
+    private String sharedIndexKey;
    
     /**
      * Initialization of the harvestJob.
@@ -168,7 +175,7 @@ public class HarvestJob {
         // Only retrieve index if deduplication is not disabled in the template.
         if (job.getOrderXMLdoc().IsDeduplicationEnabled()) {
             log.debug("Deduplication enabled. Fetching deduplication index..");
-            files.setIndexDir(fetchDeduplicateIndex(metadataEntries));
+            files.setIndexDir(fetchDeduplicateIndex(crawldir, metadataEntries));
         } else {
             log.debug("Deduplication disabled.");
         }
@@ -202,6 +209,56 @@ public class HarvestJob {
         MetadataEntry.storeMetadataToDisk(metadata, metadataDir);
     }
 
+    /**
+     * Get an index for deduplication. If a shared index store is configured for the host, the index is taken from the
+     * store, and only fetched if not already there. Otherwise it is fetched directly.
+     *
+     * @param crawldir The directory that the crawl should take place in.
+     * @param metadataEntries list of metadataEntries top get jobIDs from.
+     * @return a directory containing the index itself.
+     * @throws IOFailure on errors retrieving the index.
+     * @see SharedIndexStore
+     */
+    private File fetchDeduplicateIndex(File crawldir, List<MetadataEntry> metadataEntries) {
+        // Get list of jobs, which should be used for duplicate reduction
+        // and retrieve a luceneIndex from the IndexServer
+        // based on the crawl.logs from these jobs and their CDX'es.
+        final Set<Long> jobIDsForDuplicateReduction = new HashSet<Long>(
+                parseJobIDsForDuplicateReduction(metadataEntries));
+
+        SharedIndexStore store = SharedIndexStore.getInstance();
+        if (store == null) {
+            return fetchDeduplicateIndex(jobIDsForDuplicateReduction);
+        }
+        String key = SharedIndexStore.makeKey(DEDUPLICATION_INDEX_NAME, jobIDsForDuplicateReduction);
+        File indexDir = store.acquire(key, new File(crawldir, DEDUPLICATION_INDEX_NAME),
+                new SharedIndexStore.IndexLoader() {
+                    @Override
+                    public File load() {
+                        return fetchDeduplicateIndex(jobIDsForDuplicateReduction);
+                    }
+                });
+        sharedIndexKey = key;
+        return indexDir;
+    }
+
+    /**
+     * Release the deduplication index of the job, if it was taken from the shared index store. Should be called when
+     * the crawl has ended. Failure to release the index is logged, but otherwise ignored, as the reference to the
+     * index is dropped anyway once the crawl dir is gone.
+     */
+    public void releaseDeduplicateIndex() {
+        if (sharedIndexKey != null) {
+            try {
+                SharedIndexStore.getInstance().release(sharedIndexKey, files.getIndexDir());
+            } catch (Exception e) {
+                log.warn("Unable to release the shared deduplication index '{}' of job {}", sharedIndexKey,
+                        job.getJobID(), e);
+            }
+            sharedIndexKey = null;
+        }
+    }
+
     /**
      * Get an index for deduplication. This will make a call to the index server, requesting an index for the given IDs.
      * The files will then be cached locally.
@@ -210,17 +267,12 @@ public class HarvestJob {
      * next time we ask for the same index, we will call the index server again. This will be handled well, though,
      * because if the ids are still missing, we will get a reply telling us to use the cached smaller index anyway.
      *
-     * @param metadataEntries list of metadataEntries top get jobIDs from.
+     * @param jobIDsForDuplicateReduction the jobs to get the index for.
      * @return a directory containing the index itself.
      * @throws IOFailure on errors retrieving the index from the client. 
      * FIXME Better forgiving handling of no index available. Add setting for disable deduplication if no index available
      */
-    private File fetchDeduplicateIndex(List<MetadataEntry> metadataEntries) {
-        // Get list of jobs, which should be used for duplicate reduction
-        // and retrieve a luceneIndex from the IndexServer
-        // based on the crawl.logs from these jobs and their CDX'es.
-        Set<Long> jobIDsForDuplicateReduction = new HashSet<Long>(parseJobIDsForDuplicateReduction(metadataEntries));
-
+    private File fetchDeduplicateIndex(Set<Long> jobIDsForDuplicateReduction) {
         // The client for requesting job index.
         JobIndexCache jobIndexCache = IndexClientFactory.getDedupCrawllogInstance();
 
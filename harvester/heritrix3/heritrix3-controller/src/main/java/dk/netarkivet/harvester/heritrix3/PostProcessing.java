@@ -23,8 +23,19 @@
 package dk.netarkivet.harvester.heritrix3;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +46,7 @@ import dk.netarkivet.common.distribute.arcrepository.HarvesterArcRepositoryClien
 import dk.netarkivet.common.exceptions.ArgumentNotValid;
 import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.ExceptionUtils;
+import dk.netarkivet.common.utils.FileUtils;
 import dk.netarkivet.common.utils.NotificationType;
 import dk.netarkivet.common.utils.NotificationsFactory;
 import dk.netarkivet.common.utils.Settings;
@@ -61,6 +73,39 @@ public class PostProcessing {
     /** The ArcRepositoryClient used to communicate with the ArcRepository to store the generated arc-files. */
     private HarvesterArcRepositoryClient arcRepController;
 
+    /** The default delay in milliseconds before the first retry of a failed upload. */
+    private static final long UPLOAD_RETRY_DELAY = 60 * 1000;
+
+    /** The delay in milliseconds before the first retry of a failed upload. */
+    private final long uploadRetryDelay;
+
+    /** The maximum number of files uploaded at the same time. */
+    private final int uploadThreads;
+
+    /** The number of times a failed upload is retried. */
+    private final int uploadRetries;
+
+    /**
+     * The name of the file written to a crawldir when the crawl has ended and the crawldir is handed over to
+     * post-processing. It holds the error that ended the crawl, if any.
+     */
+    static final String CRAWL_ENDED_FILENAME = "crawlEnded.txt";
+
+    /** The crawldirs queued for post-processing or being post-processed. */
+    private final Set<File> pendingCrawlDirs = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+    /** Runs the post-processing of the queued crawldirs, one at a time. */
+    private final ExecutorService queue;
+
+    /** The time in minutes between the log entries telling that cleanup() still awaits the post-processing. */
+    private static final long AWAIT_POST_PROCESSING_LOG_MINUTES = 1;
+
+    /**
+     * Set by cleanup(). The crawldirs queued are then no longer post-processed, but left in serverdir to be
+     * post-processed after a restart.
+     */
+    private volatile boolean stopped = false;
+
     /** The singleton instance of this class. Calling cleanup() on the instance will null this field. */
     private static PostProcessing instance;
 
@@ -68,8 +113,41 @@ public class PostProcessing {
      * Private constructor controlled by getInstance().
      */
     private PostProcessing(JMSConnection jmsConnection) {
-        arcRepController = ArcRepositoryClientFactory.getHarvesterInstance();
+        this(jmsConnection, ArcRepositoryClientFactory.getHarvesterInstance(),
+                Settings.getInt(HarvesterSettings.HARVEST_CONTROLLER_UPLOAD_THREADS),
+                Settings.getInt(HarvesterSettings.HARVEST_CONTROLLER_UPLOAD_RETRIES), UPLOAD_RETRY_DELAY, newQueue());
+    }
+
+    /**
+     * Constructor used by getInstance(), and by tests to control the uploads and the post-processing queue.
+     *
+     * @param jmsConnection The JMSConnection to send the crawl status messages on.
+     * @param arcRepController The client storing the archive files.
+     * @param uploadThreads The maximum number of files uploaded at the same time.
+     * @param uploadRetries The number of times a failed upload is retried.
+     * @param uploadRetryDelay The delay in milliseconds before the first retry of a failed upload.
+     * @param queue The executor post-processing the queued crawldirs, one at a time.
+     */
+    PostProcessing(JMSConnection jmsConnection, HarvesterArcRepositoryClient arcRepController, int uploadThreads,
+            int uploadRetries, long uploadRetryDelay, ExecutorService queue) {
+        this.arcRepController = arcRepController;
         this.jmsConnection = jmsConnection;
+        this.uploadThreads = uploadThreads;
+        this.uploadRetries = uploadRetries;
+        this.uploadRetryDelay = uploadRetryDelay;
+        this.queue = queue;
+    }
+
+    /**
+     * @return A new executor running the post-processing of the queued crawldirs in a single thread.
+     */
+    private static ExecutorService newQueue() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "PostProcessing");
+            }
+        });
     }
 
     /**
@@ -88,14 +166,35 @@ public class PostProcessing {
      * Clean up this singleton, releasing the ArcRepositoryClient and removing the instance. This instance should not be
      * used after this method has been called. After this has been called, new calls to getInstance will return a new
      * instance.
+     * <p>
+     * The post-processing of the crawldir being post-processed is finished first, since interrupting its uploads
+     * would fail the job. The crawldirs queued are left in serverdir, and post-processed after a restart.
      */
     public void cleanup() {
+        stopped = true;
+        queue.shutdown();
+        awaitPostProcessing();
         if (arcRepController != null) {
             arcRepController.close();
         }
         resetInstance();
     }
 
+    /**
+     * Wait for the post-processing of the crawldir being post-processed, if any, to end.
+     */
+    private void awaitPostProcessing() {
+        try {
+            while (!queue.awaitTermination(AWAIT_POST_PROCESSING_LOG_MINUTES, TimeUnit.MINUTES)) {
+                log.info("Awaiting the post-processing in progress before shutting down. {} job(s) awaiting "
+                        + "post-processing", pendingCrawlDirs.size());
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while awaiting the post-processing in progress", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Reset the singleton instance.
      */
@@ -104,8 +203,9 @@ public class PostProcessing {
     }
 
     /**
-     * Looks for old job directories that await uploading of data.
-     * The existence of the harvestInfo.xml in the 
+     * Looks for old job directories that await uploading of data, and queues them for post-processing.
+     * The existence of the harvestInfo.xml in a directory in serverdir shows that it has not been post-processed.
+     * Directories already queued are skipped.
      */
     public void processOldJobs() {
         // Search through all crawldirs and process PersistentJobData
@@ -114,19 +214,114 @@ public class PostProcessing {
         log.info("Looking for unprocessed crawldata in '{}'",crawlDir );
         File[] subdirs = crawlDir.listFiles();
         for (File oldCrawlDir : subdirs) {
-            if (PersistentJobData.existsIn(oldCrawlDir)) {
+            if (PersistentJobData.existsIn(oldCrawlDir) && !pendingCrawlDirs.contains(oldCrawlDir.getAbsoluteFile())) {
+                File crawlEndedFile = new File(oldCrawlDir, CRAWL_ENDED_FILENAME);
+                if (crawlEndedFile.exists()) {
+                    // The crawl ended, but the post-processing was interrupted
+                    log.info("Found crawldata awaiting post-processing in dir '{}'", oldCrawlDir.getAbsolutePath());
+                    queuePostProcessing(oldCrawlDir, readCrawlEndedFile(crawlEndedFile));
+                    continue;
+                }
                 // Assume that crawl had not ended at this point so
                 // job must be marked as failed
                 final String msg = "Found old unprocessed job data in dir '" + oldCrawlDir.getAbsolutePath()
                         + "'. Crawl probably interrupted by " + "shutdown of HarvestController. " + "Processing data.";
                 log.warn(msg);
                 NotificationsFactory.getInstance().notify(msg, NotificationType.WARNING);
-                doPostProcessing(oldCrawlDir, new IOFailure("Crawl probably interrupted by "
+                queuePostProcessing(oldCrawlDir, new IOFailure("Crawl probably interrupted by "
                         + "shutdown of HarvestController"));
             }
         }
     }
 
+    /**
+     * Hand over a crawldir, in which the crawl has ended, to post-processing. The post-processing is done by a
+     * background thread, one crawldir at a time. The hand-over is recorded in the crawldir, so a crawldir still
+     * awaiting post-processing if the HarvestController stops is post-processed as if the crawl had just ended, when
+     * found by {@link #processOldJobs()}.
+     *
+     * @param crawlDir The location of harvest-info to be processed
+     * @param crawlException any exceptions thrown by the crawl which need to be reported back to the scheduler (may be
+     * null for success)
+     */
+    public void enqueue(File crawlDir, Throwable crawlException) {
+        ArgumentNotValid.checkExistsDirectory(crawlDir, "File crawlDir");
+        File crawlEndedFile = new File(crawlDir, CRAWL_ENDED_FILENAME);
+        String crawlError = crawlException == null ? "" : ExceptionUtils.getStackTrace(crawlException);
+        try {
+            FileUtils.writeBinaryFile(crawlEndedFile, crawlError.getBytes("UTF-8"));
+        } catch (Exception e) {
+            // Without the file, a restart reports the crawl as interrupted, so just go on
+            log.warn("Unable to record the end of the crawl in '{}'", crawlEndedFile.getAbsolutePath(), e);
+        }
+        queuePostProcessing(crawlDir, crawlException);
+    }
+
+    /**
+     * @return The number of crawldirs queued for post-processing or being post-processed.
+     */
+    public int getPendingJobs() {
+        return pendingCrawlDirs.size();
+    }
+
+    /**
+     * Queue a crawldir for post-processing, unless it is already queued.
+     *
+     * @param crawlDir The location of harvest-info to be processed
+     * @param crawlException any exceptions thrown by the crawl (may be null for success)
+     */
+    private void queuePostProcessing(final File crawlDir, final Throwable crawlException) {
+        final File key = crawlDir.getAbsoluteFile();
+        if (stopped) {
+            log.info("Post-processing is stopped. The dir '{}' is post-processed after a restart", key);
+            return;
+        }
+        if (!pendingCrawlDirs.add(key)) {
+            log.debug("The dir '{}' is already queued for post-processing", key);
+            return;
+        }
+        log.info("Queued dir '{}' for post-processing. {} job(s) awaiting post-processing", key,
+                pendingCrawlDirs.size());
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (stopped) {
+                        log.info("Post-processing is stopped. The dir '{}' is post-processed after a restart", key);
+                        return;
+                    }
+                    doPostProcessing(crawlDir, crawlException);
+                } catch (Throwable t) {
+                    String msg = "Fatal error while post-processing the dir '" + key + "'";
+                    log.error(msg, t);
+                    NotificationsFactory.getInstance().notify(msg, NotificationType.ERROR, t);
+                } finally {
+                    pendingCrawlDirs.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the error recorded when a crawl ended.
+     *
+     * @param crawlEndedFile The file written by {@link #enqueue(File, Throwable)}.
+     * @return The error that ended the crawl, or null if the crawl ended without error.
+     */
+    private static Throwable readCrawlEndedFile(File crawlEndedFile) {
+        String crawlError;
+        try {
+            crawlError = FileUtils.readFile(crawlEndedFile).trim();
+        } catch (IOException e) {
+            log.warn("Unable to read '{}'", crawlEndedFile.getAbsolutePath(), e);
+            return new IOFailure("Crawl ended, but the outcome of the crawl could not be read");
+        }
+        if (crawlError.isEmpty()) {
+            return null;
+        }
+        return new IOFailure("Crawl ended with error: " + crawlError);
+    }
+
     /**
      * Do postprocessing of data in a crawldir.</br>
      * 1. Retrieve jobID, and crawlDir from the harvestInfoFile using class PersistentJobData</br>
@@ -298,30 +493,99 @@ public class PostProcessing {
     }
 
     /**
-     * Upload given files to the archive repository.
+     * Upload given files to the archive repository. At most {@link HarvesterSettings#HARVEST_CONTROLLER_UPLOAD_THREADS}
+     * files are uploaded at the same time, and a failed upload is retried up to
+     * {@link HarvesterSettings#HARVEST_CONTROLLER_UPLOAD_RETRIES} times. The method returns when all uploads have
+     * ended.
      *
      * @param files List of (ARC/WARC) files to upload.
      * @param errorMessage Accumulator for error messages.
      * @param failedFiles Accumulator for failed files.
      */
-    private void uploadFiles(List<File> files, StringBuilder errorMessage, List<File> failedFiles) {
+    void uploadFiles(List<File> files, StringBuilder errorMessage, List<File> failedFiles) {
         // Upload all archive files
-        if (files != null) {
-        	int count=0;
-            for (File f : files) {
-            	count++;
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(uploadThreads, files.size())));
+        try {
+            List<Future<Long>> uploads = new ArrayList<Future<Long>>();
+            for (int i = 0; i < files.size(); i++) {
+                final File f = files.get(i);
+                final int count = i + 1;
+                uploads.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return uploadFile(f, count);
+                    }
+                }));
+            }
+
+            long uploadedBytes = 0;
+            int uploadedFiles = 0;
+            for (int i = 0; i < files.size(); i++) {
+                File f = files.get(i);
+                Throwable failure;
                 try {
-                    log.info("Uploading file #{} - '{}' to arcrepository.", count, f.getName());
-                    arcRepController.store(f);
-                    log.info("File '{}' uploaded successfully to the arcrepository.", f.getName());
-                } catch (Exception e) {
-                    File oldJobsDir = new File(Settings.get(HarvesterSettings.HARVEST_CONTROLLER_OLDJOBSDIR));
-                    String errorMsg = "Error uploading file '" + f.getAbsolutePath() + "' Will be moved to the oldjobs directory '"
-                            + oldJobsDir.getAbsolutePath() + "'";
-                    errorMessage.append(errorMsg).append("\n").append(e.toString()).append("\n");
-                    log.warn(errorMsg, e);
-                    failedFiles.add(f);
+                    uploadedBytes += uploads.get(i).get();
+                    uploadedFiles++;
+                    continue;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    uploads.get(i).cancel(true);
+                    failure = e;
+                }
+                File oldJobsDir = new File(Settings.get(HarvesterSettings.HARVEST_CONTROLLER_OLDJOBSDIR));
+                String errorMsg = "Error uploading file '" + f.getAbsolutePath() + "' Will be moved to the oldjobs directory '"
+                        + oldJobsDir.getAbsolutePath() + "'";
+                errorMessage.append(errorMsg).append("\n").append(failure.toString()).append("\n");
+                log.warn(errorMsg, failure);
+                failedFiles.add(f);
+            }
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            String summary = "Uploaded " + uploadedFiles + " of " + files.size() + " files (" + uploadedBytes
+                    + " bytes) to the arcrepository in " + elapsed + " ms, " + (uploadedBytes / elapsed) + " KB/s";
+            log.info(summary);
+            if (uploadedFiles < files.size()) {
+                errorMessage.append(summary).append("\n");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Upload a file to the archive repository, retrying with increasing delays if the upload fails.
+     *
+     * @param f The file to upload.
+     * @param count The number of the file among the files being uploaded.
+     * @return The size of the uploaded file.
+     * @throws Exception If the last try to upload the file failed, or the upload was interrupted.
+     */
+    private long uploadFile(File f, int count) throws Exception {
+        long size = f.length();
+        long retryDelay = uploadRetryDelay;
+        for (int attempt = 0;; attempt++) {
+            long startTime = System.currentTimeMillis();
+            try {
+                log.info("Uploading file #{} - '{}' to arcrepository.", count, f.getName());
+                arcRepController.store(f);
+                long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+                log.info("File '{}' uploaded successfully to the arcrepository: {} bytes in {} ms, {} KB/s",
+                        f.getName(), size, elapsed, size / elapsed);
+                return size;
+            } catch (Exception e) {
+                if (attempt >= uploadRetries || !f.isFile()) {
+                    throw e;
                 }
+                log.warn("Upload of file '{}' failed on attempt {}. Trying again in {} seconds.", f.getName(),
+                        attempt + 1, retryDelay / 1000, e);
+                Thread.sleep(retryDelay);
+                retryDelay *= 2;
             }
         }
     }
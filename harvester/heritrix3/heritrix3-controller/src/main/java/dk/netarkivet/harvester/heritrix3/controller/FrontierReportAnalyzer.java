@@ -24,18 +24,21 @@ package dk.netarkivet.harvester.heritrix3.controller;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.netarkivet.common.distribute.JMSConnectionFactory;
 import dk.netarkivet.common.exceptions.HarvestingAbort;
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.Settings;
 import dk.netarkivet.common.utils.StringUtils;
 import dk.netarkivet.common.utils.TimeUtils;
 import dk.netarkivet.harvester.HarvesterSettings;
 import dk.netarkivet.harvester.harvesting.distribute.FrontierReportMessage;
 import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportStreamProcessor;
 import dk.netarkivet.harvester.harvesting.frontier.FullFrontierReport;
 import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.harvesting.monitor.HarvestMonitor;
@@ -77,6 +80,7 @@ public class FrontierReportAnalyzer implements Runnable {
                 FrontierReportFilter filter = (FrontierReportFilter) Class.forName(fClass).newInstance();
                 filter.init(fArgs);
                 filters.add(filter);
+                streamFilters &= FrontierReportStreamProcessor.canProcess(filter);
             } catch (InstantiationException e) {
                 LOG.error("Failed to instantiate filter of class " + fClass, e);
             } catch (IllegalAccessException e) {
@@ -95,6 +99,13 @@ public class FrontierReportAnalyzer implements Runnable {
      */
     private List<FrontierReportFilter> filters = new LinkedList<FrontierReportFilter>();
 
+    /**
+     * True if all the filters can be applied while the report is parsed, so the full report need not be stored.
+     *
+     * @see FrontierReportStreamProcessor#canProcess(FrontierReportFilter)
+     */
+    private boolean streamFilters = true;
+
     @Override
     public void run() {
         long startTime = System.currentTimeMillis();
@@ -102,6 +113,10 @@ public class FrontierReportAnalyzer implements Runnable {
         LOG.info("Will generate full Heritrix frontier report, "
                 + StringUtils.formatDuration(elapsed / TimeUtils.SECOND_IN_MILLIS)
                 + " elapsed since last generation started.");
+        if (streamFilters) {
+            runStreamFilters(startTime);
+            return;
+        }
         FullFrontierReport ffr = null;
         LOG.debug("Trying to retrieve full frontier-reports from Heritrix3");
         try {
@@ -135,4 +150,34 @@ public class FrontierReportAnalyzer implements Runnable {
         ffr.dispose();
     }
 
+    /**
+     * Applies the filters while the frontier report obtained from Heritrix3 is parsed, and sends the filtered reports.
+     *
+     * @param startTime the time the generation of the report started.
+     */
+    private void runStreamFilters(long startTime) {
+        Map<FrontierReportFilter, InMemoryFrontierReport> filtered;
+        try {
+            filtered = heritrixController.getFilteredFrontierReports(filters);
+        } catch (HarvestingAbort e) {
+            LOG.debug("Unable to retrieve full frontier-reports from Heritrix3", e);
+            return;
+        } catch (IOFailure e) {
+            LOG.warn("Unable to parse the frontier report from Heritrix3", e);
+            return;
+        }
+        long endTime = System.currentTimeMillis();
+        long elapsed = endTime - startTime;
+        LOG.info("Generated and applied " + filters.size() + " filters to the Heritrix frontier report in "
+                + (elapsed < TimeUtils.SECOND_IN_MILLIS ? elapsed + " ms" : StringUtils.formatDuration(elapsed
+                        / TimeUtils.SECOND_IN_MILLIS)) + ".");
+
+        lastExecTime = endTime;
+
+        Long jobId = heritrixController.getFiles().getJobID();
+        for (Map.Entry<FrontierReportFilter, InMemoryFrontierReport> entry : filtered.entrySet()) {
+            JMSConnectionFactory.getInstance().send(new FrontierReportMessage(entry.getKey(), entry.getValue(), jobId));
+        }
+    }
+
 }
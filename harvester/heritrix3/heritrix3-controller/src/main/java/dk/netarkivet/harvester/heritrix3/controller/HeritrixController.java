@@ -22,12 +22,14 @@
  */
 package dk.netarkivet.harvester.heritrix3.controller;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.methods.HttpPost;
@@ -51,7 +53,10 @@ import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlServiceInfo;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlServiceJobInfo;
 import dk.netarkivet.harvester.harvesting.distribute.CrawlProgressMessage.CrawlStatus;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportFilter;
+import dk.netarkivet.harvester.harvesting.frontier.FrontierReportStreamProcessor;
 import dk.netarkivet.harvester.harvesting.frontier.FullFrontierReport;
+import dk.netarkivet.harvester.harvesting.frontier.InMemoryFrontierReport;
 import dk.netarkivet.harvester.heritrix3.Heritrix3Files;
 
 /**
@@ -535,6 +540,40 @@ public class HeritrixController extends AbstractRestHeritrixController {
      * @return a Full frontier report.
      */
     public FullFrontierReport getFullFrontierReport() {
+    	ScriptResult result = h3wrapper.scriptResult(createFrontierReportRequest());
+        return FullFrontierReport.parseContentsAsXML(
+                jobName, result.response, dk.netarkivet.harvester.heritrix3.Constants.XML_RAWOUT_TAG);
+    }
+
+    /**
+     * Generates the frontier report from H3 using an REST call (Groovy script), and applies the given filters to the
+     * report lines as they are parsed. This avoids the DOM, the string copy and the database of the full report made
+     * by {@link #getFullFrontierReport()}, and the filters only keep the lines they select. However, the Heritrix3Wrapper
+     * reads the whole response into a byte array before returning it, so the raw report is still held in memory while
+     * it is parsed, and that memory grows with the number of queues in the frontier.
+     *
+     * @param filters the filters to apply, all supported by {@link FrontierReportStreamProcessor#canProcess}.
+     * @return the filtered report of each filter.
+     * @throws IOFailure if the report cannot be parsed.
+     */
+    public Map<FrontierReportFilter, InMemoryFrontierReport> getFilteredFrontierReports(
+            List<FrontierReportFilter> filters) {
+        ScriptResult result = h3wrapper.scriptResult(createFrontierReportRequest());
+        if (result == null || result.response == null) {
+            throw new IOFailure("No frontier report returned by Heritrix for job " + jobName);
+        }
+        FrontierReportStreamProcessor processor = new FrontierReportStreamProcessor(jobName, filters);
+        processor.parseXML(new ByteArrayInputStream(result.response),
+                dk.netarkivet.harvester.heritrix3.Constants.XML_RAWOUT_TAG);
+        return processor.getReports();
+    }
+
+    /**
+     * Builds the REST request making H3 write the frontier report.
+     *
+     * @return the request.
+     */
+    private HttpPost createFrontierReportRequest() {
     	//construct script request to send
     	HttpPost postRequest = new HttpPost(baseUrl + "job/" + jobName + "/script");
         StringEntity postEntity = null;
@@ -546,9 +585,7 @@ public class HeritrixController extends AbstractRestHeritrixController {
         postEntity.setContentType("application/x-www-form-urlencoded");
         postRequest.addHeader("Accept", "application/xml");
         postRequest.setEntity(postEntity);
-    	ScriptResult result = h3wrapper.scriptResult(postRequest);
-        return FullFrontierReport.parseContentsAsXML(
-                jobName, result.response, dk.netarkivet.harvester.heritrix3.Constants.XML_RAWOUT_TAG);
+        return postRequest;
     }
 
     @Override
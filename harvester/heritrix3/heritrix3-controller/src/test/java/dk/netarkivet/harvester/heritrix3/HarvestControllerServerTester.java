@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.heritrix3;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the admission of new jobs by {@link HarvestControllerServer} while earlier jobs await post-processing.
+ */
+public class HarvestControllerServerTester {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /** A space requirement met by any serverdir. */
+    private static final long LITTLE_SPACE = 1L;
+
+    /** A space requirement met by no serverdir. */
+    private static final long ALL_SPACE = Long.MAX_VALUE;
+
+    @Test
+    public void testAcceptsJobsBelowMaxPendingPostProcessing() throws Exception {
+        File serverDir = tempFolder.getRoot();
+        assertTrue("Should accept jobs with nothing to post-process",
+                HarvestControllerServer.postProcessingAllowsJobs(0, 2, serverDir, LITTLE_SPACE));
+        assertTrue("Should accept jobs with fewer jobs than the max awaiting post-processing",
+                HarvestControllerServer.postProcessingAllowsJobs(1, 2, serverDir, LITTLE_SPACE));
+        assertFalse("Should not accept jobs with the max number of jobs awaiting post-processing",
+                HarvestControllerServer.postProcessingAllowsJobs(2, 2, serverDir, LITTLE_SPACE));
+        assertFalse("Should not accept jobs with more than the max number of jobs awaiting post-processing",
+                HarvestControllerServer.postProcessingAllowsJobs(3, 2, serverDir, LITTLE_SPACE));
+    }
+
+    @Test
+    public void testWaitsForPostProcessingWhenSpaceIsLow() throws Exception {
+        File serverDir = tempFolder.getRoot();
+        assertFalse("Should wait for the post-processing to free space",
+                HarvestControllerServer.postProcessingAllowsJobs(1, 2, serverDir, ALL_SPACE));
+        assertTrue("Should leave the space check to the listener, with nothing to post-process",
+                HarvestControllerServer.postProcessingAllowsJobs(0, 2, serverDir, ALL_SPACE));
+    }
+
+    @Test
+    public void testMaxPendingOfOneWaitsForEveryJob() throws Exception {
+        File serverDir = tempFolder.getRoot();
+        assertFalse("Should wait for the post-processing of the last job",
+                HarvestControllerServer.postProcessingAllowsJobs(1, 1, serverDir, LITTLE_SPACE));
+        assertTrue("Should accept jobs when the last job is post-processed",
+                HarvestControllerServer.postProcessingAllowsJobs(0, 1, serverDir, LITTLE_SPACE));
+    }
+
+}
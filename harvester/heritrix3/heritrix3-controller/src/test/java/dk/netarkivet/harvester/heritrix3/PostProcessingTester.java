@@ -0,0 +1,390 @@
+/*
+ * #%L
+ * Netarchivesuite - harvester
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.heritrix3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import dk.netarkivet.common.CommonSettings;
+import dk.netarkivet.common.distribute.arcrepository.HarvesterArcRepositoryClient;
+import dk.netarkivet.common.exceptions.IOFailure;
+import dk.netarkivet.common.utils.FileUtils;
+import dk.netarkivet.common.utils.RememberNotifications;
+import dk.netarkivet.common.utils.Settings;
+import dk.netarkivet.harvester.HarvesterSettings;
+import dk.netarkivet.testutils.preconfigured.ReloadSettings;
+
+/**
+ * Tests the background post-processing queue of {@link PostProcessing}, and the upload of the archive files of a job.
+ */
+public class PostProcessingTester {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    ReloadSettings rs = new ReloadSettings();
+
+    private HarvesterArcRepositoryClient arcRepController;
+
+    /** The serverdir holding the crawldirs. */
+    private File serverDir;
+
+    /** The post-processing queue, blocked until the blocker is released. */
+    private ThreadPoolExecutor queue;
+
+    /** Released to let the post-processing queue run. */
+    private CountDownLatch blocker;
+
+    /** Set if the task blocking the queue, standing in for a post-processing in progress, is interrupted. */
+    private AtomicBoolean blockerInterrupted;
+
+    @Before
+    public void setUp() throws IOException {
+        rs.setUp();
+        Settings.set(CommonSettings.NOTIFICATIONS_CLASS, RememberNotifications.class.getName());
+        serverDir = tempFolder.newFolder("server");
+        Settings.set(HarvesterSettings.HARVEST_CONTROLLER_SERVERDIR, serverDir.getAbsolutePath());
+        Settings.set(HarvesterSettings.HARVEST_CONTROLLER_OLDJOBSDIR, tempFolder.newFolder("oldjobs").getAbsolutePath());
+        arcRepController = mock(HarvesterArcRepositoryClient.class);
+        queue = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        blocker = new CountDownLatch(1);
+        blockerInterrupted = new AtomicBoolean();
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    blockerInterrupted.set(true);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        blocker.countDown();
+        queue.shutdownNow();
+        queue.awaitTermination(10, TimeUnit.SECONDS);
+        RememberNotifications.resetSingleton();
+        rs.tearDown();
+    }
+
+    /**
+     * Test that a crawldir is queued only once, also when found by processOldJobs while queued, and that the end of
+     * the crawl is recorded in the crawldir.
+     */
+    @Test
+    public void testEnqueueSkipsQueuedCrawlDir() throws Exception {
+        File crawlDir = createCrawlDir("1_1");
+        PostProcessing postProcessing = newQueuedPostProcessing();
+
+        postProcessing.enqueue(crawlDir, null);
+        assertTrue("Should record the end of the crawl in the crawldir",
+                new File(crawlDir, PostProcessing.CRAWL_ENDED_FILENAME).isFile());
+        assertEquals("Should have one job awaiting post-processing", 1, postProcessing.getPendingJobs());
+
+        postProcessing.enqueue(crawlDir, null);
+        postProcessing.processOldJobs();
+        assertEquals("Should not queue the crawldir again", 1, postProcessing.getPendingJobs());
+        assertEquals("Should only have queued the post-processing of the crawldir once", 1, queue.getQueue().size());
+
+        awaitQueue();
+        assertEquals("Should have no jobs awaiting post-processing, when post-processed", 0,
+                postProcessing.getPendingJobs());
+    }
+
+    /**
+     * Test that processOldJobs queues each crawldir left in serverdir once, also if called again while they are
+     * queued, and skips dirs without harvestInfo.
+     */
+    @Test
+    public void testProcessOldJobsQueuesEachCrawlDirOnce() throws Exception {
+        File endedCrawlDir = createCrawlDir("1_1");
+        FileUtils.writeBinaryFile(new File(endedCrawlDir, PostProcessing.CRAWL_ENDED_FILENAME), new byte[0]);
+        createCrawlDir("2_1");
+        assertTrue(new File(serverDir, "notACrawlDir").mkdir());
+        PostProcessing postProcessing = newQueuedPostProcessing();
+
+        postProcessing.processOldJobs();
+        assertEquals("Should queue both crawldirs", 2, postProcessing.getPendingJobs());
+        assertTrue("Should notify about the interrupted crawl",
+                RememberNotifications.getInstance().message.contains("2_1"));
+
+        RememberNotifications.getInstance().message = null;
+        postProcessing.processOldJobs();
+        assertEquals("Should not queue the crawldirs again", 2, postProcessing.getPendingJobs());
+        assertEquals("Should only have queued the post-processing of each crawldir once", 2, queue.getQueue().size());
+        assertNull("Should not notify about crawldirs already queued",
+                RememberNotifications.getInstance().message);
+
+        awaitQueue();
+        assertEquals("Should have no jobs awaiting post-processing, when post-processed", 0,
+                postProcessing.getPendingJobs());
+    }
+
+    /**
+     * Test that cleanup lets the post-processing in progress end without interrupting it, and leaves the crawldirs
+     * queued in serverdir to be post-processed after a restart.
+     */
+    @Test
+    public void testCleanupAwaitsPostProcessingInProgress() throws Exception {
+        File crawlDir = createCrawlDir("1_1");
+        final PostProcessing postProcessing = newQueuedPostProcessing();
+        postProcessing.enqueue(crawlDir, null);
+
+        Thread cleanup = new Thread() {
+            @Override
+            public void run() {
+                postProcessing.cleanup();
+            }
+        };
+        cleanup.start();
+        cleanup.join(500);
+        assertTrue("Should await the post-processing in progress", cleanup.isAlive());
+
+        blocker.countDown();
+        cleanup.join(10000);
+        assertFalse("Should end when the post-processing in progress has ended", cleanup.isAlive());
+        assertFalse("Should not interrupt the post-processing in progress", blockerInterrupted.get());
+        verify(arcRepController).close();
+        assertTrue("Should leave the queued crawldir to be post-processed after a restart",
+                new File(crawlDir, "harvestInfo.xml").isFile());
+        assertTrue("Should keep the record of the end of the crawl",
+                new File(crawlDir, PostProcessing.CRAWL_ENDED_FILENAME).isFile());
+        assertEquals("Should have no jobs awaiting post-processing", 0, postProcessing.getPendingJobs());
+
+        postProcessing.enqueue(crawlDir, null);
+        assertEquals("Should not queue crawldirs after cleanup", 0, postProcessing.getPendingJobs());
+    }
+
+    /**
+     * Test that the files are uploaded at the same time, but never more than the number of upload threads.
+     */
+    @Test
+    public void testUploadFilesConcurrently() throws Exception {
+        final CyclicBarrier bothUploading = new CyclicBarrier(2);
+        final AtomicInteger uploading = new AtomicInteger();
+        final AtomicInteger maxUploading = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                int current = uploading.incrementAndGet();
+                synchronized (maxUploading) {
+                    maxUploading.set(Math.max(maxUploading.get(), current));
+                }
+                try {
+                    // Fails with a timeout, unless two files are uploaded at the same time
+                    bothUploading.await(10, TimeUnit.SECONDS);
+                    Thread.sleep(20);
+                } finally {
+                    uploading.decrementAndGet();
+                }
+                return null;
+            }
+        }).when(arcRepController).store(any(File.class));
+        List<File> files = createFiles("1.warc", "2.warc", "3.warc", "4.warc");
+        StringBuilder errorMessage = new StringBuilder();
+        List<File> failedFiles = new ArrayList<File>();
+
+        newPostProcessing(2, 0).uploadFiles(files, errorMessage, failedFiles);
+
+        assertEquals("Should have uploaded all files, but got errors: " + errorMessage, 0, failedFiles.size());
+        assertEquals("Should not report errors", "", errorMessage.toString());
+        assertEquals("Should never upload more files than the number of threads", 2, maxUploading.get());
+        verify(arcRepController, times(4)).store(any(File.class));
+    }
+
+    /**
+     * Test that failed files are reported in the order of the files, not in the order in which the uploads failed.
+     */
+    @Test
+    public void testUploadFilesReportsFailuresInFileOrder() throws Exception {
+        final List<File> files = createFiles("1.warc", "2.warc", "3.warc", "4.warc");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                File f = (File) invocation.getArguments()[0];
+                if (f.equals(files.get(1))) {
+                    // Fails after the last file has failed
+                    Thread.sleep(200);
+                    throw new IOFailure("Slow failure of " + f.getName());
+                }
+                if (f.equals(files.get(3))) {
+                    throw new IOFailure("Fast failure of " + f.getName());
+                }
+                return null;
+            }
+        }).when(arcRepController).store(any(File.class));
+        StringBuilder errorMessage = new StringBuilder();
+        List<File> failedFiles = new ArrayList<File>();
+
+        newPostProcessing(4, 0).uploadFiles(files, errorMessage, failedFiles);
+
+        assertEquals("Should report the failed files in the order of the files",
+                Arrays.asList(files.get(1), files.get(3)), failedFiles);
+        String errors = errorMessage.toString();
+        assertTrue("Should report the slow failure first, but got: " + errors,
+                errors.indexOf("Slow failure of 2.warc") >= 0
+                        && errors.indexOf("Slow failure of 2.warc") < errors.indexOf("Fast failure of 4.warc"));
+        assertTrue("Should report the number of files uploaded, but got: " + errors,
+                errors.contains("Uploaded 2 of 4 files"));
+    }
+
+    /**
+     * Test that a failed upload is retried, and the file is not reported as failed if a retry succeeds.
+     */
+    @Test
+    public void testUploadFileRetriesFailedUpload() throws Exception {
+        List<File> files = createFiles("1.warc");
+        doThrow(new IOFailure("First failure")).doThrow(new IOFailure("Second failure")).doNothing()
+                .when(arcRepController).store(files.get(0));
+        StringBuilder errorMessage = new StringBuilder();
+        List<File> failedFiles = new ArrayList<File>();
+
+        newPostProcessing(1, 2).uploadFiles(files, errorMessage, failedFiles);
+
+        assertEquals("Should have uploaded the file on the last retry, but got errors: " + errorMessage, 0,
+                failedFiles.size());
+        verify(arcRepController, times(3)).store(files.get(0));
+    }
+
+    /**
+     * Test that the file is reported as failed with the error of the last try, when all retries have failed.
+     */
+    @Test
+    public void testUploadFileGivesUpWhenRetriesAreExhausted() throws Exception {
+        List<File> files = createFiles("1.warc", "2.warc");
+        doThrow(new IOFailure("First failure")).doThrow(new IOFailure("Second failure"))
+                .doThrow(new IOFailure("Last failure")).doNothing().when(arcRepController).store(files.get(0));
+        StringBuilder errorMessage = new StringBuilder();
+        List<File> failedFiles = new ArrayList<File>();
+
+        newPostProcessing(2, 2).uploadFiles(files, errorMessage, failedFiles);
+
+        assertEquals("Should report the file failing on every try", Arrays.asList(files.get(0)), failedFiles);
+        verify(arcRepController, times(3)).store(files.get(0));
+        verify(arcRepController, times(1)).store(files.get(1));
+        String errors = errorMessage.toString();
+        assertTrue("Should report the error of the last try, but got: " + errors, errors.contains("Last failure"));
+        assertTrue("Should report the number of files uploaded, but got: " + errors,
+                errors.contains("Uploaded 1 of 2 files"));
+    }
+
+    /**
+     * Test that an upload is not retried when the file is gone.
+     */
+    @Test
+    public void testUploadFileIsNotRetriedWhenFileIsGone() throws Exception {
+        final List<File> files = createFiles("1.warc");
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                FileUtils.remove(files.get(0));
+                throw new IOFailure("File removed");
+            }
+        }).when(arcRepController).store(files.get(0));
+        StringBuilder errorMessage = new StringBuilder();
+        List<File> failedFiles = new ArrayList<File>();
+
+        newPostProcessing(1, 2).uploadFiles(files, errorMessage, failedFiles);
+
+        assertEquals("Should report the removed file as failed", Arrays.asList(files.get(0)), failedFiles);
+        verify(arcRepController, times(1)).store(files.get(0));
+    }
+
+    /**
+     * @return A PostProcessing uploading with the given number of threads and retries, retrying at once.
+     */
+    private PostProcessing newPostProcessing(int uploadThreads, int uploadRetries) {
+        return new PostProcessing(null, arcRepController, uploadThreads, uploadRetries, 1, queue);
+    }
+
+    /**
+     * @return A PostProcessing post-processing the crawldirs on the blocked queue.
+     */
+    private PostProcessing newQueuedPostProcessing() {
+        return newPostProcessing(1, 0);
+    }
+
+    /**
+     * Release the queue, and wait for the crawldirs queued to be post-processed.
+     */
+    private void awaitQueue() throws InterruptedException {
+        blocker.countDown();
+        queue.shutdown();
+        assertTrue("Should post-process the queued crawldirs", queue.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Create a crawldir in serverdir awaiting post-processing. The harvestInfo is not valid, so the post-processing
+     * fails at once.
+     */
+    private File createCrawlDir(String name) throws IOException {
+        File crawlDir = new File(serverDir, name);
+        assertTrue(crawlDir.mkdir());
+        FileUtils.writeBinaryFile(new File(crawlDir, "harvestInfo.xml"), "<invalid/>".getBytes("UTF-8"));
+        return crawlDir;
+    }
+
+    private List<File> createFiles(String... names) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (String name : names) {
+            File f = tempFolder.newFile(name);
+            FileUtils.writeBinaryFile(f, name.getBytes("UTF-8"));
+            files.add(f);
+        }
+        return files;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dk.netarkivet.common.exceptions.ArgumentNotValid;
+import dk.netarkivet.common.utils.DomainUtils;
+
+/**
+ * A bounded cache of the domain names of host names, shared by the queue assignment policies and decide rules of a
+ * harvester.
+ * <p>
+ * The queue assignment policy finds the domain of every URI that is scheduled, and finding the domain of a host name
+ * means matching it against the pattern of all TLDs. A crawl has few distinct hosts compared to the number of URIs,
+ * so the domains are cached by host name. The cache is split in segments by the hash of the host name, so the toe
+ * threads rarely wait for each other, and each segment evicts its least recently used host names when full.
+ */
+public final class DomainnameCache {
+
+    /** The maximum number of host names held in the cache. */
+    static final int MAXIMUM_SIZE = 200000;
+
+    /** The number of segments of the cache. */
+    private static final int SEGMENTS = 16;
+
+    /** The value cached for host names that have no valid domain name. No domain name is empty. */
+    private static final String NO_DOMAIN = "";
+
+    /** The segments of the cache, each guarded by itself. */
+    private static final Segment[] CACHE = new Segment[SEGMENTS];
+
+    static {
+        for (int i = 0; i < SEGMENTS; i++) {
+            CACHE[i] = new Segment(MAXIMUM_SIZE / SEGMENTS);
+        }
+    }
+
+    /** The number of lookups answered from the cache. */
+    private static final AtomicLong hits = new AtomicLong();
+
+    /** The number of lookups of host names not in the cache. */
+    private static final AtomicLong misses = new AtomicLong();
+
+    /** The number of host names evicted from the cache. */
+    private static final AtomicLong evictions = new AtomicLong();
+
+    /** Utility class, do not initialise. */
+    private DomainnameCache() {
+    }
+
+    /**
+     * Get the domain name of a host name, as {@link DomainUtils#domainNameFromHostname(String)} does.
+     *
+     * @param hostname A host name.
+     * @return The domain name of the host name, or null if it has no valid domain name.
+     * @throws ArgumentNotValid if hostname is null.
+     */
+    public static String domainNameFromHostname(String hostname) {
+        ArgumentNotValid.checkNotNull(hostname, "String hostname");
+        Segment segment = CACHE[(hostname.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+        String domain;
+        synchronized (segment) {
+            domain = segment.get(hostname);
+        }
+        if (domain != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            // Found outside the lock, as matching against the TLDs is the slow part
+            domain = DomainUtils.domainNameFromHostname(hostname);
+            if (domain == null) {
+                domain = NO_DOMAIN;
+            }
+            synchronized (segment) {
+                segment.put(hostname, domain);
+            }
+        }
+        return domain.equals(NO_DOMAIN) ? null : domain;
+    }
+
+    /**
+     * @return The number of lookups answered from the cache since the harvester was started.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups of host names not in the cache since the harvester was started.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of host names evicted from the cache since the harvester was started.
+     */
+    public static long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of host names in the cache.
+     */
+    public static int size() {
+        int size = 0;
+        for (Segment segment : CACHE) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Make a report of the use of the cache, for the Heritrix reports.
+     *
+     * @return The report, one line per figure.
+     */
+    public static String report() {
+        long hitCount = getHitCount();
+        long lookups = hitCount + getMissCount();
+        StringBuilder ret = new StringBuilder();
+        ret.append("Domain name cache:\n");
+        ret.append("  Host names cached: " + size() + " (max " + MAXIMUM_SIZE + ")\n");
+        ret.append("  Lookups:           " + lookups + "\n");
+        ret.append("  Hit rate:          " + String.format("%.2f%%", lookups == 0 ? 100.0 : hitCount * 100.0 / lookups)
+                + "\n");
+        ret.append("  Evictions:         " + getEvictionCount() + "\n");
+        return ret.toString();
+    }
+
+    /**
+     * Empty the cache. Used when the TLDs have changed, e.g. in tests.
+     */
+    static void invalidateAll() {
+        for (Segment segment : CACHE) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * A segment of the cache, holding a bounded number of host names in the order they were last used.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment extends LinkedHashMap<String, String> {
+
+        /** The maximum number of host names held in the segment. */
+        private final int maximumSize;
+
+        /**
+         * @param maximumSize The maximum number of host names held in the segment.
+         */
+        private Segment(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > maximumSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
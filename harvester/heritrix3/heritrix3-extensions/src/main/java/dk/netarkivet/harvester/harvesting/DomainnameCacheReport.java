@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.io.PrintWriter;
+
+import org.archive.crawler.reporting.Report;
+import org.archive.crawler.reporting.StatisticsTracker;
+
+/**
+ * A Heritrix report of the use of the {@link DomainnameCache} shared by the queue assignment policies.
+ * <p>
+ * The report is made if it is added to the reports of the statistics tracker in the crawler beans, along with the
+ * reports Heritrix makes by default, as in the distributed templates:
+ * <pre>
+ * &lt;bean id="statisticsTracker" class="org.archive.crawler.reporting.StatisticsTracker" autowire="byName"&gt;
+ *   &lt;property name="reports"&gt;
+ *     &lt;list&gt;
+ *       ...
+ *       &lt;bean class="dk.netarkivet.harvester.harvesting.DomainnameCacheReport"/&gt;
+ *     &lt;/list&gt;
+ *   &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class DomainnameCacheReport extends Report {
+
+    @Override
+    public void write(PrintWriter writer, StatisticsTracker stats) {
+        writer.print(DomainnameCache.report());
+    }
+
+    @Override
+    public String getFilename() {
+        return "domainname-cache-report.txt";
+    }
+
+}
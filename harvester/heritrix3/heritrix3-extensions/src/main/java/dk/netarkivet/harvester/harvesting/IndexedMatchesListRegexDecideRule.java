@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.MatchesListRegexDecideRule;
+
+/**
+ * Extended <code>MatchesListRegexDecideRule</code> class.
+ * Makes the same decisions as the original rule, but does not try every regular expression in the list on every URI.
+ * With thousands of crawler traps in the list, trying them all dominates the time spent on deciding the scope of a URI.
+ * <p>
+ * When the expressions are combined with logical or, they are kept in a {@link RegexListIndex}, so only the expressions
+ * sharing a literal substring with the URI are tried. An index is built on first use of a list. Sheet overlays may
+ * supply their own list for some URIs, so the indexes of the most recently used lists are kept, keyed by the
+ * expressions of the list, and a list with the same expressions as an indexed list shares its index. When combined
+ * with logical and, every expression must be tried anyway, and the original rule is used.
+ * <p>
+ * The distributed templates use this rule for the crawler traps. A template can name
+ * <code>org.archive.modules.deciderules.MatchesListRegexDecideRule</code> in its crawler trap bean instead, to try every
+ * expression on every URI.
+ */
+public class IndexedMatchesListRegexDecideRule extends MatchesListRegexDecideRule {
+
+    /**
+     * UUID.
+     */
+    private static final long serialVersionUID = -2318395014561727309L;
+
+    /** Logger instance. */
+    private static final Logger logger = Logger.getLogger(IndexedMatchesListRegexDecideRule.class.getName());
+
+    /** The maximum number of indexes kept, one for each distinct list of regexes in use. */
+    private static final int MAX_INDEXES = 16;
+
+    /** The most recently used index, and the list it was last used for. */
+    private transient volatile IndexedList lastUsed;
+
+    /** The indexes of the most recently used lists, keyed by the expressions and flags of the list. */
+    private transient Map<List<String>, RegexListIndex> indexes;
+
+    /**
+     * Evaluate whether given object's string version matches configured regexes.
+     *
+     * @param uri The URI to evaluate.
+     * @return true, if the regexes match the URI.
+     */
+    @Override
+    protected boolean evaluate(CrawlURI uri) {
+        if (!getListLogicalOr()) {
+            return super.evaluate(uri);
+        }
+        List<Pattern> regexes = getRegexList();
+        if (regexes.isEmpty()) {
+            return false;
+        }
+        boolean result = getIndex(regexes).anyMatches(uri.toString());
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Tested '" + uri + "' against " + regexes.size() + " regexes. Result: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Get the index over the regex list. The index last used is reused if the list is the same instance and has not
+     * changed size. Otherwise the index is looked up by the contents of the list, and only built if no list with the
+     * same expressions has been indexed recently.
+     *
+     * @param regexes The current regex list.
+     * @return The index over the list.
+     */
+    private RegexListIndex getIndex(List<Pattern> regexes) {
+        IndexedList current = lastUsed;
+        if (current != null && current.list == regexes && current.index.size() == regexes.size()) {
+            return current.index;
+        }
+        List<String> key = new ArrayList<String>(regexes.size());
+        for (Pattern regex : regexes) {
+            key.add(regex.flags() + ":" + regex.pattern());
+        }
+        RegexListIndex index;
+        synchronized (this) {
+            if (indexes == null) {
+                indexes = new LinkedHashMap<List<String>, RegexListIndex>(MAX_INDEXES, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<List<String>, RegexListIndex> eldest) {
+                        return size() > MAX_INDEXES;
+                    }
+                };
+            }
+            index = indexes.get(key);
+            if (index == null) {
+                index = new RegexListIndex(regexes);
+                indexes.put(key, index);
+                logger.info("Indexed " + regexes.size() + " regexes, of which " + index.getUnindexedCount()
+                        + " are tried on every URI");
+            }
+        }
+        lastUsed = new IndexedList(regexes, index);
+        return index;
+    }
+
+    /**
+     * A regex list together with the index built over its expressions.
+     */
+    private static final class IndexedList {
+        /** The regex list. */
+        private final List<Pattern> list;
+        /** The index over the expressions of the list. */
+        private final RegexListIndex index;
+
+        private IndexedList(List<Pattern> list, RegexListIndex index) {
+            this.list = list;
+            this.index = index;
+        }
+    }
+
+}
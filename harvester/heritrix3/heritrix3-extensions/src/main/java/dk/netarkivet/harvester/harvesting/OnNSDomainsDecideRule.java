@@ -28,7 +28,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.httpclient.URIException;
-import org.archive.modules.CrawlURI;
 import org.archive.modules.deciderules.surt.SurtPrefixedDecideRule;
 import org.archive.net.UURI;
 import org.archive.net.UURIFactory;
@@ -53,6 +52,10 @@ public class OnNSDomainsDecideRule extends SurtPrefixedDecideRule {
     /** Pattern that matches the first part of SURT - until ?? */
     public static final Pattern SURT_FIRSTPART_PATTERN
         = Pattern.compile("http\\://\\([^\\)]*");
+
+    /** The policy finding the domains of URIs. It holds no state, so one is shared by all conversions. */
+    private static final DomainnameQueueAssignmentPolicy DOMAIN_POLICY = new DomainnameQueueAssignmentPolicy();
+
     /** 
      * Constructor for the class OnNSDomainsDecideRule.
      * Makes the configured decision 
@@ -135,9 +138,6 @@ public class OnNSDomainsDecideRule extends SurtPrefixedDecideRule {
      */
     public static String convertToDomain(String uri) {
         ArgumentNotValid.checkNotNullOrEmpty(uri, "String uri");
-        DomainnameQueueAssignmentPolicy policy
-                = new DomainnameQueueAssignmentPolicy();
-
         UURI uuri = null;
         try {
             uuri = UURIFactory.getInstance(uri);
@@ -150,8 +150,11 @@ public class OnNSDomainsDecideRule extends SurtPrefixedDecideRule {
          // the string
                          
         }
+        if (uuri == null) {
+            return NON_VALID_DOMAIN;
+        }
         try {          
-            return policy.getClassKey(new CrawlURI(uuri));
+            return DOMAIN_POLICY.getCoreKey(uuri);
         } catch (Throwable e) {
             // illegal URI - return a SURT that will not match any real URIs
             return NON_VALID_DOMAIN;
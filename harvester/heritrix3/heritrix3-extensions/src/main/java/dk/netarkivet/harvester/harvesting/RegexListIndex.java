@@ -0,0 +1,398 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * An index over a list of regular expressions, answering whether any of them matches a string without trying every
+ * one of them.
+ * <p>
+ * Most crawler traps contain a literal part that every matching URI must contain, e.g. a host name or a path
+ * segment. Each such expression is filed under one {@link #GRAM_LENGTH} character substring of its literal part, and
+ * only the expressions filed under the substrings of a URI are tried on it. Expressions without a usable literal part
+ * are tried on every URI, so the answer is always the same as trying all expressions in turn.
+ */
+class RegexListIndex {
+
+    /** The length of the substrings the expressions are filed under. */
+    static final int GRAM_LENGTH = 4;
+
+    /** Flags making the pattern text unsuitable for extracting literals. */
+    private static final int UNSUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL
+            | Pattern.CANON_EQ;
+
+    /** Matches inline flags, which may change how the rest of an expression is read. */
+    private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]");
+
+    /** The expressions with a literal part, by the substring they are filed under. */
+    private final Map<String, List<Pattern>> indexed = new HashMap<String, List<Pattern>>();
+
+    /** The expressions to try on every string. */
+    private final List<Pattern> unindexed = new ArrayList<Pattern>();
+
+    /** The number of expressions in the index. */
+    private final int size;
+
+    /**
+     * Build the index over a list of expressions.
+     *
+     * @param patterns The expressions.
+     */
+    RegexListIndex(List<Pattern> patterns) {
+        size = patterns.size();
+        // Count in how many expressions each substring occurs, and file each expression under its rarest one, so the
+        // buckets stay small even if many traps share e.g. a common path prefix.
+        Map<Pattern, Set<String>> gramsByPattern = new HashMap<Pattern, Set<String>>();
+        Map<String, Integer> gramCounts = new HashMap<String, Integer>();
+        for (Pattern p : patterns) {
+            Set<String> grams = new LinkedHashSet<String>();
+            for (String literal : requiredLiterals(p)) {
+                for (int i = 0; i + GRAM_LENGTH <= literal.length(); i++) {
+                    grams.add(literal.substring(i, i + GRAM_LENGTH));
+                }
+            }
+            if (grams.isEmpty()) {
+                unindexed.add(p);
+                continue;
+            }
+            gramsByPattern.put(p, grams);
+            for (String gram : grams) {
+                Integer count = gramCounts.get(gram);
+                gramCounts.put(gram, count == null ? 1 : count + 1);
+            }
+        }
+        for (Pattern p : patterns) {
+            Set<String> grams = gramsByPattern.get(p);
+            if (grams == null) {
+                continue;
+            }
+            String rarest = null;
+            int rarestCount = Integer.MAX_VALUE;
+            for (String gram : grams) {
+                int count = gramCounts.get(gram);
+                if (count < rarestCount) {
+                    rarest = gram;
+                    rarestCount = count;
+                }
+            }
+            List<Pattern> bucket = indexed.get(rarest);
+            if (bucket == null) {
+                bucket = new ArrayList<Pattern>();
+                indexed.put(rarest, bucket);
+            }
+            bucket.add(p);
+        }
+    }
+
+    /**
+     * Check whether any of the expressions matches the entire string.
+     *
+     * @param str A string.
+     * @return true, if at least one expression matches str.
+     */
+    boolean anyMatches(String str) {
+        for (Pattern p : unindexed) {
+            if (p.matcher(str).matches()) {
+                return true;
+            }
+        }
+        if (indexed.isEmpty()) {
+            return false;
+        }
+        Set<String> tried = null;
+        for (int i = 0; i + GRAM_LENGTH <= str.length(); i++) {
+            String gram = str.substring(i, i + GRAM_LENGTH);
+            List<Pattern> bucket = indexed.get(gram);
+            if (bucket == null) {
+                continue;
+            }
+            if (tried == null) {
+                tried = new HashSet<String>();
+            }
+            if (!tried.add(gram)) {
+                continue;
+            }
+            for (Pattern p : bucket) {
+                if (p.matcher(str).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of expressions in the index.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of expressions tried on every string.
+     */
+    int getUnindexedCount() {
+        return unindexed.size();
+    }
+
+    /**
+     * Find literal strings that every string matched by an expression must contain. Only the top level of
+     * the expression is examined: characters inside groups and character classes, characters made optional by a
+     * quantifier, and escapes other than escaped punctuation end a literal. Expressions with alternatives at the top
+     * level, inline flags, quoting or flags changing how the text is read give no literal.
+     *
+     * @param p An expression.
+     * @return The required literals, in the order they occur in the expression. Empty if none were found.
+     */
+    static List<String> requiredLiterals(Pattern p) {
+        List<String> none = Collections.emptyList();
+        if ((p.flags() & UNSUPPORTED_FLAGS) != 0) {
+            return none;
+        }
+        String regex = p.pattern();
+        if (regex.contains("\\Q") || INLINE_FLAGS.matcher(regex).find()) {
+            return none;
+        }
+        List<String> literals = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        // True, if the last token read was a literal character appended to current.
+        boolean lastWasLiteral = false;
+        int i = 0;
+        int n = regex.length();
+        while (i < n) {
+            char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 >= n) {
+                    return none;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    endLiteral(literals, current);
+                    lastWasLiteral = false;
+                    i = skipEscape(regex, i);
+                } else {
+                    current.append(escaped);
+                    lastWasLiteral = true;
+                    i += 2;
+                }
+                break;
+            case '[':
+                endLiteral(literals, current);
+                lastWasLiteral = false;
+                i = skipClass(regex, i);
+                break;
+            case '(':
+                endLiteral(literals, current);
+                lastWasLiteral = false;
+                i = skipGroup(regex, i);
+                break;
+            case '|':
+                return none;
+            case '?':
+            case '*':
+            case '{':
+                // The preceding character may occur zero times.
+                if (lastWasLiteral) {
+                    current.setLength(current.length() - 1);
+                }
+                endLiteral(literals, current);
+                lastWasLiteral = false;
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? n : end + 1;
+                } else {
+                    i++;
+                }
+                break;
+            case '+':
+                // The preceding character occurs at least once, but may be repeated.
+                endLiteral(literals, current);
+                lastWasLiteral = false;
+                i++;
+                break;
+            case '.':
+            case '^':
+            case '$':
+            case ')':
+            case ']':
+            case '}':
+                endLiteral(literals, current);
+                lastWasLiteral = false;
+                i++;
+                break;
+            default:
+                current.append(c);
+                lastWasLiteral = true;
+                i++;
+            }
+        }
+        endLiteral(literals, current);
+        return literals;
+    }
+
+    /**
+     * Move the literal read so far to the list of literals.
+     *
+     * @param literals The literals found.
+     * @param current The literal read so far. Emptied by this method.
+     */
+    private static void endLiteral(List<String> literals, StringBuilder current) {
+        if (current.length() > 0) {
+            literals.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * Skip an escape sequence starting with a backslash followed by a letter or digit.
+     *
+     * @param regex An expression.
+     * @param start The index of the backslash.
+     * @return The index after the escape sequence.
+     */
+    private static int skipEscape(String regex, int start) {
+        int n = regex.length();
+        char escaped = regex.charAt(start + 1);
+        int i = start + 2;
+        switch (escaped) {
+        case 'x':
+            if (i < n && regex.charAt(i) == '{') {
+                return skipTo(regex, i, '}');
+            }
+            return Math.min(n, i + 2);
+        case 'u':
+            return Math.min(n, i + 4);
+        case 'c':
+            return Math.min(n, i + 1);
+        case 'p':
+        case 'P':
+        case 'N':
+            if (i < n && regex.charAt(i) == '{') {
+                return skipTo(regex, i, '}');
+            }
+            return Math.min(n, i + 1);
+        case 'k':
+            return skipTo(regex, i, '>');
+        case '0':
+            for (int digits = 0; digits < 3 && i < n && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; digits++) {
+                i++;
+            }
+            return i;
+        default:
+            if (Character.isDigit(escaped)) {
+                // A back reference.
+                while (i < n && Character.isDigit(regex.charAt(i))) {
+                    i++;
+                }
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Skip a character class.
+     *
+     * @param regex An expression.
+     * @param start The index of the opening bracket.
+     * @return The index after the closing bracket.
+     */
+    private static int skipClass(String regex, int start) {
+        int n = regex.length();
+        int i = start + 1;
+        if (i < n && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < n && regex.charAt(i) == ']') {
+            // A leading bracket is part of the class.
+            i++;
+        }
+        int depth = 1;
+        while (i < n && depth > 0) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            i++;
+        }
+        return Math.min(n, i);
+    }
+
+    /**
+     * Skip a group, including any nested groups and character classes.
+     *
+     * @param regex An expression.
+     * @param start The index of the opening parenthesis.
+     * @return The index after the closing parenthesis.
+     */
+    private static int skipGroup(String regex, int start) {
+        int n = regex.length();
+        int i = start + 1;
+        int depth = 1;
+        while (i < n && depth > 0) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                i++;
+            }
+        }
+        return Math.min(n, i);
+    }
+
+    /**
+     * Skip to after the next occurrence of a character.
+     *
+     * @param regex An expression.
+     * @param start The index to start looking at.
+     * @param end The character to look for.
+     * @return The index after the character, or the length of the expression if it does not occur.
+     */
+    private static int skipTo(String regex, int start, char end) {
+        int i = regex.indexOf(end, start);
+        return i < 0 ? regex.length() : i + 1;
+    }
+
+}
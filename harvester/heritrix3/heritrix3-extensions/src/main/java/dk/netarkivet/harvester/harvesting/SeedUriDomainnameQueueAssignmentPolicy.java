@@ -30,8 +30,6 @@ import org.archive.crawler.frontier.HostnameQueueAssignmentPolicy;
 import org.archive.modules.CrawlURI;
 import org.archive.net.UURIFactory;
 
-import dk.netarkivet.common.utils.DomainUtils;
-
 /**
  * This is a modified version of the {@link DomainnameQueueAssignmentPolicy}
  * where domainname returned is the domainname of the candidateURI
@@ -43,7 +41,7 @@ import dk.netarkivet.common.utils.DomainUtils;
  * x.y.z -> y.z
  * y.z -> y.z
  * nn.nn.nn.nn -> nn.nn.nn.nn
- * 
+ * The domains of the host names are looked up in the {@link DomainnameCache}.
  */
 public class SeedUriDomainnameQueueAssignmentPolicy extends HostnameQueueAssignmentPolicy {
     
@@ -105,7 +103,7 @@ public class SeedUriDomainnameQueueAssignmentPolicy extends HostnameQueueAssignm
         if (key != null) {
             String[] hostnameandportnr = key.split("#");
             if (hostnameandportnr.length == 1 || hostnameandportnr.length == 2) {
-                key = DomainUtils.domainNameFromHostname(hostnameandportnr[0]);
+                key = DomainnameCache.domainNameFromHostname(hostnameandportnr[0]);
             } else {
                 log.debug("Illegal class key candidate from superclass: '" + key + "' for '" + cauri + "'");
                 key = null;
@@ -123,7 +121,7 @@ public class SeedUriDomainnameQueueAssignmentPolicy extends HostnameQueueAssignm
     private String getKeyFromSeed(CrawlURI cauri) {
         String key = null;
         try {
-            key = DomainUtils.domainNameFromHostname(UURIFactory.getInstance(cauri.getSourceTag()).getHost());
+            key = DomainnameCache.domainNameFromHostname(UURIFactory.getInstance(cauri.getSourceTag()).getHost());
         } catch (Exception e) {
             e.printStackTrace();
         }
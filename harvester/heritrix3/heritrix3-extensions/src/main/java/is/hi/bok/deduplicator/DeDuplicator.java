@@ -59,7 +59,9 @@ import org.archive.util.Base32;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import dk.netarkivet.common.exceptions.IOFailure;
 import dk.netarkivet.common.utils.AllDocsCollector;
+import dk.netarkivet.common.utils.DigestBloomFilter;
 
 /**
  * Heritrix compatible processor.
@@ -327,6 +329,22 @@ public class DeDuplicator extends Processor implements InitializingBean {
     public Boolean getRevisitInWarcs() {
         return (Boolean) kp.get(ATTR_REVISIT_IN_WARCS);
     }
+
+    /* Should the digest filter stored with the index be used to skip lookups
+     *  of digests that are definitely not in the index? Only used when
+     *  matching by digest.
+     */
+    public final static String ATTR_USE_DIGEST_FILTER = "use-digest-filter";
+    {
+    	setUseDigestFilter(Boolean.TRUE);
+    }
+    public Boolean getUseDigestFilter() {
+        return (Boolean) kp.get(ATTR_USE_DIGEST_FILTER);
+    }
+    /** SPRING SETTER */
+    public void setUseDigestFilter(Boolean useDigestFilter) {
+    	kp.put(ATTR_USE_DIGEST_FILTER, useDigestFilter);
+    }
     
     // Spring configured access to Heritrix resources
     
@@ -345,6 +363,8 @@ public class DeDuplicator extends Processor implements InitializingBean {
     // Member variables.
     protected IndexSearcher indexSearcher = null;
     protected IndexReader indexReader = null;
+    /** Filter over the digests in the index, or null if not in use. */
+    protected DigestBloomFilter digestFilter = null;
     
     
     protected boolean lookupByURL = true;
@@ -381,6 +401,23 @@ public class DeDuplicator extends Processor implements InitializingBean {
         MatchingMethod matchingMethod = getMatchingMethod();
         lookupByURL = matchingMethod == MatchingMethod.URL;
 
+        // Digest filter
+        if (!lookupByURL && getUseDigestFilter()) {
+            File filterFile = new File(indexLocation, DigestBloomFilter.FILENAME);
+            if (filterFile.isFile()) {
+                try {
+                    digestFilter = DigestBloomFilter.read(filterFile);
+                    logger.info("Using digest filter with " + digestFilter.getEntries() + " digests from "
+                            + filterFile);
+                } catch (IOFailure e) {
+                    logger.log(Level.WARNING, "Unable to read digest filter " + filterFile
+                            + ". Looking up all digests in the index", e);
+                }
+            } else {
+                logger.info("No digest filter found in " + indexLocation + ". Looking up all digests in the index");
+            }
+        }
+
         // Track per host stats
         statsPerHost = getStatsPerHost();
         
@@ -696,12 +733,21 @@ public class DeDuplicator extends Processor implements InitializingBean {
             return null;
         }
 
+        if (digestFilter != null && !digestFilter.mightContain(currentDigest)) {
+            // Definitely not in the index, so no need to search it.
+            stats.digestFilterSkipped++;
+            return null;
+        }
+
         Query query = queryField(DigestIndexer.FIELD_DIGEST, currentDigest);
         try {
             AllDocsCollector collectAllCollector = new AllDocsCollector();
             indexSearcher.search(query, collectAllCollector);
 
             List<ScoreDoc> hits = collectAllCollector.getHits();
+            if (digestFilter != null && (hits == null || hits.isEmpty())) {
+                stats.digestFilterFalsePositives++;
+            }
 
             StringBuffer mirrors = new StringBuffer();
             mirrors.append("mirrors: ");
@@ -789,6 +835,14 @@ public class DeDuplicator extends Processor implements InitializingBean {
     	ret.append("  Equivalent hits:   " + stats.equivalentURLDuplicates + "\n");
         if(lookupByURL==false){
         	ret.append("  Mirror hits:       " + stats.mirrorNumber + "\n");
+        	if(digestFilter!=null){
+        		ret.append("  Digest filter:     " + digestFilter.getEntries() + " digests, expected false positive rate "
+        				+ getPercentage(digestFilter.getExpectedFalsePositiveRate(), 1) + "\n");
+        		ret.append("  Lookups skipped:   " + stats.digestFilterSkipped + "\n");
+        		ret.append("  False positives:   " + stats.digestFilterFalsePositives + " " +
+        				getPercentage(stats.digestFilterFalsePositives,
+        						stats.digestFilterFalsePositives + stats.digestFilterSkipped) + "\n");
+        	}
         }
         
         if(getAnalyzeTimestamp()){
@@ -1065,6 +1119,14 @@ class Statistics{
     long timestampNoChangeFalse = 0;
     long timestampMissing = 0;
 
+    // Digest filter
+
+    /** The number of digest lookups skipped, as the digest filter ruled them out. */
+    long digestFilterSkipped = 0;
+
+    /** The number of digests not in the index, that the digest filter did not rule out. */
+    long digestFilterFalsePositives = 0;
+
     // ETag analysis;
     
     long ETagChangeCorrect = 0;
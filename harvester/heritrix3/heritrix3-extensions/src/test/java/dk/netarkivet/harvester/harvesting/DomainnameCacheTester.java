@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import dk.netarkivet.common.utils.DomainUtils;
+
+/**
+ * Tests of the DomainnameCache.
+ */
+public class DomainnameCacheTester {
+
+    @Test
+    public void testDomainNameFromHostname() {
+        DomainnameCache.invalidateAll();
+        String[] hostnames = {"www.foo.dk", "x.y.bar.dk", "20.911.dk", "192.168.0.10", "news.bbc.co.uk",
+                "x.fnord.barbar", "www.foo.dk"};
+        for (String hostname : hostnames) {
+            assertEquals("Should give the same domain as DomainUtils for '" + hostname + "'",
+                    DomainUtils.domainNameFromHostname(hostname), DomainnameCache.domainNameFromHostname(hostname));
+        }
+        assertNull("Should cache host names without a valid domain",
+                DomainnameCache.domainNameFromHostname("x.fnord.barbar"));
+    }
+
+    @Test
+    public void testStats() {
+        DomainnameCache.invalidateAll();
+        long hits = DomainnameCache.getHitCount();
+        long misses = DomainnameCache.getMissCount();
+        DomainnameCache.domainNameFromHostname("www.kb.dk");
+        DomainnameCache.domainNameFromHostname("www.kb.dk");
+        DomainnameCache.domainNameFromHostname("x.fnord.barbar");
+        DomainnameCache.domainNameFromHostname("x.fnord.barbar");
+        assertEquals("Should look up each host name once", 2, DomainnameCache.getMissCount() - misses);
+        assertEquals("Should find each host name in the cache the second time", 2,
+                DomainnameCache.getHitCount() - hits);
+        assertEquals("Should hold the host names", 2, DomainnameCache.size());
+        assertTrue("Should report the hit rate", DomainnameCache.report().contains("Hit rate"));
+    }
+
+    @Test
+    public void testEviction() {
+        DomainnameCache.invalidateAll();
+        long evictions = DomainnameCache.getEvictionCount();
+        for (int i = 0; i < DomainnameCache.MAXIMUM_SIZE + 1000; i++) {
+            DomainnameCache.domainNameFromHostname("www.host" + i + ".dk");
+        }
+        assertTrue("Should hold no more than the maximum number of host names",
+                DomainnameCache.size() <= DomainnameCache.MAXIMUM_SIZE);
+        assertTrue("Should have evicted host names", DomainnameCache.getEvictionCount() - evictions >= 1000);
+    }
+
+}
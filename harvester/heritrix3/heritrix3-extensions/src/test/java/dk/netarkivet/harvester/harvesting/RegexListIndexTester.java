@@ -0,0 +1,133 @@
+/*
+ * #%L
+ * Netarchivesuite - Heritrix 3 extensions
+ * %%
+ * Copyright (C) 2005 - 2017 The Royal Danish Library, 
+ *             the National Library of France and the Austrian National Library.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 2.1 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+package dk.netarkivet.harvester.harvesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegexListIndexTester {
+
+    private static final String[] REGEXES = {
+            ".*dr\\.dk/nyheder/.*\\?page=\\d+.*",
+            ".*www\\.example\\.org/calendar/\\d{4}/.*",
+            ".*example\\.org/(a|b)/loop/.*",
+            "http://(www\\.)?kb\\.dk/.*/.*/.*/.*/.*",
+            ".*/(\\w+)/\\1/\\1/.*",
+            ".*[Ss]ession[Ii][Dd]=.*",
+            "(?i).*PHPSESSID.*",
+            ".*\\Qwiki.example.com\\E/Special:.*",
+            ".*abcd?efgh.*",
+            ".*foo|.*barbaz.*",
+            ".*tests+ite\\.net.*",
+            ".*\\x41BCDE.*",
+            ".*netarkivet\\.dk/.*\\.php\\?id=[0-9]+&id=.*",
+            "^https?://trap\\.dk/.*$"
+    };
+
+    private static final String[] URIS = {
+            "http://www.dr.dk/nyheder/indland?page=12",
+            "http://www.dr.dk/nyheder/indland",
+            "http://www.example.org/calendar/2017/01/",
+            "http://www.example.org/calendar/17/01/",
+            "http://example.org/a/loop/x",
+            "http://example.org/c/loop/x",
+            "http://www.kb.dk/a/b/c/d/e",
+            "http://kb.dk/a/b/c/d/e",
+            "http://kb.dk/a/b",
+            "http://host.dk/x/y/y/y/z",
+            "http://host.dk/x/y/z",
+            "http://host.dk/page?SessionId=12",
+            "http://host.dk/page?phpsessid=12",
+            "http://wiki.example.com/Special:Random",
+            "http://host.dk/abcefgh",
+            "http://host.dk/abcdefgh",
+            "http://host.dk/abcdfgh",
+            "http://host.dk/foo",
+            "http://host.dk/barbaz",
+            "http://testssssite.net/",
+            "http://testite.net/",
+            "http://host.dk/ABCDE",
+            "http://netarkivet.dk/a/b.php?id=1&id=2",
+            "http://netarkivet.dk/a/b.php?id=x&id=2",
+            "https://trap.dk/x",
+            "ftp://trap.dk/x",
+            ""
+    };
+
+    @Test
+    public void testRequiredLiterals() {
+        assertLiterals(REGEXES[0], "dr.dk/nyheder/", "?page=");
+        assertLiterals(REGEXES[1], "www.example.org/calendar/", "/");
+        assertLiterals(REGEXES[2], "example.org/", "/loop/");
+        assertLiterals(REGEXES[3], "http://", "kb.dk/", "/", "/", "/", "/");
+        assertLiterals(REGEXES[6]);
+        assertLiterals(REGEXES[7]);
+        assertLiterals(REGEXES[8], "abc", "efgh");
+        assertLiterals(REGEXES[9]);
+        assertLiterals(REGEXES[10], "tests", "ite.net");
+        assertLiterals(REGEXES[11], "BCDE");
+        assertLiterals(REGEXES[13], "http", "://trap.dk/");
+        Assert.assertTrue(RegexListIndex.requiredLiterals(Pattern.compile("abcd", Pattern.CASE_INSENSITIVE)).isEmpty());
+    }
+
+    private static void assertLiterals(String regex, String... expected) {
+        Assert.assertEquals("Literals of '" + regex + "'", Arrays.asList(expected),
+                RegexListIndex.requiredLiterals(Pattern.compile(regex)));
+    }
+
+    @Test
+    public void testSameResultAsTryingAllRegexes() {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String regex : REGEXES) {
+            patterns.add(Pattern.compile(regex));
+        }
+        for (Pattern pattern : patterns) {
+            RegexListIndex single = new RegexListIndex(Arrays.asList(pattern));
+            for (String uri : URIS) {
+                Assert.assertEquals("Regex '" + pattern + "' on '" + uri + "'", pattern.matcher(uri).matches(),
+                        single.anyMatches(uri));
+            }
+        }
+        RegexListIndex index = new RegexListIndex(patterns);
+        Assert.assertEquals(REGEXES.length, index.size());
+        for (String uri : URIS) {
+            boolean expected = false;
+            for (Pattern pattern : patterns) {
+                expected |= pattern.matcher(uri).matches();
+            }
+            Assert.assertEquals("All regexes on '" + uri + "'", expected, index.anyMatches(uri));
+        }
+    }
+
+    @Test
+    public void testEmptyList() {
+        RegexListIndex index = new RegexListIndex(new ArrayList<Pattern>());
+        Assert.assertFalse(index.anyMatches("http://www.netarkivet.dk/"));
+    }
+
+}